@@ -0,0 +1,194 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.utils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed size histogram of latencies in nanoseconds, laid out like an HdrHistogram: values are counted in
+ * buckets for each power of two which are split into {@link #SUB_BUCKETS} linear sub buckets, so any
+ * recorded value is reported to within about 3% no matter how large it is.
+ * <p/>
+ * Recording a value takes three atomic increments (its bucket, the count and the total time) and a
+ * compare and set of the min and max, which is skipped unless the value is a new extreme. It needs no locks
+ * or allocation, so it can be done on the event loop for every request. Values larger than
+ * {@link #MAX_VALUE} (a little over 4 hours) are counted as the maximum value.
+ * <p/>
+ * The 1280 bucket counters take about 10KB per histogram, and each snapshot copies them.
+ * <p/>
+ * It is shared by the HTTP gateway, which keeps one for each mapping rule and backend, and by the camel
+ * profiler, which keeps one for each processor.
+ */
+public class LatencyHistogram {
+
+    public static final long MAX_VALUE = (1L << 44) - 1;
+
+    static final int SUB_BUCKET_BITS = 6;
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    static final int HALF_SUB_BUCKETS = SUB_BUCKETS / 2;
+    static final int BUCKET_COUNT = indexOf(MAX_VALUE) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong totalCount = new AtomicLong();
+    private final AtomicLong totalTime = new AtomicLong();
+    private final AtomicLong minValue = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong maxValue = new AtomicLong();
+
+    /**
+     * Records a latency in nanoseconds
+     */
+    public void recordValue(long nanos) {
+        long value = Math.min(Math.max(nanos, 0), MAX_VALUE);
+        counts.incrementAndGet(indexOf(value));
+        totalCount.incrementAndGet();
+        totalTime.addAndGet(value);
+        long min;
+        while (value < (min = minValue.get())) {
+            if (minValue.compareAndSet(min, value)) {
+                break;
+            }
+        }
+        long max;
+        while (value > (max = maxValue.get())) {
+            if (maxValue.compareAndSet(max, value)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Returns a copy of the current counts, optionally resetting them so that the next snapshot only
+     * includes the values recorded from now on
+     */
+    public Snapshot snapshot(boolean reset) {
+        long[] values = new long[BUCKET_COUNT];
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            values[i] = reset ? counts.getAndSet(i, 0) : counts.get(i);
+            count += values[i];
+        }
+        // the totals are only used for the mean, min and max so small races with concurrent recording are fine
+        long time = reset ? totalTime.getAndSet(0) : totalTime.get();
+        long min = reset ? minValue.getAndSet(Long.MAX_VALUE) : minValue.get();
+        long max = reset ? maxValue.getAndSet(0) : maxValue.get();
+        if (reset) {
+            totalCount.set(0);
+        }
+        return new Snapshot(values, count, time, min == Long.MAX_VALUE ? 0 : min, max);
+    }
+
+    public long getTotalCount() {
+        return totalCount.get();
+    }
+
+    public void reset() {
+        snapshot(true);
+    }
+
+    static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+        return SUB_BUCKETS + (shift - 1) * HALF_SUB_BUCKETS + (int) (value >>> shift) - HALF_SUB_BUCKETS;
+    }
+
+    /**
+     * Returns the highest value which is counted in the bucket of the given index
+     */
+    static long highestValueAt(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKETS) / HALF_SUB_BUCKETS + 1;
+        long subBucket = (index - SUB_BUCKETS) % HALF_SUB_BUCKETS + HALF_SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    /**
+     * A point in time copy of a {@link LatencyHistogram}
+     */
+    public static class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long totalTime;
+        private final long min;
+        private final long max;
+
+        Snapshot(long[] counts, long count, long totalTime, long min, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.totalTime = totalTime;
+            this.min = min;
+            this.max = max;
+        }
+
+        @Override
+        public String toString() {
+            return "count=" + count +
+                    " mean=" + formatMillis(getMean()) +
+                    " p50=" + formatMillis(getValueAtPercentile(50)) +
+                    " p90=" + formatMillis(getValueAtPercentile(90)) +
+                    " p99=" + formatMillis(getValueAtPercentile(99)) +
+                    " p99.9=" + formatMillis(getValueAtPercentile(99.9)) +
+                    " max=" + formatMillis(getMax());
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Returns the smallest recorded value, or 0 if nothing was recorded
+         */
+        public long getMin() {
+            return min;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        public long getMean() {
+            return count > 0 ? totalTime / count : 0;
+        }
+
+        /**
+         * Returns the value in nanoseconds which the given percentage of the recorded values are less than or
+         * equal to
+         */
+        public long getValueAtPercentile(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            long target = Math.max(1, (long) Math.ceil(Math.min(percentile, 100.0) / 100.0 * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= target) {
+                    return Math.min(highestValueAt(i), max > 0 ? max : Long.MAX_VALUE);
+                }
+            }
+            return max;
+        }
+
+        protected static String formatMillis(long nanos) {
+            return String.format("%.3fms", nanos / (double) TimeUnit.MILLISECONDS.toNanos(1));
+        }
+    }
+}
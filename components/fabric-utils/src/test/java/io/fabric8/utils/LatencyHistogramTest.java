@@ -0,0 +1,78 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.utils;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void testBucketsAreWithinPrecision() throws Exception {
+        for (long value = 1; value < LatencyHistogram.MAX_VALUE; value = value * 3 / 2 + 1) {
+            int index = LatencyHistogram.indexOf(value);
+            long highest = LatencyHistogram.highestValueAt(index);
+            assertTrue("Bucket of " + value + " ends at " + highest, highest >= value);
+            assertTrue("Bucket of " + value + " ends at " + highest, (highest - value) <= value / 30);
+            assertEquals(index, LatencyHistogram.indexOf(highest));
+            assertEquals(index + 1, LatencyHistogram.indexOf(highest + 1));
+        }
+        assertEquals(LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.indexOf(LatencyHistogram.MAX_VALUE));
+    }
+
+    @Test
+    public void testPercentiles() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.recordValue(TimeUnit.MILLISECONDS.toNanos(i));
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot(false);
+        assertEquals(1000, snapshot.getCount());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(1), snapshot.getMin());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(1000), snapshot.getMax());
+        assertWithinPrecision(TimeUnit.MILLISECONDS.toNanos(500), snapshot.getValueAtPercentile(50));
+        assertWithinPrecision(TimeUnit.MILLISECONDS.toNanos(990), snapshot.getValueAtPercentile(99));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(1000), snapshot.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void testResetOnRead() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.recordValue(100);
+        histogram.recordValue(-1);
+        histogram.recordValue(Long.MAX_VALUE);
+        assertEquals(3, histogram.snapshot(true).getCount());
+        assertEquals(0, histogram.snapshot(false).getCount());
+        assertEquals(0, histogram.snapshot(false).getValueAtPercentile(99));
+        assertEquals(0, histogram.snapshot(false).getMin());
+
+        histogram.recordValue(100);
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot(false);
+        assertEquals(1, snapshot.getCount());
+        assertEquals(100, snapshot.getMin());
+        assertEquals(100, snapshot.getMax());
+    }
+
+    protected void assertWithinPrecision(long expected, long actual) {
+        assertTrue("Expected " + expected + " but was " + actual, actual >= expected && actual - expected <= expected / 30);
+    }
+}
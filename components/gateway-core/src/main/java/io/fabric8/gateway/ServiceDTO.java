@@ -53,6 +53,44 @@ public class ServiceDTO implements ServiceDetails {
                 '}';
     }
 
+    /**
+     * Services are identified by their ID so that the replacement DTO of an updated service is equal
+     * to the one it replaces; DTOs without an ID are compared by value
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        ServiceDTO that = (ServiceDTO) o;
+        if (id != null || that.id != null) {
+            return id != null && id.equals(that.id);
+        }
+        return equal(container, that.container) && equal(version, that.version)
+                && equal(bundleName, that.bundleName) && equal(bundleVersion, that.bundleVersion)
+                && equal(services, that.services);
+    }
+
+    @Override
+    public int hashCode() {
+        if (id != null) {
+            return id.hashCode();
+        }
+        int result = container != null ? container.hashCode() : 0;
+        result = 31 * result + (version != null ? version.hashCode() : 0);
+        result = 31 * result + (bundleName != null ? bundleName.hashCode() : 0);
+        result = 31 * result + (bundleVersion != null ? bundleVersion.hashCode() : 0);
+        result = 31 * result + (services != null ? services.hashCode() : 0);
+        return result;
+    }
+
+    private static boolean equal(Object a, Object b) {
+        return a != null ? a.equals(b) : b == null;
+    }
+
     public String getId() {
         return id;
     }
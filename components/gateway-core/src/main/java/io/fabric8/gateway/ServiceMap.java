@@ -15,24 +15,39 @@
  */
 package io.fabric8.gateway;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Maintains a mapping of services which is then use by the proxy to update in process
  * proxy handlers, or used to create new proxy handers
+ * <p/>
+ * The services of each path are kept as an immutable snapshot which is replaced whenever a service is
+ * updated or removed, so looking up the services of a path does not allocate or lock; the returned list
+ * is stable for as long as the caller holds on to it.
  */
 public class ServiceMap {
-    private ConcurrentHashMap<String, Map<String, ServiceDetails>> map = new ConcurrentHashMap<String, Map<String, ServiceDetails>>();
+    private static final transient Logger LOG = LoggerFactory.getLogger(ServiceMap.class);
+
+    private final ConcurrentHashMap<String, List<ServiceDetails>> map = new ConcurrentHashMap<String, List<ServiceDetails>>();
+    private final List<ServiceMapListener> listeners = new CopyOnWriteArrayList<ServiceMapListener>();
 
     /**
-     * Returns a list of all the current services for the given path
+     * Returns an immutable snapshot of all the current services for the given path
      */
     public List<ServiceDetails> getServices(String path) {
-        Map<String, ServiceDetails> pathMap = getPathMap(path);
-        return new ArrayList<ServiceDetails>(pathMap.values());
+        List<ServiceDetails> answer = map.get(path);
+        if (answer == null) {
+            return Collections.emptyList();
+        }
+        return answer;
     }
 
     /**
@@ -47,26 +62,90 @@ public class ServiceMap {
      */
     public void serviceUpdated(String path, ServiceDetails service) {
         // ignore services with empty services
-        if (!service.getServices().isEmpty()) {
-            getPathMap(path).put(service.getId(), service);
+        if (service.getServices().isEmpty()) {
+            return;
+        }
+        synchronized (map) {
+            List<ServiceDetails> current = getServices(path);
+            ServiceDetails[] services = current.toArray(new ServiceDetails[current.size() + 1]);
+            int idx = indexOf(services, current.size(), service.getId());
+            if (idx >= 0) {
+                services = Arrays.copyOf(services, current.size());
+                services[idx] = service;
+            } else {
+                services[current.size()] = service;
+            }
+            map.put(path, snapshot(services));
         }
     }
 
     /**
-     * When a service is added or updated
+     * When a service is removed
      */
     public void serviceRemoved(String path, ServiceDetails service) {
-        getPathMap(path).remove(service.getId());
+        ServiceDetails removed = null;
+        synchronized (map) {
+            List<ServiceDetails> current = map.get(path);
+            if (current != null) {
+                ServiceDetails[] services = current.toArray(new ServiceDetails[current.size()]);
+                int idx = indexOf(services, services.length, service.getId());
+                if (idx >= 0) {
+                    removed = services[idx];
+                    if (services.length == 1) {
+                        map.remove(path);
+                    } else {
+                        ServiceDetails[] remaining = new ServiceDetails[services.length - 1];
+                        System.arraycopy(services, 0, remaining, 0, idx);
+                        System.arraycopy(services, idx + 1, remaining, idx, remaining.length - idx);
+                        map.put(path, snapshot(remaining));
+                    }
+                }
+            }
+        }
 
         // lets update any in progress proxy handlers using this service
+        if (removed != null) {
+            for (ServiceMapListener listener : listeners) {
+                try {
+                    listener.serviceRemoved(path, removed);
+                } catch (Throwable e) {
+                    LOG.warn("Failed to notify " + listener + " of the removal of service " + removed.getId() + ". " + e, e);
+                }
+            }
+        }
     }
 
-    protected Map<String, ServiceDetails> getPathMap(String path) {
-        Map<String, ServiceDetails> initial = new ConcurrentHashMap<String, ServiceDetails>();
-        Map<String, ServiceDetails> answer = map.putIfAbsent(path, initial);
-        if (answer == null) {
-            answer = initial;
+    public void addListener(ServiceMapListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(ServiceMapListener listener) {
+        listeners.remove(listener);
+    }
+
+    protected static int indexOf(ServiceDetails[] services, int size, String id) {
+        for (int i = 0; i < size; i++) {
+            String serviceId = services[i].getId();
+            if (serviceId == null ? id == null : serviceId.equals(id)) {
+                return i;
+            }
         }
-        return answer;
+        return -1;
+    }
+
+    protected static List<ServiceDetails> snapshot(ServiceDetails[] services) {
+        return Collections.unmodifiableList(Arrays.asList(services));
+    }
+
+    /**
+     * Notified of changes to the {@link ServiceMap} so that the proxies which are using a service can react to it
+     */
+    public interface ServiceMapListener {
+
+        /**
+         * The service which was removed from the given path; this is the instance which was previously
+         * returned by {@link ServiceMap#getServices(String)}
+         */
+        void serviceRemoved(String path, ServiceDetails service);
     }
 }
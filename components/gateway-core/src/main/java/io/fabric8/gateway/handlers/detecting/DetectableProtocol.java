@@ -0,0 +1,31 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.detecting;
+
+import java.util.List;
+
+/**
+ * A {@link Protocol} which can describe the initial bytes sent by its clients as a set of
+ * {@link ProtocolSignature}s so that the {@link ProtocolDetector} can identify it in a single
+ * pass over the received bytes rather than by calling {@link #matches(org.vertx.java.core.buffer.Buffer)}.
+ * <p/>
+ * The protocol matches if any of the signatures matches the start of the received bytes.
+ */
+public interface DetectableProtocol extends Protocol {
+
+    public List<ProtocolSignature> getSignatures();
+
+}
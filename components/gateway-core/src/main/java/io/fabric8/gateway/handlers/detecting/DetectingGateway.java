@@ -22,9 +22,11 @@ import io.fabric8.gateway.ServiceMap;
 import io.fabric8.gateway.SocketWrapper;
 import io.fabric8.gateway.handlers.detecting.protocol.ssl.SslConfig;
 import io.fabric8.gateway.handlers.detecting.protocol.ssl.SslSocketWrapper;
+import io.fabric8.gateway.handlers.detecting.protocol.ssl.SslStatistics;
 import io.fabric8.gateway.handlers.loadbalancer.ClientRequestFacadeFactory;
 import io.fabric8.gateway.handlers.loadbalancer.ConnectionParameters;
 import io.fabric8.gateway.loadbalancer.ClientRequestFacade;
+import io.fabric8.gateway.loadbalancer.LoadAwareLoadBalancer;
 import io.fabric8.gateway.loadbalancer.LoadBalancer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -37,12 +39,19 @@ import org.vertx.java.core.net.NetServer;
 import org.vertx.java.core.net.NetSocket;
 import org.vertx.java.core.streams.Pump;
 import org.vertx.java.core.streams.ReadStream;
+import org.vertx.java.core.streams.WriteStream;
 
 import javax.net.ssl.SSLContext;
 import java.net.InetSocketAddress;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -61,10 +70,14 @@ public class DetectingGateway implements DetectingGatewayMBean {
     String defaultVirtualHost;
     ArrayList<Protocol> protocols;
     int maxProtocolIdentificationLength;
+    ProtocolDetector protocolDetector;
     ClientRequestFacadeFactory clientRequestFacadeFactory = new ClientRequestFacadeFactory("PROTOCOL_SESSION_ID, PROTOCOL_CLIENT_ID, REMOTE_ADDRESS");
     final AtomicReference<InetSocketAddress> httpGateway = new AtomicReference<InetSocketAddress>();
     SslConfig sslConfig;
     long connectionTimeout = 5000;
+    ExecutorService sslTaskExecutor;
+    boolean sslTaskExecutorCreated;
+    final SslStatistics sslStatistics = new SslStatistics();
 
     final AtomicLong receivedConnectionAttempts = new AtomicLong();
     final AtomicLong successfulConnectionAttempts = new AtomicLong();
@@ -77,6 +90,16 @@ public class DetectingGateway implements DetectingGatewayMBean {
     private String host;
     private NetServer server;
 
+    private final ServiceMap.ServiceMapListener serviceMapListener = new ServiceMap.ServiceMapListener() {
+        @Override
+        public void serviceRemoved(String path, ServiceDetails service) {
+            LoadAwareLoadBalancer loadAwareLoadBalancer = getLoadAwareLoadBalancer();
+            if (loadAwareLoadBalancer != null) {
+                loadAwareLoadBalancer.removeService(service);
+            }
+        }
+    };
+
     private FutureHandler<AsyncResult<NetServer>> listenFuture = new FutureHandler<AsyncResult<NetServer>>() {
         @Override
         public void handle(AsyncResult<NetServer> event) {
@@ -98,6 +121,13 @@ public class DetectingGateway implements DetectingGatewayMBean {
 
 
     public void init() {
+        if (serviceMap != null) {
+            serviceMap.addListener(serviceMapListener);
+        }
+        if (sslTaskExecutor == null) {
+            sslTaskExecutor = createSslTaskExecutor();
+            sslTaskExecutorCreated = true;
+        }
         server = vertx.createNetServer().connectHandler(new DetectingGatewayNetSocketHandler(this));
         if (host != null) {
             server = server.listen(port, host, listenFuture);
@@ -107,6 +137,9 @@ public class DetectingGateway implements DetectingGatewayMBean {
     }
 
     public void destroy() {
+        if (serviceMap != null) {
+            serviceMap.removeListener(serviceMapListener);
+        }
         server.close();
         for (SocketWrapper socket : new ArrayList<>(socketsConnecting)) {
             handleConnectFailure(socket, null);
@@ -114,6 +147,30 @@ public class DetectingGateway implements DetectingGatewayMBean {
         for (ConnectedSocketInfo socket : new ArrayList<>(socketsConnected)) {
             handleShutdown(socket);
         }
+        if (sslTaskExecutorCreated) {
+            sslTaskExecutor.shutdownNow();
+            sslTaskExecutor = null;
+            sslTaskExecutorCreated = false;
+        }
+    }
+
+    /**
+     * Creates the pool which runs the expensive parts of the SSL handshakes (such as the key exchange) so
+     * that they do not hold up the event loop
+     */
+    protected ExecutorService createSslTaskExecutor() {
+        final AtomicInteger counter = new AtomicInteger();
+        int threads = Runtime.getRuntime().availableProcessors();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "gateway-ssl-task-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
     }
 
     public String getHost() {
@@ -169,6 +226,7 @@ public class DetectingGateway implements DetectingGatewayMBean {
             }
         }
         maxProtocolIdentificationLength = max;
+        protocolDetector = new ProtocolDetector(this.protocols);
     }
 
     public Collection<String> getProtocolNames() {
@@ -193,12 +251,70 @@ public class DetectingGateway implements DetectingGatewayMBean {
         private final URI url;
         private final SocketWrapper from;
         private final NetSocket to;
+        private final ServiceDetails service;
+        private CountingPump upstream;
+        private CountingPump downstream;
 
-        public ConnectedSocketInfo(ConnectionParameters params, URI url, SocketWrapper from, NetSocket to) {
+        public ConnectedSocketInfo(ConnectionParameters params, URI url, SocketWrapper from, NetSocket to, ServiceDetails service) {
             this.params = params;
             this.url = url;
             this.from = from;
             this.to = to;
+            this.service = service;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder();
+            builder.append(from.remoteAddress()).append(" -> ").append(url);
+            if (upstream != null && downstream != null) {
+                builder.append(" (sent: ").append(upstream.getBytesPumped())
+                        .append(" bytes, received: ").append(downstream.getBytesPumped()).append(" bytes)");
+            }
+            return builder.toString();
+        }
+    }
+
+    /**
+     * Pumps the buffers of a read stream to a write stream the way a vert.x {@link Pump} does, pausing the read
+     * stream while the write queue is full, but counts the bytes pumped in a long rather than an int, as a long
+     * lived connection easily pumps more than 2GB.
+     */
+    static class CountingPump implements Handler<Buffer> {
+
+        private final ReadStream<?> from;
+        private final WriteStream<?> to;
+        // only updated from the event loop of the connection
+        private volatile long bytesPumped;
+        private final Handler<Void> drainHandler = new Handler<Void>() {
+            @Override
+            public void handle(Void event) {
+                from.resume();
+            }
+        };
+
+        CountingPump(ReadStream<?> from, WriteStream<?> to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        CountingPump start() {
+            from.dataHandler(this);
+            return this;
+        }
+
+        @Override
+        public void handle(Buffer data) {
+            bytesPumped += data.length();
+            to.write(data);
+            if (to.writeQueueFull()) {
+                from.pause();
+                to.drainHandler(drainHandler);
+            }
+        }
+
+        long getBytesPumped() {
+            return bytesPumped;
         }
     }
 
@@ -232,78 +348,78 @@ public class DetectingGateway implements DetectingGatewayMBean {
         });
         readStream.dataHandler(new Handler<Buffer>() {
             Buffer received = new Buffer();
+            ProtocolDetector.Detection detection = protocolDetector.newDetection();
 
             @Override
             public void handle(Buffer event) {
                 received.appendBuffer(event);
-                for (final Protocol protocol : protocols) {
-                    if (protocol.matches(received)) {
-                        if ("ssl".equals(protocol.getProtocolName())) {
-
-                            LOG.info(String.format("SSL Connection from '%s'", socket.remoteAddress()));
-                            String disabledCypherSuites=null;
-                            String enabledCipherSuites=null;
-                            if (sslConfig != null) {
-                                disabledCypherSuites = sslConfig.getDisabledCypherSuites();
-                                enabledCipherSuites = sslConfig.getEnabledCipherSuites();
-                            }
-                            if (sslContext == null) {
-                                try {
-                                    if (sslConfig != null) {
-                                        sslContext = SSLContext.getInstance(sslConfig.getProtocol());
-                                        sslContext.init(sslConfig.getKeyManagers(), sslConfig.getTrustManagers(), null);
-                                    } else {
-                                        sslContext = SSLContext.getDefault();
-                                    }
-                                } catch (Exception e) {
-                                    handleConnectFailure(socket, "Could initialize SSL: " + e);
-                                    return;
+                final Protocol protocol = detection.detect(received);
+                if (protocol != null) {
+                    if ("ssl".equals(protocol.getProtocolName())) {
+
+                        LOG.info(String.format("SSL Connection from '%s'", socket.remoteAddress()));
+                        String disabledCypherSuites=null;
+                        String enabledCipherSuites=null;
+                        if (sslConfig != null) {
+                            disabledCypherSuites = sslConfig.getDisabledCypherSuites();
+                            enabledCipherSuites = sslConfig.getEnabledCipherSuites();
+                        }
+                        if (sslContext == null) {
+                            try {
+                                if (sslConfig != null) {
+                                    sslContext = sslConfig.createServerContext();
+                                } else {
+                                    sslContext = SSLContext.getDefault();
                                 }
+                            } catch (Exception e) {
+                                handleConnectFailure(socket, "Could initialize SSL: " + e);
+                                return;
                             }
+                        }
 
-                            // lets wrap it up in a SslSocketWrapper.
-                            SslSocketWrapper sslSocketWrapper = new SslSocketWrapper(socket);
-                            sslSocketWrapper.putBackHeader(received);
-                            sslSocketWrapper.initServer(sslContext, clientAuth, disabledCypherSuites, enabledCipherSuites);
-                            DetectingGateway.this.handle(sslSocketWrapper);
-                            return;
-
-                        } else if ("http".equals(protocol.getProtocolName())) {
-                            InetSocketAddress target = getHttpGateway();
-                            if (target != null) {
-                                try {
-                                    URI url = new URI("http://" + target.getHostString() + ":" + target.getPort());
-                                    LOG.info(String.format("Connecting '%s' to '%s:%d' using the http protocol",
-                                            socket.remoteAddress(), url.getHost(), url.getPort()));
-                                    ConnectionParameters params = new ConnectionParameters();
-                                    params.protocol = "http";
-                                    createClient(params, socket, url, received);
-                                    return;
-                                } catch (URISyntaxException e) {
-                                    handleConnectFailure(socket, "Could not build valid connect URI: "+e);
-                                    return;
-                                }
-                            } else {
-                                handleConnectFailure(socket, "No http gateway available for the http protocol");
+                        // lets wrap it up in a SslSocketWrapper.
+                        SslSocketWrapper sslSocketWrapper = new SslSocketWrapper(socket);
+                        sslSocketWrapper.putBackHeader(received);
+                        sslSocketWrapper.configure(vertx, sslTaskExecutor, sslStatistics);
+                        sslSocketWrapper.initServer(sslContext, clientAuth, disabledCypherSuites, enabledCipherSuites);
+                        DetectingGateway.this.handle(sslSocketWrapper);
+                        return;
+
+                    } else if ("http".equals(protocol.getProtocolName())) {
+                        InetSocketAddress target = getHttpGateway();
+                        if (target != null) {
+                            try {
+                                URI url = new URI("http://" + target.getHostString() + ":" + target.getPort());
+                                LOG.info(String.format("Connecting '%s' to '%s:%d' using the http protocol",
+                                        socket.remoteAddress(), url.getHost(), url.getPort()));
+                                ConnectionParameters params = new ConnectionParameters();
+                                params.protocol = "http";
+                                createClient(params, socket, url, received, null);
+                                return;
+                            } catch (URISyntaxException e) {
+                                handleConnectFailure(socket, "Could not build valid connect URI: "+e);
                                 return;
                             }
                         } else {
-                            protocol.snoopConnectionParameters(socket, received, new Handler<ConnectionParameters>() {
-                                @Override
-                                public void handle(ConnectionParameters connectionParameters) {
-                                    // this will install a new dataHandler on the socket.
-                                    if (connectionParameters.protocol == null)
-                                        connectionParameters.protocol = protocol.getProtocolName();
-                                    if (connectionParameters.protocolSchemes == null)
-                                        connectionParameters.protocolSchemes = protocol.getProtocolSchemes();
-                                    route(socket, connectionParameters, received);
-                                }
-                            });
+                            handleConnectFailure(socket, "No http gateway available for the http protocol");
                             return;
                         }
+                    } else {
+                        protocol.snoopConnectionParameters(socket, received, new Handler<ConnectionParameters>() {
+                            @Override
+                            public void handle(ConnectionParameters connectionParameters) {
+                                // this will install a new dataHandler on the socket.
+                                if (connectionParameters.protocol == null)
+                                    connectionParameters.protocol = protocol.getProtocolName();
+                                if (connectionParameters.protocolSchemes == null)
+                                    connectionParameters.protocolSchemes = protocol.getProtocolSchemes();
+                                route(socket, connectionParameters, received);
+                            }
+                        });
+                        return;
                     }
                 }
-                if (received.length() >= maxProtocolIdentificationLength) {
+                if (received.length() >= maxProtocolIdentificationLength || detection.isRejected()) {
                     handleConnectFailure(socket, "Connection did not use one of the enabled protocols " + getProtocolNames());
                 }
             }
@@ -362,7 +478,7 @@ public class DetectingGateway implements DetectingGatewayMBean {
                                           ));
                                     }
 
-                                    client = createClient(params, socket, uri, received);
+                                    client = createClient(params, socket, uri, received, serviceDetails);
                                     break;
                                 }
                             } catch (URISyntaxException e) {
@@ -383,19 +499,31 @@ public class DetectingGateway implements DetectingGatewayMBean {
     /**
      * Creates a new client for the given URL and handler
      */
-    private NetClient createClient(final ConnectionParameters params, final SocketWrapper socketFromClient, final URI url, final Buffer received) {
+    private NetClient createClient(final ConnectionParameters params, final SocketWrapper socketFromClient, final URI url, final Buffer received, final ServiceDetails service) {
         NetClient netClient = vertx.createNetClient();
+        final long connectStart = System.nanoTime();
+        final LoadAwareLoadBalancer loadAwareLoadBalancer = service != null ? getLoadAwareLoadBalancer() : null;
+        if (loadAwareLoadBalancer != null) {
+            loadAwareLoadBalancer.requestStarted(service);
+        }
         return netClient.connect(url.getPort(), url.getHost(), new Handler<AsyncResult<NetSocket>>() {
             public void handle(final AsyncResult<NetSocket> asyncSocket) {
 
                 if( !asyncSocket.succeeded() ) {
+                    if (loadAwareLoadBalancer != null) {
+                        loadAwareLoadBalancer.requestCompleted(service);
+                    }
                     handleConnectFailure(socketFromClient, String.format("Could not connect to '%s'", url));
                 } else {
                     final NetSocket socketToServer = asyncSocket.result();
+                    if (loadAwareLoadBalancer != null) {
+                        // the connect time is the best indication of how responsive the service is
+                        loadAwareLoadBalancer.responseReceived(service, System.nanoTime() - connectStart);
+                    }
 
                     successfulConnectionAttempts.incrementAndGet();
                     socketsConnecting.remove(socketFromClient);
-                    final ConnectedSocketInfo connectedInfo = new ConnectedSocketInfo(params, url, socketFromClient, socketToServer);
+                    final ConnectedSocketInfo connectedInfo = new ConnectedSocketInfo(params, url, socketFromClient, socketToServer, service);
                     socketsConnected.add(connectedInfo);
 
                     Handler<Void> endHandler = new Handler<Void>() {
@@ -415,9 +543,10 @@ public class DetectingGateway implements DetectingGatewayMBean {
                     socketToServer.endHandler(endHandler);
                     socketToServer.exceptionHandler(exceptionHandler);
 
-                    socketToServer.write(received);
-                    Pump.createPump(socketToServer, socketFromClient.writeStream()).start();
-                    Pump.createPump(socketFromClient.readStream(), socketToServer).start();
+                    connectedInfo.downstream = new CountingPump(socketToServer, socketFromClient.writeStream()).start();
+                    connectedInfo.upstream = new CountingPump(socketFromClient.readStream(), socketToServer).start();
+                    // the bytes read while detecting the protocol are sent first
+                    connectedInfo.upstream.handle(received);
                 }
             }
         });
@@ -427,10 +556,26 @@ public class DetectingGateway implements DetectingGatewayMBean {
         if( socketsConnected.remove(connectedInfo) ) {
             connectedInfo.from.close();
             connectedInfo.to.close();
+            if (connectedInfo.service != null) {
+                LoadAwareLoadBalancer loadAwareLoadBalancer = getLoadAwareLoadBalancer();
+                if (loadAwareLoadBalancer != null) {
+                    loadAwareLoadBalancer.requestCompleted(connectedInfo.service);
+                }
+            }
             shutdownTacker.release();
         }
     }
 
+    /**
+     * Returns the service load balancer if it needs to be told about the connections made to the services
+     */
+    protected LoadAwareLoadBalancer getLoadAwareLoadBalancer() {
+        if (serviceLoadBalancer instanceof LoadAwareLoadBalancer) {
+            return (LoadAwareLoadBalancer) serviceLoadBalancer;
+        }
+        return null;
+    }
+
     public ServiceMap getServiceMap() {
         return serviceMap;
     }
@@ -477,6 +622,63 @@ public class DetectingGateway implements DetectingGatewayMBean {
         return rc.toArray(new String[rc.size()]);
     }
 
+    public String[] getConnectedClientStatistics() {
+        ArrayList<String> rc = new ArrayList<>();
+        for (ConnectedSocketInfo info : socketsConnected) {
+            rc.add(info.toString());
+        }
+        return rc.toArray(new String[rc.size()]);
+    }
+
+    public ExecutorService getSslTaskExecutor() {
+        return sslTaskExecutor;
+    }
+
+    /**
+     * Sets the executor used to run the delegated tasks of the SSL handshakes; by default a pool sized to
+     * the number of processors is created on init
+     */
+    public void setSslTaskExecutor(ExecutorService sslTaskExecutor) {
+        this.sslTaskExecutor = sslTaskExecutor;
+        this.sslTaskExecutorCreated = false;
+    }
+
+    public SslStatistics getSslStatistics() {
+        return sslStatistics;
+    }
+
+    public long getSslHandshakesCompleted() {
+        return sslStatistics.getHandshakesCompleted();
+    }
+
+    public long getSslHandshakesFailed() {
+        return sslStatistics.getHandshakesFailed();
+    }
+
+    public long getSslFullHandshakes() {
+        return sslStatistics.getFullHandshakes();
+    }
+
+    public long getSslResumedHandshakes() {
+        return sslStatistics.getResumedHandshakes();
+    }
+
+    public double getSslHandshakeRate() {
+        return sslStatistics.getHandshakeRate();
+    }
+
+    public long getSslAverageHandshakeTime() {
+        return TimeUnit.NANOSECONDS.toMillis(sslStatistics.getAverageHandshakeTimeNanos());
+    }
+
+    public long getSslBytesEncrypted() {
+        return sslStatistics.getBytesEncrypted();
+    }
+
+    public long getSslBytesDecrypted() {
+        return sslStatistics.getBytesDecrypted();
+    }
+
     public long getConnectionTimeout() {
         return connectionTimeout;
     }
@@ -32,7 +32,16 @@ public interface DetectingGatewayMBean {
     public long getFailedConnectionAttempts();
     public String[] getConnectingClients();
     public String[] getConnectedClients();
+    public String[] getConnectedClientStatistics();
     public long getConnectionTimeout();
     public void setConnectionTimeout(long connectionTimeout);
+    public long getSslHandshakesCompleted();
+    public long getSslHandshakesFailed();
+    public long getSslFullHandshakes();
+    public long getSslResumedHandshakes();
+    public double getSslHandshakeRate();
+    public long getSslAverageHandshakeTime();
+    public long getSslBytesEncrypted();
+    public long getSslBytesDecrypted();
 
 }
@@ -0,0 +1,173 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.detecting;
+
+import org.vertx.java.core.buffer.Buffer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Identifies the protocol of a connection from the first bytes the client sends.
+ * <p/>
+ * The {@link ProtocolSignature}s of all the {@link DetectableProtocol}s are compiled into a table which
+ * gives, for each byte position and byte value, the set of signatures that are still possible. A
+ * {@link Detection} keeps the set of live signatures for a connection and only looks at each received
+ * byte once, no matter how the bytes are split into chunks or how many protocols are enabled.
+ * Protocols which do not describe their signatures are still checked using {@link Protocol#matches(Buffer)}.
+ * <p/>
+ * As with checking each protocol in turn, the first protocol (in the configured order) which matches
+ * the bytes received so far is the one selected.
+ */
+public class ProtocolDetector {
+
+    private final Protocol[] protocols;
+    /**
+     * The signature bits of each protocol or null if the protocol has to be matched on the buffer
+     */
+    private final long[][] protocolSignatures;
+    /**
+     * The signatures which still match after seeing the byte value at each position
+     */
+    private final long[][][] transitions;
+    /**
+     * The signatures which are fully matched once the byte at each position matched
+     */
+    private final long[][] completions;
+    private final long[] allSignatures;
+    private final int words;
+    private final boolean bufferMatchingRequired;
+
+    public ProtocolDetector(List<? extends Protocol> protocols) {
+        this.protocols = protocols.toArray(new Protocol[protocols.size()]);
+
+        List<ProtocolSignature> signatures = new ArrayList<ProtocolSignature>();
+        List<Integer> owners = new ArrayList<Integer>();
+        boolean opaque = false;
+        int maxLength = 0;
+        for (int i = 0; i < this.protocols.length; i++) {
+            Protocol protocol = this.protocols[i];
+            if (protocol instanceof DetectableProtocol) {
+                for (ProtocolSignature signature : ((DetectableProtocol) protocol).getSignatures()) {
+                    if (signature.length() == 0) {
+                        throw new IllegalArgumentException("Protocol " + protocol.getProtocolName() + " has an empty signature");
+                    }
+                    signatures.add(signature);
+                    owners.add(i);
+                    maxLength = Math.max(maxLength, signature.length());
+                }
+            } else {
+                opaque = true;
+            }
+        }
+        this.bufferMatchingRequired = opaque;
+        this.words = Math.max(1, (signatures.size() + 63) / 64);
+        this.allSignatures = new long[words];
+        this.protocolSignatures = new long[this.protocols.length][];
+        for (int i = 0; i < this.protocols.length; i++) {
+            if (this.protocols[i] instanceof DetectableProtocol) {
+                protocolSignatures[i] = new long[words];
+            }
+        }
+        this.transitions = new long[maxLength][256][words];
+        this.completions = new long[maxLength][words];
+
+        for (int s = 0; s < signatures.size(); s++) {
+            ProtocolSignature signature = signatures.get(s);
+            int word = s / 64;
+            long bit = 1L << (s % 64);
+            allSignatures[word] |= bit;
+            protocolSignatures[owners.get(s)][word] |= bit;
+            completions[signature.length() - 1][word] |= bit;
+            for (int position = 0; position < maxLength; position++) {
+                for (int value = 0; value < 256; value++) {
+                    if (position >= signature.length() || signature.matches(position, (byte) value)) {
+                        transitions[position][value][word] |= bit;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Starts detecting the protocol of a new connection
+     */
+    public Detection newDetection() {
+        return new Detection();
+    }
+
+    /**
+     * The detection state of a single connection
+     */
+    public class Detection {
+        private final long[] live = allSignatures.clone();
+        private final long[] matched = new long[words];
+        private int position;
+
+        /**
+         * Returns the protocol matching the bytes received so far or null if no protocol matches yet.
+         * The buffer should contain all the bytes received on the connection; only the bytes which were not
+         * seen by previous calls are scanned.
+         */
+        public Protocol detect(Buffer received) {
+            int length = Math.min(received.length(), transitions.length);
+            for (; position < length; position++) {
+                long[] transition = transitions[position][received.getByte(position) & 0xFF];
+                long[] completion = completions[position];
+                long remaining = 0;
+                for (int w = 0; w < words; w++) {
+                    live[w] &= transition[w];
+                    matched[w] |= live[w] & completion[w];
+                    remaining |= live[w];
+                }
+                if (remaining == 0) {
+                    position = length;
+                    break;
+                }
+            }
+            for (int i = 0; i < protocols.length; i++) {
+                long[] signatures = protocolSignatures[i];
+                if (signatures == null) {
+                    if (protocols[i].matches(received)) {
+                        return protocols[i];
+                    }
+                } else {
+                    for (int w = 0; w < words; w++) {
+                        if ((matched[w] & signatures[w]) != 0) {
+                            return protocols[i];
+                        }
+                    }
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Returns true if no protocol can match the connection no matter what bytes are received next
+         */
+        public boolean isRejected() {
+            if (bufferMatchingRequired) {
+                return false;
+            }
+            for (int w = 0; w < words; w++) {
+                if ((live[w] & ~matched[w]) != 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.detecting;
+
+import org.vertx.java.core.buffer.Buffer;
+
+import java.util.Arrays;
+
+/**
+ * Describes the bytes a client sends at the start of a connection for a protocol, as a sequence of
+ * byte positions which each match when <code>(byte &amp; mask) == value</code>.
+ * <p/>
+ * For example the AMQP signature is <code>signature().bytes(PROTOCOL_MAGIC)</code> and the OpenWire one is
+ * <code>signature().any(5).bytes(MAGIC)</code> as its magic follows the frame size and type.
+ */
+public class ProtocolSignature {
+
+    private byte[] values = new byte[0];
+    private byte[] masks = new byte[0];
+
+    public static ProtocolSignature signature() {
+        return new ProtocolSignature();
+    }
+
+    /**
+     * Matches the exact bytes of the buffer
+     */
+    public ProtocolSignature bytes(Buffer buffer) {
+        for (int i = 0; i < buffer.length(); i++) {
+            masked(buffer.getByte(i), 0xFF);
+        }
+        return this;
+    }
+
+    /**
+     * Matches the exact byte value
+     */
+    public ProtocolSignature bytes(int... values) {
+        for (int value : values) {
+            masked(value, 0xFF);
+        }
+        return this;
+    }
+
+    /**
+     * Matches any value for the given number of bytes
+     */
+    public ProtocolSignature any(int count) {
+        for (int i = 0; i < count; i++) {
+            masked(0, 0);
+        }
+        return this;
+    }
+
+    /**
+     * Matches a byte when only the bits of the mask are compared with the value
+     */
+    public ProtocolSignature masked(int value, int mask) {
+        int length = values.length;
+        values = Arrays.copyOf(values, length + 1);
+        masks = Arrays.copyOf(masks, length + 1);
+        values[length] = (byte) (value & mask);
+        masks[length] = (byte) mask;
+        return this;
+    }
+
+    public int length() {
+        return values.length;
+    }
+
+    public boolean matches(int position, byte value) {
+        return (value & masks[position]) == values[position];
+    }
+
+    /**
+     * Returns true if the buffer starts with this signature
+     */
+    public boolean matches(Buffer buffer) {
+        if (buffer.length() < values.length) {
+            return false;
+        }
+        for (int i = 0; i < values.length; i++) {
+            if (!matches(i, buffer.getByte(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("ProtocolSignature{");
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                builder.append(' ');
+            }
+            if (masks[i] == 0) {
+                builder.append("??");
+            } else {
+                builder.append(String.format("%02x", values[i] & 0xFF));
+                if (masks[i] != (byte) 0xFF) {
+                    builder.append('/').append(String.format("%02x", masks[i] & 0xFF));
+                }
+            }
+        }
+        return builder.append('}').toString();
+    }
+}
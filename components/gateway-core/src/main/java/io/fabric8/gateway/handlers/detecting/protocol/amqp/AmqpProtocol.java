@@ -16,7 +16,8 @@
 package io.fabric8.gateway.handlers.detecting.protocol.amqp;
 
 import io.fabric8.gateway.SocketWrapper;
-import io.fabric8.gateway.handlers.detecting.Protocol;
+import io.fabric8.gateway.handlers.detecting.DetectableProtocol;
+import io.fabric8.gateway.handlers.detecting.ProtocolSignature;
 import io.fabric8.gateway.handlers.loadbalancer.ConnectionParameters;
 import org.apache.qpid.proton.engine.*;
 import org.apache.qpid.proton.engine.impl.EngineFactoryImpl;
@@ -27,15 +28,19 @@ import org.vertx.java.core.buffer.Buffer;
 import org.vertx.java.core.net.NetSocket;
 
 import java.lang.reflect.Field;
+import java.util.Collections;
+import java.util.List;
 
+import static io.fabric8.gateway.handlers.detecting.ProtocolSignature.signature;
 import static io.fabric8.gateway.handlers.detecting.protocol.BufferSupport.*;
 
 /**
  */
-public class AmqpProtocol implements Protocol {
+public class AmqpProtocol implements DetectableProtocol {
     private static final transient Logger LOG = LoggerFactory.getLogger(AmqpProtocol.class);
 
     static final Buffer PROTOCOL_MAGIC = new Buffer(new byte []{ 'A', 'M', 'Q', 'P' });
+    private static final List<ProtocolSignature> SIGNATURES = Collections.singletonList(signature().bytes(PROTOCOL_MAGIC));
     int maxFrameSize = 1024*1024*100;
 
     @Override
@@ -63,6 +68,11 @@ public class AmqpProtocol implements Protocol {
       }
     }
 
+    @Override
+    public List<ProtocolSignature> getSignatures() {
+        return SIGNATURES;
+    }
+
     @Override
     public void snoopConnectionParameters(final SocketWrapper socket, final Buffer received, final Handler<ConnectionParameters> handler) {
 
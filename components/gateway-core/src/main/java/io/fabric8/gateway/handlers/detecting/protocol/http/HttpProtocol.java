@@ -15,7 +15,8 @@
  */
 package io.fabric8.gateway.handlers.detecting.protocol.http;
 
-import io.fabric8.gateway.handlers.detecting.Protocol;
+import io.fabric8.gateway.handlers.detecting.DetectableProtocol;
+import io.fabric8.gateway.handlers.detecting.ProtocolSignature;
 import io.fabric8.gateway.SocketWrapper;
 import io.fabric8.gateway.handlers.detecting.protocol.Ascii;
 import io.fabric8.gateway.handlers.loadbalancer.ConnectionParameters;
@@ -24,12 +25,16 @@ import org.slf4j.LoggerFactory;
 import org.vertx.java.core.Handler;
 import org.vertx.java.core.buffer.Buffer;
 
+import java.util.Arrays;
+import java.util.List;
+
+import static io.fabric8.gateway.handlers.detecting.ProtocolSignature.signature;
 import static io.fabric8.gateway.handlers.detecting.protocol.Ascii.ascii;
 import static io.fabric8.gateway.handlers.detecting.protocol.BufferSupport.startsWith;
 
 /**
  */
-public class HttpProtocol implements Protocol {
+public class HttpProtocol implements DetectableProtocol {
     private static final transient Logger LOG = LoggerFactory.getLogger(HttpProtocol.class);
 
     final Ascii CONNECT = ascii("CONNECT ");
@@ -41,6 +46,17 @@ public class HttpProtocol implements Protocol {
     final Ascii HEAD = ascii("HEAD ");
     final Ascii TRACE = ascii("TRACE ");
 
+    private final List<ProtocolSignature> signatures = Arrays.asList(
+        signature().bytes(GET.toBuffer()),
+        signature().bytes(HEAD.toBuffer()),
+        signature().bytes(POST.toBuffer()),
+        signature().bytes(PUT.toBuffer()),
+        signature().bytes(DELETE.toBuffer()),
+        signature().bytes(OPTIONS.toBuffer()),
+        signature().bytes(TRACE.toBuffer()),
+        signature().bytes(CONNECT.toBuffer())
+    );
+
     @Override
     public String getProtocolName() {
         return "http";
@@ -71,6 +87,11 @@ public class HttpProtocol implements Protocol {
             startsWith(header, 0, CONNECT.toBuffer());
     }
 
+    @Override
+    public List<ProtocolSignature> getSignatures() {
+        return signatures;
+    }
+
     @Override
     public void snoopConnectionParameters(final SocketWrapper socket, Buffer received, final Handler<ConnectionParameters> handler) {
         handler.handle(new ConnectionParameters());
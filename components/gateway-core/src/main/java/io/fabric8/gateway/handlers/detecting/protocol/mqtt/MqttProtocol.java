@@ -16,7 +16,8 @@
 package io.fabric8.gateway.handlers.detecting.protocol.mqtt;
 
 import io.fabric8.gateway.SocketWrapper;
-import io.fabric8.gateway.handlers.detecting.Protocol;
+import io.fabric8.gateway.handlers.detecting.DetectableProtocol;
+import io.fabric8.gateway.handlers.detecting.ProtocolSignature;
 import io.fabric8.gateway.handlers.detecting.protocol.BufferSupport;
 import io.fabric8.gateway.handlers.loadbalancer.ConnectionParameters;
 import org.fusesource.hawtbuf.UTF8Buffer;
@@ -27,15 +28,38 @@ import org.slf4j.LoggerFactory;
 import org.vertx.java.core.Handler;
 import org.vertx.java.core.buffer.Buffer;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static io.fabric8.gateway.handlers.detecting.ProtocolSignature.signature;
+
 /**
  * Implements protocol decoding for the MQTT protocol.
  */
-public class MqttProtocol implements Protocol {
+public class MqttProtocol implements DetectableProtocol {
     private static final transient Logger LOG = LoggerFactory.getLogger(MqttProtocol.class);
 
     static final Buffer HEAD_MAGIC = new Buffer(new byte []{ 0x10 });
     static final Buffer MQTT31_TAIL_MAGIC = new Buffer(new byte []{ 0x00, 0x06, 'M', 'Q', 'I', 's', 'd', 'p'});
     static final Buffer MQTT311_TAIL_MAGIC = new Buffer(new byte []{ 0x00, 0x04, 'M', 'Q', 'T', 'T'});
+    static final List<ProtocolSignature> SIGNATURES;
+
+    static {
+        // the CONNECT header is followed by the 1-4 byte variable length encoded remaining length
+        // and then the protocol name
+        List<ProtocolSignature> signatures = new ArrayList<ProtocolSignature>();
+        for (Buffer tail : new Buffer[]{ MQTT31_TAIL_MAGIC, MQTT311_TAIL_MAGIC }) {
+            for (int lengthBytes = 1; lengthBytes <= 4; lengthBytes++) {
+                ProtocolSignature signature = signature().bytes(HEAD_MAGIC);
+                for (int i = 1; i < lengthBytes; i++) {
+                    signature.masked(0x80, 0x80);
+                }
+                signatures.add(signature.masked(0x00, 0x80).bytes(tail));
+            }
+        }
+        SIGNATURES = Collections.unmodifiableList(signatures);
+    }
 
     int maxMessageLength = 1024*1024*100;
 
@@ -58,15 +82,17 @@ public class MqttProtocol implements Protocol {
 
     @Override
     public boolean matches(Buffer header) {
-        if (header.length() < 10) {
-          return false;
-        } else {
-          return BufferSupport.startsWith(header, HEAD_MAGIC) && (
-              BufferSupport.indexOf(header, 2, MQTT31_TAIL_MAGIC)< 6
-              ||
-              BufferSupport.indexOf(header, 2, MQTT311_TAIL_MAGIC) < 6
-          );
+        for (ProtocolSignature signature : SIGNATURES) {
+            if (signature.matches(header)) {
+                return true;
+            }
         }
+        return false;
+    }
+
+    @Override
+    public List<ProtocolSignature> getSignatures() {
+        return SIGNATURES;
     }
 
     static void append(Buffer self, MQTTFrame value) {
@@ -0,0 +1,227 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.detecting.protocol.openwire;
+
+import io.fabric8.gateway.handlers.detecting.protocol.openwire.command.WireFormatInfo;
+import io.fabric8.gateway.handlers.detecting.protocol.openwire.support.MarshallingSupport;
+import org.vertx.java.core.buffer.Buffer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * A view of a size prefixed OpenWire frame which decodes the fields it is asked for straight from the
+ * received bytes rather than unmarshalling the whole command.
+ * <p/>
+ * The gateway only routes on the loosely encoded {@link WireFormatInfo} a client opens the connection with,
+ * and only needs a property or two of it, so the marshalled properties are scanned in place and only the
+ * value which is asked for is decoded.
+ */
+public class OpenwireFrame {
+
+    // the size prefix and data type are followed by the magic, the version and the marshalled properties
+    private static final int DATA_TYPE_OFFSET = 4;
+    private static final int MAGIC_OFFSET = DATA_TYPE_OFFSET + 1;
+    private static final int VERSION_OFFSET = MAGIC_OFFSET + 8;
+    private static final int PROPERTIES_OFFSET = VERSION_OFFSET + 4;
+    // how deeply maps and lists may be nested in the properties, the decoding recurses into each of them
+    private static final int MAX_NESTING = 16;
+
+    private final Buffer frame;
+
+    public OpenwireFrame(Buffer frame) {
+        this.frame = frame;
+    }
+
+    @Override
+    public String toString() {
+        return "OpenwireFrame{" +
+                "dataType=" + getDataType() +
+                ", length=" + frame.length() +
+                '}';
+    }
+
+    public Buffer getBuffer() {
+        return frame;
+    }
+
+    public byte getDataType() {
+        return frame.getByte(DATA_TYPE_OFFSET);
+    }
+
+    public boolean isWireFormatInfo() {
+        return frame.length() > PROPERTIES_OFFSET && getDataType() == WireFormatInfo.DATA_STRUCTURE_TYPE;
+    }
+
+    /**
+     * Returns the version of the protocol the client asked for in its {@link WireFormatInfo}
+     */
+    public int getVersion() throws IOException {
+        checkWireFormatInfo();
+        return frame.getInt(VERSION_OFFSET);
+    }
+
+    /**
+     * Returns the virtual host the client asked for, or null if the client did not send it
+     */
+    public String getHost() throws IOException {
+        Object host = getProperty("Host");
+        if (host != null && !(host instanceof String)) {
+            throw new IOException("The Host property is not a string: " + host.getClass().getName());
+        }
+        return (String) host;
+    }
+
+    /**
+     * Returns the value of a {@link WireFormatInfo} property, or null if the client did not send it
+     */
+    public Object getProperty(String name) throws IOException {
+        checkWireFormatInfo();
+        int pos = PROPERTIES_OFFSET;
+        if (frame.getByte(pos++) == 0) {
+            return null;
+        }
+        int size = getInt(pos, frame.length());
+        pos += 4;
+        int end = skip(pos, size, frame.length());
+        int count = getInt(pos, end);
+        pos += 4;
+        byte[] wanted = utf(name);
+        for (int i = 0; i < count; i++) {
+            int nameLength = unsignedShort(pos, end);
+            pos = skip(pos + 2, nameLength, end);
+            // the value is checked before it is decoded, which does not limit the nesting
+            int valueEnd = skipPrimitive(pos, end, 0);
+            if (nameLength == wanted.length && regionMatches(pos - nameLength, wanted)) {
+                return MarshallingSupport.unmarshalPrimitive(new DataInputStream(new ByteArrayInputStream(frame.getBytes(pos, valueEnd))));
+            }
+            pos = valueEnd;
+        }
+        return null;
+    }
+
+    private void checkWireFormatInfo() throws IOException {
+        if (!isWireFormatInfo()) {
+            throw new IOException("Not a WireFormatInfo frame: " + this);
+        }
+    }
+
+    /**
+     * Returns the position following the primitive value marshalled at the given position, which must not
+     * extend past the given end of the properties nor nest maps and lists more than {@link #MAX_NESTING} deep
+     */
+    private int skipPrimitive(int pos, int end, int depth) throws IOException {
+        byte type = getByte(pos, end);
+        pos++;
+        switch (type) {
+            case MarshallingSupport.NULL:
+                return pos;
+            case MarshallingSupport.BOOLEAN_TYPE:
+            case MarshallingSupport.BYTE_TYPE:
+                return skip(pos, 1, end);
+            case MarshallingSupport.CHAR_TYPE:
+            case MarshallingSupport.SHORT_TYPE:
+                return skip(pos, 2, end);
+            case MarshallingSupport.INTEGER_TYPE:
+            case MarshallingSupport.FLOAT_TYPE:
+                return skip(pos, 4, end);
+            case MarshallingSupport.LONG_TYPE:
+            case MarshallingSupport.DOUBLE_TYPE:
+                return skip(pos, 8, end);
+            case MarshallingSupport.STRING_TYPE:
+                return skip(pos + 2, unsignedShort(pos, end), end);
+            case MarshallingSupport.BYTE_ARRAY_TYPE:
+            case MarshallingSupport.BIG_STRING_TYPE:
+                return skip(pos + 4, getInt(pos, end), end);
+            case MarshallingSupport.MAP_TYPE: {
+                checkNesting(depth);
+                int count = getInt(pos, end);
+                pos += 4;
+                for (int i = 0; i < count; i++) {
+                    pos = skip(pos + 2, unsignedShort(pos, end), end);
+                    pos = skipPrimitive(pos, end, depth + 1);
+                }
+                return pos;
+            }
+            case MarshallingSupport.LIST_TYPE: {
+                checkNesting(depth);
+                int count = getInt(pos, end);
+                pos += 4;
+                for (int i = 0; i < count; i++) {
+                    pos = skipPrimitive(pos, end, depth + 1);
+                }
+                return pos;
+            }
+            default:
+                throw new IOException("Unknown primitive type: " + type);
+        }
+    }
+
+    private static void checkNesting(int depth) throws IOException {
+        if (depth >= MAX_NESTING) {
+            throw new IOException("The WireFormatInfo properties nest more than " + MAX_NESTING + " maps or lists");
+        }
+    }
+
+    /**
+     * Returns the position following the given number of bytes, checking they do not extend past the end
+     */
+    private static int skip(int pos, int length, int end) throws IOException {
+        if (length < 0 || pos > end || length > end - pos) {
+            throw new IOException("The WireFormatInfo properties are truncated");
+        }
+        return pos + length;
+    }
+
+    private byte getByte(int pos, int end) throws IOException {
+        skip(pos, 1, end);
+        return frame.getByte(pos);
+    }
+
+    private int unsignedShort(int pos, int end) throws IOException {
+        skip(pos, 2, end);
+        return frame.getShort(pos) & 0xFFFF;
+    }
+
+    private int getInt(int pos, int end) throws IOException {
+        skip(pos, 4, end);
+        return frame.getInt(pos);
+    }
+
+    private boolean regionMatches(int pos, byte[] bytes) {
+        for (int i = 0; i < bytes.length; i++) {
+            if (frame.getByte(pos + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Encodes the name the same way as the property names are marshalled
+     */
+    private static byte[] utf(String name) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(name.length() + 2);
+        new DataOutputStream(bytes).writeUTF(name);
+        byte[] encoded = bytes.toByteArray();
+        byte[] answer = new byte[encoded.length - 2];
+        System.arraycopy(encoded, 2, answer, 0, answer.length);
+        return answer;
+    }
+}
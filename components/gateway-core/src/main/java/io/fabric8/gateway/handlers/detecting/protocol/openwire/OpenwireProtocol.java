@@ -15,9 +15,8 @@
  */
 package io.fabric8.gateway.handlers.detecting.protocol.openwire;
 
-import io.fabric8.gateway.handlers.detecting.Protocol;
-import io.fabric8.gateway.handlers.detecting.protocol.openwire.command.Command;
-import io.fabric8.gateway.handlers.detecting.protocol.openwire.command.WireFormatInfo;
+import io.fabric8.gateway.handlers.detecting.DetectableProtocol;
+import io.fabric8.gateway.handlers.detecting.ProtocolSignature;
 import io.fabric8.gateway.handlers.loadbalancer.ConnectionParameters;
 import io.fabric8.gateway.SocketWrapper;
 import org.slf4j.Logger;
@@ -26,16 +25,22 @@ import org.vertx.java.core.Handler;
 import org.vertx.java.core.buffer.Buffer;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
 
+import static io.fabric8.gateway.handlers.detecting.ProtocolSignature.signature;
 import static io.fabric8.gateway.handlers.detecting.protocol.BufferSupport.indexOf;
 
 /**
  */
-public class OpenwireProtocol implements Protocol {
+public class OpenwireProtocol implements DetectableProtocol {
     private static final transient Logger LOG = LoggerFactory.getLogger(OpenwireProtocol.class);
 
     public static Buffer MAGIC = new Buffer(new byte[]{'A', 'c', 't', 'i', 'v', 'e', 'M', 'Q'});
 
+    // the magic follows the 4 byte frame size and the WireFormatInfo data type
+    private static final List<ProtocolSignature> SIGNATURES = Collections.singletonList(signature().any(5).bytes(MAGIC));
+
     public int maxFrameSize = 1024 * 1024 * 100;
 
     @Override
@@ -60,6 +65,11 @@ public class OpenwireProtocol implements Protocol {
         return buffer.length() >= 4 + MAGIC.length() && indexOf(buffer, 5, MAGIC) >= 0;
     }
 
+    @Override
+    public List<ProtocolSignature> getSignatures() {
+        return SIGNATURES;
+    }
+
     @Override
     public void snoopConnectionParameters(final SocketWrapper socket, Buffer received, final Handler<ConnectionParameters> handler) {
 
@@ -71,16 +81,15 @@ public class OpenwireProtocol implements Protocol {
                 socket.close();
             }
         });
-        h.codecHandler(new Handler<Command>() {
+        h.codecHandler(new Handler<OpenwireFrame>() {
             @Override
-            public void handle(Command event) {
-                if( event instanceof WireFormatInfo){
-                    WireFormatInfo info = (WireFormatInfo) event;
+            public void handle(OpenwireFrame frame) {
+                if( frame.isWireFormatInfo() ){
                     ConnectionParameters parameters = new ConnectionParameters();
                     try {
-                        parameters.protocolVirtualHost = info.getHost();
+                        parameters.protocolVirtualHost = frame.getHost();
                     } catch (IOException e) {
-                        e.printStackTrace();
+                        LOG.info("Could not decode the Openwire WireFormatInfo properties: " + e);
                     }
                     handler.handle(parameters);
                 } else {
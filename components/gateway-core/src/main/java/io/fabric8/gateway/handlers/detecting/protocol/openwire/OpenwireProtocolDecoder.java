@@ -16,8 +16,6 @@
 package io.fabric8.gateway.handlers.detecting.protocol.openwire;
 
 import io.fabric8.gateway.handlers.detecting.protocol.ProtocolDecoder;
-import io.fabric8.gateway.handlers.detecting.protocol.openwire.codec.OpenWireFormat;
-import io.fabric8.gateway.handlers.detecting.protocol.openwire.command.Command;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.vertx.java.core.buffer.Buffer;
@@ -27,13 +25,14 @@ import java.net.ProtocolException;
 
 /**
  * Implements protocol decoding for the Openwire protocol.
+ * <p/>
+ * The frames are only split out of the stream; they are handed on as {@link OpenwireFrame} views which
+ * decode the fields that are needed on demand, rather than being unmarshalled into commands.
  */
-class OpenwireProtocolDecoder extends ProtocolDecoder<Command> {
+class OpenwireProtocolDecoder extends ProtocolDecoder<OpenwireFrame> {
 
     private static final transient Logger LOG = LoggerFactory.getLogger(OpenwireProtocolDecoder.class);
 
-    OpenWireFormat format = new OpenWireFormat(1);
-
     private final OpenwireProtocol protocol;
     public boolean trim = false;
 
@@ -42,12 +41,12 @@ class OpenwireProtocolDecoder extends ProtocolDecoder<Command> {
     }
 
     @Override
-    protected Action<Command> initialDecodeAction() {
+    protected Action<OpenwireFrame> initialDecodeAction() {
         return read_action;
     }
 
-    final Action<Command> read_action = new Action<Command>() {
-        public Command apply() throws IOException {
+    final Action<OpenwireFrame> read_action = new Action<OpenwireFrame>() {
+        public OpenwireFrame apply() throws IOException {
             Buffer header = peekBytes(4);
             if( header==null ) {
               return null;
@@ -56,17 +55,14 @@ class OpenwireProtocolDecoder extends ProtocolDecoder<Command> {
               if( length > protocol.maxFrameSize ) {
                   throw new ProtocolException("Max frame size exceeded.");
               }
-              nextDecodeAction = new Action<Command>() {
-                public Command apply() throws IOException {
+              nextDecodeAction = new Action<OpenwireFrame>() {
+                public OpenwireFrame apply() throws IOException {
                   Buffer frame = readBytes(4+length) ;
                   if( frame==null ) {
                     return null;
                   } else {
-                    // TODO: avoid this conversion.
-                    org.fusesource.hawtbuf.Buffer buffer = new org.fusesource.hawtbuf.Buffer(frame.getBytes());
-                    Command command = (Command) format.unmarshal(buffer);
                     nextDecodeAction = read_action;
-                    return command;
+                    return new OpenwireFrame(frame);
                   }
                 }
               };
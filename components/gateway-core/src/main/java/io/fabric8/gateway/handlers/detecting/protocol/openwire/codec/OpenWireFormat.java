@@ -31,10 +31,12 @@ import java.nio.channels.ReadableByteChannel;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
- * 
+ * Marshals and unmarshals OpenWire commands.
+ * <p/>
+ * A format holds the negotiated settings and value caches of a single connection so it is not thread safe;
+ * create one per connection. The value caches are only allocated once caching is enabled.
  */
 public final class OpenWireFormat {
 
@@ -58,13 +60,13 @@ public final class OpenWireFormat {
     // The following fields are used for value caching
     private short nextMarshallCacheIndex;
     private short nextMarshallCacheEvictionIndex;
-    private Map<DataStructure, Short> marshallCacheMap = new HashMap<DataStructure, Short>();
-    private DataStructure marshallCache[] = new DataStructure[MARSHAL_CACHE_SIZE];
-    private DataStructure unmarshallCache[] = new DataStructure[MARSHAL_CACHE_SIZE];
+    private Map<DataStructure, Short> marshallCacheMap;
+    private DataStructure marshallCache[];
+    private DataStructure unmarshallCache[];
     private DataByteArrayOutputStream bytesOut = new DataByteArrayOutputStream();
     private DataByteArrayInputStream bytesIn = new DataByteArrayInputStream();
 
-    private AtomicBoolean receivingMessage = new AtomicBoolean(false);
+    private boolean receivingMessage;
 
     public OpenWireFormat() {
         this(DEFAULT_VERSION);
@@ -84,7 +86,7 @@ public final class OpenWireFormat {
         answer.version = version;
         answer.stackTraceEnabled = stackTraceEnabled;
         answer.tcpNoDelayEnabled = tcpNoDelayEnabled;
-        answer.cacheEnabled = cacheEnabled;
+        answer.setCacheEnabled(cacheEnabled);
         answer.tightEncodingEnabled = tightEncodingEnabled;
         answer.sizePrefixDisabled = sizePrefixDisabled;
         return answer;
@@ -114,7 +116,7 @@ public final class OpenWireFormat {
         return WIREFORMAT_NAME;
     }
 
-    public synchronized Buffer marshal(Object command) throws IOException {
+    public Buffer marshal(Object command) throws IOException {
 
         if (cacheEnabled) {
             runMarshallCacheEvictionSweep();
@@ -192,7 +194,7 @@ public final class OpenWireFormat {
         return sequence;
     }
 
-    public synchronized Object unmarshal(Buffer sequence) throws IOException {
+    public Object unmarshal(Buffer sequence) throws IOException {
         bytesIn.restart(sequence);
         // DataByteArrayInputStreamStream dis = new DataByteArrayInputStreamStream(new
         // ByteArrayInputStream(sequence));
@@ -219,7 +221,7 @@ public final class OpenWireFormat {
         return command;
     }
 
-    public synchronized void marshal(Object o, DataByteArrayOutputStream dataOut) throws IOException {
+    public void marshal(Object o, DataByteArrayOutputStream dataOut) throws IOException {
 
         if (cacheEnabled) {
             runMarshallCacheEvictionSweep();
@@ -366,7 +368,7 @@ public final class OpenWireFormat {
 
     public Object doUnmarshal(DataByteArrayInputStream dis) throws IOException {
         byte dataType = dis.readByte();
-        receivingMessage.set(true);
+        receivingMessage = true;
         if (dataType != NULL_TYPE) {
             DataStreamMarshaller dsm = (DataStreamMarshaller) dataMarshallers[dataType & 0xFF];
             if (dsm == null) {
@@ -380,10 +382,10 @@ public final class OpenWireFormat {
             } else {
                 dsm.looseUnmarshal(this, data, dis);
             }
-            receivingMessage.set(false);
+            receivingMessage = false;
             return data;
         } else {
-            receivingMessage.set(false);
+            receivingMessage = false;
             return null;
         }
     }
@@ -539,13 +541,13 @@ public final class OpenWireFormat {
         // We can only cache that item if there is space left.
         if (marshallCacheMap.size() < marshallCache.length) {
             marshallCache[i] = o;
-            Short index = new Short(i);
+            Short index = Short.valueOf(i);
             marshallCacheMap.put(o, index);
             return index;
         } else {
             // Use -1 to indicate that the value was not cached due to cache
             // being full.
-            return new Short((short) -1);
+            return Short.valueOf((short) -1);
         }
     }
 
@@ -586,6 +588,17 @@ public final class OpenWireFormat {
 
     public void setCacheEnabled(boolean cacheEnabled) {
         this.cacheEnabled = cacheEnabled;
+        if (cacheEnabled && marshallCacheMap == null) {
+            createCaches(MARSHAL_CACHE_SIZE);
+        }
+    }
+
+    private void createCaches(int size) {
+        marshallCache = new DataStructure[size];
+        unmarshallCache = new DataStructure[size];
+        nextMarshallCacheIndex = 0;
+        nextMarshallCacheEvictionIndex = 0;
+        marshallCacheMap = new HashMap<DataStructure, Short>();
     }
 
     public boolean isTightEncodingEnabled() {
@@ -648,11 +661,7 @@ public final class OpenWireFormat {
                 size = MARSHAL_CACHE_SIZE;
             }
 
-            marshallCache = new DataStructure[size];
-            unmarshallCache = new DataStructure[size];
-            nextMarshallCacheIndex = 0;
-            nextMarshallCacheEvictionIndex = 0;
-            marshallCacheMap = new HashMap<DataStructure, Short>();
+            createCaches(size);
         } else {
             marshallCache = null;
             unmarshallCache = null;
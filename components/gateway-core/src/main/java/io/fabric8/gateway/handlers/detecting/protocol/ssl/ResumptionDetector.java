@@ -0,0 +1,129 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.detecting.protocol.ssl;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Tells whether a handshake resumed a session from the plain text hello messages of the handshake, which the
+ * connection sees going through its engine in both directions.
+ * <p/>
+ * A TLS 1.3 server accepts a resumption by including the pre_shared_key extension in its Server Hello. An
+ * earlier TLS server accepts one by echoing the session id offered in the Client Hello, which clients
+ * resuming from a session ticket also fill in. Unlike the session creation time this does not depend on the
+ * resolution of the clock.
+ */
+class ResumptionDetector {
+
+    private static final int HANDSHAKE_RECORD = 22;
+    private static final int CLIENT_HELLO = 1;
+    private static final int SERVER_HELLO = 2;
+    private static final int SUPPORTED_VERSIONS_EXTENSION = 43;
+    private static final int PRE_SHARED_KEY_EXTENSION = 41;
+    // a Server Hello with this random is a Hello Retry Request, and the real Server Hello is still to come
+    private static final byte[] HELLO_RETRY_REQUEST_RANDOM = {
+        (byte) 0xCF, 0x21, (byte) 0xAD, 0x74, (byte) 0xE5, (byte) 0x9A, 0x61, 0x11,
+        (byte) 0xBE, 0x1D, (byte) 0x8C, 0x02, 0x1E, 0x65, (byte) 0xB8, (byte) 0x91,
+        (byte) 0xC2, (byte) 0xA2, 0x11, 0x16, 0x7A, (byte) 0xBB, (byte) 0x8C, 0x5E,
+        0x07, (byte) 0x9E, 0x09, (byte) 0xE2, (byte) 0xC8, (byte) 0xA8, 0x33, (byte) 0x9C
+    };
+
+    private byte[] offeredSessionId;
+    private boolean done;
+    private boolean resumed;
+
+    /**
+     * Looks at the records held between the given positions of the buffer, which are either the records an
+     * unwrap consumed or the records a wrap produced
+     */
+    void inspect(ByteBuffer records, int start, int end) {
+        int position = start;
+        while( !done && position + 9 <= end ) {
+            // type (1), version (2) and length (2) of the record, then the type and length (3) of its first message
+            int length = ((records.get(position + 3) & 0xFF) << 8) | (records.get(position + 4) & 0xFF);
+            if( records.get(position) == HANDSHAKE_RECORD && position + 5 + length <= end ) {
+                inspectHandshake(records, position + 5, position + 5 + length);
+            }
+            position += 5 + length;
+        }
+    }
+
+    /**
+     * Returns true if the Server Hello showed the session was resumed; false if it showed a full handshake or
+     * could not be found
+     */
+    boolean isResumed() {
+        return resumed;
+    }
+
+    private void inspectHandshake(ByteBuffer records, int position, int recordEnd) {
+        int type = records.get(position);
+        // the record may hold more messages after this one
+        int length = ((records.get(position + 1) & 0xFF) << 16) | ((records.get(position + 2) & 0xFF) << 8) | (records.get(position + 3) & 0xFF);
+        int end = Math.min(recordEnd, position + 4 + length);
+        // message type (1), length (3), version (2) and random (32) come before the session id
+        int sessionIdAt = position + 38;
+        if( sessionIdAt >= end || (type != CLIENT_HELLO && type != SERVER_HELLO) ) {
+            return;
+        }
+        int sessionIdLength = records.get(sessionIdAt) & 0xFF;
+        if( sessionIdAt + 1 + sessionIdLength > end ) {
+            return;
+        }
+        byte[] sessionId = new byte[sessionIdLength];
+        for (int i = 0; i < sessionIdLength; i++) {
+            sessionId[i] = records.get(sessionIdAt + 1 + i);
+        }
+        if( type == CLIENT_HELLO ) {
+            offeredSessionId = sessionId;
+        } else if( !isHelloRetryRequest(records, position + 6) ) {
+            done = true;
+            // cipher suite (2) and compression method (1) come before the extensions
+            int extensionsAt = sessionIdAt + 1 + sessionIdLength + 3;
+            boolean tls13 = hasExtension(records, extensionsAt, end, SUPPORTED_VERSIONS_EXTENSION);
+            if( tls13 ) {
+                resumed = hasExtension(records, extensionsAt, end, PRE_SHARED_KEY_EXTENSION);
+            } else {
+                resumed = sessionIdLength > 0 && Arrays.equals(sessionId, offeredSessionId);
+            }
+        }
+    }
+
+    private static boolean isHelloRetryRequest(ByteBuffer records, int randomAt) {
+        for (int i = 0; i < HELLO_RETRY_REQUEST_RANDOM.length; i++) {
+            if( records.get(randomAt + i) != HELLO_RETRY_REQUEST_RANDOM[i] ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean hasExtension(ByteBuffer records, int extensionsAt, int end, int extension) {
+        // the extensions are preceded by their total length (2)
+        int position = extensionsAt + 2;
+        while( position + 4 <= end ) {
+            int type = ((records.get(position) & 0xFF) << 8) | (records.get(position + 1) & 0xFF);
+            if( type == extension ) {
+                return true;
+            }
+            int length = ((records.get(position + 2) & 0xFF) << 8) | (records.get(position + 3) & 0xFF);
+            position += 4 + length;
+        }
+        return false;
+    }
+
+}
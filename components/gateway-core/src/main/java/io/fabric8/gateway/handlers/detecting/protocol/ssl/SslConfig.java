@@ -32,6 +32,9 @@ import java.security.cert.X509Certificate;
  */
 public class SslConfig {
 
+    public static final int DEFAULT_SESSION_CACHE_SIZE = 20 * 1024;
+    public static final int DEFAULT_SESSION_TIMEOUT = 24 * 60 * 60;
+
     private URL keyStoreURL;
     private String keyStorePassword;
     private KeyStore keyStore;
@@ -53,6 +56,9 @@ public class SslConfig {
     String disabledCypherSuites;
     String enabledCipherSuites;
 
+    int sessionCacheSize = DEFAULT_SESSION_CACHE_SIZE;
+    int sessionTimeout = DEFAULT_SESSION_TIMEOUT;
+
     public SslConfig() {
     }
 
@@ -167,6 +173,21 @@ public class SslConfig {
       return keyManagers;
     }
 
+    /**
+     * Creates the context used to accept SSL connections, with its session cache sized so that reconnecting
+     * clients can resume their sessions rather than going through a full handshake.
+     */
+    public SSLContext createServerContext() throws GeneralSecurityException, IOException {
+        SSLContext context = SSLContext.getInstance(getProtocol());
+        context.init(getKeyManagers(), getTrustManagers(), null);
+        SSLSessionContext sessionContext = context.getServerSessionContext();
+        if( sessionContext != null ) {
+            sessionContext.setSessionCacheSize(sessionCacheSize);
+            sessionContext.setSessionTimeout(sessionTimeout);
+        }
+        return context;
+    }
+
     public String getProtocol() {
         return protocol;
     }
@@ -305,4 +326,26 @@ public class SslConfig {
         this.enabledCipherSuites = enabledCipherSuites;
     }
 
+    public int getSessionCacheSize() {
+        return sessionCacheSize;
+    }
+
+    /**
+     * Sets the maximum number of sessions kept for resumption; zero means no limit
+     */
+    public void setSessionCacheSize(int sessionCacheSize) {
+        this.sessionCacheSize = sessionCacheSize;
+    }
+
+    public int getSessionTimeout() {
+        return sessionTimeout;
+    }
+
+    /**
+     * Sets the number of seconds a session can be resumed for; zero means no limit
+     */
+    public void setSessionTimeout(int sessionTimeout) {
+        this.sessionTimeout = sessionTimeout;
+    }
+
 }
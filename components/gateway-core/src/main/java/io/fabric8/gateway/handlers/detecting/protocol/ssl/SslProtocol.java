@@ -16,21 +16,39 @@
 package io.fabric8.gateway.handlers.detecting.protocol.ssl;
 
 import io.fabric8.gateway.SocketWrapper;
-import io.fabric8.gateway.handlers.detecting.Protocol;
+import io.fabric8.gateway.handlers.detecting.DetectableProtocol;
+import io.fabric8.gateway.handlers.detecting.ProtocolSignature;
 import io.fabric8.gateway.handlers.loadbalancer.ConnectionParameters;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.vertx.java.core.Handler;
 import org.vertx.java.core.buffer.Buffer;
 
+import java.util.Arrays;
+import java.util.List;
+
+import static io.fabric8.gateway.handlers.detecting.ProtocolSignature.signature;
 import static io.fabric8.gateway.handlers.detecting.protocol.Ascii.ascii;
 import static io.fabric8.gateway.handlers.detecting.protocol.BufferSupport.startsWith;
 
 /**
  */
-public class SslProtocol implements Protocol {
+public class SslProtocol implements DetectableProtocol {
     private static final transient Logger LOG = LoggerFactory.getLogger(SslProtocol.class);
 
+    // the minor version of SSLv3 and the TLS versions is in the range 0-3
+    private static final int SSL_MINOR_VERSION = 0x00;
+    private static final int SSL_MINOR_VERSION_MASK = 0xFC;
+
+    private static final List<ProtocolSignature> SIGNATURES = Arrays.asList(
+        // handshake record holding a Client Hello
+        signature().bytes(0x16, 2).any(3).bytes(1),
+        signature().bytes(0x16, 3).masked(SSL_MINOR_VERSION, SSL_MINOR_VERSION_MASK).any(2).bytes(1),
+        // SSLv2 style record header where the rest of byte 0 and byte 1 hold the record length
+        signature().masked(0x80, 0xC0).any(1).bytes(1, 2).any(2),
+        signature().masked(0x80, 0xC0).any(1).bytes(1, 3).masked(SSL_MINOR_VERSION, SSL_MINOR_VERSION_MASK).any(1)
+    );
+
     @Override
     public String getProtocolName() {
         return "ssl";
@@ -75,6 +93,11 @@ public class SslProtocol implements Protocol {
         }
     }
 
+    @Override
+    public List<ProtocolSignature> getSignatures() {
+        return SIGNATURES;
+    }
+
     private boolean isSSLVerions(byte ver) {
         switch (ver) {  // Minor version
             case 0: // SSLv3
@@ -16,7 +16,9 @@
 package io.fabric8.gateway.handlers.detecting.protocol.ssl;
 
 import io.fabric8.gateway.SocketWrapper;
+import org.vertx.java.core.Context;
 import org.vertx.java.core.Handler;
+import org.vertx.java.core.Vertx;
 import org.vertx.java.core.buffer.Buffer;
 import org.vertx.java.core.streams.ReadStream;
 import org.vertx.java.core.streams.WriteStream;
@@ -28,10 +30,20 @@ import javax.net.ssl.SSLException;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.concurrent.Executor;
 
+import static javax.net.ssl.SSLEngineResult.HandshakeStatus.FINISHED;
 import static javax.net.ssl.SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING;
 
 /**
+ * Terminates TLS on a {@link SocketWrapper} using an {@link SSLEngine}.
+ * <p/>
+ * The buffers the engine wraps into and unwraps from are allocated once per connection and the received
+ * buffers are handed to the engine without copying them; the written buffers are copied once, as they are
+ * held on to and appended to until they have been encrypted. When a {@link Vertx} instance is configured
+ * the writes made during an event loop iteration are coalesced, so that small writes end up in full TLS
+ * records, and when an {@link Executor} is configured the engine's delegated handshake tasks (which
+ * include the expensive key exchange) are run on it rather than on the event loop.
  */
 public class SslSocketWrapper extends SocketWrapper implements ReadStream<SslSocketWrapper>, WriteStream<SslSocketWrapper> {
 
@@ -47,6 +59,21 @@ public class SslSocketWrapper extends SocketWrapper implements ReadStream<SslSoc
     private Handler<Throwable> plainExceptionHandler;
     private boolean failed = false;
 
+    private Vertx vertx;
+    private Executor taskExecutor;
+    private SslStatistics statistics;
+    private boolean tasksRunning;
+    private boolean handshakeCompleted;
+    private boolean handshakeStarted;
+    private long handshakeStart;
+    private ResumptionDetector resumptionDetector;
+
+    /**
+     * The buffers the engine unwraps into and wraps into; reused for the lifetime of the connection
+     */
+    private ByteBuffer unwrapOutput;
+    private ByteBuffer wrapOutput;
+
     //////////////////////////////////////////////////////////////////////////
     //
     // ReadStream<SslSocketWrapper> interface impl.
@@ -72,24 +99,30 @@ public class SslSocketWrapper extends SocketWrapper implements ReadStream<SslSoc
 
     }
     private void pumpReads(boolean allowHandshake) {
+        boolean handshakeFinished = false;
         boolean pump = true;
         while( pump ) {
             pump = false;
 
-            if( readPaused > 0 || failed ) {
-                return;
+            if( readPaused > 0 || failed || tasksRunning ) {
+                break;
             }
 
             if( encryptedReadBuffer!=null && plainReadBuffer==null && !encryptedReadBufferUnderflow ) {
-                ByteBuffer input = ByteBuffer.wrap(encryptedReadBuffer.getBytes());
-                ByteBuffer output = ByteBuffer.allocate(engine.getSession().getApplicationBufferSize());
+                startHandshakeTimer();
+                ByteBuffer input = encryptedReadBuffer.getByteBuf().nioBuffer();
+                int inputStart = input.position();
+                ByteBuffer output = getUnwrapOutput(false);
 
                 try {
                     boolean done = false;
                     while( !done ) {
                         done = true;
 
+                        int consumedFrom = input.position();
                         SSLEngineResult result = engine.unwrap(input, output);
+                        onResult(result, false, input, consumedFrom);
+                        handshakeFinished |= result.getHandshakeStatus() == FINISHED;
                         switch( result.getStatus() ) {
                             case CLOSED:
                                 engine.closeInbound();
@@ -107,7 +140,15 @@ public class SslSocketWrapper extends SocketWrapper implements ReadStream<SslSoc
                                 }
                                 break;
                             case BUFFER_OVERFLOW:
-                                throw new SSLException("BUFFER_OVERFLOW");
+                                if( output.position() > 0 ) {
+                                    // drain the output below and try again
+                                    done = false;
+                                } else {
+                                    // the session needs a larger application buffer
+                                    output = getUnwrapOutput(true);
+                                    done = false;
+                                    continue;
+                                }
                         }
 
                         // Lets fill the plain buffer..
@@ -130,9 +171,9 @@ public class SslSocketWrapper extends SocketWrapper implements ReadStream<SslSoc
                     int len = input.remaining();
                     if( len > 0 ) {
                         // we need to compact the encryptedReadBuffer
-                        if( input.position()!=0  ) {
-                            encryptedReadBuffer = new Buffer(len);
-                            encryptedReadBuffer.appendBytes(input.array(), input.arrayOffset()+ input.position(), len);
+                        if( input.position()!=inputStart  ) {
+                            int end = encryptedReadBuffer.length();
+                            encryptedReadBuffer = encryptedReadBuffer.getBuffer(end - len, end);
                         }
                     } else {
                         // everything was consumed.
@@ -167,6 +208,11 @@ public class SslSocketWrapper extends SocketWrapper implements ReadStream<SslSoc
                 return;
             }
         }
+
+        // when the peer sent the last handshake message the writes made during the handshake are still pending
+        if( handshakeFinished && allowHandshake && plainWriteBuffer!=null ) {
+            pumpWrites();
+        }
     }
 
     @Override
@@ -229,27 +275,58 @@ public class SslSocketWrapper extends SocketWrapper implements ReadStream<SslSoc
         return this;
     }
 
+    private int writeQueueMaxSize = 64 * 1024;
+    private boolean writeQueueReportedFull;
+    private boolean flushScheduled;
+    private boolean closeRequested;
+    private boolean closed;
+
     @Override
     public boolean writeQueueFull() {
-        return plainWriteBuffer != null;
+        boolean full = writeOverflow || (plainWriteBuffer != null && plainWriteBuffer.length() >= writeQueueMaxSize);
+        if( full ) {
+            writeQueueReportedFull = true;
+        }
+        return full;
     }
 
     @Override
     public SslSocketWrapper write(Buffer buffer) {
+        if( closeRequested ) {
+            return this;
+        }
         if( plainWriteBuffer==null ) {
-            plainWriteBuffer = buffer;
+            // the caller still owns the buffer so lets not append to it or hold on to it
+            plainWriteBuffer = new Buffer(buffer.length()).appendBuffer(buffer);
         } else {
             plainWriteBuffer.appendBuffer(buffer);
         }
-        pumpWrites();
+        if( vertx != null && engine != null && plainWriteBuffer.length() < writeQueueMaxSize ) {
+            // lets coalesce the writes made until the end of this event loop iteration into full records
+            if( !flushScheduled ) {
+                flushScheduled = true;
+                vertx.runOnContext(flushHandler);
+            }
+        } else {
+            pumpWrites();
+        }
         return this;
     }
 
     @Override
-    public SslSocketWrapper setWriteQueueMaxSize(int i) {
+    public SslSocketWrapper setWriteQueueMaxSize(int maxSize) {
+        writeQueueMaxSize = maxSize;
         return this;
     }
 
+    private final Handler<Void> flushHandler = new Handler<Void>() {
+        @Override
+        public void handle(Void aVoid) {
+            flushScheduled = false;
+            pumpWrites();
+        }
+    };
+
     private final Handler<Void> drainHandler = new Handler<Void>() {
         @Override
         public void handle(Void aVoid) {
@@ -267,19 +344,23 @@ public class SslSocketWrapper extends SocketWrapper implements ReadStream<SslSoc
         while (pump) {
             pump= false;
 
-            if( failed ) {
+            if( failed || tasksRunning || closed ) {
                 return;
             }
 
             if( plainWriteBuffer!=null ) {
-                ByteBuffer input = ByteBuffer.wrap(plainWriteBuffer.getBytes());
-                ByteBuffer output = ByteBuffer.allocate(engine.getSession().getPacketBufferSize());
+                startHandshakeTimer();
+                ByteBuffer input = plainWriteBuffer.getByteBuf().nioBuffer();
+                int inputStart = input.position();
+                ByteBuffer output = getWrapOutput(false);
 
                 try {
                     boolean done = false;
                     while( !done ) {
                         done = true;
+                        int producedFrom = output.position();
                         SSLEngineResult result = engine.wrap(input, output);
+                        onResult(result, true, output, producedFrom);
                         switch( result.getStatus() ) {
                             case OK:
                                 switch(engine.getHandshakeStatus()) {
@@ -291,11 +372,20 @@ public class SslSocketWrapper extends SocketWrapper implements ReadStream<SslSoc
                                 }
                                 break;
                             case CLOSED:
-                                throw new SSLException("CLOSED");
+                                if( !engine.isInboundDone() ) {
+                                    throw new SSLException("CLOSED");
+                                }
+                                // the peer closed the connection and this is the reply to its close_notify
+                                break;
                             case BUFFER_UNDERFLOW:
                                 break;
                             case BUFFER_OVERFLOW:
                                 done = false;
+                                if( output.position() == 0 ) {
+                                    // the session needs a larger packet buffer
+                                    output = getWrapOutput(true);
+                                    continue;
+                                }
                         }
 
                         // Lets fill the plain buffer..
@@ -317,9 +407,9 @@ public class SslSocketWrapper extends SocketWrapper implements ReadStream<SslSoc
                     int len = input.remaining();
                     if( len > 0 ) {
                         // we need to compact the plainWriteBuffer
-                        if( input.position()!=0  ) {
-                            plainWriteBuffer = new Buffer(len);
-                            plainWriteBuffer.appendBytes(input.array(), input.arrayOffset()+ input.position(), len);
+                        if( input.position()!=inputStart  ) {
+                            int end = plainWriteBuffer.length();
+                            plainWriteBuffer = plainWriteBuffer.getBuffer(end - len, end);
                         }
                     } else {
                         // everything was consumed.
@@ -347,6 +437,109 @@ public class SslSocketWrapper extends SocketWrapper implements ReadStream<SslSoc
                 return;
             }
         }
+
+        if( writeQueueReportedFull && !writeQueueFull() ) {
+            writeQueueReportedFull = false;
+            Handler<Void> handler = plainDrainHandler;
+            if( handler != null ) {
+                handler.handle(null);
+            }
+        }
+
+        if( closeRequested && plainWriteBuffer==null && encryptedWriteBuffer==null ) {
+            closeOutbound();
+        }
+    }
+
+    /**
+     * Sends the close_notify alert once all the written data has been encrypted and handed to the
+     * transport, then closes the transport
+     */
+    private void closeOutbound() {
+        if( closed ) {
+            return;
+        }
+        closed = true;
+        engine.closeOutbound();
+        try {
+            ByteBuffer input = ByteBuffer.allocate(0);
+            ByteBuffer output = getWrapOutput(false);
+            while( !engine.isOutboundDone() ) {
+                SSLEngineResult result = engine.wrap(input, output);
+                if( result.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW ) {
+                    output = getWrapOutput(true);
+                    continue;
+                }
+                output.flip();
+                if( output.remaining() > 0 ) {
+                    Buffer data = new Buffer(output.remaining());
+                    data.appendBytes(output.array(), output.arrayOffset() + output.position(), output.remaining());
+                    next.writeStream().write(data);
+                }
+                output.clear();
+                if( result.bytesProduced() == 0 ) {
+                    break;
+                }
+            }
+        } catch (SSLException e) {
+            // the peer will see the connection close without the alert
+        }
+        next.close();
+    }
+
+    private ByteBuffer getUnwrapOutput(boolean grow) {
+        int size = engine.getSession().getApplicationBufferSize();
+        if( unwrapOutput == null || grow || unwrapOutput.capacity() < size ) {
+            unwrapOutput = ByteBuffer.allocate(Math.max(size, unwrapOutput != null && grow ? unwrapOutput.capacity() * 2 : 0));
+        }
+        unwrapOutput.clear();
+        return unwrapOutput;
+    }
+
+    private ByteBuffer getWrapOutput(boolean grow) {
+        int size = engine.getSession().getPacketBufferSize();
+        if( wrapOutput == null || grow || wrapOutput.capacity() < size ) {
+            wrapOutput = ByteBuffer.allocate(Math.max(size, wrapOutput != null && grow ? wrapOutput.capacity() * 2 : 0));
+        }
+        wrapOutput.clear();
+        return wrapOutput;
+    }
+
+    /**
+     * Starts timing the handshake when the first record is about to be produced or consumed, rather than when
+     * the connection was accepted, so idle time before the peer starts the handshake is not counted
+     */
+    private void startHandshakeTimer() {
+        if( !handshakeStarted ) {
+            handshakeStarted = true;
+            handshakeStart = System.nanoTime();
+        }
+    }
+
+    /**
+     * Updates the statistics with the result of a wrap or unwrap; the records it produced or consumed start at
+     * the given position of the records buffer
+     */
+    private void onResult(SSLEngineResult result, boolean wrap, ByteBuffer records, int recordsStart) {
+        if( statistics != null ) {
+            if( wrap ) {
+                statistics.encrypted(result.bytesConsumed());
+            } else {
+                statistics.decrypted(result.bytesProduced());
+            }
+            if( !handshakeCompleted ) {
+                int length = wrap ? result.bytesProduced() : result.bytesConsumed();
+                resumptionDetector.inspect(records, recordsStart, recordsStart + length);
+            }
+        }
+        // post handshake messages (such as TLS 1.3 session tickets) also report FINISHED so only the
+        // initial handshake of the connection is counted
+        if( result.getHandshakeStatus() == FINISHED && !handshakeCompleted ) {
+            handshakeCompleted = true;
+            if( statistics != null ) {
+                statistics.handshakeCompleted(System.nanoTime() - handshakeStart, resumptionDetector.isResumed());
+            }
+        }
     }
 
     //////////////////////////////////////////////////////////////////////////
@@ -364,9 +557,22 @@ public class SslSocketWrapper extends SocketWrapper implements ReadStream<SslSoc
         return this;
     }
 
+    /**
+     * Closes the connection once the data written so far has been flushed; if the handshake has not completed
+     * yet, or the transport is not accepting writes, the close happens when the pending data has been sent
+     */
     @Override
     public void close() {
-        next.close();
+        if( closeRequested ) {
+            return;
+        }
+        closeRequested = true;
+        if( engine == null || failed ) {
+            closed = true;
+            next.close();
+        } else {
+            pumpWrites();
+        }
     }
 
     @Override
@@ -395,6 +601,21 @@ public class SslSocketWrapper extends SocketWrapper implements ReadStream<SslSoc
         pause();
     }
 
+    /**
+     * Coalesces the writes made during an event loop iteration and runs the delegated tasks of the engine
+     * on the given executor, collecting the TLS counters in the given statistics; must be called before the
+     * engine is initialised. Any of the arguments may be null.
+     */
+    public void configure(Vertx vertx, Executor taskExecutor, SslStatistics statistics) {
+        if( engine!=null ) {
+            throw new IllegalStateException("configure must be called before init");
+        }
+        this.vertx = vertx;
+        this.taskExecutor = vertx != null ? taskExecutor : null;
+        this.statistics = statistics;
+        this.resumptionDetector = statistics != null ? new ResumptionDetector() : null;
+    }
+
     public void initClient(SSLContext sslContext, String host, int port, String disabledCypherSuites, String enabledCipherSuites) {
         assert engine == null;
         engine = sslContext.createSSLEngine(host, port);
@@ -403,9 +624,18 @@ public class SslSocketWrapper extends SocketWrapper implements ReadStream<SslSoc
         init();
     }
 
+    /**
+     * Creates the server engine; when the address of the client is known the engine is created for it, which
+     * the provider uses as a hint for the sessions it negotiates and looks up in the server session cache
+     */
     public void initServer(SSLContext sslContext, ClientAuth clientAuth, String disabledCypherSuites, String enabledCipherSuites) {
         assert engine == null;
-        engine = sslContext.createSSLEngine();
+        InetSocketAddress peer = next.remoteAddress();
+        if( peer != null ) {
+            engine = sslContext.createSSLEngine(peer.getHostString(), peer.getPort());
+        } else {
+            engine = sslContext.createSSLEngine();
+        }
         engine.setUseClientMode(false);
         switch (clientAuth) {
             case WANT: engine.setWantClientAuth(true); break;
@@ -478,10 +708,10 @@ public class SslSocketWrapper extends SocketWrapper implements ReadStream<SslSoc
     }
 
     public void handshake() {
-        if( failed )
+        if( failed || tasksRunning || closed )
             return;
         try {
-            while( true ) {
+            while( !failed ) {
                 SSLEngineResult.HandshakeStatus status = engine.getHandshakeStatus();
                 switch (status) {
                     case FINISHED:
@@ -489,9 +719,16 @@ public class SslSocketWrapper extends SocketWrapper implements ReadStream<SslSoc
                         return;
 
                     case NEED_TASK:
+                        if( taskExecutor != null ) {
+                            runDelegatedTasks();
+                            return;
+                        }
                         final Runnable task = engine.getDelegatedTask();
                         if( task!=null ) {
                             task.run();
+                            if( statistics != null ) {
+                                statistics.delegatedTaskRun();
+                            }
                         }
                         break;
 
@@ -517,19 +754,79 @@ public class SslSocketWrapper extends SocketWrapper implements ReadStream<SslSoc
             }
         } finally {
             SSLEngineResult.HandshakeStatus status = engine.getHandshakeStatus();
-            if( status == NOT_HANDSHAKING ) {
+            if( status == NOT_HANDSHAKING && !tasksRunning ) {
                 pumpWrites(false);
                 pumpReads(false);
             }
         }
     }
 
+    /**
+     * Runs the delegated tasks of the engine on the task executor, then carries on with the handshake back
+     * on the event loop; reads and writes are held back until the tasks are done.
+     */
+    private void runDelegatedTasks() {
+        tasksRunning = true;
+        final Context context = vertx.currentContext();
+        try {
+            taskExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    Throwable failure = null;
+                    try {
+                        Runnable task;
+                        while( (task = engine.getDelegatedTask()) != null ) {
+                            task.run();
+                            if( statistics != null ) {
+                                statistics.delegatedTaskRun();
+                            }
+                        }
+                    } catch (Throwable e) {
+                        failure = e;
+                    }
+                    final Throwable error = failure;
+                    Handler<Void> resume = new Handler<Void>() {
+                        @Override
+                        public void handle(Void aVoid) {
+                            tasksRunning = false;
+                            if( error != null ) {
+                                onFailure(error);
+                                return;
+                            }
+                            handshake();
+                            pumpWrites();
+                            pumpReads();
+                        }
+                    };
+                    if( context != null ) {
+                        context.runOnContext(resume);
+                    } else {
+                        vertx.runOnContext(resume);
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            // the executor rejected the tasks so lets run them here
+            tasksRunning = false;
+            taskExecutor = null;
+            handshake();
+        }
+    }
+
     private void onFailure(Throwable error) {
+        if( !failed && !handshakeCompleted && statistics != null ) {
+            statistics.handshakeFailed();
+        }
         failed = true;
         Handler<Throwable> handler = plainExceptionHandler;
         if( handler!=null ) {
             handler.handle(error);
         }
+        if( closeRequested && !closed ) {
+            // the pending data can no longer be sent
+            closed = true;
+            next.close();
+        }
     }
 
 }
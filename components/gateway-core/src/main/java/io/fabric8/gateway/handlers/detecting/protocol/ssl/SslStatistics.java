@@ -0,0 +1,171 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.detecting.protocol.ssl;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters for the TLS connections terminated by a gateway, shared by all of its {@link SslSocketWrapper}s.
+ * <p/>
+ * The byte and delegated task counters are updated for every TLS record, so they are striped by thread to keep
+ * the event loops from contending on a single cache line and are only summed up when read. The handshake rate
+ * is the number of handshakes completed over the last {@link #RATE_WINDOW_SECONDS} seconds.
+ */
+public class SslStatistics {
+
+    public static final int RATE_WINDOW_SECONDS = 60;
+
+    private static final int ENCRYPTED = 0;
+    private static final int DECRYPTED = 1;
+    private static final int DELEGATED_TASKS = 2;
+    // one 64 bytes cache line per stripe
+    private static final int STRIDE = 8;
+    private static final int STRIPES = stripes();
+
+    private final AtomicLong handshakesCompleted = new AtomicLong();
+    private final AtomicLong handshakesFailed = new AtomicLong();
+    private final AtomicLong resumedHandshakes = new AtomicLong();
+    private final AtomicLong handshakeTimeNanos = new AtomicLong();
+    private final AtomicLongArray counters = new AtomicLongArray(STRIPES * STRIDE);
+    // the handshakes completed in each second of the rate window and the second each slot was last used for
+    private final AtomicLongArray handshakesPerSecond = new AtomicLongArray(RATE_WINDOW_SECONDS);
+    private final AtomicLongArray handshakeSeconds = new AtomicLongArray(RATE_WINDOW_SECONDS);
+    private final long startTime = System.currentTimeMillis();
+
+    @Override
+    public String toString() {
+        return "SslStatistics{" +
+                "handshakesCompleted=" + handshakesCompleted +
+                ", resumedHandshakes=" + resumedHandshakes +
+                ", handshakesFailed=" + handshakesFailed +
+                ", bytesEncrypted=" + getBytesEncrypted() +
+                ", bytesDecrypted=" + getBytesDecrypted() +
+                '}';
+    }
+
+    public void handshakeCompleted(long timeNanos, boolean resumed) {
+        handshakesCompleted.incrementAndGet();
+        handshakeTimeNanos.addAndGet(timeNanos);
+        if( resumed ) {
+            resumedHandshakes.incrementAndGet();
+        }
+        long second = System.currentTimeMillis() / 1000;
+        int slot = (int) (second % RATE_WINDOW_SECONDS);
+        long slotSecond = handshakeSeconds.get(slot);
+        if( slotSecond != second && handshakeSeconds.compareAndSet(slot, slotSecond, second) ) {
+            // the slot was last used a window ago so lets start counting this second afresh
+            handshakesPerSecond.set(slot, 0);
+        }
+        handshakesPerSecond.incrementAndGet(slot);
+    }
+
+    public void handshakeFailed() {
+        handshakesFailed.incrementAndGet();
+    }
+
+    public void delegatedTaskRun() {
+        add(DELEGATED_TASKS, 1);
+    }
+
+    public void encrypted(long bytes) {
+        add(ENCRYPTED, bytes);
+    }
+
+    public void decrypted(long bytes) {
+        add(DECRYPTED, bytes);
+    }
+
+    public long getHandshakesCompleted() {
+        return handshakesCompleted.get();
+    }
+
+    /**
+     * Returns the number of handshakes which resumed a previously negotiated session
+     */
+    public long getResumedHandshakes() {
+        return resumedHandshakes.get();
+    }
+
+    /**
+     * Returns the number of handshakes which negotiated a new session
+     */
+    public long getFullHandshakes() {
+        return handshakesCompleted.get() - resumedHandshakes.get();
+    }
+
+    public long getHandshakesFailed() {
+        return handshakesFailed.get();
+    }
+
+    /**
+     * Returns the number of handshakes completed per second over the last {@link #RATE_WINDOW_SECONDS} seconds,
+     * or since the statistics were created if that was more recent
+     */
+    public double getHandshakeRate() {
+        long now = System.currentTimeMillis();
+        long second = now / 1000;
+        long count = 0;
+        for (int slot = 0; slot < RATE_WINDOW_SECONDS; slot++) {
+            if( second - handshakeSeconds.get(slot) < RATE_WINDOW_SECONDS ) {
+                count += handshakesPerSecond.get(slot);
+            }
+        }
+        long window = Math.min(RATE_WINDOW_SECONDS * 1000L, Math.max(1000L, now - startTime));
+        return count * 1000.0 / window;
+    }
+
+    /**
+     * Returns the average time in nanoseconds from the first handshake record to the end of a successful handshake
+     */
+    public long getAverageHandshakeTimeNanos() {
+        long count = handshakesCompleted.get();
+        return count > 0 ? handshakeTimeNanos.get() / count : 0;
+    }
+
+    public long getDelegatedTasks() {
+        return sum(DELEGATED_TASKS);
+    }
+
+    public long getBytesEncrypted() {
+        return sum(ENCRYPTED);
+    }
+
+    public long getBytesDecrypted() {
+        return sum(DECRYPTED);
+    }
+
+    private void add(int counter, long value) {
+        int stripe = (int) (Thread.currentThread().getId() & (STRIPES - 1)) * STRIDE;
+        counters.addAndGet(stripe + counter, value);
+    }
+
+    private long sum(int counter) {
+        long sum = 0;
+        for (int i = counter; i < counters.length(); i += STRIDE) {
+            sum += counters.get(i);
+        }
+        return sum;
+    }
+
+    private static int stripes() {
+        int stripes = 1;
+        while (stripes < Runtime.getRuntime().availableProcessors() * 2) {
+            stripes <<= 1;
+        }
+        return stripes;
+    }
+}
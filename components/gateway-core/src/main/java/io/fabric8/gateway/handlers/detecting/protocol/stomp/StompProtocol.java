@@ -15,7 +15,8 @@
  */
 package io.fabric8.gateway.handlers.detecting.protocol.stomp;
 
-import io.fabric8.gateway.handlers.detecting.Protocol;
+import io.fabric8.gateway.handlers.detecting.DetectableProtocol;
+import io.fabric8.gateway.handlers.detecting.ProtocolSignature;
 import io.fabric8.gateway.SocketWrapper;
 import io.fabric8.gateway.handlers.loadbalancer.ConnectionParameters;
 import org.slf4j.Logger;
@@ -23,12 +24,16 @@ import org.slf4j.LoggerFactory;
 import org.vertx.java.core.Handler;
 import org.vertx.java.core.buffer.Buffer;
 
+import java.util.Arrays;
+import java.util.List;
+
+import static io.fabric8.gateway.handlers.detecting.ProtocolSignature.signature;
 import static io.fabric8.gateway.handlers.detecting.protocol.BufferSupport.startsWith;
 import static io.fabric8.gateway.handlers.detecting.protocol.stomp.Constants.*;
 
 /**
  */
-public class StompProtocol implements Protocol {
+public class StompProtocol implements DetectableProtocol {
     private static final transient Logger LOG = LoggerFactory.getLogger(StompProtocol.class);
 
     public static final int maxCommandLength = 20;
@@ -36,6 +41,11 @@ public class StompProtocol implements Protocol {
     public int maxHeaders = 1000;
     public int maxDataLength = 1024 * 1024 * 100;
 
+    private static final List<ProtocolSignature> SIGNATURES = Arrays.asList(
+        signature().bytes(CONNECT.toBuffer()),
+        signature().bytes(STOMP.toBuffer())
+    );
+
     @Override
     public String getProtocolName() {
         return "stomp";
@@ -59,6 +69,11 @@ public class StompProtocol implements Protocol {
                startsWith(header, 0, STOMP.toBuffer());
     }
 
+    @Override
+    public List<ProtocolSignature> getSignatures() {
+        return SIGNATURES;
+    }
+
     @Override
     public void snoopConnectionParameters(final SocketWrapper socket, Buffer received, final Handler<ConnectionParameters> handler) {
 
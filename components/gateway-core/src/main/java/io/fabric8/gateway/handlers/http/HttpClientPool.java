@@ -0,0 +1,299 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.http;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.Vertx;
+import org.vertx.java.core.http.HttpClient;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps a keep-alive {@link HttpClient} (and so a pool of connections) for each upstream host and port the
+ * gateway proxies to, so that requests reuse warm connections to the service that was actually chosen.
+ * <p/>
+ * Clients which have no requests in flight and have not been used within the idle timeout are closed, as are
+ * the clients of upstream services which are no longer mapped; a client which still has requests in flight is
+ * removed from the pool straight away but only closed once its last request completes.
+ */
+public class HttpClientPool {
+    private static final transient Logger LOG = LoggerFactory.getLogger(HttpClientPool.class);
+
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 16;
+    public static final long DEFAULT_IDLE_TIMEOUT = 60 * 1000L;
+
+    private final Vertx vertx;
+    private final ConcurrentHashMap<String, Upstream> upstreams = new ConcurrentHashMap<String, Upstream>();
+    private int maxConnectionsPerHost = DEFAULT_MAX_CONNECTIONS_PER_HOST;
+    private long idleTimeout = DEFAULT_IDLE_TIMEOUT;
+    private boolean keepAlive = true;
+    private long evictionTimerId = -1;
+
+    public HttpClientPool(Vertx vertx) {
+        this.vertx = vertx;
+    }
+
+    @Override
+    public String toString() {
+        return "HttpClientPool{" +
+                "upstreams=" + upstreams.keySet() +
+                ", maxConnectionsPerHost=" + maxConnectionsPerHost +
+                ", idleTimeout=" + idleTimeout +
+                '}';
+    }
+
+    /**
+     * Returns the upstream for the host and port of the given service URL, creating its client if required.
+     * Callers should invoke {@link Upstream#requestStarted()} and {@link Upstream#requestCompleted()} around each
+     * request so that the client is not closed while in use; if requestStarted() returns false the upstream was
+     * removed from the pool in the meantime and this method should be called again.
+     */
+    public Upstream getUpstream(URL url) {
+        String key = upstreamKey(url);
+        Upstream answer = upstreams.get(key);
+        if (answer == null) {
+            answer = new Upstream(key, createClient(url));
+            Upstream old = upstreams.putIfAbsent(key, answer);
+            if (old != null) {
+                answer.retire();
+                answer = old;
+            } else {
+                LOG.debug("Created upstream client for " + key);
+                startEvictionTimer();
+            }
+        }
+        answer.touch();
+        return answer;
+    }
+
+    /**
+     * Closes the clients of any upstream host and port which is not used by any of the given service URLs, once
+     * their requests in flight have completed
+     */
+    public void retainServices(Collection<String> serviceUrls) {
+        Set<String> keys = new HashSet<String>();
+        for (String serviceUrl : serviceUrls) {
+            try {
+                keys.add(upstreamKey(new URL(serviceUrl)));
+            } catch (MalformedURLException e) {
+                LOG.debug("Ignoring invalid service URL: " + serviceUrl + ". " + e);
+            }
+        }
+        Iterator<Map.Entry<String, Upstream>> iter = upstreams.entrySet().iterator();
+        while (iter.hasNext()) {
+            Map.Entry<String, Upstream> entry = iter.next();
+            if (!keys.contains(entry.getKey())) {
+                iter.remove();
+                LOG.info("Closing client for upstream " + entry.getKey() + " as it is no longer mapped");
+                entry.getValue().retire();
+            }
+        }
+    }
+
+    /**
+     * Closes any clients which have no requests in flight and have been idle for longer than the idle timeout
+     */
+    public void evictIdleClients() {
+        long now = System.currentTimeMillis();
+        for (Upstream upstream : upstreams.values()) {
+            if (upstream.getInFlight() <= 0 && now - upstream.lastUsed > idleTimeout) {
+                if (upstreams.remove(upstream.key, upstream)) {
+                    LOG.debug("Closing idle client for upstream " + upstream.key);
+                    upstream.retire();
+                }
+            }
+        }
+    }
+
+    /**
+     * Closes all the clients, including those with requests in flight
+     */
+    public void close() {
+        if (evictionTimerId != -1) {
+            vertx.cancelTimer(evictionTimerId);
+            evictionTimerId = -1;
+        }
+        for (Upstream upstream : upstreams.values()) {
+            upstream.close();
+        }
+        upstreams.clear();
+    }
+
+    public int getUpstreamCount() {
+        return upstreams.size();
+    }
+
+    public int getMaxConnectionsPerHost() {
+        return maxConnectionsPerHost;
+    }
+
+    public void setMaxConnectionsPerHost(int maxConnectionsPerHost) {
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+    }
+
+    public long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    /**
+     * Sets the time in milliseconds after which an unused upstream client is closed; zero or less disables eviction
+     */
+    public void setIdleTimeout(long idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    public boolean isKeepAlive() {
+        return keepAlive;
+    }
+
+    public void setKeepAlive(boolean keepAlive) {
+        this.keepAlive = keepAlive;
+    }
+
+    protected HttpClient createClient(URL url) {
+        HttpClient client = vertx.createHttpClient();
+        client.setHost(url.getHost());
+        client.setPort(upstreamPort(url));
+        client.setKeepAlive(keepAlive);
+        client.setMaxPoolSize(maxConnectionsPerHost);
+        return client;
+    }
+
+    protected synchronized void startEvictionTimer() {
+        if (evictionTimerId == -1 && idleTimeout > 0) {
+            long period = Math.max(1000L, idleTimeout / 2);
+            evictionTimerId = vertx.setPeriodic(period, new Handler<Long>() {
+                @Override
+                public void handle(Long timerId) {
+                    evictIdleClients();
+                }
+            });
+        }
+    }
+
+    protected static String upstreamKey(URL url) {
+        return url.getHost() + ":" + upstreamPort(url);
+    }
+
+    protected static int upstreamPort(URL url) {
+        int port = url.getPort();
+        return port > 0 ? port : url.getDefaultPort();
+    }
+
+    /**
+     * The client for a single upstream host and port
+     * <p/>
+     * The client is reference counted; the pool holds one reference until the upstream is retired from it and
+     * each request in flight holds another, so the client is closed when the last of them is released.
+     */
+    public static class Upstream {
+        private final String key;
+        private final HttpClient client;
+        private final AtomicInteger references = new AtomicInteger(1);
+        private final AtomicBoolean retired = new AtomicBoolean();
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private volatile long lastUsed = System.currentTimeMillis();
+
+        Upstream(String key, HttpClient client) {
+            this.key = key;
+            this.client = client;
+        }
+
+        @Override
+        public String toString() {
+            return "Upstream{" +
+                    "key='" + key + '\'' +
+                    ", inFlight=" + getInFlight() +
+                    '}';
+        }
+
+        public HttpClient getClient() {
+            return client;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public int getInFlight() {
+            int answer = references.get();
+            return retired.get() ? answer : answer - 1;
+        }
+
+        public boolean isClosed() {
+            return closed.get();
+        }
+
+        /**
+         * Counts a request as in flight, returning false if the upstream has been removed from the pool and its
+         * client is closed or about to be closed
+         */
+        public boolean requestStarted() {
+            int current;
+            do {
+                current = references.get();
+                if (current <= 0) {
+                    return false;
+                }
+            } while (!references.compareAndSet(current, current + 1));
+            touch();
+            return true;
+        }
+
+        public void requestCompleted() {
+            touch();
+            release();
+        }
+
+        void touch() {
+            lastUsed = System.currentTimeMillis();
+        }
+
+        /**
+         * Releases the reference of the pool, closing the client now or when the last request in flight completes
+         */
+        void retire() {
+            if (retired.compareAndSet(false, true)) {
+                release();
+            }
+        }
+
+        void close() {
+            retired.set(true);
+            references.set(0);
+            if (closed.compareAndSet(false, true)) {
+                client.close();
+            }
+        }
+
+        private void release() {
+            if (references.decrementAndGet() == 0) {
+                close();
+            }
+        }
+    }
+}
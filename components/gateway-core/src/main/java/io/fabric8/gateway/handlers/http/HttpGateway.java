@@ -43,6 +43,12 @@ public interface HttpGateway {
      */
     Map<String, MappedServices> getMappedServices();
 
+    /**
+     * Returns a counter which must change whenever the result of {@link #getMappedServices()} changes;
+     * the {@link HttpGatewayHandler} recompiles its routing table when it sees a new value
+     */
+    long getMappingRulesVersion();
+
     /**
      * Returns true if the mapping index is enabled which by default
      * returns a JSON document describing the mapping of URI prefixes to services
@@ -23,7 +23,6 @@ import org.vertx.java.core.Handler;
 import org.vertx.java.core.Vertx;
 import org.vertx.java.core.VoidHandler;
 import org.vertx.java.core.buffer.Buffer;
-import org.vertx.java.core.http.HttpClient;
 import org.vertx.java.core.http.HttpClientRequest;
 import org.vertx.java.core.http.HttpClientResponse;
 import org.vertx.java.core.http.HttpServerRequest;
@@ -39,8 +38,11 @@ import java.net.URL;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  */
@@ -50,33 +52,40 @@ public class HttpGatewayHandler implements Handler<HttpServerRequest> {
     private final Vertx vertx;
     private final HttpGateway httpGateway;
     private final ObjectMapper mapper = new ObjectMapper();
-    private HttpClient client;
+    private final AtomicReference<CompiledRouter> router = new AtomicReference<CompiledRouter>();
+    private final AtomicBoolean recompileScheduled = new AtomicBoolean();
+    private final HttpClientPool clientPool;
+    private final HttpGatewayMetrics metrics;
 
     public HttpGatewayHandler(Vertx vertx, HttpGateway httpGateway) {
+        this(vertx, httpGateway, new HttpGatewayMetrics());
+    }
+
+    public HttpGatewayHandler(Vertx vertx, HttpGateway httpGateway, HttpGatewayMetrics metrics) {
         this.vertx = vertx;
         this.httpGateway = httpGateway;
+        this.clientPool = new HttpClientPool(vertx);
+        this.metrics = metrics;
     }
 
     @Override
     public void handle(final HttpServerRequest request) {
     	long callStart = System.nanoTime();
         String uri = request.uri();
-        String uri2 = null;
-        if (!uri.endsWith("/")) {
-            uri2 = uri + "/";
-        }
         if (LOG.isDebugEnabled()) {
             LOG.debug("Proxying request: " + uri);
         }
 
         // lets map the request URI to map to the service URI and then the renaming URI
         // using mapping rules...
-        //HttpClient client = null;
+        HttpClientPool.Upstream upstream = null;
         String remaining = null;
         String prefix = null;
+        String mappingRule = null;
         String proxyServiceUrl = null;
         String reverseServiceUrl = null;
-        Map<String, MappedServices> mappingRules = httpGateway.getMappedServices();
+        HttpMappingRouter router = getRouter();
+        Map<String, MappedServices> mappingRules = router.getMappedServices();
         try {
             if (isMappingIndexRequest(request)) {
                 // lets return the JSON of all the results
@@ -85,46 +94,42 @@ public class HttpGatewayHandler implements Handler<HttpServerRequest> {
                 response.headers().set("ContentType", "application/json");
                 response.end(json);
                 response.setStatusCode(200);
+                httpGateway.addCallDetailRecord(new CallDetailRecord(System.nanoTime() - callStart, null));
             } else {
                 MappedServices mappedServices = null;
                 URL clientURL = null;
-                Set<Map.Entry<String, MappedServices>> entries = mappingRules.entrySet();
-                for (Map.Entry<String, MappedServices> entry : entries) {
-                    String path = entry.getKey();
-                    mappedServices = entry.getValue();
-
-                    String pathPrefix = path;
-                    if (uri.startsWith(pathPrefix) || (uri2 != null && uri2.startsWith(pathPrefix))) {
-                        int pathPrefixLength = pathPrefix.length();
-                        if (pathPrefixLength < uri.length()) {
-                            remaining = uri.substring(pathPrefixLength + 1);
-                        } else {
-                            remaining = null;
-                        }
+                for (HttpMappingRouter.Route route = router.match(uri); route != null; route = route.getNextMatch()) {
+                    String pathPrefix = route.getPath();
+                    mappedServices = route.getMappedServices();
 
-                        // now lets pick a service for this path
-                        proxyServiceUrl = mappedServices.chooseService(request);
-                        if (proxyServiceUrl != null) {
-                            // lets create a client for this request...
-                            try {
-                                clientURL = new URL(proxyServiceUrl);
-                                if (client==null) {
-                                	client = createClient(clientURL);
-                                }
-                                prefix = clientURL.getPath();
-                                reverseServiceUrl = request.absoluteURI().resolve(pathPrefix).toString();
-                                if (reverseServiceUrl.endsWith("/")) {
-                                    reverseServiceUrl = reverseServiceUrl.substring(0, reverseServiceUrl.length() - 1);
-                                }
-                                break;
-                            } catch (MalformedURLException e) {
-                                LOG.warn("Failed to parse URL: " + proxyServiceUrl + ". " + e, e);
+                    int pathPrefixLength = pathPrefix.length();
+                    if (pathPrefixLength < uri.length()) {
+                        remaining = uri.substring(pathPrefixLength + 1);
+                    } else {
+                        remaining = null;
+                    }
+
+                    // now lets pick a service for this path
+                    proxyServiceUrl = mappedServices.chooseService(request);
+                    if (proxyServiceUrl != null) {
+                        // lets create a client for this request...
+                        try {
+                            clientURL = new URL(proxyServiceUrl);
+                            upstream = clientPool.getUpstream(clientURL);
+                            prefix = clientURL.getPath();
+                            mappingRule = pathPrefix;
+                            reverseServiceUrl = request.absoluteURI().resolve(pathPrefix).toString();
+                            if (reverseServiceUrl.endsWith("/")) {
+                                reverseServiceUrl = reverseServiceUrl.substring(0, reverseServiceUrl.length() - 1);
                             }
+                            break;
+                        } catch (MalformedURLException e) {
+                            LOG.warn("Failed to parse URL: " + proxyServiceUrl + ". " + e, e);
                         }
                     }
                 }
                 
-                if (client != null) {
+                if (upstream != null) {
                     String servicePath = prefix != null ? prefix : "";
                     // we should usually end the prefix path with a slash for web apps at least
                     if (servicePath.length() > 0 && !servicePath.endsWith("/")) {
@@ -135,15 +140,47 @@ public class HttpGatewayHandler implements Handler<HttpServerRequest> {
                     }
                     //servicePath = servicePath.replaceAll("//", "/");
                     LOG.info("Proxying request " + uri + " to service path: " + servicePath + " on service: " + proxyServiceUrl + " reverseServiceUrl: " + reverseServiceUrl);
-                    final HttpClient finalClient = client;
+                    while (!upstream.requestStarted()) {
+                        // the client was closed as the service is no longer mapped or was idle so lets use a new one
+                        upstream = clientPool.getUpstream(clientURL);
+                    }
+                    final HttpClientPool.Upstream finalUpstream = upstream;
+                    final MappedServices finalMappedServices = mappedServices;
+                    final String finalProxyServiceUrl = proxyServiceUrl;
+                    final String finalMappingRule = mappingRule;
+                    final long requestStart = System.nanoTime();
+                    final AtomicBoolean completed = new AtomicBoolean();
+                    // invoked with the failure, or null, once the response has been proxied
+                    final Handler<Throwable> completion = new Handler<Throwable>() {
+                        public void handle(Throwable failure) {
+                            if (completed.compareAndSet(false, true)) {
+                                long responseTime = System.nanoTime() - requestStart;
+                                finalUpstream.requestCompleted();
+                                finalMappedServices.requestCompleted(finalProxyServiceUrl);
+                                metrics.requestCompleted(finalMappingRule, finalUpstream.getKey(), responseTime, failure != null);
+                                String error = failure != null ? new Date() + ":" + failure.getMessage() : null;
+                                httpGateway.addCallDetailRecord(new CallDetailRecord(responseTime, error));
+                            }
+                        }
+                    };
                     Handler<HttpClientResponse> responseHandler = new Handler<HttpClientResponse>() {
                         public void handle(HttpClientResponse clientResponse) {
                             if (LOG.isDebugEnabled()) {
                                 LOG.debug("Proxying response: " + clientResponse.statusCode());
                             }
+                            long timeToFirstByte = System.nanoTime() - requestStart;
+                            finalMappedServices.responseReceived(finalProxyServiceUrl, timeToFirstByte);
+                            metrics.responseReceived(finalMappingRule, finalUpstream.getKey(), timeToFirstByte);
                             request.response().setStatusCode(clientResponse.statusCode());
                             request.response().headers().set(clientResponse.headers());
                             request.response().setChunked(true);
+                            clientResponse.exceptionHandler(new Handler<Throwable>() {
+                                public void handle(Throwable e) {
+                                    LOG.warn("Failed to proxy response from upstream " + finalUpstream.getKey() + ". " + e, e);
+                                    completion.handle(e);
+                                    request.response().close();
+                                }
+                            });
                             clientResponse.dataHandler(new Handler<Buffer>() {
                                 public void handle(Buffer data) {
                                     if (LOG.isDebugEnabled()) {
@@ -155,7 +192,7 @@ public class HttpGatewayHandler implements Handler<HttpServerRequest> {
                             clientResponse.endHandler(new VoidHandler() {
                                 public void handle() {
                                     request.response().end();
-                                    //finalClient.close();
+                                    completion.handle(null);
                                     if (LOG.isDebugEnabled()) {
                                         LOG.debug("4. Response end");
                                     }
@@ -163,13 +200,25 @@ public class HttpGatewayHandler implements Handler<HttpServerRequest> {
                             });
                         }
                     };
-                    if (mappedServices != null) {
-                        ProxyMappingDetails proxyMappingDetails = new ProxyMappingDetails(proxyServiceUrl, reverseServiceUrl, servicePath);
-                        responseHandler = mappedServices.wrapResponseHandlerInPolicies(request, responseHandler, proxyMappingDetails);
-                    }
-                    final HttpClientRequest clientRequest = client.request(request.method(), servicePath, responseHandler);
+                    ProxyMappingDetails proxyMappingDetails = new ProxyMappingDetails(proxyServiceUrl, reverseServiceUrl, servicePath);
+                    responseHandler = mappedServices.wrapResponseHandlerInPolicies(request, responseHandler, proxyMappingDetails);
+                    mappedServices.requestStarted(proxyServiceUrl);
+                    final HttpClientRequest clientRequest = upstream.getClient().request(request.method(), servicePath, responseHandler);
                     clientRequest.headers().set(request.headers());
                     clientRequest.setChunked(true);
+                    clientRequest.exceptionHandler(new Handler<Throwable>() {
+                        public void handle(Throwable e) {
+                            LOG.warn("Failed to proxy request to upstream " + finalUpstream.getKey() + ". " + e, e);
+                            completion.handle(e);
+                            request.response().close();
+                        }
+                    });
+                    request.response().closeHandler(new VoidHandler() {
+                        public void handle() {
+                            // the caller went away before the upstream response was proxied
+                            completion.handle(new IOException("Connection closed by client"));
+                        }
+                    });
                     request.dataHandler(new Handler<Buffer>() {
                         public void handle(Buffer data) {
                             if (LOG.isDebugEnabled()) {
@@ -192,10 +241,9 @@ public class HttpGatewayHandler implements Handler<HttpServerRequest> {
                     LOG.info("Could not find matching proxy path for " + uri + " from paths: " + mappingRules.keySet());
                     request.response().setStatusCode(404);
                     request.response().end();
+                    httpGateway.addCallDetailRecord(new CallDetailRecord(System.nanoTime() - callStart, null));
                 }
             }
-            CallDetailRecord cdr = new CallDetailRecord(System.nanoTime() - callStart, null);
-            httpGateway.addCallDetailRecord(cdr);
         } catch (Throwable e) {
             LOG.error("Caught: " + e, e);
             CallDetailRecord cdr = new CallDetailRecord(System.nanoTime() - callStart, new Date() + ":" + e.getMessage());
@@ -208,6 +256,89 @@ public class HttpGatewayHandler implements Handler<HttpServerRequest> {
         }
     }
 
+    /**
+     * Notifies the handler that the mapping rules of the {@link HttpGateway} have changed, such as from a
+     * {@link HttpMappingRule} change listener. The router is recompiled once on the vertx context for each
+     * burst of changes so that connections to upstream services which are no longer mapped are closed even
+     * if no further requests arrive; requests always see the current rules via {@link #getRouter()}.
+     */
+    public void mappingRulesChanged() {
+        if (recompileScheduled.compareAndSet(false, true)) {
+            vertx.runOnContext(new Handler<Void>() {
+                @Override
+                public void handle(Void event) {
+                    recompileScheduled.set(false);
+                    getRouter();
+                }
+            });
+        }
+    }
+
+    /**
+     * Closes the pooled upstream clients
+     */
+    public void destroy() {
+        clientPool.close();
+    }
+
+    /**
+     * Returns the pool of keep-alive clients to the upstream services
+     */
+    public HttpClientPool getClientPool() {
+        return clientPool;
+    }
+
+    /**
+     * Returns the latencies of the proxied requests for each mapping rule and backend
+     */
+    public HttpGatewayMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns the current router, recompiling it from the mapping rules of the {@link HttpGateway} whenever
+     * its {@link HttpGateway#getMappingRulesVersion()} changes
+     */
+    protected HttpMappingRouter getRouter() {
+        long version = httpGateway.getMappingRulesVersion();
+        CompiledRouter answer = router.get();
+        if (answer == null || answer.version != version) {
+            synchronized (router) {
+                answer = router.get();
+                if (answer == null || answer.version != version) {
+                    answer = new CompiledRouter(version, HttpMappingRouter.compile(httpGateway.getMappedServices()));
+                    router.set(answer);
+                    retainServices(answer.router);
+                }
+            }
+        }
+        return answer.router;
+    }
+
+    /**
+     * Closes the pooled connections to, and discards the state of, any upstream services which are no longer mapped
+     */
+    protected void retainServices(HttpMappingRouter newRouter) {
+        Set<String> serviceUrls = new HashSet<String>();
+        for (MappedServices mappedServices : newRouter.getMappedServices().values()) {
+            serviceUrls.addAll(mappedServices.getServiceUrls());
+        }
+        clientPool.retainServices(serviceUrls);
+        for (MappedServices mappedServices : newRouter.getMappedServices().values()) {
+            mappedServices.retainServices(serviceUrls);
+        }
+
+        Set<String> backends = new HashSet<String>();
+        for (String serviceUrl : serviceUrls) {
+            try {
+                backends.add(HttpClientPool.upstreamKey(new URL(serviceUrl)));
+            } catch (MalformedURLException e) {
+                // ignore as no requests could have been proxied to it
+            }
+        }
+        metrics.retain(newRouter.getMappedServices().keySet(), backends);
+    }
+
     protected String mappingRulesToJson(Map<String, MappedServices> rules) throws IOException {
         Map<String, Collection<String>> data = new HashMap<String, Collection<String>>();
 
@@ -229,13 +360,13 @@ public class HttpGatewayHandler implements Handler<HttpServerRequest> {
         return uri == null || uri.length() == 0 || uri.equals("/");
     }
 
-    protected HttpClient createClient(URL url) throws MalformedURLException {
-        // lets create a client
-        final HttpClient client = vertx.createHttpClient();
-        client.setHost(url.getHost());
-        client.setPort(url.getPort());
-        return client;
+    private static class CompiledRouter {
+        private final long version;
+        private final HttpMappingRouter router;
 
+        CompiledRouter(long version, HttpMappingRouter router) {
+            this.version = version;
+            this.router = router;
+        }
     }
-
 }
@@ -0,0 +1,178 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.http;
+
+import io.fabric8.utils.LatencyHistogram;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records the time to first byte and the total response time of the requests proxied by the
+ * {@link HttpGatewayHandler} in a {@link LatencyHistogram} for each mapping rule and each backend.
+ * <p/>
+ * When reset on read is enabled each read of the latency reports starts a new interval, so a monitoring
+ * tool polling the MBean sees the percentiles of the requests since its last poll. Each report takes a
+ * single snapshot of every histogram it describes; looking up a single percentile never resets anything, so
+ * any number of percentiles can be read from the current interval.
+ * <p/>
+ * Every mapping rule and every backend gets two histograms, of about 10KB each, so the metrics take about
+ * 20KB for each of them, e.g. 2MB for 40 rules routing to 60 backends. The histograms are not kept per rule
+ * and backend pair, and {@link #retain(Collection, Collection)} drops those of the rules and backends which
+ * are no longer mapped, so the memory used is bounded by the gateway's current mapping rules.
+ */
+public class HttpGatewayMetrics implements HttpGatewayMetricsMBean {
+
+    private final ConcurrentHashMap<String, RequestLatencies> mappingRules = new ConcurrentHashMap<String, RequestLatencies>();
+    private final ConcurrentHashMap<String, RequestLatencies> backends = new ConcurrentHashMap<String, RequestLatencies>();
+    private volatile boolean resetOnRead;
+
+    /**
+     * Records the time taken for the backend to start responding to a request
+     */
+    public void responseReceived(String mappingRule, String backend, long timeToFirstByteNanos) {
+        getLatencies(mappingRules, mappingRule).timeToFirstByte.recordValue(timeToFirstByteNanos);
+        getLatencies(backends, backend).timeToFirstByte.recordValue(timeToFirstByteNanos);
+    }
+
+    /**
+     * Records the time taken for the backend to completely respond to, or fail, a request
+     */
+    public void requestCompleted(String mappingRule, String backend, long responseTimeNanos, boolean failed) {
+        RequestLatencies rule = getLatencies(mappingRules, mappingRule);
+        RequestLatencies service = getLatencies(backends, backend);
+        rule.responseTime.recordValue(responseTimeNanos);
+        service.responseTime.recordValue(responseTimeNanos);
+        if (failed) {
+            rule.failures.incrementAndGet();
+            service.failures.incrementAndGet();
+        }
+    }
+
+    /**
+     * Discards the latencies of any mapping rules and backends which are no longer used
+     */
+    public void retain(Collection<String> mappingRuleKeys, Collection<String> backendKeys) {
+        mappingRules.keySet().retainAll(mappingRuleKeys);
+        backends.keySet().retainAll(backendKeys);
+    }
+
+    @Override
+    public String[] getMappingRules() {
+        return sortedKeys(mappingRules);
+    }
+
+    @Override
+    public String[] getBackends() {
+        return sortedKeys(backends);
+    }
+
+    @Override
+    public String[] getMappingRuleLatencies() {
+        return describe(mappingRules);
+    }
+
+    @Override
+    public String[] getBackendLatencies() {
+        return describe(backends);
+    }
+
+    @Override
+    public long getMappingRuleResponseTimePercentile(String mappingRule, double percentile) {
+        return percentile(mappingRules.get(mappingRule), false, percentile);
+    }
+
+    @Override
+    public long getMappingRuleTimeToFirstBytePercentile(String mappingRule, double percentile) {
+        return percentile(mappingRules.get(mappingRule), true, percentile);
+    }
+
+    @Override
+    public long getBackendResponseTimePercentile(String backend, double percentile) {
+        return percentile(backends.get(backend), false, percentile);
+    }
+
+    @Override
+    public long getBackendTimeToFirstBytePercentile(String backend, double percentile) {
+        return percentile(backends.get(backend), true, percentile);
+    }
+
+    @Override
+    public boolean isResetOnRead() {
+        return resetOnRead;
+    }
+
+    @Override
+    public void setResetOnRead(boolean resetOnRead) {
+        this.resetOnRead = resetOnRead;
+    }
+
+    @Override
+    public void resetStatistics() {
+        mappingRules.clear();
+        backends.clear();
+    }
+
+    protected long percentile(RequestLatencies latencies, boolean timeToFirstByte, double percentile) {
+        if (latencies == null) {
+            return 0;
+        }
+        LatencyHistogram histogram = timeToFirstByte ? latencies.timeToFirstByte : latencies.responseTime;
+        return histogram.snapshot(false).getValueAtPercentile(percentile);
+    }
+
+    protected String[] describe(Map<String, RequestLatencies> map) {
+        List<String> answer = new ArrayList<String>();
+        for (Map.Entry<String, RequestLatencies> entry : new TreeMap<String, RequestLatencies>(map).entrySet()) {
+            RequestLatencies latencies = entry.getValue();
+            LatencyHistogram.Snapshot timeToFirstByte = latencies.timeToFirstByte.snapshot(resetOnRead);
+            LatencyHistogram.Snapshot responseTime = latencies.responseTime.snapshot(resetOnRead);
+            long failures = resetOnRead ? latencies.failures.getAndSet(0) : latencies.failures.get();
+            answer.add(entry.getKey() +
+                    " timeToFirstByte[" + timeToFirstByte + "]" +
+                    " responseTime[" + responseTime + "]" +
+                    " failures=" + failures);
+        }
+        return answer.toArray(new String[answer.size()]);
+    }
+
+    protected static String[] sortedKeys(Map<String, RequestLatencies> map) {
+        return new TreeMap<String, RequestLatencies>(map).keySet().toArray(new String[0]);
+    }
+
+    protected static RequestLatencies getLatencies(ConcurrentHashMap<String, RequestLatencies> map, String key) {
+        RequestLatencies answer = map.get(key);
+        if (answer == null) {
+            answer = new RequestLatencies();
+            RequestLatencies old = map.putIfAbsent(key, answer);
+            if (old != null) {
+                answer = old;
+            }
+        }
+        return answer;
+    }
+
+    protected static class RequestLatencies {
+        private final LatencyHistogram timeToFirstByte = new LatencyHistogram();
+        private final LatencyHistogram responseTime = new LatencyHistogram();
+        private final AtomicLong failures = new AtomicLong();
+    }
+}
@@ -0,0 +1,40 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.http;
+
+/**
+ * This interface defines the attributes/operations that are exposed
+ * for JMX management of the request latencies of the HTTP gateway.
+ * <p/>
+ * Latencies are reported in nanoseconds, for each mapping rule (by its URI prefix) and each
+ * backend (by its host and port). When reset on read is enabled reading the mapping rule or backend
+ * latencies starts a new interval for the histograms described; the percentile lookups do not reset.
+ */
+public interface HttpGatewayMetricsMBean {
+
+    public String[] getMappingRules();
+    public String[] getBackends();
+    public String[] getMappingRuleLatencies();
+    public String[] getBackendLatencies();
+    public long getMappingRuleResponseTimePercentile(String mappingRule, double percentile);
+    public long getMappingRuleTimeToFirstBytePercentile(String mappingRule, double percentile);
+    public long getBackendResponseTimePercentile(String backend, double percentile);
+    public long getBackendTimeToFirstBytePercentile(String backend, double percentile);
+    public boolean isResetOnRead();
+    public void setResetOnRead(boolean resetOnRead);
+    public void resetStatistics();
+
+}
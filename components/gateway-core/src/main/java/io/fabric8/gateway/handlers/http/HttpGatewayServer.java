@@ -67,6 +67,7 @@ public class HttpGatewayServer {
 
     public void destroy() {
         server.close();
+        handler.destroy();
     }
 
     public int getPort() {
@@ -0,0 +1,204 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.http;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An immutable prefix trie compiled from the URI prefix to {@link MappedServices} mapping rules of a
+ * {@link HttpGateway} so that the {@link HttpGatewayHandler} can find the longest matching URI prefix
+ * for a request with a single walk over the request URI and without allocating.
+ * <p/>
+ * A router is never modified once created; when the mapping rules change a new router is compiled
+ * and swapped in.
+ */
+public final class HttpMappingRouter {
+    private static final char[] NO_KEYS = new char[0];
+    private static final Node[] NO_CHILDREN = new Node[0];
+
+    private final Map<String, MappedServices> mappedServices;
+    private final Node root;
+
+    private HttpMappingRouter(Map<String, MappedServices> mappedServices, Node root) {
+        this.mappedServices = mappedServices;
+        this.root = root;
+    }
+
+    /**
+     * Compiles a router from the given URI prefix to mapped services map; the map is copied so later changes
+     * to it are not visible in the router.
+     */
+    public static HttpMappingRouter compile(Map<String, MappedServices> mappedServices) {
+        Map<String, MappedServices> copy = new HashMap<String, MappedServices>();
+        if (mappedServices != null) {
+            copy.putAll(mappedServices);
+        }
+        NodeBuilder rootBuilder = new NodeBuilder();
+        for (Map.Entry<String, MappedServices> entry : copy.entrySet()) {
+            String path = entry.getKey();
+            if (path == null || entry.getValue() == null) {
+                continue;
+            }
+            NodeBuilder builder = rootBuilder;
+            for (int i = 0, size = path.length(); i < size; i++) {
+                builder = builder.child(path.charAt(i));
+            }
+            builder.route = new Route(path, entry.getValue());
+        }
+        return new HttpMappingRouter(Collections.unmodifiableMap(copy), rootBuilder.build(null));
+    }
+
+    @Override
+    public String toString() {
+        return "HttpMappingRouter{" +
+                "paths=" + mappedServices.keySet() +
+                '}';
+    }
+
+    /**
+     * Returns the route with the longest URI prefix matching the given URI or null if there is no match.
+     * <p/>
+     * As with URIs which do not end with a slash, a prefix ending with a slash also matches the URI without its
+     * trailing slash. Shorter matching prefixes can be found via {@link Route#getNextMatch()}.
+     */
+    public Route match(String uri) {
+        if (uri == null) {
+            return null;
+        }
+        Node node = root;
+        Route answer = node.route;
+        for (int i = 0, size = uri.length(); i < size; i++) {
+            node = node.child(uri.charAt(i));
+            if (node == null) {
+                return answer;
+            }
+            if (node.route != null) {
+                answer = node.route;
+            }
+        }
+        if (!uri.endsWith("/")) {
+            Node slash = node.child('/');
+            if (slash != null && slash.route != null) {
+                answer = slash.route;
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * Returns the mapping rules this router was compiled from indexed by URI prefix
+     */
+    public Map<String, MappedServices> getMappedServices() {
+        return mappedServices;
+    }
+
+    public boolean isEmpty() {
+        return mappedServices.isEmpty();
+    }
+
+    /**
+     * Represents a URI prefix and the services mapped to it
+     */
+    public static final class Route {
+        private final String path;
+        private final MappedServices mappedServices;
+        private Route nextMatch;
+
+        Route(String path, MappedServices mappedServices) {
+            this.path = path;
+            this.mappedServices = mappedServices;
+        }
+
+        @Override
+        public String toString() {
+            return "Route{" +
+                    "path='" + path + '\'' +
+                    ", mappedServices=" + mappedServices +
+                    '}';
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public MappedServices getMappedServices() {
+            return mappedServices;
+        }
+
+        /**
+         * Returns the route with the next longest prefix which also matches the URIs that this route matches
+         * or null if there is none
+         */
+        public Route getNextMatch() {
+            return nextMatch;
+        }
+    }
+
+    private static final class Node {
+        private final char[] keys;
+        private final Node[] children;
+        private final Route route;
+
+        private Node(char[] keys, Node[] children, Route route) {
+            this.keys = keys;
+            this.children = children;
+            this.route = route;
+        }
+
+        Node child(char c) {
+            int idx = Arrays.binarySearch(keys, c);
+            return idx >= 0 ? children[idx] : null;
+        }
+    }
+
+    private static final class NodeBuilder {
+        private final TreeMap<Character, NodeBuilder> children = new TreeMap<Character, NodeBuilder>();
+        private Route route;
+
+        NodeBuilder child(char c) {
+            NodeBuilder answer = children.get(c);
+            if (answer == null) {
+                answer = new NodeBuilder();
+                children.put(c, answer);
+            }
+            return answer;
+        }
+
+        Node build(Route parentRoute) {
+            if (route != null) {
+                route.nextMatch = parentRoute;
+                parentRoute = route;
+            }
+            if (children.isEmpty()) {
+                return new Node(NO_KEYS, NO_CHILDREN, route);
+            }
+            char[] keys = new char[children.size()];
+            List<Node> nodes = new ArrayList<Node>(children.size());
+            int i = 0;
+            for (Map.Entry<Character, NodeBuilder> entry : children.entrySet()) {
+                keys[i++] = entry.getKey();
+                nodes.add(entry.getValue().build(parentRoute));
+            }
+            return new Node(keys, nodes.toArray(new Node[nodes.size()]), route);
+        }
+    }
+}
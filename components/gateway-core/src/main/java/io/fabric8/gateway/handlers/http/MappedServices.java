@@ -17,6 +17,7 @@ package io.fabric8.gateway.handlers.http;
 
 import io.fabric8.gateway.ServiceDetails;
 import io.fabric8.gateway.handlers.http.policy.ReverseUriPolicy;
+import io.fabric8.gateway.loadbalancer.LoadAwareLoadBalancer;
 import io.fabric8.gateway.loadbalancer.LoadBalancer;
 
 import org.vertx.java.core.Handler;
@@ -24,6 +25,7 @@ import org.vertx.java.core.http.HttpClientResponse;
 import org.vertx.java.core.http.HttpServerRequest;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
@@ -60,6 +62,43 @@ public class MappedServices {
         return loadBalancer.choose(new ArrayList<String>(serviceUrls), new HttpClientRequestFacade(request));
     }
 
+    /**
+     * Notifies a load aware load balancer that a request has been sent to the given service
+     */
+    public void requestStarted(String service) {
+        if (loadBalancer instanceof LoadAwareLoadBalancer) {
+            ((LoadAwareLoadBalancer) loadBalancer).requestStarted(service);
+        }
+    }
+
+    /**
+     * Notifies a load aware load balancer that the given service responded after the given number of nanoseconds
+     */
+    public void responseReceived(String service, long responseTimeNanos) {
+        if (loadBalancer instanceof LoadAwareLoadBalancer) {
+            ((LoadAwareLoadBalancer) loadBalancer).responseReceived(service, responseTimeNanos);
+        }
+    }
+
+    /**
+     * Notifies a load aware load balancer that a request to the given service has completed
+     */
+    public void requestCompleted(String service) {
+        if (loadBalancer instanceof LoadAwareLoadBalancer) {
+            ((LoadAwareLoadBalancer) loadBalancer).requestCompleted(service);
+        }
+    }
+
+    /**
+     * Notifies a load aware load balancer of the services which are still mapped so it can discard the statistics of
+     * any others
+     */
+    public void retainServices(Collection<String> serviceUrls) {
+        if (loadBalancer instanceof LoadAwareLoadBalancer) {
+            ((LoadAwareLoadBalancer) loadBalancer).retainServices(serviceUrls);
+        }
+    }
+
     /**
      * Provides a hook so we can wrap a client response handler in a policy such
      * as to reverse the URIs {@link io.fabric8.gateway.handlers.http.policy.ReverseUriPolicy} or
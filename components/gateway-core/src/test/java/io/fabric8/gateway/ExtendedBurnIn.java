@@ -228,6 +228,11 @@ public class ExtendedBurnIn {
                 return mappedServices;
             }
 
+            @Override
+            public long getMappingRulesVersion() {
+                return 0;
+            }
+
             @Override
             public boolean isEnableIndex() {
                 return true;
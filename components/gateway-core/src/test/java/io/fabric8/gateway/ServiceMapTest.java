@@ -0,0 +1,96 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ */
+public class ServiceMapTest {
+
+    protected ServiceMap serviceMap = new ServiceMap();
+
+    @Test
+    public void testServicesAreSnapshots() throws Exception {
+        assertTrue(serviceMap.getServices("broker").isEmpty());
+
+        ServiceDTO a = createService("a", "tcp://localhost:61616");
+        serviceMap.serviceUpdated("broker", a);
+        List<ServiceDetails> snapshot = serviceMap.getServices("broker");
+        assertEquals(Arrays.<ServiceDetails>asList(a), snapshot);
+        assertSame("Lookups should not copy the services", snapshot, serviceMap.getServices("broker"));
+
+        ServiceDTO b = createService("b", "tcp://localhost:61617");
+        serviceMap.serviceUpdated("broker", b);
+        assertEquals(Arrays.<ServiceDetails>asList(a), snapshot);
+        assertEquals(Arrays.<ServiceDetails>asList(a, b), serviceMap.getServices("broker"));
+
+        ServiceDTO updatedA = createService("a", "tcp://localhost:61618");
+        serviceMap.serviceUpdated("broker", updatedA);
+        assertEquals(Arrays.<ServiceDetails>asList(updatedA, b), serviceMap.getServices("broker"));
+
+        // services without any endpoints are ignored
+        serviceMap.serviceUpdated("broker", createService("c"));
+        assertEquals(2, serviceMap.getServices("broker").size());
+    }
+
+    @Test
+    public void testListenersAreNotifiedOfRemovedServices() throws Exception {
+        final List<ServiceDetails> removed = new ArrayList<ServiceDetails>();
+        serviceMap.addListener(new ServiceMap.ServiceMapListener() {
+            @Override
+            public void serviceRemoved(String path, ServiceDetails service) {
+                removed.add(service);
+            }
+        });
+
+        ServiceDTO a = createService("a", "tcp://localhost:61616");
+        ServiceDTO b = createService("b", "tcp://localhost:61617");
+        serviceMap.serviceUpdated("broker", a);
+        serviceMap.serviceUpdated("broker", b);
+
+        // the removal event is typically a different instance with the same id
+        serviceMap.serviceRemoved("broker", createService("a"));
+        assertEquals(Arrays.<ServiceDetails>asList(b), serviceMap.getServices("broker"));
+        assertEquals("Should be notified with the mapped instance", 1, removed.size());
+        assertSame(a, removed.get(0));
+
+        serviceMap.serviceRemoved("broker", createService("unknown"));
+        assertEquals(1, removed.size());
+
+        serviceMap.serviceRemoved("broker", b);
+        assertTrue(serviceMap.getServices("broker").isEmpty());
+        assertTrue(serviceMap.getPaths().isEmpty());
+        assertEquals(2, removed.size());
+    }
+
+    protected static ServiceDTO createService(String id, String... urls) {
+        ServiceDTO answer = new ServiceDTO();
+        answer.setId(id);
+        answer.setVersion("1.0");
+        answer.setContainer("testing");
+        answer.setServices(Arrays.asList(urls));
+        return answer;
+    }
+}
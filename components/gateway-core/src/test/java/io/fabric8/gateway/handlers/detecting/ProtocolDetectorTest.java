@@ -0,0 +1,119 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.detecting;
+
+import io.fabric8.gateway.handlers.detecting.protocol.amqp.AmqpProtocol;
+import io.fabric8.gateway.handlers.detecting.protocol.http.HttpProtocol;
+import io.fabric8.gateway.handlers.detecting.protocol.mqtt.MqttProtocol;
+import io.fabric8.gateway.handlers.detecting.protocol.openwire.OpenwireProtocol;
+import io.fabric8.gateway.handlers.detecting.protocol.ssl.SslProtocol;
+import io.fabric8.gateway.handlers.detecting.protocol.stomp.StompProtocol;
+import org.junit.Test;
+import org.vertx.java.core.buffer.Buffer;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ */
+public class ProtocolDetectorTest {
+
+    protected List<Protocol> protocols = Arrays.<Protocol>asList(
+        new StompProtocol(),
+        new MqttProtocol(),
+        new AmqpProtocol(),
+        new OpenwireProtocol(),
+        new HttpProtocol(),
+        new SslProtocol()
+    );
+
+    protected ProtocolDetector detector = new ProtocolDetector(protocols);
+
+    @Test
+    public void testDetectsEachProtocol() throws Exception {
+        assertDetected("stomp", ascii("CONNECT\naccept-version:1.1\n"));
+        assertDetected("stomp", ascii("STOMP\n"));
+        assertDetected("http", ascii("GET /index.html HTTP/1.1\r\n"));
+        assertDetected("http", ascii("OPTIONS * HTTP/1.1\r\n"));
+        assertDetected("amqp", new Buffer(new byte[]{'A', 'M', 'Q', 'P', 0, 1, 0, 0}));
+        assertDetected("openwire", new Buffer(new byte[]{0, 0, 1, 2, 1}).appendBuffer(OpenwireProtocol.MAGIC).appendBuffer(new Buffer(new byte[]{0, 0, 0, 10})));
+        assertDetected("mqtt", new Buffer(new byte[]{0x10, 12, 0, 4, 'M', 'Q', 'T', 'T', 4, 2, 0, 60}));
+        assertDetected("mqtt", new Buffer(new byte[]{0x10, (byte) 0x81, 1, 0, 6, 'M', 'Q', 'I', 's', 'd', 'p', 3}));
+        assertDetected("ssl", new Buffer(new byte[]{0x16, 3, 1, 0, 100, 1, 0, 0}));
+        assertDetected("ssl", new Buffer(new byte[]{(byte) 0x80, 50, 1, 3, 0, 0, 0}));
+    }
+
+    @Test
+    public void testDetectsAcrossChunks() throws Exception {
+        Buffer header = new Buffer(new byte[]{0x10, 12, 0, 4, 'M', 'Q', 'T', 'T', 4, 2, 0, 60});
+        ProtocolDetector.Detection detection = detector.newDetection();
+        Buffer received = new Buffer();
+        for (int i = 0; i < header.length() - 1; i++) {
+            received.appendByte(header.getByte(i));
+            if (i < 7) {
+                assertNull("Should not have detected a protocol after " + received.length() + " bytes", detection.detect(received));
+            }
+        }
+        assertEquals("mqtt", detection.detect(received).getProtocolName());
+    }
+
+    @Test
+    public void testRejectsUnknownProtocols() throws Exception {
+        ProtocolDetector.Detection detection = detector.newDetection();
+        assertNull(detection.detect(ascii("HELLO WORLD")));
+        assertTrue(detection.isRejected());
+
+        detection = detector.newDetection();
+        assertNull(detection.detect(ascii("CONN")));
+        assertFalse(detection.isRejected());
+    }
+
+    @Test
+    public void testAgreesWithProtocolMatches() throws Exception {
+        Buffer[] headers = {
+            ascii("CONNECT host:80 HTTP/1.1\r\n"),
+            ascii("PUT /foo HTTP/1.1\r\n"),
+            new Buffer(new byte[]{'A', 'M', 'Q', 'P', 3, 1, 0, 0}),
+            new Buffer(new byte[]{0x16, 3, 3, 0, 100, 1, 0, 0}),
+            new Buffer(new byte[]{0x16, 3, 9, 0, 100, 1, 0, 0}),
+            ascii("DISCONNECT\n\n")
+        };
+        for (Buffer header : headers) {
+            Protocol expected = null;
+            for (Protocol protocol : protocols) {
+                if (protocol.matches(header)) {
+                    expected = protocol;
+                    break;
+                }
+            }
+            assertEquals("Protocol for " + header, expected, detector.newDetection().detect(header));
+        }
+    }
+
+    protected void assertDetected(String expectedProtocol, Buffer header) {
+        Protocol protocol = detector.newDetection().detect(header);
+        assertEquals("Protocol detected for " + header, expectedProtocol, protocol != null ? protocol.getProtocolName() : null);
+    }
+
+    protected static Buffer ascii(String value) {
+        return new Buffer(value);
+    }
+}
@@ -0,0 +1,68 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.detecting.protocol.openwire;
+
+import io.fabric8.gateway.handlers.detecting.protocol.openwire.codec.OpenWireFormat;
+import io.fabric8.gateway.handlers.detecting.protocol.openwire.command.WireFormatInfo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.vertx.java.core.buffer.Buffer;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares how long it takes to find the virtual host of a new OpenWire connection by unmarshalling its
+ * {@link WireFormatInfo} with a new {@link OpenWireFormat} (as the gateway used to) and by reading it
+ * through an {@link OpenwireFrame}.
+ * <p/>
+ * Run with <code>mvn -P benchmark test-compile exec:java</code>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OpenwireCodecBenchmark {
+
+    private Buffer frame;
+
+    @Setup
+    public void setUp() throws IOException {
+        frame = OpenwireFrameTest.marshal(OpenwireFrameTest.createWireFormatInfo("broker1"));
+    }
+
+    @Benchmark
+    public String unmarshalCommand() throws IOException {
+        OpenWireFormat format = new OpenWireFormat(1);
+        org.fusesource.hawtbuf.Buffer buffer = new org.fusesource.hawtbuf.Buffer(frame.getBytes());
+        return ((WireFormatInfo) format.unmarshal(buffer)).getHost();
+    }
+
+    @Benchmark
+    public String readFrame() throws IOException {
+        return new OpenwireFrame(frame).getHost();
+    }
+}
@@ -0,0 +1,160 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.detecting.protocol.openwire;
+
+import io.fabric8.gateway.handlers.detecting.protocol.openwire.codec.OpenWireFormat;
+import io.fabric8.gateway.handlers.detecting.protocol.openwire.command.WireFormatInfo;
+import org.junit.Test;
+import org.vertx.java.core.buffer.Buffer;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ */
+public class OpenwireFrameTest {
+
+    @Test
+    public void testReadsTheWireFormatInfoHeader() throws Exception {
+        WireFormatInfo info = createWireFormatInfo("broker1");
+        OpenwireFrame frame = new OpenwireFrame(marshal(info));
+
+        assertTrue(frame.isWireFormatInfo());
+        assertEquals(info.getVersion(), frame.getVersion());
+        assertEquals("broker1", frame.getHost());
+        assertEquals(Boolean.TRUE, frame.getProperty("TightEncodingEnabled"));
+        assertEquals(Long.valueOf(30000), frame.getProperty("MaxInactivityDuration"));
+        assertNull(frame.getProperty("NoSuchProperty"));
+    }
+
+    @Test
+    public void testAgreesWithTheFullCodec() throws Exception {
+        WireFormatInfo info = createWireFormatInfo("broker2");
+        Buffer buffer = marshal(info);
+        OpenwireFrame frame = new OpenwireFrame(buffer);
+
+        WireFormatInfo decoded = (WireFormatInfo) new OpenWireFormat(1).unmarshal(new org.fusesource.hawtbuf.Buffer(buffer.getBytes()));
+        for (Map.Entry<String, Object> entry : decoded.getProperties().entrySet()) {
+            Object expected = entry.getValue();
+            Object actual = frame.getProperty(entry.getKey());
+            if (expected instanceof byte[]) {
+                assertTrue("Property " + entry.getKey(), Arrays.equals((byte[]) expected, (byte[]) actual));
+            } else {
+                assertEquals("Property " + entry.getKey(), expected, actual);
+            }
+        }
+    }
+
+    @Test
+    public void testWithoutProperties() throws Exception {
+        WireFormatInfo info = new WireFormatInfo();
+        info.setVersion(1);
+        OpenwireFrame frame = new OpenwireFrame(marshal(info));
+
+        assertTrue(frame.isWireFormatInfo());
+        assertNull(frame.getHost());
+    }
+
+    @Test(expected = IOException.class)
+    public void testRejectsTruncatedProperties() throws Exception {
+        Buffer buffer = marshal(createWireFormatInfo("broker3"));
+        new OpenwireFrame(buffer.getBuffer(0, buffer.length() - 10)).getHost();
+    }
+
+    @Test
+    public void testRejectsPropertiesWhichOverrunTheirSize() throws Exception {
+        Buffer buffer = marshal(createWireFormatInfo("broker4"));
+        int sizeOffset = 4 + 1 + 8 + 4 + 1;
+        int size = buffer.getInt(sizeOffset);
+        for (int truncated = 0; truncated < size; truncated++) {
+            Buffer copy = buffer.copy();
+            copy.setInt(sizeOffset, truncated);
+            try {
+                new OpenwireFrame(copy).getProperty("NoSuchProperty");
+                fail("Expected an IOException when the properties are truncated to " + truncated + " bytes");
+            } catch (IOException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testRejectsTruncatedPropertiesSize() throws Exception {
+        Buffer buffer = marshal(createWireFormatInfo("broker5"));
+        new OpenwireFrame(buffer.getBuffer(0, 4 + 1 + 8 + 4 + 3)).getHost();
+    }
+
+    @Test(expected = IOException.class)
+    public void testRejectsAHostWhichIsNotAString() throws Exception {
+        WireFormatInfo info = createWireFormatInfo("broker6");
+        info.setProperty("Host", 6);
+        new OpenwireFrame(marshal(info)).getHost();
+    }
+
+    @Test
+    public void testRejectsDeeplyNestedProperties() throws Exception {
+        Map<String, Object> nested = new HashMap<String, Object>();
+        for (int i = 0; i < 100; i++) {
+            Map<String, Object> outer = new HashMap<String, Object>();
+            outer.put("a", i % 2 == 0 ? nested : Arrays.<Object>asList(nested));
+            nested = outer;
+        }
+        WireFormatInfo info = createWireFormatInfo("broker7");
+        info.setProperty("Deep", nested);
+        OpenwireFrame frame = new OpenwireFrame(marshal(info));
+        for (String name : new String[]{"Deep", "NoSuchProperty"}) {
+            try {
+                frame.getProperty(name);
+                fail("Expected an IOException when looking up " + name);
+            } catch (IOException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testOtherCommandsAreNotWireFormatInfo() throws Exception {
+        assertFalse(new OpenwireFrame(new Buffer(new byte[]{0, 0, 0, 1, 0})).isWireFormatInfo());
+    }
+
+    protected static WireFormatInfo createWireFormatInfo(String host) throws IOException {
+        WireFormatInfo info = new WireFormatInfo();
+        info.setVersion(10);
+        info.setProperty("TightEncodingEnabled", Boolean.TRUE);
+        info.setProperty("CacheSize", 1024);
+        info.setProperty("MaxInactivityDuration", 30000L);
+        info.setProperty("Data", new byte[]{1, 2, 3});
+        Map<String, Object> nested = new HashMap<String, Object>();
+        nested.put("a", "b");
+        info.setProperty("Nested", nested);
+        info.setHost(host);
+        info.setProperty("ProviderName", "ActiveMQ");
+        return info;
+    }
+
+    protected static Buffer marshal(WireFormatInfo info) throws IOException {
+        org.fusesource.hawtbuf.Buffer buffer = new OpenWireFormat(1).marshal(info);
+        return new Buffer(buffer.toByteArray());
+    }
+}
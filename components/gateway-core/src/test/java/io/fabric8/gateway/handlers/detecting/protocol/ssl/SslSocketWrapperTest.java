@@ -0,0 +1,696 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.detecting.protocol.ssl;
+
+import io.fabric8.gateway.SocketWrapper;
+import org.junit.Before;
+import org.junit.Test;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.Vertx;
+import org.vertx.java.core.buffer.Buffer;
+import org.vertx.java.core.streams.ReadStream;
+import org.vertx.java.core.streams.WriteStream;
+
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLContextSpi;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLServerSocketFactory;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.security.cert.X509Certificate;
+import java.util.LinkedList;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ */
+public class SslSocketWrapperTest {
+
+    /**
+     * The deliveries between the two ends of the connection, run in order as an event loop would
+     */
+    protected final LinkedList<Runnable> events = new LinkedList<Runnable>();
+
+    /**
+     * The delegated tasks handed to the task executor, which only run when the test says so
+     */
+    protected final LinkedList<Runnable> tasks = new LinkedList<Runnable>();
+    protected final Executor taskExecutor = new Executor() {
+        @Override
+        public void execute(Runnable task) {
+            tasks.add(task);
+        }
+    };
+
+    protected Pipe clientPipe;
+    protected Pipe serverPipe;
+    protected SslSocketWrapper client;
+    protected SslSocketWrapper server;
+    protected StringBuilder received = new StringBuilder();
+    protected Throwable failure;
+    protected SSLContext serverContext;
+    protected SSLContext clientContext;
+
+    @Before
+    public void createContexts() throws Exception {
+        SslConfig sslConfig = new SslConfig(new File(basedir(), "src/test/resources/server.ks"), "password");
+        sslConfig.setKeyPassword("password");
+        // the other key is signed with an algorithm which current JDKs no longer accept
+        sslConfig.setKeyAlias("example");
+        serverContext = sslConfig.createServerContext();
+        clientContext = SSLContext.getInstance("TLS");
+        clientContext.init(null, new TrustManager[]{new TrustingTrustManager()}, null);
+    }
+
+    /**
+     * Connects a client and server over an in memory connection; when the vertx instance is given the
+     * writes of both ends are coalesced until the events queued so far have been run
+     */
+    protected void connect(Vertx vertx) {
+        connect(vertx, null, null);
+    }
+
+    /**
+     * Connects a client and server over an in memory connection, with the server running its delegated tasks
+     * on the given executor and collecting its counters in the given statistics
+     */
+    protected void connect(Vertx vertx, Executor serverTaskExecutor, SslStatistics serverStatistics) {
+        clientPipe = new Pipe();
+        serverPipe = new Pipe();
+        clientPipe.peer = serverPipe;
+        serverPipe.peer = clientPipe;
+        serverPipe.remoteAddress = new InetSocketAddress("127.0.0.1", 50000);
+
+        client = new SslSocketWrapper(clientPipe);
+        client.configure(vertx, null, null);
+        client.initClient(clientContext, "localhost", 61616, null, null);
+        client.dataHandler(new Handler<Buffer>() {
+            @Override
+            public void handle(Buffer data) {
+            }
+        });
+        server = new SslSocketWrapper(serverPipe);
+        server.configure(vertx, serverTaskExecutor, serverStatistics);
+        server.initServer(serverContext, SslSocketWrapper.ClientAuth.NONE, null, null);
+        server.dataHandler(new Handler<Buffer>() {
+            @Override
+            public void handle(Buffer data) {
+                received.append(data.toString());
+            }
+        });
+        Handler<Throwable> exceptionHandler = new Handler<Throwable>() {
+            @Override
+            public void handle(Throwable error) {
+                failure = error;
+            }
+        };
+        client.exceptionHandler(exceptionHandler);
+        server.exceptionHandler(exceptionHandler);
+    }
+
+    @Test
+    public void testWriteThenClose() throws Exception {
+        connect(null);
+        client.handshake();
+        runEvents();
+
+        client.write(new Buffer("hello"));
+        client.write(new Buffer(" world"));
+        client.close();
+        runEvents();
+
+        assertEquals("hello world", received.toString());
+        assertTrue("Transport should have been closed", clientPipe.closed);
+    }
+
+    @Test
+    public void testCoalescedWriteThenClose() throws Exception {
+        connect(eventLoop());
+        client.handshake();
+        runEvents();
+
+        client.write(new Buffer("hello"));
+        client.write(new Buffer(" world"));
+        client.close();
+        runEvents();
+
+        assertEquals("hello world", received.toString());
+        assertTrue("Transport should have been closed", clientPipe.closed);
+    }
+
+    @Test
+    public void testCloseBeforeHandshakeCompletedFlushesWrites() throws Exception {
+        connect(eventLoop());
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            String message = "message:" + i + ";";
+            expected.append(message);
+            client.write(new Buffer(message));
+        }
+        client.close();
+        assertFalse("Transport should not be closed before the data has been sent", clientPipe.closed);
+
+        runEvents();
+        assertEquals(expected.toString(), received.toString());
+        assertTrue("Transport should have been closed", clientPipe.closed);
+    }
+
+    @Test
+    public void testWritesAfterCloseAreIgnored() throws Exception {
+        connect(null);
+        client.handshake();
+        runEvents();
+
+        client.write(new Buffer("hello"));
+        client.close();
+        client.write(new Buffer(" world"));
+        client.close();
+        runEvents();
+
+        assertEquals("hello", received.toString());
+        assertEquals(1, clientPipe.closeCount);
+    }
+
+    @Test
+    public void testDelegatedTasksRunOnTaskExecutorAndResumeOnContext() throws Exception {
+        SslStatistics statistics = new SslStatistics();
+        connect(eventLoop(), taskExecutor, statistics);
+        client.write(new Buffer("hello"));
+        runEvents();
+        assertFalse("The server should wait for its delegated tasks", tasks.isEmpty());
+        assertEquals("No data should be read while the delegated tasks are pending", "", received.toString());
+
+        int taskRuns = 0;
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            taskRuns++;
+            task.run();
+            assertFalse("The handshake should be resumed on the context", events.isEmpty());
+            runEvents();
+        }
+        assertEquals("hello", received.toString());
+        assertTrue(statistics.getDelegatedTasks() >= taskRuns);
+        assertEquals(1, statistics.getHandshakesCompleted());
+        assertEquals(0, statistics.getHandshakesFailed());
+        assertTrue(statistics.getHandshakeRate() > 0);
+    }
+
+    @Test
+    public void testWritesAreCoalescedIntoOneRecord() throws Exception {
+        connect(eventLoop());
+        client.write(new Buffer("handshake;"));
+        runEvents();
+
+        int writes = clientPipe.writeCount;
+        StringBuilder expected = new StringBuilder(received);
+        for (int i = 0; i < 10; i++) {
+            Buffer buffer = new Buffer("message:" + i + ";");
+            expected.append(buffer.toString());
+            client.write(buffer);
+            assertEquals("The caller's buffer should not be modified", "message:" + i + ";", buffer.toString());
+        }
+        runEvents();
+        assertEquals(expected.toString(), received.toString());
+        assertEquals("Should have sent a single record", writes + 1, clientPipe.writeCount);
+    }
+
+    @Test
+    public void testBuffersGrowOnOverflow() throws Exception {
+        final SSLContext realServerContext = serverContext;
+        final SSLContext realClientContext = clientContext;
+        final int[] overflows = new int[1];
+        serverContext = new SmallBuffersContext(realServerContext, overflows);
+        clientContext = new SmallBuffersContext(realClientContext, overflows);
+        connect(eventLoop());
+
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            expected.append("message:").append(i).append(";");
+        }
+        client.write(new Buffer(expected.toString()));
+        runEvents();
+        assertEquals(expected.toString(), received.toString());
+        assertTrue("The engine should have reported the buffers were too small", overflows[0] > 0);
+    }
+
+    @Test
+    public void testReconnectingClientResumesItsSession() throws Exception {
+        SslStatistics statistics = new SslStatistics();
+        handshake(statistics);
+        handshake(statistics);
+
+        assertEquals(2, statistics.getHandshakesCompleted());
+        assertEquals(1, statistics.getFullHandshakes());
+        assertEquals(1, statistics.getResumedHandshakes());
+    }
+
+    @Test
+    public void testReconnectingTls12ClientResumesItsSession() throws Exception {
+        clientContext = SSLContext.getInstance("TLSv1.2");
+        clientContext.init(null, new TrustManager[]{new TrustingTrustManager()}, null);
+        SslStatistics statistics = new SslStatistics();
+        handshake(statistics);
+        handshake(statistics);
+
+        assertEquals(2, statistics.getHandshakesCompleted());
+        assertEquals(1, statistics.getFullHandshakes());
+        assertEquals(1, statistics.getResumedHandshakes());
+    }
+
+    @Test
+    public void testNewClientDoesNotResumeASession() throws Exception {
+        SslStatistics statistics = new SslStatistics();
+        handshake(statistics);
+        clientContext = SSLContext.getInstance("TLS");
+        clientContext.init(null, new TrustManager[]{new TrustingTrustManager()}, null);
+        handshake(statistics);
+
+        assertEquals(2, statistics.getHandshakesCompleted());
+        assertEquals(2, statistics.getFullHandshakes());
+        assertEquals(0, statistics.getResumedHandshakes());
+    }
+
+    /**
+     * Connects a client and completes the handshake, collecting the server counters in the given statistics
+     */
+    protected void handshake(SslStatistics statistics) {
+        connect(eventLoop(), null, statistics);
+        client.write(new Buffer("hello"));
+        runEvents();
+        assertEquals("hello", received.toString());
+        received.setLength(0);
+    }
+
+    protected void runEvents() {
+        Runnable event;
+        while ((event = events.poll()) != null) {
+            event.run();
+        }
+        if (failure != null) {
+            throw new AssertionError("TLS failed: " + failure);
+        }
+    }
+
+    /**
+     * Returns a vertx instance which runs the handlers passed to runOnContext() as events of this test
+     */
+    protected Vertx eventLoop() {
+        return (Vertx) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{Vertx.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getName().equals("runOnContext")) {
+                    final Handler<Void> handler = (Handler<Void>) args[0];
+                    events.add(new Runnable() {
+                        @Override
+                        public void run() {
+                            handler.handle(null);
+                        }
+                    });
+                    return null;
+                }
+                if (method.getName().equals("currentContext")) {
+                    return null;
+                }
+                throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    protected File basedir() {
+        try {
+            File file = new File(getClass().getProtectionDomain().getCodeSource().getLocation().getFile());
+            file = file.getParentFile().getParentFile().getCanonicalFile();
+            if (file.isDirectory()) {
+                return file.getCanonicalFile();
+            } else {
+                return new File(".").getCanonicalFile();
+            }
+        } catch (Throwable e) {
+            return new File(".");
+        }
+    }
+
+    /**
+     * One end of an in memory connection which hands the written buffers to the other end
+     */
+    protected class Pipe extends SocketWrapper implements ReadStream<Pipe>, WriteStream<Pipe> {
+        private Pipe peer;
+        private Handler<Buffer> dataHandler;
+        private Handler<Void> endHandler;
+        private int paused;
+        private final LinkedList<Buffer> pending = new LinkedList<Buffer>();
+        private boolean closed;
+        private int closeCount;
+        private int writeCount;
+        private InetSocketAddress remoteAddress;
+
+        @Override
+        public Pipe write(Buffer data) {
+            writeCount++;
+            final Buffer copy = data.getBuffer(0, data.length());
+            events.add(new Runnable() {
+                @Override
+                public void run() {
+                    peer.pending.add(copy);
+                    peer.deliver();
+                }
+            });
+            return this;
+        }
+
+        @Override
+        public void close() {
+            closeCount++;
+            if (!closed) {
+                closed = true;
+                events.add(new Runnable() {
+                    @Override
+                    public void run() {
+                        Handler<Void> handler = peer.endHandler;
+                        if (handler != null) {
+                            handler.handle(null);
+                        }
+                    }
+                });
+            }
+        }
+
+        protected void deliver() {
+            while (paused <= 0 && dataHandler != null && !pending.isEmpty()) {
+                dataHandler.handle(pending.poll());
+            }
+        }
+
+        @Override
+        public Pipe dataHandler(Handler<Buffer> handler) {
+            dataHandler = handler;
+            deliver();
+            return this;
+        }
+
+        @Override
+        public Pipe pause() {
+            paused++;
+            return this;
+        }
+
+        @Override
+        public Pipe resume() {
+            paused--;
+            deliver();
+            return this;
+        }
+
+        @Override
+        public Pipe endHandler(Handler<Void> handler) {
+            endHandler = handler;
+            return this;
+        }
+
+        @Override
+        public Pipe exceptionHandler(Handler<Throwable> handler) {
+            return this;
+        }
+
+        @Override
+        public Pipe setWriteQueueMaxSize(int maxSize) {
+            return this;
+        }
+
+        @Override
+        public boolean writeQueueFull() {
+            return false;
+        }
+
+        @Override
+        public Pipe drainHandler(Handler<Void> handler) {
+            return this;
+        }
+
+        @Override
+        public ReadStream readStream() {
+            return this;
+        }
+
+        @Override
+        public WriteStream writeStream() {
+            return this;
+        }
+
+        @Override
+        public Object stream() {
+            return this;
+        }
+
+        @Override
+        public InetSocketAddress localAddress() {
+            return null;
+        }
+
+        @Override
+        public InetSocketAddress remoteAddress() {
+            return remoteAddress;
+        }
+    }
+
+    protected static class TrustingTrustManager implements X509TrustManager {
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType) {
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType) {
+        }
+
+        @Override
+        public X509Certificate[] getAcceptedIssuers() {
+            return new X509Certificate[0];
+        }
+    }
+
+    /**
+     * Creates engines whose sessions report buffer sizes too small for a TLS record, so the wrapper has to grow
+     * its buffers when the engine reports an overflow
+     */
+    protected static class SmallBuffersContext extends SSLContext {
+        SmallBuffersContext(final SSLContext context, final int[] overflows) {
+            super(new SSLContextSpi() {
+                @Override
+                protected void engineInit(KeyManager[] km, TrustManager[] tm, SecureRandom sr) {
+                    throw new UnsupportedOperationException();
+                }
+
+                @Override
+                protected SSLSocketFactory engineGetSocketFactory() {
+                    return context.getSocketFactory();
+                }
+
+                @Override
+                protected SSLServerSocketFactory engineGetServerSocketFactory() {
+                    return context.getServerSocketFactory();
+                }
+
+                @Override
+                protected SSLEngine engineCreateSSLEngine() {
+                    return new SmallBuffersEngine(context.createSSLEngine(), overflows);
+                }
+
+                @Override
+                protected SSLEngine engineCreateSSLEngine(String host, int port) {
+                    return new SmallBuffersEngine(context.createSSLEngine(host, port), overflows);
+                }
+
+                @Override
+                protected SSLSessionContext engineGetServerSessionContext() {
+                    return context.getServerSessionContext();
+                }
+
+                @Override
+                protected SSLSessionContext engineGetClientSessionContext() {
+                    return context.getClientSessionContext();
+                }
+            }, context.getProvider(), context.getProtocol());
+        }
+    }
+
+    protected static class SmallBuffersEngine extends SSLEngine {
+        private final SSLEngine engine;
+        private final int[] overflows;
+
+        SmallBuffersEngine(SSLEngine engine, int[] overflows) {
+            super(engine.getPeerHost(), engine.getPeerPort());
+            this.engine = engine;
+            this.overflows = overflows;
+        }
+
+        private SSLEngineResult count(SSLEngineResult result) {
+            if (result.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW) {
+                overflows[0]++;
+            }
+            return result;
+        }
+
+        @Override
+        public SSLEngineResult wrap(ByteBuffer[] srcs, int offset, int length, ByteBuffer dst) throws SSLException {
+            return count(engine.wrap(srcs, offset, length, dst));
+        }
+
+        @Override
+        public SSLEngineResult unwrap(ByteBuffer src, ByteBuffer[] dsts, int offset, int length) throws SSLException {
+            return count(engine.unwrap(src, dsts, offset, length));
+        }
+
+        @Override
+        public SSLSession getSession() {
+            final SSLSession session = engine.getSession();
+            return (SSLSession) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{SSLSession.class}, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    if (method.getName().equals("getApplicationBufferSize") || method.getName().equals("getPacketBufferSize")) {
+                        return 64;
+                    }
+                    try {
+                        return method.invoke(session, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                }
+            });
+        }
+
+        @Override
+        public Runnable getDelegatedTask() {
+            return engine.getDelegatedTask();
+        }
+
+        @Override
+        public void closeInbound() throws SSLException {
+            engine.closeInbound();
+        }
+
+        @Override
+        public boolean isInboundDone() {
+            return engine.isInboundDone();
+        }
+
+        @Override
+        public void closeOutbound() {
+            engine.closeOutbound();
+        }
+
+        @Override
+        public boolean isOutboundDone() {
+            return engine.isOutboundDone();
+        }
+
+        @Override
+        public String[] getSupportedCipherSuites() {
+            return engine.getSupportedCipherSuites();
+        }
+
+        @Override
+        public String[] getEnabledCipherSuites() {
+            return engine.getEnabledCipherSuites();
+        }
+
+        @Override
+        public void setEnabledCipherSuites(String[] suites) {
+            engine.setEnabledCipherSuites(suites);
+        }
+
+        @Override
+        public String[] getSupportedProtocols() {
+            return engine.getSupportedProtocols();
+        }
+
+        @Override
+        public String[] getEnabledProtocols() {
+            return engine.getEnabledProtocols();
+        }
+
+        @Override
+        public void setEnabledProtocols(String[] protocols) {
+            engine.setEnabledProtocols(protocols);
+        }
+
+        @Override
+        public void beginHandshake() throws SSLException {
+            engine.beginHandshake();
+        }
+
+        @Override
+        public SSLEngineResult.HandshakeStatus getHandshakeStatus() {
+            return engine.getHandshakeStatus();
+        }
+
+        @Override
+        public void setUseClientMode(boolean mode) {
+            engine.setUseClientMode(mode);
+        }
+
+        @Override
+        public boolean getUseClientMode() {
+            return engine.getUseClientMode();
+        }
+
+        @Override
+        public void setNeedClientAuth(boolean need) {
+            engine.setNeedClientAuth(need);
+        }
+
+        @Override
+        public boolean getNeedClientAuth() {
+            return engine.getNeedClientAuth();
+        }
+
+        @Override
+        public void setWantClientAuth(boolean want) {
+            engine.setWantClientAuth(want);
+        }
+
+        @Override
+        public boolean getWantClientAuth() {
+            return engine.getWantClientAuth();
+        }
+
+        @Override
+        public void setEnableSessionCreation(boolean flag) {
+            engine.setEnableSessionCreation(flag);
+        }
+
+        @Override
+        public boolean getEnableSessionCreation() {
+            return engine.getEnableSessionCreation();
+        }
+    }
+}
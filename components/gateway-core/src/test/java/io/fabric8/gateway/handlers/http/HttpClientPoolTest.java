@@ -0,0 +1,139 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.http;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.vertx.java.core.Vertx;
+import org.vertx.java.core.VertxFactory;
+
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ */
+public class HttpClientPoolTest {
+
+    protected Vertx vertx;
+    protected HttpClientPool pool;
+
+    @Before
+    public void createPool() {
+        vertx = VertxFactory.newVertx();
+        pool = new HttpClientPool(vertx);
+    }
+
+    @After
+    public void closePool() {
+        pool.close();
+        vertx.stop();
+    }
+
+    @Test
+    public void testClientIsReusedForSameHostAndPort() throws Exception {
+        HttpClientPool.Upstream upstream = pool.getUpstream(new URL("http://localhost:8181/cxf/crm"));
+        assertSame(upstream, pool.getUpstream(new URL("http://localhost:8181/cxf/other")));
+        assertSame(upstream.getClient(), pool.getUpstream(new URL("http://localhost:8181/")).getClient());
+        assertEquals("localhost:8181", upstream.getKey());
+        assertEquals(1, pool.getUpstreamCount());
+
+        assertSame(pool.getUpstream(new URL("http://localhost/")), pool.getUpstream(new URL("http://localhost:80/foo")));
+        assertNotSame(upstream, pool.getUpstream(new URL("http://localhost:8182/cxf/crm")));
+        assertEquals(3, pool.getUpstreamCount());
+    }
+
+    @Test
+    public void testRetainServicesClosesUnmappedUpstreams() throws Exception {
+        HttpClientPool.Upstream kept = pool.getUpstream(new URL("http://localhost:8181/cxf/crm"));
+        pool.getUpstream(new URL("http://localhost:8182/cxf/crm"));
+        assertEquals(2, pool.getUpstreamCount());
+
+        pool.retainServices(Arrays.asList("http://localhost:8181/cxf/other", "not a url"));
+        assertEquals(1, pool.getUpstreamCount());
+        assertSame(kept, pool.getUpstream(new URL("http://localhost:8181/")));
+
+        pool.retainServices(Collections.<String>emptyList());
+        assertEquals(0, pool.getUpstreamCount());
+    }
+
+    @Test
+    public void testIdleClientsAreEvicted() throws Exception {
+        pool.setIdleTimeout(50);
+        HttpClientPool.Upstream upstream = pool.getUpstream(new URL("http://localhost:8181/cxf/crm"));
+
+        pool.evictIdleClients();
+        assertEquals("Recently used client should not be evicted", 1, pool.getUpstreamCount());
+
+        Thread.sleep(100);
+        pool.evictIdleClients();
+        assertEquals(0, pool.getUpstreamCount());
+        assertNotSame(upstream, pool.getUpstream(new URL("http://localhost:8181/cxf/crm")));
+    }
+
+    @Test
+    public void testClientsWithRequestsInFlightAreNotEvicted() throws Exception {
+        pool.setIdleTimeout(50);
+        HttpClientPool.Upstream upstream = pool.getUpstream(new URL("http://localhost:8181/cxf/crm"));
+        upstream.requestStarted();
+        upstream.requestStarted();
+        assertEquals(2, upstream.getInFlight());
+
+        Thread.sleep(100);
+        pool.evictIdleClients();
+        assertEquals(1, pool.getUpstreamCount());
+
+        upstream.requestCompleted();
+        upstream.requestCompleted();
+        assertEquals(0, upstream.getInFlight());
+
+        Thread.sleep(100);
+        pool.evictIdleClients();
+        assertEquals(0, pool.getUpstreamCount());
+    }
+
+    @Test
+    public void testUnmappedClientIsClosedWhenItsLastRequestCompletes() throws Exception {
+        HttpClientPool.Upstream upstream = pool.getUpstream(new URL("http://localhost:8181/cxf/crm"));
+        assertTrue(upstream.requestStarted());
+
+        pool.retainServices(Collections.<String>emptyList());
+        assertEquals(0, pool.getUpstreamCount());
+        assertFalse("Client with a request in flight should not be closed", upstream.isClosed());
+        assertEquals(1, upstream.getInFlight());
+
+        upstream.requestCompleted();
+        assertTrue(upstream.isClosed());
+        assertFalse("Closed client should not accept requests", upstream.requestStarted());
+        assertNotSame(upstream, pool.getUpstream(new URL("http://localhost:8181/cxf/crm")));
+    }
+
+    @Test
+    public void testRemovedIdleClientDoesNotAcceptRequests() throws Exception {
+        HttpClientPool.Upstream upstream = pool.getUpstream(new URL("http://localhost:8181/cxf/crm"));
+        pool.retainServices(Collections.<String>emptyList());
+        assertTrue(upstream.isClosed());
+        assertFalse(upstream.requestStarted());
+        assertEquals(0, upstream.getInFlight());
+    }
+}
@@ -0,0 +1,84 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.http;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ */
+public class HttpGatewayMetricsTest {
+
+    protected String mappingRule = "/cxf/crm";
+    protected String backend = "localhost:8181";
+
+    @Test
+    public void testPercentilesDoNotResetWhenResetOnRead() throws Exception {
+        HttpGatewayMetrics metrics = new HttpGatewayMetrics();
+        metrics.setResetOnRead(true);
+        recordRequests(metrics);
+
+        long p50 = metrics.getMappingRuleResponseTimePercentile(mappingRule, 50);
+        long p99 = metrics.getMappingRuleResponseTimePercentile(mappingRule, 99);
+        assertTrue("p50 should have been recorded but was: " + p50, p50 >= TimeUnit.MILLISECONDS.toNanos(45));
+        assertTrue("p99 should be above p50 but was: " + p99, p99 > p50);
+        assertEquals(p99, metrics.getBackendResponseTimePercentile(backend, 99));
+        assertTrue(metrics.getBackendTimeToFirstBytePercentile(backend, 50) > 0);
+    }
+
+    @Test
+    public void testReportResetsWhenResetOnRead() throws Exception {
+        HttpGatewayMetrics metrics = new HttpGatewayMetrics();
+        metrics.setResetOnRead(true);
+        recordRequests(metrics);
+
+        String[] report = metrics.getMappingRuleLatencies();
+        assertEquals(1, report.length);
+        assertTrue("Report should include all requests: " + report[0], report[0].contains("responseTime[count=100 "));
+        assertTrue("Report should include the failures: " + report[0], report[0].endsWith("failures=1"));
+        assertTrue("Report should include all requests: " + report[0], report[0].contains("timeToFirstByte[count=100 "));
+
+        // the next report only sees the requests since the last one
+        report = metrics.getMappingRuleLatencies();
+        assertTrue("Report should have been reset: " + report[0], report[0].contains("responseTime[count=0 "));
+        assertEquals(0, metrics.getMappingRuleResponseTimePercentile(mappingRule, 99));
+
+        // the backend histograms are only reset by their own report
+        assertTrue(metrics.getBackendResponseTimePercentile(backend, 99) > 0);
+    }
+
+    @Test
+    public void testReportDoesNotResetByDefault() throws Exception {
+        HttpGatewayMetrics metrics = new HttpGatewayMetrics();
+        recordRequests(metrics);
+
+        metrics.getBackendLatencies();
+        String[] report = metrics.getBackendLatencies();
+        assertTrue("Report should include all requests: " + report[0], report[0].contains("responseTime[count=100 "));
+    }
+
+    protected void recordRequests(HttpGatewayMetrics metrics) {
+        for (int i = 1; i <= 100; i++) {
+            long nanos = TimeUnit.MILLISECONDS.toNanos(i);
+            metrics.responseReceived(mappingRule, backend, nanos / 2);
+            metrics.requestCompleted(mappingRule, backend, nanos, i == 100);
+        }
+    }
+}
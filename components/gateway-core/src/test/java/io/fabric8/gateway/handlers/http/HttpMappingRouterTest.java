@@ -0,0 +1,91 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.http;
+
+import io.fabric8.gateway.ServiceDTO;
+import io.fabric8.gateway.loadbalancer.RoundRobinLoadBalancer;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ */
+public class HttpMappingRouterTest {
+
+    protected HttpMappingRouter router = createRouter("/", "/fo", "/foo", "/foo/bar/", "/baz/");
+
+    @Test
+    public void testLongestPrefixMatch() throws Exception {
+        assertMatches("/foo/bar/x", "/foo/bar/", "/foo", "/fo", "/");
+        assertMatches("/foox", "/foo", "/fo", "/");
+        assertMatches("/f", "/");
+    }
+
+    @Test
+    public void testPrefixWithTrailingSlashMatchesUriWithout() throws Exception {
+        assertMatches("/foo/bar", "/foo/bar/", "/foo", "/fo", "/");
+        assertMatches("/baz", "/baz/", "/");
+        assertMatches("", "/");
+    }
+
+    @Test
+    public void testNoMatch() throws Exception {
+        assertNull(router.match("x"));
+        assertNull(router.match(null));
+        assertNull(createRouter().match("/foo"));
+    }
+
+    @Test
+    public void testRouterIsNotAffectedByLaterChanges() throws Exception {
+        Map<String, MappedServices> map = new HashMap<String, MappedServices>();
+        map.put("/foo", createMappedServices("/foo"));
+        HttpMappingRouter snapshot = HttpMappingRouter.compile(map);
+        map.put("/foo/bar", createMappedServices("/foo/bar"));
+
+        assertEquals("/foo", snapshot.match("/foo/bar").getPath());
+        assertEquals(1, snapshot.getMappedServices().size());
+    }
+
+    protected void assertMatches(String uri, String... expectedPaths) {
+        List<String> actual = new ArrayList<String>();
+        for (HttpMappingRouter.Route route = router.match(uri); route != null; route = route.getNextMatch()) {
+            actual.add(route.getPath());
+        }
+        assertEquals("Matches for " + uri, Arrays.asList(expectedPaths), actual);
+    }
+
+    protected HttpMappingRouter createRouter(String... paths) {
+        Map<String, MappedServices> map = new HashMap<String, MappedServices>();
+        for (String path : paths) {
+            map.put(path, createMappedServices(path));
+        }
+        return HttpMappingRouter.compile(map);
+    }
+
+    protected MappedServices createMappedServices(String path) {
+        ServiceDTO serviceDetails = new ServiceDTO();
+        serviceDetails.setContainer("local");
+        serviceDetails.setVersion("1");
+        return new MappedServices("http://localhost:8181" + path, serviceDetails, new RoundRobinLoadBalancer(), false);
+    }
+}
@@ -15,6 +15,8 @@
  */
 package io.fabric8.gateway.loadbalancer;
 
+import io.fabric8.gateway.ServiceDTO;
+import io.fabric8.gateway.ServiceDetails;
 import io.fabric8.gateway.loadbalancer.ClientRequestFacade;
 import io.fabric8.gateway.loadbalancer.LoadBalancer;
 import io.fabric8.gateway.loadbalancer.RandomLoadBalancer;
@@ -27,9 +29,11 @@ import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -102,6 +106,198 @@ public class LoadBalancerTest {
 
     }
 
+    @Test
+    public void testStickyLoadBalancerRebalancesWhenServiceRemoved() throws Exception {
+        StickyLoadBalancer loadBalancer = new StickyLoadBalancer();
+        String first = loadBalancer.choose(services, clientRequestFacade);
+        assertEquals(first, loadBalancer.choose(services, clientRequestFacade));
+        assertEquals(1, loadBalancer.getCacheHits());
+
+        List<String> remaining = new ArrayList<String>(services);
+        remaining.remove(first);
+        String second = loadBalancer.choose(remaining, clientRequestFacade);
+        assertTrue("Should have chosen one of the remaining services but was: " + second, remaining.contains(second));
+        assertEquals(second, loadBalancer.choose(remaining, clientRequestFacade));
+        assertEquals(1, loadBalancer.getRebalances());
+    }
+
+    @Test
+    public void testStickyLoadBalancerKeepsClientWhenServicesAreReplaced() throws Exception {
+        StickyLoadBalancer loadBalancer = new StickyLoadBalancer();
+        List<ServiceDetails> serviceDetails = createServiceDetails();
+        ServiceDetails first = loadBalancer.choose(serviceDetails, clientRequestFacade);
+
+        // the service map replaces the DTOs whenever the services are updated
+        List<ServiceDetails> updated = createServiceDetails();
+        ServiceDetails second = loadBalancer.choose(updated, clientRequestFacade);
+        assertEquals(first.getId(), second.getId());
+        assertSame("Should return the current instance of the service", updated.get(updated.indexOf(first)), second);
+        assertEquals(1, loadBalancer.getCacheHits());
+        assertEquals(0, loadBalancer.getRebalances());
+    }
+
+    protected List<ServiceDetails> createServiceDetails() {
+        List<ServiceDetails> answer = new ArrayList<ServiceDetails>();
+        for (String service : services) {
+            ServiceDTO dto = new ServiceDTO();
+            dto.setId("service:" + service);
+            dto.setServices(Arrays.asList(service));
+            answer.add(dto);
+        }
+        return answer;
+    }
+
+    @Test
+    public void testServicesWithoutIdAreComparedByValue() throws Exception {
+        ServiceDTO first = new ServiceDTO();
+        first.setServices(Arrays.asList(services.get(0)));
+        ServiceDTO second = new ServiceDTO();
+        second.setServices(Arrays.asList(services.get(1)));
+        ServiceDTO copy = new ServiceDTO();
+        copy.setServices(Arrays.asList(services.get(0)));
+        ServiceDTO identified = new ServiceDTO();
+        identified.setId("service:" + services.get(0));
+        identified.setServices(Arrays.asList(services.get(0)));
+
+        assertTrue("Services without an ID should not all be equal", !first.equals(second));
+        assertEquals(first, copy);
+        assertEquals(first.hashCode(), copy.hashCode());
+        assertTrue(!first.equals(identified) && !identified.equals(first));
+
+        StickyLoadBalancer loadBalancer = new StickyLoadBalancer();
+        List<ServiceDTO> anonymous = Arrays.asList(first, second);
+        Set<ServiceDTO> chosen = new HashSet<ServiceDTO>();
+        for (int i = 0; i < 100; i++) {
+            clientRequestKey = "client:" + i;
+            chosen.add(loadBalancer.choose(anonymous, clientRequestFacade));
+        }
+        assertEquals("Should use both services: " + chosen, 2, chosen.size());
+    }
+
+    @Test
+    public void testStickyLoadBalancerCacheIsBounded() throws Exception {
+        int maximumCacheSize = 10;
+        StickyLoadBalancer loadBalancer = new StickyLoadBalancer(maximumCacheSize);
+        for (int i = 0; i < 100; i++) {
+            clientRequestKey = "client:" + i;
+            assertNotNull(loadBalancer.choose(services, clientRequestFacade));
+        }
+        assertTrue("Cache size should be bounded but was: " + loadBalancer.getCacheSize(), loadBalancer.getCacheSize() <= maximumCacheSize);
+        assertEquals(100 - loadBalancer.getCacheSize(), loadBalancer.getCacheEvictions());
+        assertEquals(100, loadBalancer.getCacheMisses());
+    }
+
+    @Test
+    public void testLeastOutstandingRequestsLoadBalancer() throws Exception {
+        LeastOutstandingRequestsLoadBalancer loadBalancer = new LeastOutstandingRequestsLoadBalancer();
+        assertLoadBalancerWorksOnEmptyOrSingletonServices(loadBalancer);
+
+        // with no load recorded the services are used in turn
+        Set<String> set = asSet(performRequests(loadBalancer));
+        assertEquals("Should have all of the values: " + set, services.size(), set.size());
+
+        String busy = services.get(0);
+        for (int i = 0; i < 3; i++) {
+            loadBalancer.requestStarted(busy);
+        }
+        for (int i = 0; i < requestCount; i++) {
+            String service = loadBalancer.choose(services, clientRequestFacade);
+            assertTrue("Should not choose the busy service", !busy.equals(service));
+            loadBalancer.requestStarted(service);
+            loadBalancer.requestCompleted(service);
+        }
+        assertEquals(3, loadBalancer.getServiceLoad(busy).getInFlight());
+    }
+
+    @Test
+    public void testServiceLoadIsKeptWhenServicesAreReplaced() throws Exception {
+        LeastOutstandingRequestsLoadBalancer loadBalancer = new LeastOutstandingRequestsLoadBalancer();
+        List<ServiceDetails> serviceDetails = createServiceDetails();
+        ServiceDetails busy = serviceDetails.get(0);
+        loadBalancer.requestStarted(busy);
+        loadBalancer.requestStarted(busy);
+
+        List<ServiceDetails> updated = createServiceDetails();
+        assertEquals(2, loadBalancer.getServiceLoad(updated.get(0)).getInFlight());
+        loadBalancer.requestCompleted(updated.get(0));
+        assertEquals(1, loadBalancer.getServiceLoad(busy).getInFlight());
+        assertEquals(1, loadBalancer.getServiceLoadCount());
+    }
+
+    @Test
+    public void testServiceLoadIsDiscardedWhenServicesAreRemoved() throws Exception {
+        LeastOutstandingRequestsLoadBalancer loadBalancer = new LeastOutstandingRequestsLoadBalancer();
+        for (String service : services) {
+            loadBalancer.requestStarted(service);
+        }
+        assertEquals(services.size(), loadBalancer.getServiceLoadCount());
+
+        List<String> remaining = services.subList(1, services.size());
+        loadBalancer.retainServices(remaining);
+        assertEquals(remaining.size(), loadBalancer.getServiceLoadCount());
+
+        // completing a request to a removed service must not bring its statistics back
+        loadBalancer.requestCompleted(services.get(0));
+        assertEquals(remaining.size(), loadBalancer.getServiceLoadCount());
+
+        loadBalancer.removeService(remaining.get(0));
+        assertEquals(remaining.size() - 1, loadBalancer.getServiceLoadCount());
+    }
+
+    @Test
+    public void testPeakEwmaLoadBalancer() throws Exception {
+        PeakEwmaLoadBalancer loadBalancer = new PeakEwmaLoadBalancer();
+        assertLoadBalancerWorksOnEmptyOrSingletonServices(loadBalancer);
+
+        String slow = services.get(0);
+        for (String service : services) {
+            long responseTime = service.equals(slow) ? TimeUnit.SECONDS.toNanos(1) : TimeUnit.MILLISECONDS.toNanos(1);
+            loadBalancer.requestStarted(service);
+            loadBalancer.responseReceived(service, responseTime);
+            loadBalancer.requestCompleted(service);
+        }
+        for (int i = 0; i < 100; i++) {
+            String service = loadBalancer.choose(services, clientRequestFacade);
+            assertTrue("Should not choose the slow service", !slow.equals(service));
+        }
+    }
+
+    @Test
+    public void testPeakEwmaLoadBalancerDoesNotFavourNewServices() throws Exception {
+        PeakEwmaLoadBalancer loadBalancer = new PeakEwmaLoadBalancer();
+        List<String> pair = services.subList(0, 2);
+        String known = pair.get(0);
+        loadBalancer.requestStarted(known);
+        loadBalancer.responseReceived(known, TimeUnit.MILLISECONDS.toNanos(1));
+        loadBalancer.requestCompleted(known);
+
+        Set<String> chosen = new HashSet<String>();
+        for (int i = 0; i < 100; i++) {
+            chosen.add(loadBalancer.choose(pair, clientRequestFacade));
+        }
+        assertEquals("Should choose both the known and the new service: " + chosen, 2, chosen.size());
+    }
+
+    @Test
+    public void testChoosingDoesNotKeepServiceLoads() throws Exception {
+        PeakEwmaLoadBalancer peakEwma = new PeakEwmaLoadBalancer();
+        LeastOutstandingRequestsLoadBalancer leastOutstanding = new LeastOutstandingRequestsLoadBalancer();
+        performRequests(peakEwma);
+        performRequests(leastOutstanding);
+        assertEquals(0, peakEwma.getServiceLoadCount());
+        assertEquals(0, leastOutstanding.getServiceLoadCount());
+    }
+
+    @Test
+    public void testResponseTimeAverageDecaysWhileIdle() throws Exception {
+        ServiceLoad load = new ServiceLoad(TimeUnit.MILLISECONDS.toNanos(1));
+        long responseTime = TimeUnit.SECONDS.toNanos(1);
+        load.responseReceived(responseTime);
+        Thread.sleep(20);
+        assertTrue("Should have decayed: " + load, load.getResponseTimeAverage() < responseTime / 2);
+        assertTrue(load.hasResponseTime());
+    }
+
     protected List<String> performRequests(LoadBalancer loadBalancer) {
         List<String> answer = new ArrayList<String>();
         for (int i = 0; i < requestCount; i++) {
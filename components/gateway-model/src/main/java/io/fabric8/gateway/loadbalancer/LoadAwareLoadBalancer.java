@@ -0,0 +1,54 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.loadbalancer;
+
+import java.util.Collection;
+
+/**
+ * A {@link LoadBalancer} which takes the current load of each service into account, so needs to be told
+ * when requests are sent to a service and how long the service takes to respond.
+ * <p/>
+ * For connection oriented protocols a request is the lifetime of a connection and the response time is
+ * the time taken to connect.
+ */
+public interface LoadAwareLoadBalancer extends LoadBalancer {
+
+    /**
+     * Invoked when a request has been sent to the chosen service
+     */
+    public void requestStarted(Object service);
+
+    /**
+     * Invoked when the service has responded to a request after the given number of nanoseconds
+     */
+    public void responseReceived(Object service, long responseTimeNanos);
+
+    /**
+     * Invoked when a request to the service has completed or failed
+     */
+    public void requestCompleted(Object service);
+
+    /**
+     * Invoked when the service is no longer available so that its statistics can be discarded
+     */
+    public void removeService(Object service);
+
+    /**
+     * Discards the statistics of any service which is not one of the given available services
+     */
+    public void retainServices(Collection<?> services);
+
+}
@@ -0,0 +1,108 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.loadbalancer;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A base class for {@link LoadAwareLoadBalancer} implementations which keeps the {@link ServiceLoad} of each service
+ * <p/>
+ * The statistics are keyed by the service itself, so services must implement equals() and hashCode() using a
+ * stable identity such as their ID or URL; then a service which is replaced by an equal instance keeps its load.
+ */
+public abstract class LoadAwareLoadBalancerSupport implements LoadAwareLoadBalancer {
+    public static final long DEFAULT_DECAY_TIME = TimeUnit.SECONDS.toMillis(10);
+
+    private final ConcurrentMap<Object, ServiceLoad> serviceLoads = new ConcurrentHashMap<Object, ServiceLoad>();
+    private final long decayTimeNanos;
+
+    protected LoadAwareLoadBalancerSupport() {
+        this(DEFAULT_DECAY_TIME);
+    }
+
+    /**
+     * @param decayTime the number of milliseconds over which response times decay in the moving average
+     */
+    protected LoadAwareLoadBalancerSupport(long decayTime) {
+        this.decayTimeNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, decayTime));
+    }
+
+    @Override
+    public void requestStarted(Object service) {
+        getServiceLoad(service).requestStarted();
+    }
+
+    @Override
+    public void responseReceived(Object service, long responseTimeNanos) {
+        getServiceLoad(service).responseReceived(responseTimeNanos);
+    }
+
+    @Override
+    public void requestCompleted(Object service) {
+        ServiceLoad load = serviceLoads.get(service);
+        if (load != null) {
+            load.requestCompleted();
+        }
+    }
+
+    /**
+     * Returns the load statistics of the given service
+     */
+    public ServiceLoad getServiceLoad(Object service) {
+        ServiceLoad answer = serviceLoads.get(service);
+        if (answer == null) {
+            answer = new ServiceLoad(decayTimeNanos);
+            ServiceLoad old = serviceLoads.putIfAbsent(service, answer);
+            if (old != null) {
+                answer = old;
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * Returns the load statistics of the given service without keeping statistics for it if there are none yet;
+     * to be used when choosing between services so that only the services requests are sent to are tracked
+     */
+    protected ServiceLoad peekServiceLoad(Object service) {
+        ServiceLoad answer = serviceLoads.get(service);
+        return answer != null ? answer : new ServiceLoad(decayTimeNanos);
+    }
+
+    @Override
+    public void removeService(Object service) {
+        serviceLoads.remove(service);
+    }
+
+    @Override
+    public void retainServices(Collection<?> services) {
+        serviceLoads.keySet().retainAll(services);
+    }
+
+    /**
+     * Returns the number of services which statistics are kept for
+     */
+    public int getServiceLoadCount() {
+        return serviceLoads.size();
+    }
+
+    public long getDecayTime() {
+        return TimeUnit.NANOSECONDS.toMillis(decayTimeNanos);
+    }
+}
@@ -0,0 +1,71 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.loadbalancer;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A latency aware load balancer which picks two services at random and chooses the one with the lower cost,
+ * where the cost is the peak EWMA of the response times of the service scaled by its requests in flight
+ * (see {@link ServiceLoad#getCost(double)}). A service which has not responded yet is assumed to be as fast as
+ * the one it is compared with, so new services are tried without being favoured over every other service.
+ * <p/>
+ * Picking the better of two random choices avoids every client piling onto the single fastest service
+ * while still steering traffic away from slow ones.
+ */
+public class PeakEwmaLoadBalancer extends LoadAwareLoadBalancerSupport {
+    private final Random random = new Random();
+
+    public PeakEwmaLoadBalancer() {
+    }
+
+    /**
+     * @param decayTime the number of milliseconds over which response times decay in the moving average
+     */
+    public PeakEwmaLoadBalancer(long decayTime) {
+        super(decayTime);
+    }
+
+    @Override
+    public String toString() {
+        return "PeakEwmaLoadBalancer{" +
+                "decayTime=" + getDecayTime() +
+                '}';
+    }
+
+    @Override
+    public <T> T choose(List<T> services, ClientRequestFacade requestFacade) {
+        int size = services.size();
+        if (size == 0) {
+            return null;
+        } else if (size == 1) {
+            return services.get(0);
+        }
+        int first = random.nextInt(size);
+        int second = random.nextInt(size - 1);
+        if (second >= first) {
+            second++;
+        }
+        T a = services.get(first);
+        T b = services.get(second);
+        ServiceLoad loadA = peekServiceLoad(a);
+        ServiceLoad loadB = peekServiceLoad(b);
+        double costA = loadA.getCost(loadB.getResponseTimeAverage());
+        double costB = loadB.getCost(loadA.getResponseTimeAverage());
+        return costA <= costB ? a : b;
+    }
+}
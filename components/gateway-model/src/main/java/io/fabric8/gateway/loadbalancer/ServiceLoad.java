@@ -0,0 +1,126 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.loadbalancer;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The load statistics of a single service; the number of requests in flight and the peak exponentially
+ * weighted moving average of its response times.
+ * <p/>
+ * The peak EWMA jumps straight up to a response time which is higher than the average so slow services are
+ * penalised immediately, then decays over the decay time; towards the observed response times as responses are
+ * received and towards zero while the service is idle, so a service which was slow is eventually retried.
+ */
+public class ServiceLoad {
+    private final long decayTimeNanos;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicReference<Sample> sample = new AtomicReference<Sample>();
+
+    public ServiceLoad(long decayTimeNanos) {
+        this.decayTimeNanos = decayTimeNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "ServiceLoad{" +
+                "inFlight=" + inFlight +
+                ", responseTimeAverage=" + getResponseTimeAverage() +
+                '}';
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public void requestStarted() {
+        inFlight.incrementAndGet();
+    }
+
+    public void requestCompleted() {
+        // guard against a completion without a start, such as after the statistics were reset
+        int current;
+        do {
+            current = inFlight.get();
+            if (current <= 0) {
+                return;
+            }
+        } while (!inFlight.compareAndSet(current, current - 1));
+    }
+
+    public void responseReceived(long responseTimeNanos) {
+        long now = System.nanoTime();
+        Sample current;
+        double average;
+        do {
+            current = sample.get();
+            if (current == null || responseTimeNanos > current.average) {
+                average = responseTimeNanos;
+            } else {
+                double weight = current.weight(now, decayTimeNanos);
+                average = current.average * weight + responseTimeNanos * (1.0 - weight);
+            }
+        } while (!sample.compareAndSet(current, new Sample(average, now)));
+    }
+
+    /**
+     * Returns true if a response time has been received from this service
+     */
+    public boolean hasResponseTime() {
+        return sample.get() != null;
+    }
+
+    /**
+     * Returns the moving average of the response times in nanoseconds, decayed by the time since the last
+     * response, or zero if no response has been received
+     */
+    public double getResponseTimeAverage() {
+        Sample current = sample.get();
+        if (current == null) {
+            return 0;
+        }
+        return current.average * current.weight(System.nanoTime(), decayTimeNanos);
+    }
+
+    /**
+     * Returns the expected cost of sending one more request to this service; the average response time in
+     * nanoseconds scaled by the number of requests which would be in flight.
+     *
+     * @param defaultResponseTimeNanos the response time to assume until a response has been received, such as the
+     *                                 average of the services this one is compared with
+     */
+    public double getCost(double defaultResponseTimeNanos) {
+        int requests = inFlight.get() + 1;
+        double average = hasResponseTime() ? getResponseTimeAverage() : defaultResponseTimeNanos;
+        // never less than a nanosecond so the requests in flight still count when nothing is known yet
+        return Math.max(average, 1.0) * requests;
+    }
+
+    private static final class Sample {
+        private final double average;
+        private final long time;
+
+        Sample(double average, long time) {
+            this.average = average;
+            this.time = time;
+        }
+
+        double weight(long now, long decayTimeNanos) {
+            return Math.exp(-Math.max(0, now - time) / (double) decayTimeNanos);
+        }
+    }
+}
@@ -15,19 +15,34 @@
  */
 package io.fabric8.gateway.loadbalancer;
 
-import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Implements a sticky load balancer where a unique client ID String is requested from the
  * {@link ClientRequestFacade} and used to keep track of which
  * service was used last time and to use that if its possible and keep a cache of requests to
+ * <p/>
+ * The cache is a concurrent map so lookups do not lock; its size is bounded using the CLOCK
+ * (second chance) algorithm which approximates LRU eviction. Entries can optionally expire after a
+ * time to live. If the cached service is no longer one of the available services the client is
+ * balanced onto a new service; services are compared using equals() so a service which has been
+ * replaced by an equal instance keeps its clients.
  */
 public class StickyLoadBalancer implements LoadBalancer {
     private final LoadBalancer firstRequestLoadBalancer;
     private final int maximumCacheSize;
-    private final Map<String, Object> requestCache;
+    private final long timeToLive;
+    private final ConcurrentHashMap<String, CacheEntry> requestCache = new ConcurrentHashMap<String, CacheEntry>();
+    private final ConcurrentLinkedQueue<CacheEntry> clock = new ConcurrentLinkedQueue<CacheEntry>();
+    private final AtomicInteger clockSize = new AtomicInteger();
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong cacheMisses = new AtomicLong();
+    private final AtomicLong cacheEvictions = new AtomicLong();
+    private final AtomicLong rebalances = new AtomicLong();
 
     public StickyLoadBalancer() {
         this(LoadBalancers.STICKY_LOAD_BALANCER_DEFAULT_CACHE_SIZE);
@@ -38,35 +53,59 @@ public class StickyLoadBalancer implements LoadBalancer {
     }
 
     public StickyLoadBalancer(int maximumCacheSize, LoadBalancer firstRequestLoadBalancer) {
+        this(maximumCacheSize, 0, firstRequestLoadBalancer);
+    }
+
+    /**
+     * @param maximumCacheSize         the maximum number of client keys to remember
+     * @param timeToLive               the number of milliseconds a client stays bound to a service or 0 to never expire
+     * @param firstRequestLoadBalancer the load balancer used to choose the service for a new client
+     */
+    public StickyLoadBalancer(int maximumCacheSize, long timeToLive, LoadBalancer firstRequestLoadBalancer) {
         this.firstRequestLoadBalancer = firstRequestLoadBalancer;
         this.maximumCacheSize = maximumCacheSize;
-        this.requestCache = new LinkedHashMap(maximumCacheSize + 1, .75F, true) {
-            // This method is called just after a new entry has been added
-            public boolean removeEldestEntry(Map.Entry eldest) {
-                return size() > StickyLoadBalancer.this.maximumCacheSize;
-            }
-        };
+        this.timeToLive = timeToLive;
     }
 
     @Override
     public String toString() {
         return "StickyLoadBalancer{" +
                 "maximumCacheSize=" + maximumCacheSize +
+                ", timeToLive=" + timeToLive +
                 '}';
     }
 
     @Override
     public <T> T choose(List<T> services, ClientRequestFacade requestFacade) {
         String clientKey = requestFacade.getClientRequestKey();
-        T answer;
-        synchronized (requestCache) {
-            answer = (T) requestCache.get(clientKey);
-            if (answer == null) {
-                answer = firstRequestLoadBalancer.choose(services, requestFacade);
-                if (answer != null) {
-                    requestCache.put(clientKey, answer);
+        CacheEntry entry = requestCache.get(clientKey);
+        if (entry != null) {
+            T service = findService(entry, services);
+            if (service != null) {
+                entry.touch();
+                cacheHits.incrementAndGet();
+                return service;
+            }
+            // the service has gone away or the binding expired so lets choose again
+            requestCache.remove(clientKey, entry);
+            rebalances.incrementAndGet();
+        }
+        cacheMisses.incrementAndGet();
+        T answer = firstRequestLoadBalancer.choose(services, requestFacade);
+        if (answer != null) {
+            CacheEntry newEntry = new CacheEntry(clientKey, answer, expiryTime());
+            CacheEntry oldEntry = requestCache.putIfAbsent(clientKey, newEntry);
+            if (oldEntry != null) {
+                T service = findService(oldEntry, services);
+                if (service != null) {
+                    // another thread bound the client first so lets stick with its choice
+                    return service;
                 }
+                requestCache.put(clientKey, newEntry);
             }
+            clock.offer(newEntry);
+            clockSize.incrementAndGet();
+            evictIfRequired();
         }
         return answer;
     }
@@ -75,8 +114,110 @@ public class StickyLoadBalancer implements LoadBalancer {
      * Clears the cache of request client IDs to the bound service
      */
     public void flush() {
-        synchronized (requestCache) {
-            requestCache.clear();
+        requestCache.clear();
+        clock.clear();
+        clockSize.set(0);
+    }
+
+    public int getMaximumCacheSize() {
+        return maximumCacheSize;
+    }
+
+    public long getTimeToLive() {
+        return timeToLive;
+    }
+
+    public int getCacheSize() {
+        return requestCache.size();
+    }
+
+    /**
+     * Returns the number of requests for a client which was bound to an available service
+     */
+    public long getCacheHits() {
+        return cacheHits.get();
+    }
+
+    /**
+     * Returns the number of requests which had to choose a service for the client
+     */
+    public long getCacheMisses() {
+        return cacheMisses.get();
+    }
+
+    /**
+     * Returns the number of client bindings removed to keep the cache within its maximum size
+     */
+    public long getCacheEvictions() {
+        return cacheEvictions.get();
+    }
+
+    /**
+     * Returns the number of clients which were balanced onto a new service as their service was no longer
+     * available or their binding expired
+     */
+    public long getRebalances() {
+        return rebalances.get();
+    }
+
+    /**
+     * Returns the current instance of the service the entry is bound to or null if the service is no longer
+     * available or the binding has expired
+     */
+    protected <T> T findService(CacheEntry entry, List<T> services) {
+        if (entry.expiryTime > 0 && entry.expiryTime < System.currentTimeMillis()) {
+            return null;
+        }
+        int idx = services.indexOf(entry.service);
+        return idx >= 0 ? services.get(idx) : null;
+    }
+
+    protected long expiryTime() {
+        return timeToLive > 0 ? System.currentTimeMillis() + timeToLive : 0;
+    }
+
+    /**
+     * Moves the clock hand over the entries giving recently used entries a second chance and
+     * removing the first one which has not been used since the hand last passed it
+     */
+    protected void evictIfRequired() {
+        while (clockSize.get() > maximumCacheSize) {
+            CacheEntry entry = clock.poll();
+            if (entry == null) {
+                return;
+            }
+            clockSize.decrementAndGet();
+            if (requestCache.get(entry.clientKey) != entry) {
+                // already replaced or removed
+                continue;
+            }
+            if (entry.referenced) {
+                entry.referenced = false;
+                clock.offer(entry);
+                clockSize.incrementAndGet();
+            } else if (requestCache.remove(entry.clientKey, entry)) {
+                cacheEvictions.incrementAndGet();
+            }
+        }
+    }
+
+    static final class CacheEntry {
+        final String clientKey;
+        final Object service;
+        final long expiryTime;
+        volatile boolean referenced;
+
+        CacheEntry(String clientKey, Object service, long expiryTime) {
+            this.clientKey = clientKey;
+            this.service = service;
+            this.expiryTime = expiryTime;
+        }
+
+        void touch() {
+            // avoid writing to the shared entry on every hit
+            if (!referenced) {
+                referenced = true;
+            }
         }
     }
 }
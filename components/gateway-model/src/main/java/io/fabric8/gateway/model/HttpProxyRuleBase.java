@@ -15,6 +15,8 @@
  */
 package io.fabric8.gateway.model;
 
+import io.fabric8.gateway.support.UriTemplateTrie;
+
 import java.util.HashMap;
 import java.util.Map;
 
@@ -22,16 +24,46 @@ import java.util.Map;
  * Represents a collection of HTTP proxy mapping rules.
  * <p/>
  * These can be created via a Java DSL and XML DSL (JAXB) or loaded from a database.
+ * <p/>
+ * The rules are compiled into a {@link UriTemplateTrie} on first use and recompiled once a rule is put into or
+ * removed from the map of rules. If a rule is changed in place, such as its URI template, or through the views
+ * of the map then {@link #mappingRulesChanged()} should be invoked.
  */
 public class HttpProxyRuleBase {
-    private Map<String, HttpProxyRule> mappingRules = new HashMap<String, HttpProxyRule>();
+    private MappingRules mappingRules = new MappingRules();
+    private volatile CompiledRules compiledRules;
 
     public Map<String, HttpProxyRule> getMappingRules() {
         return mappingRules;
     }
 
+    /**
+     * Replaces the mapping rules with a copy of the given rules
+     */
     public void setMappingRules(Map<String, HttpProxyRule> mappingRules) {
-        this.mappingRules = mappingRules;
+        this.mappingRules = new MappingRules(mappingRules);
+        mappingRulesChanged();
+    }
+
+    /**
+     * Returns the trie of the current mapping rules, recompiling it if the rules have changed
+     */
+    public UriTemplateTrie getUriTemplateTrie() {
+        CompiledRules answer = compiledRules;
+        MappingRules rules = mappingRules;
+        // lets also detect rules which were put into or removed from the map directly
+        if (answer == null || answer.rules != rules || answer.modifications != rules.modifications) {
+            answer = new CompiledRules(rules);
+            compiledRules = answer;
+        }
+        return answer.trie;
+    }
+
+    /**
+     * Discards the compiled mapping rules so they are recompiled on next use
+     */
+    public void mappingRulesChanged() {
+        compiledRules = null;
     }
 
     /**
@@ -45,4 +77,55 @@ public class HttpProxyRuleBase {
         }
         return answer;
     }
+
+    /**
+     * The map of rules, which counts the rules put into or removed from it
+     */
+    private static class MappingRules extends HashMap<String, HttpProxyRule> {
+        private volatile int modifications;
+
+        MappingRules() {
+        }
+
+        MappingRules(Map<String, HttpProxyRule> rules) {
+            super(rules);
+        }
+
+        @Override
+        public HttpProxyRule put(String key, HttpProxyRule value) {
+            modifications++;
+            return super.put(key, value);
+        }
+
+        @Override
+        public void putAll(Map<? extends String, ? extends HttpProxyRule> rules) {
+            modifications++;
+            super.putAll(rules);
+        }
+
+        @Override
+        public HttpProxyRule remove(Object key) {
+            modifications++;
+            return super.remove(key);
+        }
+
+        @Override
+        public void clear() {
+            modifications++;
+            super.clear();
+        }
+    }
+
+    private static class CompiledRules {
+        private final MappingRules rules;
+        private final int modifications;
+        private final UriTemplateTrie trie;
+
+        CompiledRules(MappingRules rules) {
+            // read before the rules, so a modification made while compiling causes another compilation
+            this.modifications = rules.modifications;
+            this.rules = rules;
+            this.trie = new UriTemplateTrie(rules.values());
+        }
+    }
 }
@@ -76,7 +76,11 @@ public class UriTemplateDefinition {
      * from the {@link #getUriTemplate()} value.
      */
     public UriTemplate getUriTemplateObject() {
-        uriTemplateReference.compareAndSet(null, new UriTemplate(getUriTemplate()));
-        return uriTemplateReference.get();
+        UriTemplate answer = uriTemplateReference.get();
+        if (answer == null) {
+            uriTemplateReference.compareAndSet(null, new UriTemplate(getUriTemplate()));
+            answer = uriTemplateReference.get();
+        }
+        return answer;
     }
 }
@@ -15,7 +15,6 @@
  */
 package io.fabric8.gateway.support;
 
-import io.fabric8.gateway.model.HttpProxyRule;
 import io.fabric8.gateway.model.HttpProxyRuleBase;
 
 /**
@@ -26,15 +25,7 @@ public class MappingRuleResolver {
 
     public MappingResult findMappingRule(String requestURI) {
         String[] paths = Paths.splitPaths(requestURI);
-        MappingResult answer = null;
-        // TODO we could build a path based tree to do more efficient matching?
-        for (HttpProxyRule mappingRule : mappingRules.getMappingRules().values()) {
-            answer = mappingRule.matches(paths);
-            if (answer != null) {
-                break;
-            }
-        }
-        return answer;
+        return mappingRules.getUriTemplateTrie().findMappingRule(paths);
     }
 
     public HttpProxyRuleBase getMappingRules() {
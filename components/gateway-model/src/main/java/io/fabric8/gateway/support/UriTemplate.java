@@ -20,64 +20,89 @@ import io.fabric8.gateway.model.HttpProxyRule;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
  * Simple helper class for URI templates.
+ * <p/>
+ * The template is parsed once into its path segments, for matching, and into the literal text between
+ * its parameters, so that binding the parameters is a single pass over the template.
  */
 public class UriTemplate {
     private static final Pattern PATTERN = Pattern.compile("\\{([^/]+?)\\}");
     private final String[] paths;
-    private List<String> parameters = new ArrayList<String>();
+    /**
+     * The parameter name of each path segment which is a wildcard or null if the segment is a literal
+     */
+    private final String[] wildcards;
+    /**
+     * The literal text before each parameter, with the text after the last parameter at the end
+     */
+    private final String[] fragments;
+    private final List<String> parameters = new ArrayList<String>();
+    private final Set<String> parameterNames;
     private String path;
 
     public UriTemplate(String path) {
         this.path = path;
         this.paths = Paths.splitPaths(path);
-        Matcher matcher = PATTERN.matcher(path);
+        this.wildcards = new String[paths.length];
+        for (int i = 0; i < paths.length; i++) {
+            String pathSegment = paths[i];
+            if (pathSegment != null && pathSegment.startsWith("{") && pathSegment.endsWith("}")) {
+                // we are a wildcard so lets expose the parameter value
+                wildcards[i] = pathSegment.substring(1, pathSegment.length() - 1);
+            }
+        }
 
+        List<String> fragmentList = new ArrayList<String>();
+        Matcher matcher = PATTERN.matcher(path);
+        int last = 0;
         while (matcher.find()) {
             parameters.add(matcher.group(1));
+            fragmentList.add(path.substring(last, matcher.start()));
+            last = matcher.end();
         }
+        fragmentList.add(path.substring(last));
+        this.fragments = fragmentList.toArray(new String[fragmentList.size()]);
+        this.parameterNames = new HashSet<String>(parameters);
     }
 
     public MappingResult matches(String[] requestUriPaths, HttpProxyRule proxyRule) {
         int actualLength = requestUriPaths.length;
-        int processedPaths = 0;
-        boolean joinedPath = false;
-        Map<String, String> parameterNameValues = new HashMap<String, String>();
-        for (int lastIndex = paths.length - 1; processedPaths <= lastIndex; processedPaths++) {
-            String actualSegment = null;
-            if (processedPaths < actualLength) {
-                actualSegment = requestUriPaths[processedPaths];
-            }
-            if (actualSegment == null) {
+        int lastIndex = paths.length - 1;
+        if (actualLength < paths.length || (actualLength > paths.length && (lastIndex < 0 || wildcards[lastIndex] == null))) {
+            return null;
+        }
+        for (int i = 0; i <= lastIndex; i++) {
+            if (wildcards[i] == null && (requestUriPaths[i] == null || !requestUriPaths[i].equals(paths[i]))) {
                 return null;
             }
-            String parameterName = getWildcardParameterName(processedPaths);
+        }
+        return new MappingResult(bindParameters(requestUriPaths), requestUriPaths, proxyRule);
+    }
+
+    /**
+     * Returns the values of the wildcard segments of a request URI which is known to match this template
+     */
+    protected Map<String, String> bindParameters(String[] requestUriPaths) {
+        Map<String, String> parameterNameValues = new HashMap<String, String>();
+        int lastIndex = paths.length - 1;
+        for (int i = 0; i <= lastIndex; i++) {
+            String parameterName = wildcards[i];
             if (parameterName != null) {
-                if (processedPaths == lastIndex) {
-                    actualSegment = joinPath(processedPaths, requestUriPaths);
-                    joinedPath = true;
-                }
+                String actualSegment = i == lastIndex ? joinPath(i, requestUriPaths) : requestUriPaths[i];
                 parameterNameValues.put(parameterName, actualSegment);
-            } else {
-                String pathSegment = paths[processedPaths];
-                if (pathSegment == null || !actualSegment.equals(pathSegment)) {
-                    return null;
-                }
             }
         }
-        if (!joinedPath && processedPaths < actualLength) {
-            return null;
-        }
-        return new MappingResult(parameterNameValues, requestUriPaths, proxyRule);
+        return parameterNameValues;
     }
 
-
     public List<String> getParameterNames() {
         return Collections.unmodifiableList(parameters);
     }
@@ -114,48 +139,62 @@ public class UriTemplate {
             throw new IllegalArgumentException("Parameters mismatch. Path template contains " + parameters.size()
                     + " parameters, " + params.size() + " was given");
         }
-
-        String localPath = path;
-
-        for (Map.Entry<String, String> entry : params.entrySet()) {
-            String key = entry.getKey();
-            String value = entry.getValue();
-            if (!parameters.contains(key)) {
+        for (String key : params.keySet()) {
+            if (!parameterNames.contains(key)) {
                 throw new IllegalArgumentException("Unknown parameter " + key);
             }
-            localPath = replace(localPath, key, value);
         }
-        return localPath;
+        return bind(params, true);
     }
 
     /**
      * Like {@link #bindByName(java.util.Map)} but this method silently ignores any unnecessary parameters that are passed in.
      */
     public String bindByNameNonStrict(Map<String, String> params) {
-        String localPath = path;
-        for (String key : parameters) {
+        return bind(params, false);
+    }
+
+    /**
+     * Appends the literal text and parameter values of the template in order; missing parameters are
+     * either an error or left as they are in the template
+     */
+    protected String bind(Map<String, String> params, boolean strict) {
+        if (parameters.isEmpty()) {
+            return path;
+        }
+        StringBuilder builder = new StringBuilder(path.length() + 32);
+        for (int i = 0, size = parameters.size(); i < size; i++) {
+            builder.append(fragments[i]);
+            String key = parameters.get(i);
             String value = params.get(key);
-            if (value != null) {
-                localPath = replace(localPath, key, value);
+            if (value == null) {
+                if (strict) {
+                    throw new IllegalStateException("Parameter " + key + " is null.");
+                }
+                builder.append('{').append(key).append('}');
+            } else {
+                builder.append(value);
             }
         }
-        return localPath;
+        builder.append(fragments[parameters.size()]);
+        return builder.toString();
     }
 
+    /**
+     * Returns the path segments of the template
+     */
+    protected String[] getPaths() {
+        return paths;
+    }
 
     /**
      * Returns the wildcard parameter name for the given path index if its a wildcard otherwise return null if it is not a wildcard
      */
     protected String getWildcardParameterName(int pathIndex) {
-        String parameterName = null;
-        if (pathIndex >= 0 && pathIndex < paths.length) {
-            String pathSegment = paths[pathIndex];
-            if (pathSegment != null && pathSegment.startsWith("{") && pathSegment.endsWith("}")) {
-                // we are a wildcard so lets expose the parameter value
-                parameterName = pathSegment.substring(1, pathSegment.length() - 1);
-            }
+        if (pathIndex >= 0 && pathIndex < wildcards.length) {
+            return wildcards[pathIndex];
         }
-        return parameterName;
+        return null;
     }
 
     /**
@@ -181,11 +220,4 @@ public class UriTemplate {
         }
     }
 
-    protected String replace(String text, String key, String value) {
-        if (value == null) {
-            throw new IllegalStateException("Parameter " + key + " is null.");
-        }
-        return text.replace("{" + key + "}", value);
-    }
-
 }
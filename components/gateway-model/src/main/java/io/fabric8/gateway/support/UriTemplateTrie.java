@@ -0,0 +1,139 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.support;
+
+import io.fabric8.gateway.model.HttpProxyRule;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The URI templates of a collection of {@link HttpProxyRule}s compiled into a trie of path segments, so that
+ * the rule matching a request URI is found by walking down the segments of the URI rather than by trying
+ * every rule in turn.
+ * <p/>
+ * Each node has a child for each literal segment and a single wildcard child shared by all the templates
+ * with a parameter at that position. Literal segments are preferred to wildcards, and a template which
+ * matches the whole URI is preferred to one whose trailing parameter matches the rest of the URI.
+ */
+public class UriTemplateTrie {
+    private static final transient Logger LOG = LoggerFactory.getLogger(UriTemplateTrie.class);
+
+    private final Node root = new Node();
+    private final int size;
+
+    public UriTemplateTrie(Collection<HttpProxyRule> rules) {
+        int count = 0;
+        for (HttpProxyRule rule : rules) {
+            UriTemplate template = rule.getUriTemplate() != null ? rule.getUriTemplateObject() : null;
+            if (template == null) {
+                LOG.warn("Ignoring mapping rule without a URI template: " + rule);
+                continue;
+            }
+            String[] paths = template.getPaths();
+            Node node = root;
+            for (int i = 0; i < paths.length; i++) {
+                node = template.getWildcardParameterName(i) != null ? node.wildcardChild() : node.literalChild(paths[i]);
+            }
+            if (node.rule == null) {
+                node.rule = rule;
+                count++;
+            }
+            if (paths.length > 0 && template.getWildcardParameterName(paths.length - 1) != null && node.trailingRule == null) {
+                node.trailingRule = rule;
+            }
+        }
+        this.size = count;
+    }
+
+    /**
+     * Returns the mapping of the first rule which matches the given request URI paths or null if none match
+     */
+    public MappingResult findMappingRule(String[] requestUriPaths) {
+        HttpProxyRule rule = find(root, requestUriPaths, 0);
+        if (rule == null) {
+            return null;
+        }
+        return new MappingResult(rule.getUriTemplateObject().bindParameters(requestUriPaths), requestUriPaths, rule);
+    }
+
+    /**
+     * Returns the number of distinct URI templates in the trie
+     */
+    public int size() {
+        return size;
+    }
+
+    protected HttpProxyRule find(Node node, String[] paths, int index) {
+        if (index == paths.length) {
+            return node.rule;
+        }
+        if (node.literals != null) {
+            Node child = node.literals.get(paths[index]);
+            if (child != null) {
+                HttpProxyRule answer = find(child, paths, index + 1);
+                if (answer != null) {
+                    return answer;
+                }
+            }
+        }
+        Node wildcard = node.wildcard;
+        if (wildcard != null) {
+            HttpProxyRule answer = find(wildcard, paths, index + 1);
+            if (answer == null && index < paths.length - 1) {
+                // the trailing parameter of a template matches the rest of the URI
+                answer = wildcard.trailingRule;
+            }
+            return answer;
+        }
+        return null;
+    }
+
+    protected static class Node {
+        private Map<String, Node> literals;
+        private Node wildcard;
+        /**
+         * The rule whose template ends at this node
+         */
+        private HttpProxyRule rule;
+        /**
+         * The rule whose template ends with a parameter at this node
+         */
+        private HttpProxyRule trailingRule;
+
+        Node literalChild(String segment) {
+            if (literals == null) {
+                literals = new HashMap<String, Node>();
+            }
+            Node answer = literals.get(segment);
+            if (answer == null) {
+                answer = new Node();
+                literals.put(segment, answer);
+            }
+            return answer;
+        }
+
+        Node wildcardChild() {
+            if (wildcard == null) {
+                wildcard = new Node();
+            }
+            return wildcard;
+        }
+    }
+}
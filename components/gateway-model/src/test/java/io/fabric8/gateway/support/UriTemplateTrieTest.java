@@ -0,0 +1,129 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.support;
+
+import io.fabric8.gateway.model.HttpProxyRule;
+import io.fabric8.gateway.model.HttpProxyRuleBase;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ */
+public class UriTemplateTrieTest {
+
+    protected HttpProxyRuleBase ruleBase = new HttpProxyRuleBase();
+
+    @Test
+    public void testPrefersLiteralSegments() throws Exception {
+        ruleBase.rule("/members/{id}");
+        ruleBase.rule("/members/search");
+        ruleBase.rule("/members/{id}/address");
+        ruleBase.rule("/files/{path}");
+        ruleBase.rule("/");
+
+        assertMatch("/members/search", "/members/search");
+        assertMatch("/members/{id}", "/members/1234", "id", "1234");
+        assertMatch("/members/{id}/address", "/members/1234/address", "id", "1234");
+        assertMatch("/files/{path}", "/files/a/b/c.txt", "path", "a/b/c.txt");
+        assertMatch("/", "/");
+        assertNull(ruleBase.getUriTemplateTrie().findMappingRule(Paths.splitPaths("/members")));
+        // a trailing parameter matches the rest of the URI when no longer template matches
+        assertMatch("/members/{id}", "/members/1234/phone", "id", "1234/phone");
+    }
+
+    @Test
+    public void testAgreesWithMatchingEachRule() throws Exception {
+        ruleBase.rule("/members");
+        ruleBase.rule("/members/{id}");
+        ruleBase.rule("/foo/{path}");
+        ruleBase.rule("/customers/{customerId}/address/{addressId}");
+        String[] requestUris = {
+            "/members", "/members/1", "/members/1/2", "/foo", "/foo/bar", "/foo/bar/baz",
+            "/customers/c1/address/a1", "/customers/c1/address/a1/extra", "/customers/c1/phone/a1", "/other"
+        };
+        for (String requestUri : requestUris) {
+            String[] paths = Paths.splitPaths(requestUri);
+            MappingResult expected = null;
+            for (HttpProxyRule rule : ruleBase.getMappingRules().values()) {
+                expected = rule.matches(paths);
+                if (expected != null) {
+                    break;
+                }
+            }
+            MappingResult actual = ruleBase.getUriTemplateTrie().findMappingRule(paths);
+            if (expected == null) {
+                assertNull("Should not match " + requestUri, actual);
+            } else {
+                assertNotNull("Should match " + requestUri, actual);
+                assertEquals(expected.getProxyRule(), actual.getProxyRule());
+                assertEquals(expected.getParameterNameValues(), actual.getParameterNameValues());
+            }
+        }
+    }
+
+    @Test
+    public void testRecompilesWhenRulesChange() throws Exception {
+        assertNull(ruleBase.getUriTemplateTrie().findMappingRule(Paths.splitPaths("/a/b")));
+        ruleBase.rule("/a/{b}");
+        assertMatch("/a/{b}", "/a/b", "b", "b");
+
+        Map<String, HttpProxyRule> rules = new HashMap<String, HttpProxyRule>();
+        rules.put("/c", new HttpProxyRule("/c"));
+        ruleBase.setMappingRules(rules);
+        assertNull(ruleBase.getUriTemplateTrie().findMappingRule(Paths.splitPaths("/a/b")));
+
+        ruleBase.getMappingRules().put("/d", new HttpProxyRule("/d"));
+        assertMatch("/d", "/d");
+
+        // a rule replaced under the same key leaves the number of rules unchanged
+        HttpProxyRule replacement = new HttpProxyRule("/d");
+        ruleBase.getMappingRules().put("/d", replacement);
+        assertSame(replacement, ruleBase.getUriTemplateTrie().findMappingRule(Paths.splitPaths("/d")).getProxyRule());
+
+        ruleBase.getMappingRules().remove("/d");
+        assertNull(ruleBase.getUriTemplateTrie().findMappingRule(Paths.splitPaths("/d")));
+    }
+
+    @Test
+    public void testBindsOutputTemplates() throws Exception {
+        UriTemplate template = new UriTemplate("http://another.com/addresses/{addressId}/customer/{id}?q={id}");
+        Map<String, String> params = new HashMap<String, String>();
+        params.put("id", "c1");
+        params.put("addressId", "{id}");
+        assertEquals("http://another.com/addresses/{id}/customer/c1?q=c1", template.bindByNameNonStrict(params));
+        params.remove("addressId");
+        assertEquals("http://another.com/addresses/{addressId}/customer/c1?q=c1", template.bindByNameNonStrict(params));
+        assertEquals("http://foo.com/rest/members/10001", new UriTemplate("http://foo.com/rest/members/{id}").bindByPosition("10001"));
+    }
+
+    protected void assertMatch(String expectedTemplate, String requestUri, String... parameterNameValues) {
+        MappingResult result = ruleBase.getUriTemplateTrie().findMappingRule(Paths.splitPaths(requestUri));
+        assertNotNull("Should match " + requestUri, result);
+        assertEquals("Template matching " + requestUri, expectedTemplate, result.getProxyRule().getUriTemplate().getUriTemplate());
+        Map<String, String> expected = new HashMap<String, String>();
+        for (int i = 0; i < parameterNameValues.length; i += 2) {
+            expected.put(parameterNameValues[i], parameterNameValues[i + 1]);
+        }
+        assertEquals(expected, result.getParameterNameValues());
+    }
+}
@@ -93,6 +93,10 @@ public class ProxyDetails {
         return stringProxyURL;
     }
 
+    /**
+     * @deprecated the {@link ProxyServlet} now uses a single pooled client; see {@link ProxyServlet#getHttpClient()}
+     */
+    @Deprecated
     public HttpClient createHttpClient(HttpMethod httpMethodProxyRequest) {
         HttpClient client = new HttpClient();
         return client;
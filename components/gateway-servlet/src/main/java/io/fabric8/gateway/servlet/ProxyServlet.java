@@ -28,10 +28,12 @@ import org.apache.commons.httpclient.Header;
 import org.apache.commons.httpclient.HttpClient;
 import org.apache.commons.httpclient.HttpMethod;
 import org.apache.commons.httpclient.HttpStatus;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
 import org.apache.commons.httpclient.NameValuePair;
 import org.apache.commons.httpclient.methods.DeleteMethod;
 import org.apache.commons.httpclient.methods.EntityEnclosingMethod;
 import org.apache.commons.httpclient.methods.GetMethod;
+import org.apache.commons.httpclient.methods.InputStreamRequestEntity;
 import org.apache.commons.httpclient.methods.OptionsMethod;
 import org.apache.commons.httpclient.methods.PostMethod;
 import org.apache.commons.httpclient.methods.PutMethod;
@@ -42,6 +44,7 @@ import org.apache.commons.httpclient.methods.multipart.FilePart;
 import org.apache.commons.httpclient.methods.multipart.MultipartRequestEntity;
 import org.apache.commons.httpclient.methods.multipart.Part;
 import org.apache.commons.httpclient.methods.multipart.StringPart;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
 import org.apache.commons.httpclient.protocol.Protocol;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -51,7 +54,6 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -63,6 +65,14 @@ import java.util.Map;
 
 /**
  * Based on code from http://edwardstx.net/2010/06/http-proxy-servlet/
+ * <p/>
+ * Requests are proxied using a single {@link HttpClient} with a pool of keep-alive connections to the back end
+ * services. The size of the pool can be configured with the <code>maxConnectionsPerHost</code> and
+ * <code>maxTotalConnections</code> init parameters.
+ * <p/>
+ * When the <code>streaming</code> init parameter is true the bodies of POST and PUT requests are piped straight
+ * from the servlet input stream to the back end service, rather than being parsed into form parameters or
+ * multipart file items and rebuilt.
  */
 public abstract class ProxyServlet extends HttpServlet {
     private static final transient Logger LOG = LoggerFactory.getLogger(ProxyServlet.class);
@@ -97,6 +107,18 @@ public abstract class ProxyServlet extends HttpServlet {
      */
     private static final File FILE_UPLOAD_TEMP_DIRECTORY = new File(System.getProperty("java.io.tmpdir"));
 
+    /**
+     * The default maximum number of pooled connections to each back end host
+     */
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 20;
+
+    /**
+     * The default maximum number of pooled connections to all the back end hosts
+     */
+    public static final int DEFAULT_MAX_TOTAL_CONNECTIONS = 200;
+
+    private static final int STREAM_BUFFER_SIZE = 8 * 1024;
+
     private HttpMappingRuleResolver resolver = new HttpMappingRuleResolver();
 
     /**
@@ -104,6 +126,10 @@ public abstract class ProxyServlet extends HttpServlet {
      */
     private int intMaxFileUploadSize = 5 * 1024 * 1024;
 
+    private boolean streaming;
+    private MultiThreadedHttpConnectionManager connectionManager;
+    private HttpClient httpClient;
+
     /**
      * Initialize the <code>ProxyServlet</code>
      *
@@ -116,6 +142,26 @@ public abstract class ProxyServlet extends HttpServlet {
         resolver.setMappingRules(ruleBase);
         Protocol.registerProtocol("http", new Protocol("http", new NonBindingSocketFactory(), 80));
         Protocol.registerProtocol("https", new Protocol("https", new NonBindingSocketFactory(), 443));
+
+        streaming = Boolean.parseBoolean(config.getInitParameter("streaming"));
+        connectionManager = new MultiThreadedHttpConnectionManager();
+        HttpConnectionManagerParams params = connectionManager.getParams();
+        params.setDefaultMaxConnectionsPerHost(getIntInitParameter(config, "maxConnectionsPerHost", DEFAULT_MAX_CONNECTIONS_PER_HOST));
+        params.setMaxTotalConnections(getIntInitParameter(config, "maxTotalConnections", DEFAULT_MAX_TOTAL_CONNECTIONS));
+        httpClient = new HttpClient(connectionManager);
+    }
+
+    /**
+     * Closes the pooled connections to the back end services
+     */
+    @Override
+    public void destroy() {
+        if (connectionManager != null) {
+            connectionManager.shutdown();
+            connectionManager = null;
+        }
+        httpClient = null;
+        super.destroy();
     }
 
     /**
@@ -169,7 +215,9 @@ public abstract class ProxyServlet extends HttpServlet {
             // Forward the request headers
             setProxyRequestHeaders(proxyDetails, httpServletRequest, postMethodProxyRequest);
             // Check if this is a mulitpart (file upload) POST
-            if (ServletFileUpload.isMultipartContent(httpServletRequest)) {
+            if (isStreaming()) {
+                this.handleStreamingEntity(postMethodProxyRequest, httpServletRequest);
+            } else if (ServletFileUpload.isMultipartContent(httpServletRequest)) {
                 this.handleMultipartPost(postMethodProxyRequest, httpServletRequest);
             } else {
                 this.handleEntity(postMethodProxyRequest, httpServletRequest);
@@ -197,7 +245,9 @@ public abstract class ProxyServlet extends HttpServlet {
         } else {
             PutMethod putMethodProxyRequest = new PutMethod(proxyDetails.getStringProxyURL());
             setProxyRequestHeaders(proxyDetails, httpServletRequest, putMethodProxyRequest);
-            if (ServletFileUpload.isMultipartContent(httpServletRequest)) {
+            if (isStreaming()) {
+                handleStreamingEntity(putMethodProxyRequest, httpServletRequest);
+            } else if (ServletFileUpload.isMultipartContent(httpServletRequest)) {
                 handleMultipartPost(putMethodProxyRequest, httpServletRequest);
             } else {
                 handleEntity(putMethodProxyRequest, httpServletRequest);
@@ -325,6 +375,23 @@ public abstract class ProxyServlet extends HttpServlet {
         }
     }
 
+    /**
+     * Sets up the given {@link EntityEnclosingMethod} to stream the body of the given
+     * {@link javax.servlet.http.HttpServletRequest} as is; the original content type, including any multipart
+     * boundary, is kept so the body does not need to be parsed. The body is sent chunked if its length is not known.
+     *
+     * @param entityEnclosingMethod The {@link EntityEnclosingMethod} that we are
+     *                               configuring to stream the request body
+     * @param httpServletRequest     The {@link javax.servlet.http.HttpServletRequest} whose body is streamed
+     */
+    private void handleStreamingEntity(EntityEnclosingMethod entityEnclosingMethod, HttpServletRequest httpServletRequest) throws IOException {
+        entityEnclosingMethod.setRequestEntity(new InputStreamRequestEntity(
+                httpServletRequest.getInputStream(),
+                httpServletRequest.getContentLength(),
+                httpServletRequest.getContentType()
+        ));
+    }
+
     /**
      * Sets up the given {@link PostMethod} to send the same standard
      * data as was sent in the given {@link javax.servlet.http.HttpServletRequest}
@@ -391,11 +458,21 @@ public abstract class ProxyServlet extends HttpServlet {
         httpMethodProxyRequest.setDoAuthentication(false);
         httpMethodProxyRequest.setFollowRedirects(false);
 
-        // Create a default HttpClient
-        HttpClient httpClient = proxyDetails.createHttpClient(httpMethodProxyRequest);
+        try {
+            doExecuteProxyRequest(proxyDetails, httpMethodProxyRequest, httpServletRequest, httpServletResponse);
+        } finally {
+            // lets return the connection to the pool
+            httpMethodProxyRequest.releaseConnection();
+        }
+    }
 
-        // Execute the request
-        int intProxyResponseCode = httpClient.executeMethod(httpMethodProxyRequest);
+    private void doExecuteProxyRequest(
+            ProxyDetails proxyDetails, HttpMethod httpMethodProxyRequest,
+            HttpServletRequest httpServletRequest,
+            HttpServletResponse httpServletResponse)
+            throws IOException, ServletException {
+        // Execute the request using the pooled HttpClient
+        int intProxyResponseCode = getHttpClient().executeMethod(httpMethodProxyRequest);
 
         // Check if the proxy response is a redirect
         // The following code is adapted from org.tigris.noodle.filters.CheckForRedirect
@@ -462,11 +539,13 @@ public abstract class ProxyServlet extends HttpServlet {
         if (!noData) {
             // Send the content to the client
             InputStream inputStreamProxyResponse = httpMethodProxyRequest.getResponseBodyAsStream();
-            BufferedInputStream bufferedInputStream = new BufferedInputStream(inputStreamProxyResponse);
-            OutputStream outputStreamClientResponse = httpServletResponse.getOutputStream();
-            int intNextByte;
-            while ((intNextByte = bufferedInputStream.read()) != -1) {
-                outputStreamClientResponse.write(intNextByte);
+            if (inputStreamProxyResponse != null) {
+                OutputStream outputStreamClientResponse = httpServletResponse.getOutputStream();
+                byte[] buffer = new byte[STREAM_BUFFER_SIZE];
+                int count;
+                while ((count = inputStreamProxyResponse.read(buffer)) != -1) {
+                    outputStreamClientResponse.write(buffer, 0, count);
+                }
             }
         }
     }
@@ -480,6 +559,36 @@ public abstract class ProxyServlet extends HttpServlet {
         return resolver;
     }
 
+    /**
+     * Returns the client used to proxy requests, which pools the connections to the back end services
+     */
+    public HttpClient getHttpClient() {
+        if (httpClient == null) {
+            throw new IllegalStateException("The proxy servlet has not been initialised");
+        }
+        return httpClient;
+    }
+
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+    }
+
+    private static int getIntInitParameter(ServletConfig config, String name, int defaultValue) throws ServletException {
+        String value = config.getInitParameter(name);
+        if (value == null || value.trim().length() == 0) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new ServletException("Invalid value for init parameter " + name + ": " + value, e);
+        }
+    }
+
     /**
      * Retrieves all of the headers from the servlet request and sets them on
      * the proxy request
@@ -21,6 +21,8 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.recipes.cache.TreeCache;
+import org.apache.zookeeper.KeeperException;
 
 import io.fabric8.zookeeper.internal.SimplePathTemplate;
 
@@ -32,6 +34,7 @@ import java.util.Properties;
 import java.util.regex.Pattern;
 
 import static io.fabric8.zookeeper.utils.ZooKeeperUtils.exists;
+import static io.fabric8.zookeeper.utils.ZooKeeperUtils.getByteData;
 import static io.fabric8.zookeeper.utils.ZooKeeperUtils.getStringData;
 import static io.fabric8.zookeeper.utils.ZooKeeperUtils.setData;
 
@@ -196,14 +199,33 @@ public enum ZkPath {
      */
     public static byte[] loadURL(CuratorFramework curator, String url) throws Exception {
         URI uri = new URI(url);
-        String ref = uri.getFragment();
+        String path = getURLPath(uri);
+        return getURLData(path, uri.getFragment(), curator.getData().forPath(path));
+    }
+
+    /**
+     * Loads a zoo keeper URL content from the nodes mirrored by the provided cache.
+     */
+    public static byte[] loadURL(TreeCache cache, String url) throws Exception {
+        URI uri = new URI(url);
+        String path = getURLPath(uri);
+        byte rc [] = getByteData(cache, path);
+        if( rc==null ) {
+            throw new KeeperException.NoNodeException(path);
+        }
+        return getURLData(path, uri.getFragment(), rc);
+    }
+
+    private static String getURLPath(URI uri) {
         String path = uri.getSchemeSpecificPart();
         path = path.trim();
         if( !path.startsWith("/") ) {
             path = ZkPath.CONTAINER.getPath(path);
         }
+        return path;
+    }
 
-        byte rc [] = curator.getData().forPath(path);
+    private static byte[] getURLData(String path, String ref, byte[] rc) throws Exception {
         if( ref!=null ) {
             if( path.endsWith(".properties") ) {
                 Properties properties = new Properties();
@@ -271,6 +271,15 @@ public final class ZooKeeperUtils {
         curator.delete().forPath(path);
     }
 
+    /**
+     * Returns true if the node exists, looking it up in the cached children of its parent so that nodes which
+     * do not exist are not queried for every time either
+     */
+    public static boolean exists(TreeCache cache, String path) throws Exception {
+        ZKPaths.PathAndNode pathAndNode = ZKPaths.getPathAndNode(path);
+        return cache.getChildrenNames(pathAndNode.getPath()).contains(pathAndNode.getNode());
+    }
+
     public static Stat exists(CuratorFramework curator, String path) throws Exception {
         return curator.checkExists().forPath(path);
     }
@@ -379,6 +388,40 @@ public final class ZooKeeperUtils {
         return null;
     }
 
+    public static String getSubstitutedPath(final TreeCache cache, String path) throws Exception {
+        String normalized = path != null && path.contains("#") ? path.substring(0, path.lastIndexOf('#')) : path;
+        if (normalized != null && exists(cache, normalized)) {
+            byte[] data = ZkPath.loadURL(cache, path);
+            if (data != null && data.length > 0) {
+                return getSubstitutedData(cache, new String(data, UTF_8));
+            }
+        }
+        return null;
+    }
+
+    public static String getSubstitutedData(final TreeCache cache, String data) throws URISyntaxException {
+        if (data == null) {
+            return null;
+        }
+        Map<String, String> props = new HashMap<String, String>();
+        props.put("data", data);
+
+        InterpolationHelper.performSubstitution(props, new InterpolationHelper.SubstitutionCallback() {
+            @Override
+            public String getValue(String key) {
+                if (key.startsWith("zk:")) {
+                    try {
+                        return new String(ZkPath.loadURL(cache, key), UTF_8);
+                    } catch (Exception e) {
+                        //ignore and just return null.
+                    }
+                }
+                return null;
+            }
+        });
+        return props.get("data");
+    }
+
     public static String getSubstitutedData(final CuratorFramework curator, String data) throws URISyntaxException {
         if (data == null) {
             return null;
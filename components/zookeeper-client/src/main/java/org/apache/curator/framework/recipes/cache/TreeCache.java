@@ -489,6 +489,27 @@ public class TreeCache implements Closeable
         return false;
     }
 
+    /**
+     * Marks the cached data of the node and the children list of its parent as stale, so that the next read
+     * of either loads them again. Writers use this to read their own writes without waiting for the watch
+     * events.
+     *
+     * @param fullPath the path of the node which was written
+     */
+    public void invalidate(String fullPath)
+    {
+        TreeData data = currentData.getIfPresent(fullPath);
+        if ( data != null )
+        {
+            data.invalidate();
+        }
+        TreeData parentData = currentData.getIfPresent(ZKPaths.getPathAndNode(fullPath).getPath());
+        if ( parentData != null )
+        {
+            parentData.invalidate();
+        }
+    }
+
     /**
      * Clear out current data and begin a new query on the path
      *
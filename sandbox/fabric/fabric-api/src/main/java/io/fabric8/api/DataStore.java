@@ -18,6 +18,7 @@ package io.fabric8.api;
 import java.io.IOException;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * The Zookeeper based data store
@@ -34,6 +35,11 @@ public interface DataStore {
     //
 
     void fireChangeNotifications();
+
+    /**
+     * Notifies the callbacks that only the given profiles changed, see {@link ProfileChangeCallback}
+     */
+    void fireProfileChangeNotifications(Map<String, Set<String>> changedProfiles);
     
     void trackConfiguration(Runnable callback);
     void untrackConfiguration(Runnable callback);
@@ -48,6 +54,12 @@ public interface DataStore {
 
     String getContainerParent(String containerId);
 
+    /**
+     * Gets the parent of every container in one call.
+     * @return The parent id keyed by container id, or an empty string for containers without a parent.
+     */
+    Map<String, String> getContainerParents();
+
     void deleteContainer(FabricService fabricService, String containerId);
 
     void createContainerConfig(CreateContainerOptions options);
@@ -66,6 +78,15 @@ public interface DataStore {
 
     void setContainerProfiles(String containerId, List<String> profileIds);
 
+    /**
+     * Gets the containers which have the given profile assigned directly, without reading the profiles of
+     * every container.
+     * @param versionId The version of the containers, or null for containers of any version.
+     * @param profileId The id of the profile.
+     * @return The ids of the containers.
+     */
+    List<String> getProfileContainers(String versionId, String profileId);
+
     boolean isContainerAlive(String id);
 
     void setContainerAlive(String id, boolean flag);
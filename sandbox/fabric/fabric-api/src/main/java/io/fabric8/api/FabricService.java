@@ -52,6 +52,12 @@ public interface FabricService {
      */
     Container[] getContainers();
 
+    /**
+     * Finds the {@link Container}s which have the specified profile assigned directly.
+     * @param versionId The version of the containers, or null for containers of any version.
+     * @param profileId The id of the profile.
+     * @return An array of @{link Container}s
+     */
     Container[] getAssociatedContainers(String versionId, String profileId);
     
     /**
@@ -0,0 +1,35 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.api;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A configuration callback which is told which profiles changed.
+ * <p/>
+ * Callbacks registered with {@link DataStore#trackConfiguration(Runnable)} are run on every change. When a
+ * change is known to only touch some profiles, callbacks implementing this interface are passed the ids of
+ * those profiles instead so they can skip changes to profiles they do not use.
+ */
+public interface ProfileChangeCallback extends Runnable {
+
+    /**
+     * Called instead of {@link #run()} when only the given profiles changed.
+     * @param changedProfiles The ids of the changed profiles keyed by their version id.
+     */
+    void profilesChanged(Map<String, Set<String>> changedProfiles);
+}
@@ -230,8 +230,10 @@ public final class AutoScaleController extends AbstractComponent implements Grou
         Integer minimumInstances = profileRequirement.getMinimumInstances();
         Integer maximumInstances = profileRequirement.getMaximumInstances();
         if (maximumInstances != null || minimumInstances != null) {
+            // only look at the containers of the profile rather than loading the profiles of every container
+            Container[] profileContainers = service.getAssociatedContainers(null, profile);
             if (maximumInstances != null) {
-                List<Container> containers = Containers.aliveAndSuccessfulContainersForProfile(profile, service);
+                List<Container> containers = Containers.aliveAndSuccessfulContainersForProfile(profile, profileContainers);
                 int count = containers.size();
                 int delta = count - maximumInstances;
                 if (delta > 0) {
@@ -240,7 +242,7 @@ public final class AutoScaleController extends AbstractComponent implements Grou
             }
             if (minimumInstances != null) {
                 // lets check if we need to provision more
-                List<Container> containers = Containers.aliveOrPendingContainersForProfile(profile, service);
+                List<Container> containers = Containers.aliveOrPendingContainersForProfile(profile, profileContainers);
                 int count = containers.size();
                 int delta = minimumInstances - count;
                 try {
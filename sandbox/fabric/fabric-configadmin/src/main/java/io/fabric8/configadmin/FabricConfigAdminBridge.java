@@ -19,7 +19,10 @@ import io.fabric8.api.Constants;
 import io.fabric8.api.Container;
 import io.fabric8.api.FabricService;
 import io.fabric8.api.Profile;
+import io.fabric8.api.ProfileChangeCallback;
+import io.fabric8.api.ProfileService;
 import io.fabric8.api.Profiles;
+import io.fabric8.api.Version;
 import io.fabric8.api.jcip.ThreadSafe;
 import io.fabric8.api.scr.AbstractComponent;
 import io.fabric8.api.scr.ValidatingReference;
@@ -28,9 +31,11 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Dictionary;
 import java.util.Enumeration;
+import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
@@ -49,7 +54,7 @@ import org.slf4j.LoggerFactory;
 
 @ThreadSafe
 @Component(name = "io.fabric8.configadmin.bridge", label = "Fabric8 Config Admin Bridge", metatype = false)
-public final class FabricConfigAdminBridge extends AbstractComponent implements Runnable {
+public final class FabricConfigAdminBridge extends AbstractComponent implements ProfileChangeCallback {
 
     public static final String FABRIC_ZOOKEEPER_PID = "fabric.zookeeper.pid";
     /**
@@ -97,12 +102,25 @@ public final class FabricConfigAdminBridge extends AbstractComponent implements
         submitUpdateJob();
     }
 
+    @Override
+    public void profilesChanged(Map<String, Set<String>> changedProfiles) {
+        submitUpdateJob(changedProfiles);
+    }
+
     private void submitUpdateJob() {
+        submitUpdateJob(null);
+    }
+
+    private void submitUpdateJob(final Map<String, Set<String>> changedProfiles) {
         executor.submit(new Runnable() {
             @Override
             public void run() {
                 if (isValid()) {
                     try {
+                        if (changedProfiles != null && !isCurrentContainerAffected(changedProfiles)) {
+                            LOGGER.debug("Ignoring changes to profiles {} not used by the current container", changedProfiles);
+                            return;
+                        }
                         updateInternal();
                     } catch (Throwable th) {
                         if (isValid()) {
@@ -116,6 +134,40 @@ public final class FabricConfigAdminBridge extends AbstractComponent implements
         });
     }
 
+    /**
+     * Returns true if one of the changed profiles is a profile of the current container or one of their parents
+     */
+    private boolean isCurrentContainerAffected(Map<String, Set<String>> changedProfiles) {
+        Container currentContainer = fabricService.get().getCurrentContainer();
+        if (currentContainer == null) {
+            return true;
+        }
+        String versionId = currentContainer.getVersionId();
+        Set<String> changed = changedProfiles.get(versionId);
+        if (changed == null) {
+            return false;
+        }
+        Version version = fabricService.get().adapt(ProfileService.class).getVersion(versionId);
+        if (version == null) {
+            return true;
+        }
+        Set<String> visited = new HashSet<String>();
+        List<String> pending = new ArrayList<String>(currentContainer.getProfileIds());
+        while (!pending.isEmpty()) {
+            String profileId = pending.remove(pending.size() - 1);
+            if (changed.contains(profileId)) {
+                return true;
+            }
+            if (visited.add(profileId)) {
+                Profile profile = version.getProfile(profileId);
+                if (profile != null) {
+                    pending.addAll(profile.getParentIds());
+                }
+            }
+        }
+        return false;
+    }
+
     private synchronized void updateInternal() throws Exception {
         
         Container currentContainer = fabricService.get().getCurrentContainer();
@@ -0,0 +1,212 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.internal;
+
+import io.fabric8.api.Profile;
+import io.fabric8.api.ProfileChangeCallback;
+import io.fabric8.api.Version;
+import io.fabric8.api.jcip.ThreadSafe;
+import io.fabric8.api.jmx.OverlayProfileCacheMBean;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+/**
+ * A cache of the overlay profiles computed by the {@link ProfileServiceImpl}.
+ * <p/>
+ * Overlays are keyed by the version id and revision, the profile id and the environment. An overlay is only
+ * returned for the profile it was computed from, so a profile which was modified without being stored still
+ * gets its own overlay. As an overlay depends on all the parents of its profile, every overlay of a version
+ * is dropped when any profile of the version changes.
+ * <p/>
+ * The change notifications are delivered asynchronously and a parent may change without the revision of the
+ * version changing (such as a profile inherited from the master branch), so an overlay is also only returned
+ * while every ancestor in the current version is still equal to the one it was computed from.
+ */
+@ThreadSafe
+final class OverlayProfileCache implements ProfileChangeCallback, OverlayProfileCacheMBean {
+
+    static final ObjectName OBJECT_NAME;
+    static {
+        try {
+            OBJECT_NAME = new ObjectName("io.fabric8:type=OverlayProfileCache");
+        } catch (MalformedObjectNameException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private final ConcurrentMap<OverlayKey, CachedOverlay> overlays = new ConcurrentHashMap<>();
+    // incremented on every invalidation so that overlays computed before it are not cached
+    private final AtomicLong generation = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Returns the cached overlay of the profile or null if it has to be computed
+     */
+    Profile getOverlay(Version version, Profile profile, String environment) {
+        CachedOverlay cached = overlays.get(new OverlayKey(version, profile, environment));
+        if (cached != null && (cached.profile == profile || cached.profile.equals(profile)) && cached.hasAncestorsOf(version)) {
+            hits.incrementAndGet();
+            return cached.overlay;
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Returns the generation to pass to {@link #putOverlay} for an overlay which is about to be computed
+     */
+    long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Caches the overlay unless the cache was invalidated since the given generation
+     */
+    void putOverlay(Version version, Profile profile, String environment, Profile overlay, long computedGeneration) {
+        OverlayKey key = new OverlayKey(version, profile, environment);
+        overlays.put(key, new CachedOverlay(profile, getAncestors(version, profile), overlay));
+        if (generation.get() != computedGeneration) {
+            overlays.remove(key);
+        }
+    }
+
+    @Override
+    public void run() {
+        clear();
+    }
+
+    @Override
+    public void profilesChanged(Map<String, Set<String>> changedProfiles) {
+        generation.incrementAndGet();
+        Set<String> versionIds = changedProfiles.keySet();
+        for (Iterator<OverlayKey> iterator = overlays.keySet().iterator(); iterator.hasNext(); ) {
+            if (versionIds.contains(iterator.next().versionId)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    @Override
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    @Override
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    @Override
+    public int getSize() {
+        return overlays.size();
+    }
+
+    @Override
+    public void clear() {
+        generation.incrementAndGet();
+        overlays.clear();
+    }
+
+    /**
+     * Returns the ancestors of the profile in the version indexed by profile id, with a null value for a missing parent
+     */
+    private static Map<String, Profile> getAncestors(Version version, Profile profile) {
+        Map<String, Profile> ancestors = new LinkedHashMap<>();
+        addAncestors(version, profile, ancestors);
+        return ancestors;
+    }
+
+    private static void addAncestors(Version version, Profile profile, Map<String, Profile> ancestors) {
+        for (String parentId : profile.getParentIds()) {
+            if (!ancestors.containsKey(parentId)) {
+                Profile parent = version.getProfile(parentId);
+                ancestors.put(parentId, parent);
+                if (parent != null) {
+                    addAncestors(version, parent, ancestors);
+                }
+            }
+        }
+    }
+
+    private static final class CachedOverlay {
+        private final Profile profile;
+        private final Map<String, Profile> ancestors;
+        private final Profile overlay;
+
+        CachedOverlay(Profile profile, Map<String, Profile> ancestors, Profile overlay) {
+            this.profile = profile;
+            this.ancestors = ancestors;
+            this.overlay = overlay;
+        }
+
+        /**
+         * Returns true if every ancestor the overlay was computed from is unchanged in the given version
+         */
+        boolean hasAncestorsOf(Version version) {
+            for (Map.Entry<String, Profile> entry : ancestors.entrySet()) {
+                Profile cached = entry.getValue();
+                Profile current = version.getProfile(entry.getKey());
+                if (current != cached && (current == null || !current.equals(cached))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static final class OverlayKey {
+        private final String versionId;
+        private final String revision;
+        private final String profileId;
+        private final String environment;
+
+        OverlayKey(Version version, Profile profile, String environment) {
+            this.versionId = version.getId();
+            this.revision = version.getRevision();
+            this.profileId = profile.getId();
+            this.environment = environment;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = versionId.hashCode();
+            result = 31 * result + (revision != null ? revision.hashCode() : 0);
+            result = 31 * result + profileId.hashCode();
+            result = 31 * result + (environment != null ? environment.hashCode() : 0);
+            return result;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (!(obj instanceof OverlayKey)) return false;
+            OverlayKey other = (OverlayKey) obj;
+            return versionId.equals(other.versionId) && profileId.equals(other.profileId)
+                    && (revision != null ? revision.equals(other.revision) : other.revision == null)
+                    && (environment != null ? environment.equals(other.environment) : other.environment == null);
+        }
+    }
+}
@@ -16,6 +16,7 @@
 package io.fabric8.internal;
 
 import io.fabric8.api.Container;
+import io.fabric8.api.DataStore;
 import io.fabric8.api.FabricException;
 import io.fabric8.api.FabricRequirements;
 import io.fabric8.api.FabricService;
@@ -28,10 +29,12 @@ import io.fabric8.api.Profiles;
 import io.fabric8.api.RuntimeProperties;
 import io.fabric8.api.SystemProperties;
 import io.fabric8.api.Version;
+import io.fabric8.api.jmx.OverlayProfileCacheMBean;
 import io.fabric8.api.permit.PermitManager;
 import io.fabric8.api.scr.AbstractProtectedComponent;
 import io.fabric8.api.scr.ValidatingReference;
 import io.fabric8.utils.DataStoreUtils;
+import io.fabric8.utils.JMXUtils;
 
 import java.io.IOException;
 import java.util.ArrayList;
@@ -40,6 +43,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 
+import javax.management.MBeanServer;
+import javax.management.StandardMBean;
+
 import org.apache.felix.scr.annotations.Activate;
 import org.apache.felix.scr.annotations.Component;
 import org.apache.felix.scr.annotations.ConfigurationPolicy;
@@ -61,6 +67,12 @@ public final class ProfileServiceImpl extends AbstractProtectedComponent<Profile
     private final ValidatingReference<ProfileRegistry> profileRegistry = new ValidatingReference<>();
     @Reference(referenceInterface = RuntimeProperties.class)
     private final ValidatingReference<RuntimeProperties> runtimeProperties = new ValidatingReference<>();
+    @Reference(referenceInterface = DataStore.class)
+    private final ValidatingReference<DataStore> dataStore = new ValidatingReference<>();
+    @Reference(referenceInterface = MBeanServer.class)
+    private final ValidatingReference<MBeanServer> mbeanServer = new ValidatingReference<>();
+
+    private final OverlayProfileCache overlayCache = new OverlayProfileCache();
 
     static class OverlayAudit {
         Map<String, Profile> overlayProfiles = new HashMap<String, Profile>();
@@ -69,6 +81,8 @@ public final class ProfileServiceImpl extends AbstractProtectedComponent<Profile
     @Activate
     void activate() throws Exception {
         getOverlayAudit();
+        dataStore.get().trackConfiguration(overlayCache);
+        JMXUtils.registerMBean(new StandardMBean(overlayCache, OverlayProfileCacheMBean.class), mbeanServer.get(), OverlayProfileCache.OBJECT_NAME);
         activateComponent(PERMIT, this);
     }
 
@@ -84,8 +98,11 @@ public final class ProfileServiceImpl extends AbstractProtectedComponent<Profile
     }
 
     @Deactivate
-    void deactivate() {
+    void deactivate() throws Exception {
         deactivateComponent(PERMIT);
+        dataStore.get().untrackConfiguration(overlayCache);
+        JMXUtils.unregisterMBean(mbeanServer.get(), OverlayProfileCache.OBJECT_NAME);
+        overlayCache.clear();
     }
 
     @Override
@@ -172,36 +189,40 @@ public final class ProfileServiceImpl extends AbstractProtectedComponent<Profile
     @Override
     public Profile getOverlayProfile(Profile profile) {
         assertValid();
-        Profile overlayProfile;
+        if (profile.isOverlay()) {
+            LOGGER.debug("getOverlayProfile, given profile is already an overlay: " + profile);
+            return profile;
+        }
+        String environment = runtimeProperties.get().getProperty(SystemProperties.FABRIC_ENVIRONMENT);
+        if (environment == null) {
+            // lets default to the environment from the current active
+            // set of profiles (e.g. docker or openshift)
+            environment = System.getProperty(SystemProperties.FABRIC_PROFILE_ENVIRONMENT);
+        }
+        Version version = getRequiredVersion(profile.getVersion());
+        Profile overlayProfile = overlayCache.getOverlay(version, profile, environment);
+        if (overlayProfile != null) {
+            return overlayProfile;
+        }
         synchronized (this) {
-            if (profile.isOverlay()) {
-                LOGGER.debug("getOverlayProfile, given profile is already an overlay: " + profile);
-                overlayProfile = profile;
-            } else {
-                String profileId = profile.getId();
-                String environment = runtimeProperties.get().getProperty(SystemProperties.FABRIC_ENVIRONMENT);
-                if (environment == null) {
-                    // lets default to the environment from the current active
-                    // set of profiles (e.g. docker or openshift)
-                    environment = System.getProperty(SystemProperties.FABRIC_PROFILE_ENVIRONMENT);
-                }
-                Version version = getRequiredVersion(profile.getVersion());
-                ProfileBuilder builder = ProfileBuilder.Factory.create(profile.getVersion(), profileId);
-                builder.addOptions(new OverlayOptionsProvider(version, profile, environment));
-                overlayProfile = builder.getProfile();
-
-                // Log the overlay profile difference
-                if (LOGGER.isInfoEnabled()) {
-                    OverlayAudit audit = getOverlayAudit();
-                    synchronized (audit) {
-                        Profile lastOverlay = audit.overlayProfiles.get(profileId);
-                        if (lastOverlay == null) {
-                            LOGGER.info("Overlay" + Profiles.getProfileInfo(overlayProfile));
-                            audit.overlayProfiles.put(profileId, overlayProfile);
-                        } else if (!lastOverlay.equals(overlayProfile)) {
-                            LOGGER.info("Overlay" + Profiles.getProfileDifference(lastOverlay, overlayProfile));
-                            audit.overlayProfiles.put(profileId, overlayProfile);
-                        }
+            long generation = overlayCache.getGeneration();
+            String profileId = profile.getId();
+            ProfileBuilder builder = ProfileBuilder.Factory.create(profile.getVersion(), profileId);
+            builder.addOptions(new OverlayOptionsProvider(version, profile, environment));
+            overlayProfile = builder.getProfile();
+            overlayCache.putOverlay(version, profile, environment, overlayProfile, generation);
+
+            // Log the overlay profile difference
+            if (LOGGER.isInfoEnabled()) {
+                OverlayAudit audit = getOverlayAudit();
+                synchronized (audit) {
+                    Profile lastOverlay = audit.overlayProfiles.get(profileId);
+                    if (lastOverlay == null) {
+                        LOGGER.info("Overlay" + Profiles.getProfileInfo(overlayProfile));
+                        audit.overlayProfiles.put(profileId, overlayProfile);
+                    } else if (!lastOverlay.equals(overlayProfile)) {
+                        LOGGER.info("Overlay" + Profiles.getProfileDifference(lastOverlay, overlayProfile));
+                        audit.overlayProfiles.put(profileId, overlayProfile);
                     }
                 }
             }
@@ -410,4 +431,20 @@ public final class ProfileServiceImpl extends AbstractProtectedComponent<Profile
     void unbindRuntimeProperties(RuntimeProperties service) {
         this.runtimeProperties.unbind(service);
     }
+
+    void bindDataStore(DataStore service) {
+        this.dataStore.bind(service);
+    }
+
+    void unbindDataStore(DataStore service) {
+        this.dataStore.unbind(service);
+    }
+
+    void bindMbeanServer(MBeanServer service) {
+        this.mbeanServer.bind(service);
+    }
+
+    void unbindMbeanServer(MBeanServer service) {
+        this.mbeanServer.unbind(service);
+    }
 }
@@ -171,7 +171,7 @@ public class AutoScalers {
                 ProfileRequirements dependentProfileRequirements = requirements.getOrCreateProfileRequirement(dependentProfile);
                 Integer minimumInstances = dependentProfileRequirements.getMinimumInstances();
                 if (minimumInstances != null) {
-                    List<Container> containers = Containers.aliveAndSuccessfulContainersForProfile(dependentProfile, service);
+                    List<Container> containers = Containers.aliveAndSuccessfulContainersForProfile(dependentProfile, service.getAssociatedContainers(null, dependentProfile));
                     int dependentSize = containers.size();
                     if (minimumInstances > dependentSize) {
                         status.profileStatus(profile).missingDependency(dependentProfile, dependentSize, minimumInstances);
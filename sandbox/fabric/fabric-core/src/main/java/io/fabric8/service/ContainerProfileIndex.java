@@ -0,0 +1,126 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.service;
+
+import io.fabric8.api.ZkDefs;
+import io.fabric8.api.jcip.ThreadSafe;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * An in memory index of the containers which have a profile assigned directly, keyed by version and profile.
+ * <p/>
+ * The index is kept up to date one container at a time as the container configuration changes, so looking up
+ * the containers of a profile does not have to read the version and profiles of every container.
+ */
+@ThreadSafe
+final class ContainerProfileIndex {
+
+    private final Map<String, String> containerVersions = new HashMap<String, String>();
+    private final Map<String, Set<String>> containerProfiles = new HashMap<String, Set<String>>();
+    private final Map<String, Map<String, Set<String>>> profileContainers = new HashMap<String, Map<String, Set<String>>>();
+    private boolean initialized;
+
+    /**
+     * Returns true once the index was filled with all the containers, until it is cleared again
+     */
+    synchronized boolean isInitialized() {
+        return initialized;
+    }
+
+    synchronized void setInitialized() {
+        initialized = true;
+    }
+
+    synchronized void clear() {
+        containerVersions.clear();
+        containerProfiles.clear();
+        profileContainers.clear();
+        initialized = false;
+    }
+
+    /**
+     * Sets the version and profiles of a container, containers without profiles use the default profile
+     */
+    synchronized void update(String containerId, String versionId, List<String> profileIds) {
+        remove(containerId);
+        Set<String> profiles = new LinkedHashSet<String>(profileIds);
+        if (profiles.isEmpty()) {
+            profiles.add(ZkDefs.DEFAULT_PROFILE);
+        }
+        containerVersions.put(containerId, versionId);
+        containerProfiles.put(containerId, profiles);
+        Map<String, Set<String>> versionProfiles = profileContainers.get(versionId);
+        if (versionProfiles == null) {
+            versionProfiles = new HashMap<String, Set<String>>();
+            profileContainers.put(versionId, versionProfiles);
+        }
+        for (String profileId : profiles) {
+            Set<String> containers = versionProfiles.get(profileId);
+            if (containers == null) {
+                containers = new TreeSet<String>();
+                versionProfiles.put(profileId, containers);
+            }
+            containers.add(containerId);
+        }
+    }
+
+    synchronized void remove(String containerId) {
+        String versionId = containerVersions.remove(containerId);
+        Set<String> profiles = containerProfiles.remove(containerId);
+        if (versionId == null || profiles == null) {
+            return;
+        }
+        Map<String, Set<String>> versionProfiles = profileContainers.get(versionId);
+        for (String profileId : profiles) {
+            Set<String> containers = versionProfiles.get(profileId);
+            containers.remove(containerId);
+            if (containers.isEmpty()) {
+                versionProfiles.remove(profileId);
+            }
+        }
+        if (versionProfiles.isEmpty()) {
+            profileContainers.remove(versionId);
+        }
+    }
+
+    /**
+     * Returns the ids of the containers which have the profile, in the given version or in any version if
+     * the version is null
+     */
+    synchronized List<String> getContainers(String versionId, String profileId) {
+        if (versionId != null) {
+            Map<String, Set<String>> versionProfiles = profileContainers.get(versionId);
+            Set<String> containers = versionProfiles != null ? versionProfiles.get(profileId) : null;
+            return containers != null ? new ArrayList<String>(containers) : Collections.<String>emptyList();
+        }
+        Set<String> answer = new TreeSet<String>();
+        for (Map<String, Set<String>> versionProfiles : profileContainers.values()) {
+            Set<String> containers = versionProfiles.get(profileId);
+            if (containers != null) {
+                answer.addAll(containers);
+            }
+        }
+        return new ArrayList<String>(answer);
+    }
+}
@@ -18,7 +18,6 @@ package io.fabric8.service;
 import java.io.IOException;
 import java.net.URI;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -273,9 +272,10 @@ public final class FabricServiceImpl extends AbstractComponent implements Fabric
     public Container[] getContainers() {
         assertValid();
         Map<String, Container> containers = new HashMap<String, Container>();
-        List<String> containerIds = dataStore.get().getContainers();
-        for (String containerId : containerIds) {
-            String parentId = dataStore.get().getContainerParent(containerId);
+        Map<String, String> containerParents = dataStore.get().getContainerParents();
+        for (Map.Entry<String, String> entry : containerParents.entrySet()) {
+            String containerId = entry.getKey();
+            String parentId = entry.getValue();
             if (parentId.isEmpty()) {
                 if (!containers.containsKey(containerId)) {
                     Container container = new ContainerImpl(null, containerId, this);
@@ -298,12 +298,12 @@ public final class FabricServiceImpl extends AbstractComponent implements Fabric
 	public Container[] getAssociatedContainers(String versionId, String profileId) {
 		assertValid();
         List<Container> containers = new ArrayList<>();
-        for (Container container : getContainers()) {
-        	for (Profile profile : Arrays.asList(container.getProfiles())) {
-            	if (profile.getId().equals(profileId)) {
-            		containers.add(container);
-            	}
-        	}
+        for (String containerId : dataStore.get().getProfileContainers(versionId, profileId)) {
+            try {
+                containers.add(getContainer(containerId));
+            } catch (FabricException e) {
+                // the container was deleted in the mean time
+            }
         }
         return containers.toArray(new Container[containers.size()]);
 	}
@@ -883,8 +883,7 @@ public final class FabricServiceImpl extends AbstractComponent implements Fabric
                 versionId = version.getId();
             }
         }
-        List<Container> containers = Containers.containersForProfile(getContainers(), profileId, versionId);
-        for (Container container : containers) {
+        for (Container container : getAssociatedContainers(versionId, profileId)) {
             String url = containerWebAppURL(webAppId, container.getId());
             if (url != null && url.length() > 0) {
                 return url;
@@ -1230,8 +1229,7 @@ public final class FabricServiceImpl extends AbstractComponent implements Fabric
         FabricRequirements requirements = getRequirements();
         ProfileRequirements profileRequirements = requirements.getOrCreateProfileRequirement(profile);
         Integer minimumInstances = profileRequirements.getMinimumInstances();
-        List<Container> containers = Containers.containersForProfile(getContainers(), profile);
-        int containerCount = containers.size();
+        int containerCount = getAssociatedContainers(null, profile).length;
         int newCount = containerCount + numberOfInstances;
         if (newCount < 0) {
             newCount = 0;
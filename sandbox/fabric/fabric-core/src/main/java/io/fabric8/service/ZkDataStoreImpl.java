@@ -19,6 +19,7 @@ import static io.fabric8.zookeeper.ZkPath.CONTAINER_DOMAIN;
 import static io.fabric8.zookeeper.utils.ZooKeeperUtils.deleteSafe;
 import static io.fabric8.zookeeper.utils.ZooKeeperUtils.exists;
 import static io.fabric8.zookeeper.utils.ZooKeeperUtils.getByteData;
+import static io.fabric8.zookeeper.utils.ZooKeeperUtils.getChildren;
 import static io.fabric8.zookeeper.utils.ZooKeeperUtils.getChildrenSafe;
 import static io.fabric8.zookeeper.utils.ZooKeeperUtils.getStringData;
 import static io.fabric8.zookeeper.utils.ZooKeeperUtils.getSubstitutedPath;
@@ -30,6 +31,7 @@ import io.fabric8.api.DataStore;
 import io.fabric8.api.FabricException;
 import io.fabric8.api.FabricRequirements;
 import io.fabric8.api.FabricService;
+import io.fabric8.api.ProfileChangeCallback;
 import io.fabric8.api.ProfileService;
 import io.fabric8.api.RuntimeProperties;
 import io.fabric8.api.ZkDefs;
@@ -52,6 +54,7 @@ import java.io.ObjectStreamClass;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -59,6 +62,8 @@ import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.apache.curator.framework.CuratorFramework;
 import org.apache.curator.framework.recipes.cache.ChildData;
@@ -95,10 +100,13 @@ public final class ZkDataStoreImpl extends AbstractComponent implements DataStor
     private final ValidatingReference<RuntimeProperties> runtimeProperties = new ValidatingReference<RuntimeProperties>();
     
     private final CopyOnWriteArrayList<Runnable> callbacks = new CopyOnWriteArrayList<Runnable>();
+    private static final Pattern CONFIG_VERSIONS_CONTAINER_PATTERN = Pattern.compile(ZkPath.CONFIG_VERSIONS_CONTAINER.getPath("[^/]+", "(.+)"));
+
     private final ExecutorService cacheExecutor = Executors.newSingleThreadExecutor();
     private final ExecutorService callbacksExecutor = Executors.newSingleThreadExecutor();
     private TreeCache configCache;
     private TreeCache containerCache;
+    private final ContainerProfileIndex containerProfileIndex = new ContainerProfileIndex();
 
     @Activate
     void activate() throws Exception {
@@ -157,7 +165,15 @@ public final class ZkDataStoreImpl extends AbstractComponent implements DataStor
                 case CHILD_ADDED:
                 case CHILD_REMOVED:
                 case CHILD_UPDATED:
+                    updateContainerProfileIndex(path);
+                    if (shouldRunCallbacks(type, path)) {
+                        String s = data != null ? new String(data, "UTF-8") : "";
+                        LOGGER.info("Event {} detected on {} with data {}. Sending notification.", type.name(), path, s);
+                        fireChangeNotifications();
+                    }
+                    break;
                 case INITIALIZED:
+                    containerProfileIndex.clear();
                     if (shouldRunCallbacks(type, path)) {
                         String s = data != null ? new String(data, "UTF-8") : "";
                         LOGGER.info("Event {} detected on {} with data {}. Sending notification.", type.name(), path, s);
@@ -168,6 +184,45 @@ public final class ZkDataStoreImpl extends AbstractComponent implements DataStor
         }
     }
 
+    /**
+     * Updates the index entry of the container whose version or profiles are stored at the specified path.
+     */
+    private void updateContainerProfileIndex(String path) {
+        if (path == null || !containerProfileIndex.isInitialized()) {
+            return;
+        }
+        String containerId = null;
+        String containersPath = ZkPath.CONFIGS_CONTAINERS.getPath() + "/";
+        if (path.startsWith(containersPath)) {
+            containerId = path.substring(containersPath.length());
+        } else {
+            Matcher matcher = CONFIG_VERSIONS_CONTAINER_PATTERN.matcher(path);
+            if (matcher.matches()) {
+                containerId = matcher.group(1);
+            }
+        }
+        if (containerId != null && containerId.indexOf('/') < 0) {
+            try {
+                indexContainerProfiles(containerId);
+            } catch (Exception e) {
+                LOGGER.warn("Cannot index the profiles of container " + containerId + ", rebuilding the index", e);
+                containerProfileIndex.clear();
+            }
+        }
+    }
+
+    private void indexContainerProfiles(String containerId) throws Exception {
+        // serialize the reads and the update so that an older read does not overwrite a newer one
+        synchronized (containerProfileIndex) {
+            String versionId = getStringData(configCache, ZkPath.CONFIG_CONTAINER.getPath(containerId));
+            if (Strings.isNotBlank(versionId)) {
+                containerProfileIndex.update(containerId, versionId, getContainerProfiles(containerId));
+            } else {
+                containerProfileIndex.remove(containerId);
+            }
+        }
+    }
+
     /**
      * Checks if the container should react to a change in the specified path.
      */
@@ -188,26 +243,36 @@ public final class ZkDataStoreImpl extends AbstractComponent implements DataStor
     
     @Override
     public void fireChangeNotifications() {
-        runCallbacks();
+        runCallbacks(null);
+    }
+
+    @Override
+    public void fireProfileChangeNotifications(Map<String, Set<String>> changedProfiles) {
+        IllegalArgumentAssertion.assertNotNull(changedProfiles, "changedProfiles");
+        runCallbacks(changedProfiles);
     }
     
-    private void runCallbacks() {
+    private void runCallbacks(final Map<String, Set<String>> changedProfiles) {
         callbacksExecutor.submit(new Runnable() {
             @Override
             public void run() {
-                doRunCallbacks();
+                doRunCallbacks(changedProfiles);
             }
         });
     }
     
-    private void doRunCallbacks() {
+    private void doRunCallbacks(Map<String, Set<String>> changedProfiles) {
         assertValid();
         for (Runnable callback : callbacks) {
             try {
                 if (LOGGER.isDebugEnabled()) {
                     LOGGER.debug("Running callback " + callback);
                 }
-                callback.run();
+                if (changedProfiles != null && callback instanceof ProfileChangeCallback) {
+                    ((ProfileChangeCallback) callback).profilesChanged(changedProfiles);
+                } else {
+                    callback.run();
+                }
             } catch (Throwable e) {
                 LOGGER.warn("Caught: " + e, e);
             }
@@ -235,8 +300,27 @@ public final class ZkDataStoreImpl extends AbstractComponent implements DataStor
     public List<String> getContainers() {
         assertValid();
         try {
-            return getChildrenSafe(curator.get(), ZkPath.CONFIGS_CONTAINERS.getPath());
+            return getChildren(configCache, ZkPath.CONFIGS_CONTAINERS.getPath());
+        } catch (Exception e) {
+            throw FabricException.launderThrowable(e);
+        }
+    }
+
+    @Override
+    public List<String> getProfileContainers(String versionId, String profileId) {
+        assertValid();
+        try {
+            synchronized (containerProfileIndex) {
+                if (!containerProfileIndex.isInitialized()) {
+                    containerProfileIndex.setInitialized();
+                    for (String containerId : getChildren(configCache, ZkPath.CONFIGS_CONTAINERS.getPath())) {
+                        indexContainerProfiles(containerId);
+                    }
+                }
+            }
+            return containerProfileIndex.getContainers(versionId, profileId);
         } catch (Exception e) {
+            containerProfileIndex.clear();
             throw FabricException.launderThrowable(e);
         }
     }
@@ -251,16 +335,32 @@ public final class ZkDataStoreImpl extends AbstractComponent implements DataStor
     public String getContainerParent(String containerId) {
         assertValid();
         try {
-            String parentName = getStringData(curator.get(), ZkPath.CONTAINER_PARENT.getPath(containerId));
-            return parentName != null ? parentName.trim() : "";
-        } catch (KeeperException.NoNodeException e) {
-            // Ignore
-            return "";
+            return getCachedContainerParent(containerId);
         } catch (Throwable e) {
             throw FabricException.launderThrowable(e);
         }
     }
 
+    @Override
+    public Map<String, String> getContainerParents() {
+        assertValid();
+        try {
+            Map<String, String> answer = new HashMap<String, String>();
+            for (String containerId : getChildren(configCache, ZkPath.CONFIGS_CONTAINERS.getPath())) {
+                answer.put(containerId, getCachedContainerParent(containerId));
+            }
+            return answer;
+        } catch (Exception e) {
+            throw FabricException.launderThrowable(e);
+        }
+    }
+
+    private String getCachedContainerParent(String containerId) throws Exception {
+        String path = ZkPath.CONTAINER_PARENT.getPath(containerId);
+        String parentName = exists(containerCache, path) ? getStringData(containerCache, path) : null;
+        return parentName != null ? parentName.trim() : "";
+    }
+
     @Override
     public void deleteContainer(FabricService fabricService, String containerId) {
         assertValid();
@@ -468,9 +568,7 @@ public final class ZkDataStoreImpl extends AbstractComponent implements DataStor
     public boolean isContainerAlive(String id) {
         assertValid();
         try {
-            return exists(curator.get(), ZkPath.CONTAINER_ALIVE.getPath(id)) != null;
-        } catch (KeeperException.NoNodeException e) {
-            return false;
+            return exists(containerCache, ZkPath.CONTAINER_ALIVE.getPath(id));
         } catch (Exception e) {
             throw FabricException.launderThrowable(e);
         }
@@ -485,6 +583,7 @@ public final class ZkDataStoreImpl extends AbstractComponent implements DataStor
             } else {
                 deleteSafe(curator.get(), ZkPath.CONTAINER_ALIVE.getPath(id));
             }
+            containerCache.invalidate(ZkPath.CONTAINER_ALIVE.getPath(id));
         } catch (KeeperException.NoNodeException e) {
             // ignore
         } catch (Exception e) {
@@ -497,7 +596,7 @@ public final class ZkDataStoreImpl extends AbstractComponent implements DataStor
         assertValid();
         if (attribute == ContainerAttribute.Domains) {
             try {
-                List<String> list = curator.get().getChildren().forPath(ZkPath.CONTAINER_DOMAINS.getPath(containerId));
+                List<String> list = getChildren(containerCache, ZkPath.CONTAINER_DOMAINS.getPath(containerId));
                 Collections.sort(list);
                 StringBuilder sb = new StringBuilder();
                 for (String l : list) {
@@ -512,10 +611,14 @@ public final class ZkDataStoreImpl extends AbstractComponent implements DataStor
             }
         } else {
             try {
+                String path = getAttributePath(containerId, attribute);
+                if (!exists(containerCache, path)) {
+                    throw new KeeperException.NoNodeException(path);
+                }
                 if (substituted) {
-                    return getSubstitutedPath(curator.get(), getAttributePath(containerId, attribute));
+                    return getSubstitutedPath(containerCache, path);
                 } else {
-                    return getStringData(curator.get(), getAttributePath(containerId, attribute));
+                    return getStringData(containerCache, path);
                 }
             } catch (KeeperException.NoNodeException e) {
                 if (mandatory) {
@@ -538,6 +641,8 @@ public final class ZkDataStoreImpl extends AbstractComponent implements DataStor
             try {
                 setData(curator.get(), ZkPath.CONTAINER_IP.getPath(containerId), "${zk:" + containerId + "/" + value + "}");
                 setData(curator.get(), ZkPath.CONTAINER_RESOLVER.getPath(containerId), value);
+                containerCache.invalidate(ZkPath.CONTAINER_IP.getPath(containerId));
+                containerCache.invalidate(ZkPath.CONTAINER_RESOLVER.getPath(containerId));
             } catch (Exception e) {
                 throw FabricException.launderThrowable(e);
             }
@@ -558,6 +663,7 @@ public final class ZkDataStoreImpl extends AbstractComponent implements DataStor
                     String path = CONTAINER_DOMAIN.getPath(containerId, domain);
                     deleteSafe(curator.get(), path);
                 }
+                containerCache.invalidate(ZkPath.CONTAINER_DOMAINS.getPath(containerId));
             } catch (Exception e) {
                 throw FabricException.launderThrowable(e);
             }
@@ -568,6 +674,7 @@ public final class ZkDataStoreImpl extends AbstractComponent implements DataStor
                 //                } else {
                 setData(curator.get(), getAttributePath(containerId, attribute), value);
                 //                }
+                containerCache.invalidate(getAttributePath(containerId, attribute));
             } catch (KeeperException.NoNodeException e) {
                 // Ignore
             } catch (Exception e) {
@@ -0,0 +1,108 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import io.fabric8.api.Profile;
+import io.fabric8.api.ProfileBuilder;
+import io.fabric8.api.Version;
+import io.fabric8.api.VersionBuilder;
+
+import java.util.Collections;
+
+import org.junit.Test;
+
+public class OverlayProfileCacheTest {
+
+    private final OverlayProfileCache cache = new OverlayProfileCache();
+
+    @Test
+    public void testOverlayKeyedByRevisionAndEnvironment() {
+        Profile profile = ProfileBuilder.Factory.create("1.0", "foo").getProfile();
+        Profile overlay = ProfileBuilder.Factory.create("1.0", "foo").setOverlay(true).getProfile();
+        Version version = createVersion("1.0", "r1", profile);
+
+        assertNull(cache.getOverlay(version, profile, null));
+        cache.putOverlay(version, profile, null, overlay, cache.getGeneration());
+        assertSame(overlay, cache.getOverlay(version, profile, null));
+        assertNull(cache.getOverlay(version, profile, "docker"));
+        assertNull(cache.getOverlay(createVersion("1.0", "r2", profile), profile, null));
+
+        assertEquals(1, cache.getHitCount());
+        assertEquals(3, cache.getMissCount());
+        assertEquals(1, cache.getSize());
+    }
+
+    @Test
+    public void testModifiedProfileIsNotServedFromCache() {
+        Profile profile = ProfileBuilder.Factory.create("1.0", "foo").getProfile();
+        Profile modified = ProfileBuilder.Factory.createFrom(profile).addParent("bar").getProfile();
+        Version version = createVersion("1.0", "r1", profile);
+
+        cache.putOverlay(version, profile, null, profile, cache.getGeneration());
+        assertNull(cache.getOverlay(version, modified, null));
+    }
+
+    @Test
+    public void testChangedParentIsNotServedFromCache() {
+        Profile parent = ProfileBuilder.Factory.create("1.0", "bar").getProfile();
+        Profile changedParent = ProfileBuilder.Factory.createFrom(parent).addConfiguration("pid", "key", "value").getProfile();
+        Profile profile = ProfileBuilder.Factory.create("1.0", "foo").addParent("bar").getProfile();
+        Version version = VersionBuilder.Factory.create("1.0").setRevision("r1").addProfile(parent).addProfile(profile).getVersion();
+        Version changed = VersionBuilder.Factory.create("1.0").setRevision("r1").addProfile(changedParent).addProfile(profile).getVersion();
+        Version reloaded = VersionBuilder.Factory.create("1.0").setRevision("r1")
+                .addProfile(ProfileBuilder.Factory.createFrom(parent).getProfile()).addProfile(profile).getVersion();
+
+        cache.putOverlay(version, profile, null, profile, cache.getGeneration());
+        assertSame(profile, cache.getOverlay(version, profile, null));
+        assertSame(profile, cache.getOverlay(reloaded, profile, null));
+        assertNull(cache.getOverlay(changed, profile, null));
+    }
+
+    @Test
+    public void testProfileChangesInvalidateTheirVersion() {
+        Profile foo = ProfileBuilder.Factory.create("1.0", "foo").getProfile();
+        Profile bar = ProfileBuilder.Factory.create("1.1", "bar").getProfile();
+        Version v10 = createVersion("1.0", "r1", foo);
+        Version v11 = createVersion("1.1", "r2", bar);
+        cache.putOverlay(v10, foo, null, foo, cache.getGeneration());
+        cache.putOverlay(v11, bar, null, bar, cache.getGeneration());
+
+        cache.profilesChanged(Collections.singletonMap("1.0", Collections.singleton("other")));
+        assertNull(cache.getOverlay(v10, foo, null));
+        assertSame(bar, cache.getOverlay(v11, bar, null));
+
+        cache.run();
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void testOverlayComputedBeforeInvalidationIsNotCached() {
+        Profile profile = ProfileBuilder.Factory.create("1.0", "foo").getProfile();
+        Version version = createVersion("1.0", "r1", profile);
+
+        long generation = cache.getGeneration();
+        cache.run();
+        cache.putOverlay(version, profile, null, profile, generation);
+        assertEquals(0, cache.getSize());
+    }
+
+    private static Version createVersion(String versionId, String revision, Profile profile) {
+        return VersionBuilder.Factory.create(versionId).setRevision(revision).addProfile(profile).getVersion();
+    }
+}
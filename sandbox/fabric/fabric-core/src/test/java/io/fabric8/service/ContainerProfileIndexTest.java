@@ -0,0 +1,73 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+public class ContainerProfileIndexTest {
+
+    private final ContainerProfileIndex index = new ContainerProfileIndex();
+
+    @Test
+    public void testContainersByVersionAndProfile() {
+        index.update("c1", "1.0", Arrays.asList("a", "b"));
+        index.update("c2", "1.0", Arrays.asList("b"));
+        index.update("c3", "1.1", Arrays.asList("b"));
+
+        assertEquals(Arrays.asList("c1"), index.getContainers("1.0", "a"));
+        assertEquals(Arrays.asList("c1", "c2"), index.getContainers("1.0", "b"));
+        assertEquals(Arrays.asList("c3"), index.getContainers("1.1", "b"));
+        assertEquals(Arrays.asList("c1", "c2", "c3"), index.getContainers(null, "b"));
+        assertEquals(Collections.emptyList(), index.getContainers("1.1", "a"));
+        assertEquals(Collections.emptyList(), index.getContainers("2.0", "a"));
+    }
+
+    @Test
+    public void testUpdateReplacesPreviousEntry() {
+        index.update("c1", "1.0", Arrays.asList("a"));
+        index.update("c1", "1.1", Arrays.asList("b"));
+
+        assertEquals(Collections.emptyList(), index.getContainers(null, "a"));
+        assertEquals(Arrays.asList("c1"), index.getContainers("1.1", "b"));
+
+        index.remove("c1");
+        assertEquals(Collections.emptyList(), index.getContainers(null, "b"));
+    }
+
+    @Test
+    public void testContainerWithoutProfilesUsesDefault() {
+        index.update("c1", "1.0", Collections.<String>emptyList());
+        assertEquals(Arrays.asList("c1"), index.getContainers("1.0", "default"));
+    }
+
+    @Test
+    public void testClearResetsInitialized() {
+        index.setInitialized();
+        index.update("c1", "1.0", Arrays.asList("a"));
+        assertTrue(index.isInitialized());
+
+        index.clear();
+        assertFalse(index.isInitialized());
+        assertEquals(Collections.emptyList(), index.getContainers(null, "a"));
+    }
+}
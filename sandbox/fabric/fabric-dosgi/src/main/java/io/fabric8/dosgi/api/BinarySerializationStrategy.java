@@ -0,0 +1,75 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.dosgi.api;
+
+import io.fabric8.dosgi.util.BinaryCodec;
+import org.fusesource.hawtbuf.DataByteArrayInputStream;
+import org.fusesource.hawtbuf.DataByteArrayOutputStream;
+
+import java.io.IOException;
+
+/**
+ * <p>
+ * Encodes the arguments and results of a method with the compact {@link BinaryCodec}, following the
+ * parameter and return types of the method. Exceptions are sent with Java serialization.
+ * </p>
+ *
+ */
+public class BinarySerializationStrategy implements SerializationStrategy {
+
+    public static final BinarySerializationStrategy INSTANCE = new BinarySerializationStrategy();
+
+    public String name() {
+        return "binary";
+    }
+
+    public void encodeRequest(ClassLoader loader, Class<?>[] types, Object[] args, DataByteArrayOutputStream target) throws IOException {
+        BinaryCodec.Writer writer = new BinaryCodec.Writer(target);
+        for (int i = 0; i < types.length; i++) {
+            writer.write(types[i], args[i]);
+        }
+    }
+
+    public void decodeRequest(ClassLoader loader, Class<?>[] types, DataByteArrayInputStream source, Object[] target) throws IOException, ClassNotFoundException {
+        BinaryCodec.Reader reader = new BinaryCodec.Reader(source, loader);
+        for (int i = 0; i < types.length; i++) {
+            target[i] = reader.read(types[i]);
+        }
+    }
+
+    public void encodeResponse(ClassLoader loader, Class<?> type, Object value, Throwable error, DataByteArrayOutputStream target) throws IOException {
+        BinaryCodec.Writer writer = new BinaryCodec.Writer(target);
+        if( error!=null ) {
+            target.writeBoolean(true);
+            writer.writeSerialized(error);
+        } else {
+            target.writeBoolean(false);
+            if( type!=void.class ) {
+                writer.write(type, value);
+            }
+        }
+    }
+
+    public void decodeResponse(ClassLoader loader, Class<?> type, DataByteArrayInputStream source, AsyncCallback result) throws IOException, ClassNotFoundException {
+        BinaryCodec.Reader reader = new BinaryCodec.Reader(source, loader);
+        if( source.readBoolean() ) {
+            result.onFailure((Throwable) reader.readSerialized());
+        } else {
+            result.onSuccess(type!=void.class ? reader.read(type) : null);
+        }
+    }
+
+}
@@ -21,7 +21,10 @@ import org.apache.curator.framework.recipes.cache.PathChildrenCacheListener;
 import org.apache.curator.framework.recipes.cache.TreeCache;
 import org.apache.zookeeper.CreateMode;
 import org.apache.zookeeper.KeeperException;
+import io.fabric8.dosgi.api.BinarySerializationStrategy;
 import io.fabric8.dosgi.api.Dispatched;
+import io.fabric8.dosgi.api.ObjectSerializationStrategy;
+import io.fabric8.dosgi.api.ProtobufSerializationStrategy;
 import io.fabric8.dosgi.api.SerializationStrategy;
 import io.fabric8.dosgi.capset.CapabilitySet;
 import io.fabric8.dosgi.capset.SimpleFilter;
@@ -135,6 +138,10 @@ public class Manager implements ServiceListener, ListenerHook, EventHook, FindHo
         this.exportedServices = new ConcurrentHashMap<ServiceReference, ExportRegistration>();
         this.listeners = new ConcurrentHashMap<ListenerInfo, SimpleFilter>();
         this.serializationStrategies = new ConcurrentHashMap<String, SerializationStrategy>();
+        for (SerializationStrategy strategy : new SerializationStrategy[] {
+                ObjectSerializationStrategy.INSTANCE, ProtobufSerializationStrategy.INSTANCE, BinarySerializationStrategy.INSTANCE }) {
+            this.serializationStrategies.put(strategy.name(), strategy);
+        }
         this.remoteEndpoints = new CapabilitySet<EndpointDescription>(
                 Arrays.asList(Constants.OBJECTCLASS, ENDPOINT_FRAMEWORK_UUID), false);
         this.bundleContext = context;
@@ -0,0 +1,947 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.dosgi.util;
+
+import org.fusesource.hawtbuf.DataByteArrayInputStream;
+import org.fusesource.hawtbuf.DataByteArrayOutputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.NotSerializableException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.io.StreamCorruptedException;
+import java.lang.ref.SoftReference;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.PriorityBlockingQueue;
+
+/**
+ * A compact binary encoding of values driven by their declared types.
+ * <p>
+ * A value of a primitive declared type is written without any header. Other values start with a one byte
+ * tag, and the class of an enum, array, collection, map or object is only written when it differs from the
+ * declared type, and only once per message after which it is referred to by its index. Objects are written
+ * field by field following a {@link Schema} which is computed once per class, so fields of primitive types
+ * also go without headers. Objects, arrays, collections and maps written more than once in a message are
+ * written as references, so shared and cyclic graphs are kept. The first object of each class in a message
+ * carries a fingerprint of the fields of the class, so a reader whose version of the class has different
+ * fields rejects the message rather than assigning values to the wrong fields.
+ * <p>
+ * The reader only instantiates classes which are assignable to the declared type and which are either
+ * encoded by fields or are JDK collections and maps. JDK collections and maps without a no argument
+ * constructor, such as unmodifiable wrappers and views, are read into the first of a few general purpose
+ * JDK collections which is assignable to the declared type; if there is none they fall back to Java
+ * serialization.
+ * <p>
+ * Objects are encoded field by field when their class and all its super classes are outside of the JDK,
+ * they have a no argument constructor and they do not customize their Java serialization. Other
+ * {@link Serializable} values fall back to Java serialization.
+ */
+public final class BinaryCodec {
+
+    static final int NULL = 0;
+    static final int TRUE = 1;
+    static final int FALSE = 2;
+    static final int BYTE = 3;
+    static final int SHORT = 4;
+    static final int CHAR = 5;
+    static final int INT = 6;
+    static final int LONG = 7;
+    static final int FLOAT = 8;
+    static final int DOUBLE = 9;
+    static final int STRING = 10;
+    static final int BYTES = 11;
+    static final int ENUM = 12;
+    static final int ARRAY = 13;
+    static final int COLLECTION = 14;
+    static final int MAP = 15;
+    static final int OBJECT = 16;
+    static final int SERIALIZED = 17;
+    static final int REFERENCE = 18;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    // the schemas are stored on the classes themselves, so they are only softly referenced to not keep the
+    // class loader of this codec alive from long lived classes, such as those of the JDK
+    private static final ClassValue<SoftReference<Schema>> SCHEMAS = new ClassValue<SoftReference<Schema>>() {
+        @Override
+        protected SoftReference<Schema> computeValue(Class<?> type) {
+            return new SoftReference<Schema>(new Schema(type));
+        }
+    };
+
+    private static final Class<?>[] SORTED_SET_SUBSTITUTES = {TreeSet.class, ConcurrentSkipListSet.class};
+    private static final Class<?>[] SET_SUBSTITUTES = {LinkedHashSet.class};
+    private static final Class<?>[] SORTED_MAP_SUBSTITUTES = {TreeMap.class, ConcurrentSkipListMap.class};
+    private static final Class<?>[] MAP_SUBSTITUTES = {LinkedHashMap.class, ConcurrentHashMap.class};
+    private static final Class<?>[] COLLECTION_SUBSTITUTES = {ArrayList.class, LinkedList.class, LinkedBlockingDeque.class};
+
+    private BinaryCodec() {
+    }
+
+    /**
+     * Writes the values of one message
+     */
+    public static final class Writer {
+
+        private final DataByteArrayOutputStream out;
+        private IdentityHashMap<Object, Integer> objects;
+        private IdentityHashMap<Class<?>, Integer> classes;
+        private IdentityHashMap<Class<?>, Boolean> fingerprinted;
+
+        public Writer(DataByteArrayOutputStream out) {
+            this.out = out;
+        }
+
+        public void write(Class<?> type, Object value) throws IOException {
+            if (type.isPrimitive()) {
+                writePrimitive(type, value);
+            } else {
+                writeObject(type, value);
+            }
+        }
+
+        public void writeSerialized(Object value) throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ObjectOutputStream oos = new ObjectOutputStream(bytes);
+            oos.writeObject(value);
+            oos.close();
+            out.writeVarInt(bytes.size());
+            bytes.writeTo(out);
+        }
+
+        private void writePrimitive(Class<?> type, Object value) throws IOException {
+            if (type == int.class) {
+                out.writeVarInt(zigZag((Integer) value));
+            } else if (type == long.class) {
+                out.writeVarLong(zigZag((Long) value));
+            } else if (type == boolean.class) {
+                out.writeBoolean((Boolean) value);
+            } else if (type == double.class) {
+                out.writeDouble((Double) value);
+            } else if (type == float.class) {
+                out.writeFloat((Float) value);
+            } else if (type == byte.class) {
+                out.writeByte((Byte) value);
+            } else if (type == short.class) {
+                out.writeVarInt(zigZag((Short) value));
+            } else if (type == char.class) {
+                out.writeVarInt((Character) value);
+            }
+        }
+
+        private void writeObject(Class<?> declared, Object value) throws IOException {
+            if (value == null) {
+                out.writeByte(NULL);
+                return;
+            }
+            Class<?> type = value.getClass();
+            if (type == String.class) {
+                out.writeByte(STRING);
+                writeString((String) value);
+            } else if (type == Integer.class) {
+                out.writeByte(INT);
+                out.writeVarInt(zigZag((Integer) value));
+            } else if (type == Long.class) {
+                out.writeByte(LONG);
+                out.writeVarLong(zigZag((Long) value));
+            } else if (type == Boolean.class) {
+                out.writeByte((Boolean) value ? TRUE : FALSE);
+            } else if (type == Double.class) {
+                out.writeByte(DOUBLE);
+                out.writeDouble((Double) value);
+            } else if (type == Float.class) {
+                out.writeByte(FLOAT);
+                out.writeFloat((Float) value);
+            } else if (type == Byte.class) {
+                out.writeByte(BYTE);
+                out.writeByte((Byte) value);
+            } else if (type == Short.class) {
+                out.writeByte(SHORT);
+                out.writeVarInt(zigZag((Short) value));
+            } else if (type == Character.class) {
+                out.writeByte(CHAR);
+                out.writeVarInt((Character) value);
+            } else if (type == byte[].class) {
+                byte[] bytes = (byte[]) value;
+                out.writeByte(BYTES);
+                out.writeVarInt(bytes.length);
+                out.write(bytes);
+            } else if (value instanceof Enum) {
+                Enum<?> constant = (Enum<?>) value;
+                out.writeByte(ENUM);
+                writeClass(declared, constant.getDeclaringClass());
+                out.writeVarInt(constant.ordinal());
+            } else {
+                writeComposite(declared, type, value);
+            }
+        }
+
+        private void writeComposite(Class<?> declared, Class<?> type, Object value) throws IOException {
+            boolean array = type.isArray();
+            boolean collection = !array && (value instanceof Collection || value instanceof Map) && isPlainCollection(declared, value);
+            Schema schema = null;
+            if (!array && !collection) {
+                schema = schema(type);
+                if (schema.fields == null) {
+                    if (!(value instanceof Serializable)) {
+                        throw new NotSerializableException(type.getName());
+                    }
+                    out.writeByte(SERIALIZED);
+                    writeSerialized(value);
+                    return;
+                }
+            }
+            if (writeReference(value)) {
+                return;
+            }
+            if (array) {
+                out.writeByte(ARRAY);
+                writeClass(declared, type);
+                writeArray(type.getComponentType(), value);
+            } else if (collection && value instanceof Collection) {
+                Collection<?> elements = (Collection<?>) value;
+                out.writeByte(COLLECTION);
+                writeClass(declared, type);
+                out.writeVarInt(elements.size());
+                for (Object element : elements) {
+                    writeObject(Object.class, element);
+                }
+            } else if (collection) {
+                Map<?, ?> map = (Map<?, ?>) value;
+                out.writeByte(MAP);
+                writeClass(declared, type);
+                out.writeVarInt(map.size());
+                for (Map.Entry<?, ?> entry : map.entrySet()) {
+                    writeObject(Object.class, entry.getKey());
+                    writeObject(Object.class, entry.getValue());
+                }
+            } else {
+                out.writeByte(OBJECT);
+                writeClass(declared, type);
+                writeFingerprint(schema);
+                schema.write(this, value);
+            }
+        }
+
+        private void writeArray(Class<?> componentType, Object value) throws IOException {
+            if (componentType == int.class) {
+                int[] array = (int[]) value;
+                out.writeVarInt(array.length);
+                for (int element : array) {
+                    out.writeVarInt(zigZag(element));
+                }
+            } else if (componentType == long.class) {
+                long[] array = (long[]) value;
+                out.writeVarInt(array.length);
+                for (long element : array) {
+                    out.writeVarLong(zigZag(element));
+                }
+            } else if (componentType == boolean.class) {
+                boolean[] array = (boolean[]) value;
+                out.writeVarInt(array.length);
+                for (boolean element : array) {
+                    out.writeBoolean(element);
+                }
+            } else if (componentType == double.class) {
+                double[] array = (double[]) value;
+                out.writeVarInt(array.length);
+                for (double element : array) {
+                    out.writeDouble(element);
+                }
+            } else if (componentType == float.class) {
+                float[] array = (float[]) value;
+                out.writeVarInt(array.length);
+                for (float element : array) {
+                    out.writeFloat(element);
+                }
+            } else if (componentType == byte.class) {
+                byte[] array = (byte[]) value;
+                out.writeVarInt(array.length);
+                out.write(array);
+            } else if (componentType == short.class) {
+                short[] array = (short[]) value;
+                out.writeVarInt(array.length);
+                for (short element : array) {
+                    out.writeVarInt(zigZag(element));
+                }
+            } else if (componentType == char.class) {
+                char[] array = (char[]) value;
+                out.writeVarInt(array.length);
+                for (char element : array) {
+                    out.writeVarInt(element);
+                }
+            } else {
+                Object[] array = (Object[]) value;
+                out.writeVarInt(array.length);
+                for (Object element : array) {
+                    writeObject(componentType, element);
+                }
+            }
+        }
+
+        private void writeField(Field field, Object value) throws IOException, IllegalAccessException {
+            Class<?> type = field.getType();
+            if (!type.isPrimitive()) {
+                writeObject(type, field.get(value));
+            } else if (type == int.class) {
+                out.writeVarInt(zigZag(field.getInt(value)));
+            } else if (type == long.class) {
+                out.writeVarLong(zigZag(field.getLong(value)));
+            } else if (type == boolean.class) {
+                out.writeBoolean(field.getBoolean(value));
+            } else if (type == double.class) {
+                out.writeDouble(field.getDouble(value));
+            } else if (type == float.class) {
+                out.writeFloat(field.getFloat(value));
+            } else if (type == byte.class) {
+                out.writeByte(field.getByte(value));
+            } else if (type == short.class) {
+                out.writeVarInt(zigZag(field.getShort(value)));
+            } else if (type == char.class) {
+                out.writeVarInt(field.getChar(value));
+            }
+        }
+
+        /**
+         * Writes the fingerprint of the fields of a class the first time an object of the class is written
+         */
+        private void writeFingerprint(Schema schema) throws IOException {
+            if (fingerprinted == null) {
+                fingerprinted = new IdentityHashMap<Class<?>, Boolean>();
+            }
+            if (fingerprinted.put(schema.type, Boolean.TRUE) == null) {
+                out.writeInt(schema.fingerprint);
+            }
+        }
+
+        /**
+         * Writes a reference if the value was already written, otherwise registers it
+         */
+        private boolean writeReference(Object value) throws IOException {
+            if (objects == null) {
+                objects = new IdentityHashMap<Object, Integer>();
+            }
+            Integer index = objects.get(value);
+            if (index != null) {
+                out.writeByte(REFERENCE);
+                out.writeVarInt(index);
+                return true;
+            }
+            objects.put(value, objects.size());
+            return false;
+        }
+
+        private void writeClass(Class<?> declared, Class<?> type) throws IOException {
+            if (type == declared) {
+                out.writeVarInt(0);
+                return;
+            }
+            if (classes == null) {
+                classes = new IdentityHashMap<Class<?>, Integer>();
+            }
+            Integer index = classes.get(type);
+            if (index != null) {
+                out.writeVarInt(index);
+            } else {
+                index = classes.size() + 1;
+                classes.put(type, index);
+                out.writeVarInt(index);
+                writeString(type.getName());
+            }
+        }
+
+        private void writeString(String value) throws IOException {
+            byte[] bytes = value.getBytes(UTF8);
+            out.writeVarInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Reads the values of one message
+     */
+    public static final class Reader {
+
+        private final DataByteArrayInputStream in;
+        private final ClassLoader loader;
+        private final List<Object> objects = new ArrayList<Object>();
+        private List<Class<?>> classes;
+        private Set<Class<?>> fingerprinted;
+
+        public Reader(DataByteArrayInputStream in, ClassLoader loader) {
+            this.in = in;
+            this.loader = loader;
+        }
+
+        public Object read(Class<?> type) throws IOException, ClassNotFoundException {
+            if (type.isPrimitive()) {
+                return readPrimitive(type);
+            } else {
+                return readObject(type);
+            }
+        }
+
+        public Object readSerialized() throws IOException, ClassNotFoundException {
+            byte[] bytes = new byte[readLength()];
+            in.readFully(bytes);
+            ClassLoaderObjectInputStream ois = new ClassLoaderObjectInputStream(new ByteArrayInputStream(bytes));
+            ois.setClassLoader(loader);
+            return ois.readObject();
+        }
+
+        private Object readPrimitive(Class<?> type) throws IOException {
+            if (type == int.class) {
+                return zagZig(in.readVarInt());
+            } else if (type == long.class) {
+                return zagZig(in.readVarLong());
+            } else if (type == boolean.class) {
+                return in.readBoolean();
+            } else if (type == double.class) {
+                return in.readDouble();
+            } else if (type == float.class) {
+                return in.readFloat();
+            } else if (type == byte.class) {
+                return in.readByte();
+            } else if (type == short.class) {
+                return (short) zagZig(in.readVarInt());
+            } else if (type == char.class) {
+                return (char) in.readVarInt();
+            }
+            return null;
+        }
+
+        private Object readObject(Class<?> declared) throws IOException, ClassNotFoundException {
+            Object value = readValue(declared);
+            if (value != null && !declared.isInstance(value)) {
+                throw new StreamCorruptedException("Cannot assign a " + value.getClass().getName() + " to " + declared.getName());
+            }
+            return value;
+        }
+
+        @SuppressWarnings("unchecked")
+        private Object readValue(Class<?> declared) throws IOException, ClassNotFoundException {
+            int tag = in.readUnsignedByte();
+            switch (tag) {
+                case NULL:
+                    return null;
+                case TRUE:
+                    return Boolean.TRUE;
+                case FALSE:
+                    return Boolean.FALSE;
+                case BYTE:
+                    return in.readByte();
+                case SHORT:
+                    return (short) zagZig(in.readVarInt());
+                case CHAR:
+                    return (char) in.readVarInt();
+                case INT:
+                    return zagZig(in.readVarInt());
+                case LONG:
+                    return zagZig(in.readVarLong());
+                case FLOAT:
+                    return in.readFloat();
+                case DOUBLE:
+                    return in.readDouble();
+                case STRING:
+                    return readString();
+                case BYTES: {
+                    byte[] bytes = new byte[readLength()];
+                    in.readFully(bytes);
+                    return bytes;
+                }
+                case ENUM: {
+                    Class<?> type = readClass(declared, tag);
+                    Object[] constants = schema(type).enumConstants;
+                    int ordinal = in.readVarInt();
+                    if (ordinal < 0 || ordinal >= constants.length) {
+                        throw new StreamCorruptedException("Invalid ordinal " + ordinal + " of " + type.getName());
+                    }
+                    return constants[ordinal];
+                }
+                case REFERENCE: {
+                    int index = in.readVarInt();
+                    if (index < 0 || index >= objects.size()) {
+                        throw new StreamCorruptedException("Invalid reference: " + index);
+                    }
+                    return objects.get(index);
+                }
+                case ARRAY:
+                    return readArray(readClass(declared, tag).getComponentType(), readLength());
+                case COLLECTION: {
+                    Class<?> type = readClass(declared, tag);
+                    int size = readLength();
+                    Collection<Object> collection = (Collection<Object>) newCollection(declared, type);
+                    objects.add(collection);
+                    for (int i = 0; i < size; i++) {
+                        collection.add(readObject(Object.class));
+                    }
+                    return collection;
+                }
+                case MAP: {
+                    Class<?> type = readClass(declared, tag);
+                    int size = readLength();
+                    Map<Object, Object> map = (Map<Object, Object>) newCollection(declared, type);
+                    objects.add(map);
+                    for (int i = 0; i < size; i++) {
+                        Object key = readObject(Object.class);
+                        map.put(key, readObject(Object.class));
+                    }
+                    return map;
+                }
+                case OBJECT: {
+                    Schema schema = schema(readClass(declared, tag));
+                    readFingerprint(schema);
+                    Object value = schema.newInstance();
+                    objects.add(value);
+                    schema.read(this, value);
+                    return value;
+                }
+                case SERIALIZED:
+                    return readSerialized();
+                default:
+                    throw new StreamCorruptedException("Unknown tag: " + tag);
+            }
+        }
+
+        private Object readArray(Class<?> componentType, int length) throws IOException, ClassNotFoundException {
+            if (componentType == int.class) {
+                int[] array = new int[length];
+                objects.add(array);
+                for (int i = 0; i < length; i++) {
+                    array[i] = zagZig(in.readVarInt());
+                }
+                return array;
+            } else if (componentType == long.class) {
+                long[] array = new long[length];
+                objects.add(array);
+                for (int i = 0; i < length; i++) {
+                    array[i] = zagZig(in.readVarLong());
+                }
+                return array;
+            } else if (componentType == boolean.class) {
+                boolean[] array = new boolean[length];
+                objects.add(array);
+                for (int i = 0; i < length; i++) {
+                    array[i] = in.readBoolean();
+                }
+                return array;
+            } else if (componentType == double.class) {
+                double[] array = new double[length];
+                objects.add(array);
+                for (int i = 0; i < length; i++) {
+                    array[i] = in.readDouble();
+                }
+                return array;
+            } else if (componentType == float.class) {
+                float[] array = new float[length];
+                objects.add(array);
+                for (int i = 0; i < length; i++) {
+                    array[i] = in.readFloat();
+                }
+                return array;
+            } else if (componentType == byte.class) {
+                byte[] array = new byte[length];
+                objects.add(array);
+                in.readFully(array);
+                return array;
+            } else if (componentType == short.class) {
+                short[] array = new short[length];
+                objects.add(array);
+                for (int i = 0; i < length; i++) {
+                    array[i] = (short) zagZig(in.readVarInt());
+                }
+                return array;
+            } else if (componentType == char.class) {
+                char[] array = new char[length];
+                objects.add(array);
+                for (int i = 0; i < length; i++) {
+                    array[i] = (char) in.readVarInt();
+                }
+                return array;
+            } else {
+                Object[] array = (Object[]) Array.newInstance(componentType, length);
+                objects.add(array);
+                for (int i = 0; i < length; i++) {
+                    array[i] = readObject(componentType);
+                }
+                return array;
+            }
+        }
+
+        private void readField(Field field, Object value) throws IOException, ClassNotFoundException, IllegalAccessException {
+            Class<?> type = field.getType();
+            if (!type.isPrimitive()) {
+                field.set(value, readObject(type));
+            } else if (type == int.class) {
+                field.setInt(value, zagZig(in.readVarInt()));
+            } else if (type == long.class) {
+                field.setLong(value, zagZig(in.readVarLong()));
+            } else if (type == boolean.class) {
+                field.setBoolean(value, in.readBoolean());
+            } else if (type == double.class) {
+                field.setDouble(value, in.readDouble());
+            } else if (type == float.class) {
+                field.setFloat(value, in.readFloat());
+            } else if (type == byte.class) {
+                field.setByte(value, in.readByte());
+            } else if (type == short.class) {
+                field.setShort(value, (short) zagZig(in.readVarInt()));
+            } else if (type == char.class) {
+                field.setChar(value, (char) in.readVarInt());
+            }
+        }
+
+        /**
+         * Checks the fingerprint the writer sent with the first object of a class against the local class
+         */
+        private void readFingerprint(Schema schema) throws IOException {
+            if (fingerprinted == null) {
+                fingerprinted = new HashSet<Class<?>>();
+            }
+            if (fingerprinted.add(schema.type) && in.readInt() != schema.fingerprint) {
+                throw new InvalidClassException(schema.type.getName(), "the fields of the local class do not match the fields of the sender's class");
+            }
+        }
+
+        /**
+         * Reads the class of a value with the given tag, which must be assignable to the declared type and be of
+         * a kind the tag can encode, so that no other class is ever instantiated
+         */
+        private Class<?> readClass(Class<?> declared, int tag) throws IOException, ClassNotFoundException {
+            int index = in.readVarInt();
+            Class<?> type;
+            if (index == 0) {
+                type = declared;
+            } else {
+                if (classes == null) {
+                    classes = new ArrayList<Class<?>>();
+                }
+                if (index <= classes.size()) {
+                    type = classes.get(index - 1);
+                } else if (index == classes.size() + 1) {
+                    type = Class.forName(readString(), false, loader);
+                    classes.add(type);
+                } else {
+                    throw new StreamCorruptedException("Invalid class reference: " + index);
+                }
+            }
+            if (!declared.isAssignableFrom(type) || !isEncodedAs(type, tag)) {
+                throw new StreamCorruptedException("Cannot decode a " + type.getName() + " as " + declared.getName());
+            }
+            return type;
+        }
+
+        /**
+         * Reads a length or size, each element of which takes at least one byte
+         */
+        private int readLength() throws IOException {
+            int length = in.readVarInt();
+            if (length < 0 || length > in.available()) {
+                throw new StreamCorruptedException("Invalid length: " + length);
+            }
+            return length;
+        }
+
+        private String readString() throws IOException {
+            byte[] bytes = new byte[readLength()];
+            in.readFully(bytes);
+            return new String(bytes, UTF8);
+        }
+    }
+
+    /**
+     * How the instances of a class are created and which of their fields are encoded
+     */
+    static final class Schema {
+
+        final Class<?> type;
+        final Constructor<?> constructor;
+        final Field[] fields;
+        final int fingerprint;
+        final Object[] enumConstants;
+
+        Schema(Class<?> type) {
+            this.type = type;
+            this.constructor = findConstructor(type);
+            this.fields = isEncodedByFields(type, constructor) ? findFields(type) : null;
+            this.fingerprint = fields != null ? fingerprint(fields) : 0;
+            this.enumConstants = type.getEnumConstants();
+        }
+
+        Object newInstance() throws IOException {
+            if (constructor == null) {
+                return null;
+            }
+            try {
+                return constructor.newInstance();
+            } catch (Exception e) {
+                throw IOExceptionSupport.create("Cannot create an instance of " + type.getName(), e);
+            }
+        }
+
+        void write(Writer writer, Object value) throws IOException {
+            try {
+                for (Field field : fields) {
+                    writer.writeField(field, value);
+                }
+            } catch (IllegalAccessException e) {
+                throw IOExceptionSupport.create(e);
+            }
+        }
+
+        void read(Reader reader, Object value) throws IOException, ClassNotFoundException {
+            try {
+                for (Field field : fields) {
+                    reader.readField(field, value);
+                }
+            } catch (IllegalAccessException e) {
+                throw IOExceptionSupport.create(e);
+            }
+        }
+
+        /**
+         * Hashes the names and types of the encoded fields, which is stable across JVMs
+         */
+        private static int fingerprint(Field[] fields) {
+            int hash = 1;
+            for (Field field : fields) {
+                hash = 31 * hash + field.getDeclaringClass().getName().hashCode();
+                hash = 31 * hash + field.getName().hashCode();
+                hash = 31 * hash + field.getType().getName().hashCode();
+            }
+            return hash;
+        }
+
+        private static Constructor<?> findConstructor(Class<?> type) {
+            if (type.isInterface() || Modifier.isAbstract(type.getModifiers()) || type.isArray() || type.isPrimitive()) {
+                return null;
+            }
+            try {
+                Constructor<?> constructor = type.getDeclaredConstructor();
+                constructor.setAccessible(true);
+                return constructor;
+            } catch (Exception e) {
+                return null;
+            }
+        }
+
+        private static boolean isEncodedByFields(Class<?> type, Constructor<?> constructor) {
+            if (constructor == null || type.isEnum() || Proxy.isProxyClass(type) || Externalizable.class.isAssignableFrom(type)) {
+                return false;
+            }
+            for (Class<?> c = type; c != Object.class; c = c.getSuperclass()) {
+                if (isJdkClass(c)) {
+                    return false;
+                }
+                for (String method : new String[] {"writeObject", "readObject", "writeReplace", "readResolve"}) {
+                    if (declaresMethod(c, method)) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        private static Field[] findFields(Class<?> type) {
+            List<Class<?>> hierarchy = new ArrayList<Class<?>>();
+            for (Class<?> c = type; c != Object.class; c = c.getSuperclass()) {
+                hierarchy.add(0, c);
+            }
+            List<Field> answer = new ArrayList<Field>();
+            for (Class<?> c : hierarchy) {
+                Field[] declared = c.getDeclaredFields();
+                Arrays.sort(declared, new Comparator<Field>() {
+                    @Override
+                    public int compare(Field f1, Field f2) {
+                        return f1.getName().compareTo(f2.getName());
+                    }
+                });
+                for (Field field : declared) {
+                    int modifiers = field.getModifiers();
+                    if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers)) {
+                        field.setAccessible(true);
+                        answer.add(field);
+                    }
+                }
+            }
+            return answer.toArray(new Field[answer.size()]);
+        }
+
+        private static boolean declaresMethod(Class<?> type, String name) {
+            for (java.lang.reflect.Method method : type.getDeclaredMethods()) {
+                if (method.getName().equals(name)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Returns the schema of the class, computing it again if it was cleared
+     */
+    static Schema schema(Class<?> type) {
+        Schema answer = SCHEMAS.get(type).get();
+        if (answer == null) {
+            SCHEMAS.remove(type);
+            answer = SCHEMAS.get(type).get();
+            if (answer == null) {
+                answer = new Schema(type);
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * Creates an empty instance of a JDK collection or map class, or of its substitute if it has no no argument
+     * constructor
+     */
+    private static Object newCollection(Class<?> declared, Class<?> type) throws IOException {
+        Object answer = schema(type).newInstance();
+        if (answer == null) {
+            Class<?> substitute = substituteType(declared, type);
+            if (substitute == null) {
+                throw new StreamCorruptedException("Cannot create an instance of " + type.getName() + " as a " + declared.getName());
+            }
+            answer = schema(substitute).newInstance();
+        }
+        return answer;
+    }
+
+    /**
+     * Returns the general purpose collection or map class to read a JDK collection or map which has no no argument
+     * constructor into, or null if none of them is assignable to the declared type
+     */
+    private static Class<?> substituteType(Class<?> declared, Class<?> type) {
+        Class<?>[] candidates;
+        if (SortedSet.class.isAssignableFrom(type)) {
+            candidates = SORTED_SET_SUBSTITUTES;
+        } else if (Set.class.isAssignableFrom(type)) {
+            candidates = SET_SUBSTITUTES;
+        } else if (SortedMap.class.isAssignableFrom(type)) {
+            candidates = SORTED_MAP_SUBSTITUTES;
+        } else if (Map.class.isAssignableFrom(type)) {
+            candidates = MAP_SUBSTITUTES;
+        } else {
+            candidates = COLLECTION_SUBSTITUTES;
+        }
+        for (Class<?> candidate : candidates) {
+            if (declared.isAssignableFrom(candidate)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Collections and maps of the JDK are written element by element, unless they are ordered by a comparator,
+     * are enum sets and maps, or cannot be read back as the declared type, which Java serialization handles.
+     */
+    private static boolean isPlainCollection(Class<?> declared, Object value) {
+        Class<?> type = value.getClass();
+        if (!isJdkClass(type)) {
+            return false;
+        }
+        if (schema(type).constructor == null && substituteType(declared, type) == null) {
+            return false;
+        }
+        if (value instanceof SortedSet) {
+            return ((SortedSet<?>) value).comparator() == null;
+        }
+        if (value instanceof SortedMap) {
+            return ((SortedMap<?, ?>) value).comparator() == null;
+        }
+        if (value instanceof PriorityQueue) {
+            return ((PriorityQueue<?>) value).comparator() == null;
+        }
+        if (value instanceof PriorityBlockingQueue) {
+            return ((PriorityBlockingQueue<?>) value).comparator() == null;
+        }
+        String name = type.getName();
+        return !name.startsWith("java.util.EnumMap") && !name.contains("EnumSet");
+    }
+
+    /**
+     * Returns true if the writer could have sent a value of the class with the given tag
+     */
+    private static boolean isEncodedAs(Class<?> type, int tag) {
+        switch (tag) {
+            case ENUM:
+                return type.isEnum();
+            case ARRAY:
+                return type.isArray();
+            case COLLECTION:
+                return Collection.class.isAssignableFrom(type) && isJdkClass(type);
+            case MAP:
+                return Map.class.isAssignableFrom(type) && isJdkClass(type);
+            case OBJECT:
+                return schema(type).fields != null;
+            default:
+                return false;
+        }
+    }
+
+    private static boolean isJdkClass(Class<?> type) {
+        String name = type.getName();
+        return name.startsWith("java.") || name.startsWith("javax.") || name.startsWith("sun.") || name.startsWith("com.sun.");
+    }
+
+    private static int zigZag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static int zagZig(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static long zagZig(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,172 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.dosgi;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import io.fabric8.dosgi.api.AsyncCallbackFuture;
+import io.fabric8.dosgi.api.BinarySerializationStrategy;
+import io.fabric8.dosgi.api.ObjectSerializationStrategy;
+import io.fabric8.dosgi.api.SerializationStrategy;
+import org.fusesource.hawtbuf.DataByteArrayInputStream;
+import org.fusesource.hawtbuf.DataByteArrayOutputStream;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BinarySerializationStrategyTest {
+
+    private final BinarySerializationStrategy strategy = BinarySerializationStrategy.INSTANCE;
+    private final ClassLoader loader = getClass().getClassLoader();
+
+    @Test
+    public void testRequestRoundTrip() throws Exception {
+        Person person = new Person("james", 42);
+        person.nicknames = new ArrayList<String>(Arrays.asList("jim", "jimmy"));
+        person.scores = new int[] {1, -2, 3};
+        person.status = Status.ACTIVE;
+        person.since = new Date(1234567890L);
+        Map<String, Object> options = new HashMap<String, Object>();
+        options.put("retries", 3);
+        options.put("timeout", 1.5d);
+
+        Class<?>[] types = {int.class, long.class, boolean.class, String.class, String.class, Person.class, Object.class, Map.class};
+        Object[] args = {-7, Long.MAX_VALUE, true, "h\u00e9llo", null, person, Status.INACTIVE, options};
+        Object[] decoded = roundTrip(strategy, types, args);
+
+        assertEquals(-7, decoded[0]);
+        assertEquals(Long.MAX_VALUE, decoded[1]);
+        assertEquals(true, decoded[2]);
+        assertEquals("h\u00e9llo", decoded[3]);
+        assertNull(decoded[4]);
+        Person copy = (Person) decoded[5];
+        assertEquals("james", copy.name);
+        assertEquals(42, copy.age);
+        assertEquals(person.nicknames, copy.nicknames);
+        assertArrayEquals(person.scores, copy.scores);
+        assertSame(Status.ACTIVE, copy.status);
+        assertEquals(person.since, copy.since);
+        assertSame(Status.INACTIVE, decoded[6]);
+        assertEquals(options, decoded[7]);
+    }
+
+    @Test
+    public void testSharedAndCyclicReferences() throws Exception {
+        Person parent = new Person("parent", 60);
+        Person child = new Person("child", 30);
+        parent.friend = child;
+        child.friend = parent;
+        List<Person> people = new ArrayList<Person>(Arrays.asList(parent, child, parent));
+
+        List<?> copy = (List<?>) roundTrip(strategy, new Class<?>[] {List.class}, new Object[] {people})[0];
+        Person parentCopy = (Person) copy.get(0);
+        Person childCopy = (Person) copy.get(1);
+        assertSame(childCopy, parentCopy.friend);
+        assertSame(parentCopy, childCopy.friend);
+        assertSame(parentCopy, copy.get(2));
+    }
+
+    @Test
+    public void testPriorityQueueKeepsItsComparator() throws Exception {
+        PriorityQueue<Integer> queue = new PriorityQueue<Integer>(4, Collections.reverseOrder());
+        queue.addAll(Arrays.asList(1, 3, 2));
+        PriorityBlockingQueue<Integer> blocking = new PriorityBlockingQueue<Integer>(4, Collections.reverseOrder());
+        blocking.addAll(Arrays.asList(1, 3, 2));
+
+        Object[] decoded = roundTrip(strategy, new Class<?>[] {Object.class, Object.class}, new Object[] {queue, blocking});
+        assertEquals(Integer.valueOf(3), ((PriorityQueue<?>) decoded[0]).poll());
+        assertEquals(Integer.valueOf(3), ((PriorityBlockingQueue<?>) decoded[1]).poll());
+    }
+
+    @Test
+    public void testResponseRoundTrip() throws Exception {
+        DataByteArrayOutputStream baos = new DataByteArrayOutputStream();
+        strategy.encodeResponse(loader, Person.class, new Person("james", 42), null, baos);
+        AsyncCallbackFuture<Object> future = new AsyncCallbackFuture<Object>();
+        strategy.decodeResponse(loader, Person.class, new DataByteArrayInputStream(baos.toBuffer()), future);
+        assertEquals("james", ((Person) future.get(1, TimeUnit.SECONDS)).name);
+
+        baos = new DataByteArrayOutputStream();
+        strategy.encodeResponse(loader, Person.class, null, new IllegalStateException("boom"), baos);
+        future = new AsyncCallbackFuture<Object>();
+        strategy.decodeResponse(loader, Person.class, new DataByteArrayInputStream(baos.toBuffer()), future);
+        try {
+            future.get(1, TimeUnit.SECONDS);
+            fail("Expected an exception");
+        } catch (Exception e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+            assertEquals("boom", e.getCause().getMessage());
+        }
+    }
+
+    @Test
+    public void testSmallerThanJavaSerialization() throws Exception {
+        Class<?>[] types = {String.class, Person.class};
+        Object[] args = {"key", new Person("james", 42)};
+        int binary = encode(strategy, types, args).length;
+        int object = encode(ObjectSerializationStrategy.INSTANCE, types, args).length;
+        assertTrue("binary: " + binary + " object: " + object, binary * 4 < object);
+    }
+
+    private Object[] roundTrip(SerializationStrategy strategy, Class<?>[] types, Object[] args) throws Exception {
+        Object[] decoded = new Object[types.length];
+        strategy.decodeRequest(loader, types, new DataByteArrayInputStream(encode(strategy, types, args)), decoded);
+        return decoded;
+    }
+
+    private byte[] encode(SerializationStrategy strategy, Class<?>[] types, Object[] args) throws Exception {
+        DataByteArrayOutputStream baos = new DataByteArrayOutputStream();
+        strategy.encodeRequest(loader, types, args, baos);
+        return baos.toBuffer().toByteArray();
+    }
+
+    public static enum Status {
+        ACTIVE, INACTIVE
+    }
+
+    public static class Person implements Serializable {
+        String name;
+        int age;
+        List<String> nicknames;
+        int[] scores;
+        Status status;
+        Date since;
+        Person friend;
+
+        public Person() {
+        }
+
+        public Person(String name, int age) {
+            this.name = name;
+            this.age = age;
+        }
+    }
+}
@@ -0,0 +1,243 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.dosgi.util;
+
+import java.io.InvalidClassException;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.Queue;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+
+import org.fusesource.hawtbuf.DataByteArrayInputStream;
+import org.fusesource.hawtbuf.DataByteArrayOutputStream;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BinaryCodecTest {
+
+    private final ClassLoader loader = getClass().getClassLoader();
+
+    @Test
+    public void testRejectsClassNotAssignableToDeclaredType() throws Exception {
+        DataByteArrayOutputStream out = new DataByteArrayOutputStream();
+        new BinaryCodec.Writer(out).write(Object.class, new Point());
+        assertCorrupted(out, Line.class, StreamCorruptedException.class);
+    }
+
+    @Test
+    public void testRejectsCollectionTagForOtherClasses() throws Exception {
+        DataByteArrayOutputStream out = new DataByteArrayOutputStream();
+        out.writeByte(BinaryCodec.COLLECTION);
+        writeClassName(out, Thread.class.getName());
+        out.writeVarInt(0);
+        assertCorrupted(out, Object.class, StreamCorruptedException.class);
+    }
+
+    @Test
+    public void testRejectsObjectTagForClassesNotEncodedByFields() throws Exception {
+        DataByteArrayOutputStream out = new DataByteArrayOutputStream();
+        out.writeByte(BinaryCodec.OBJECT);
+        writeClassName(out, ArrayList.class.getName());
+        assertCorrupted(out, Object.class, StreamCorruptedException.class);
+    }
+
+    @Test
+    public void testRejectsInvalidReference() throws Exception {
+        DataByteArrayOutputStream out = new DataByteArrayOutputStream();
+        out.writeByte(BinaryCodec.REFERENCE);
+        out.writeVarInt(3);
+        assertCorrupted(out, Object.class, StreamCorruptedException.class);
+    }
+
+    @Test
+    public void testRejectsInvalidEnumOrdinal() throws Exception {
+        DataByteArrayOutputStream out = new DataByteArrayOutputStream();
+        out.writeByte(BinaryCodec.ENUM);
+        out.writeVarInt(0);
+        out.writeVarInt(Direction.values().length);
+        assertCorrupted(out, Direction.class, StreamCorruptedException.class);
+    }
+
+    @Test
+    public void testRejectsLengthsLongerThanTheMessage() throws Exception {
+        DataByteArrayOutputStream out = new DataByteArrayOutputStream();
+        out.writeByte(BinaryCodec.ARRAY);
+        out.writeVarInt(0);
+        out.writeVarInt(Integer.MAX_VALUE);
+        assertCorrupted(out, long[].class, StreamCorruptedException.class);
+    }
+
+    @Test
+    public void testRejectsFieldsFingerprintMismatch() throws Exception {
+        // a Line read as a Point stands in for a sender whose version of the class has other fields
+        DataByteArrayOutputStream out = new DataByteArrayOutputStream();
+        new BinaryCodec.Writer(out).write(Line.class, new Line());
+        assertCorrupted(out, Point.class, InvalidClassException.class);
+    }
+
+    @Test
+    public void testFingerprintIsOnlySentOncePerClass() throws Exception {
+        DataByteArrayOutputStream one = new DataByteArrayOutputStream();
+        new BinaryCodec.Writer(one).write(Point.class, new Point());
+        DataByteArrayOutputStream two = new DataByteArrayOutputStream();
+        BinaryCodec.Writer writer = new BinaryCodec.Writer(two);
+        writer.write(Point.class, new Point());
+        writer.write(Point.class, new Point());
+
+        assertEquals(2 * length(one) - 4, length(two));
+        BinaryCodec.Reader reader = new BinaryCodec.Reader(new DataByteArrayInputStream(two.toBuffer()), loader);
+        reader.read(Point.class);
+        reader.read(Point.class);
+    }
+
+    @Test
+    public void testPrimitiveFieldsAndArrays() throws Exception {
+        Point point = new Point();
+        point.x = -5;
+        point.y = Long.MIN_VALUE;
+        point.visible = true;
+        point.weight = 0.25f;
+        point.scale = -1.5d;
+        point.flags = (byte) 0x80;
+        point.z = Short.MIN_VALUE;
+        point.label = '\u00e9';
+        point.ints = new int[] {1, -1, Integer.MAX_VALUE};
+        point.longs = new long[] {Long.MAX_VALUE, -2};
+        point.booleans = new boolean[] {true, false};
+        point.doubles = new double[] {Double.NaN, 1e10};
+        point.floats = new float[] {-0f};
+        point.shorts = new short[] {7, -7};
+        point.chars = new char[] {'a', '\uffff'};
+        point.names = new String[] {"a", null};
+
+        DataByteArrayOutputStream out = new DataByteArrayOutputStream();
+        new BinaryCodec.Writer(out).write(Point.class, point);
+        Point copy = (Point) new BinaryCodec.Reader(new DataByteArrayInputStream(out.toBuffer()), loader).read(Point.class);
+
+        assertEquals(point.toString(), copy.toString());
+    }
+
+    @Test
+    public void testCollectionsWithoutConstructorAreReadAsTheirDeclaredType() throws Exception {
+        TreeMap<String, String> tree = new TreeMap<String, String>();
+        tree.put("b", "2");
+        tree.put("a", "1");
+        Views views = new Views();
+        views.queue = new ArrayBlockingQueue<String>(4, false, Arrays.asList("x", "y"));
+        views.sortedSet = Collections.unmodifiableSortedSet(new TreeSet<String>(tree.keySet()));
+        views.keys = tree.navigableKeySet();
+        views.list = Collections.synchronizedList(new ArrayList<String>(Arrays.asList("p", "q")));
+        views.sortedMap = Collections.unmodifiableSortedMap(tree);
+        views.blockingQueue = new ArrayBlockingQueue<String>(2, false, Arrays.asList("z"));
+
+        Views copy = (Views) roundTrip(Views.class, views);
+        assertEquals("[x, y]", copy.queue.toString());
+        assertEquals("[a, b]", copy.sortedSet.toString());
+        assertEquals("[a, b]", copy.keys.toString());
+        assertEquals("[p, q]", copy.list.toString());
+        assertEquals("{a=1, b=2}", copy.sortedMap.toString());
+        // there is no general purpose substitute for the declared class so it is serialized instead
+        assertEquals(ArrayBlockingQueue.class, copy.blockingQueue.getClass());
+        assertEquals("[z]", copy.blockingQueue.toString());
+
+        Object queue = roundTrip(Queue.class, views.queue);
+        assertTrue(queue instanceof Queue);
+        assertEquals("[x, y]", queue.toString());
+    }
+
+    private Object roundTrip(Class<?> declared, Object value) throws Exception {
+        DataByteArrayOutputStream out = new DataByteArrayOutputStream();
+        new BinaryCodec.Writer(out).write(declared, value);
+        return new BinaryCodec.Reader(new DataByteArrayInputStream(out.toBuffer()), loader).read(declared);
+    }
+
+    private static int length(DataByteArrayOutputStream out) {
+        return out.toBuffer().toByteArray().length;
+    }
+
+    private static void writeClassName(DataByteArrayOutputStream out, String name) throws Exception {
+        out.writeVarInt(1);
+        out.writeVarInt(name.length());
+        out.write(name.getBytes("UTF-8"));
+    }
+
+    private void assertCorrupted(DataByteArrayOutputStream out, Class<?> declared, Class<? extends Exception> expected) throws Exception {
+        try {
+            new BinaryCodec.Reader(new DataByteArrayInputStream(out.toBuffer()), loader).read(declared);
+            fail("Expected a " + expected.getSimpleName());
+        } catch (Exception e) {
+            if (!expected.isInstance(e)) {
+                throw e;
+            }
+        }
+    }
+
+    public static enum Direction {
+        UP, DOWN
+    }
+
+    public static class Point {
+        int x;
+        long y;
+        boolean visible;
+        float weight;
+        double scale;
+        byte flags;
+        short z;
+        char label;
+        int[] ints;
+        long[] longs;
+        boolean[] booleans;
+        double[] doubles;
+        float[] floats;
+        short[] shorts;
+        char[] chars;
+        String[] names;
+
+        @Override
+        public String toString() {
+            return x + " " + y + " " + visible + " " + weight + " " + scale + " " + flags + " " + z + " " + label
+                    + " " + Arrays.toString(ints) + " " + Arrays.toString(longs)
+                    + " " + Arrays.toString(booleans) + " " + Arrays.toString(doubles)
+                    + " " + Arrays.toString(floats) + " " + Arrays.toString(shorts)
+                    + " " + Arrays.toString(chars) + " " + Arrays.toString(names);
+        }
+    }
+
+    public static class Line {
+        String name;
+    }
+
+    public static class Views {
+        Queue<String> queue;
+        SortedSet<String> sortedSet;
+        NavigableSet<String> keys;
+        List<String> list;
+        SortedMap<String, String> sortedMap;
+        ArrayBlockingQueue<String> blockingQueue;
+    }
+}
@@ -28,12 +28,12 @@ import io.fabric8.api.ProfileRegistry;
 import io.fabric8.api.Profiles;
 import io.fabric8.api.RuntimeProperties;
 import io.fabric8.api.Version;
-import io.fabric8.api.VersionBuilder;
 import io.fabric8.api.VersionSequence;
 import io.fabric8.api.jcip.ThreadSafe;
 import io.fabric8.api.scr.AbstractComponent;
 import io.fabric8.api.scr.Configurer;
 import io.fabric8.api.scr.ValidatingReference;
+import io.fabric8.api.visibility.VisibleForTesting;
 import io.fabric8.utils.Files;
 import io.fabric8.utils.Strings;
 import io.fabric8.utils.Zips;
@@ -75,9 +75,12 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock.ReadLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock.WriteLock;
@@ -98,11 +101,11 @@ import org.apache.felix.scr.annotations.Service;
 import org.apache.zookeeper.KeeperException;
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.PersonIdent;
 import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.lib.StoredConfig;
-import org.eclipse.jgit.revwalk.RevCommit;
 import org.eclipse.jgit.transport.CredentialsProvider;
 import org.eclipse.jgit.transport.PushResult;
 import org.eclipse.jgit.transport.UsernamePasswordCredentialsProvider;
@@ -112,10 +115,6 @@ import org.jboss.gravia.utils.IllegalStateAssertion;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
-
 /**
  * A git based implementation of {@link DataStore} which stores the profile
  * configuration versions in a branch per version and directory per profile.
@@ -133,7 +132,6 @@ public final class GitDataStoreImpl extends AbstractComponent implements GitData
 
     private static final String GIT_REMOTE_USER = "gitRemoteUser";
     private static final String GIT_REMOTE_PASSWORD = "gitRemotePassword";
-    private static final int GIT_COMMIT_SHORT_LENGTH = 7;
     private static final int MAX_COMMITS_WITHOUT_GC = 40;
     private static final long AQUIRE_LOCK_TIMEOUT = 25 * 1000L;
 
@@ -165,6 +163,10 @@ public final class GitDataStoreImpl extends AbstractComponent implements GitData
     private ProxySelector defaultProxySelector;
     private PullPushPolicy pullPushPolicy;
     private boolean notificationRequired;
+    /**
+     * The profiles changed by the current write operation keyed by version, guarded by the write lock
+     */
+    private final Map<String, Set<String>> changedProfiles = new HashMap<>();
     private SharedCount counter;
     private String remoteUrl;
 
@@ -177,7 +179,14 @@ public final class GitDataStoreImpl extends AbstractComponent implements GitData
     @Property(name = "gitRemotePollInterval", label = "Remote poll Interval", description = "The interval between remote repo polling operations")
     private long gitRemotePollInterval = 60 * 1000L;
 
-    private final LoadingCache<String, Version> versionCache = CacheBuilder.newBuilder().build(new VersionCacheLoader());
+    /**
+     * The loaded versions, which are immutable snapshots that readers can get without taking any lock.
+     * Any change to the repository invalidates them and bumps the generation, so that a version which was
+     * loaded while the repository changed is not published.
+     */
+    private final ConcurrentMap<String, Version> versionCache = new ConcurrentHashMap<>();
+    private final AtomicLong versionCacheGeneration = new AtomicLong();
+    private final VersionCacheLoader versionCacheLoader = new VersionCacheLoader();
     private final Set<String> versions = new HashSet<String>();
 
     @Activate
@@ -381,11 +390,16 @@ public final class GitDataStoreImpl extends AbstractComponent implements GitData
         return new LockHandle() {
             @Override
             public void unlock() {
-                if (notificationRequired && readWriteLock.getWriteHoldCount() == 1) {
+                if ((notificationRequired || !changedProfiles.isEmpty()) && readWriteLock.getWriteHoldCount() == 1) {
                     try {
-                        dataStore.get().fireChangeNotifications();
+                        if (notificationRequired) {
+                            dataStore.get().fireChangeNotifications();
+                        } else {
+                            dataStore.get().fireProfileChangeNotifications(new HashMap<>(changedProfiles));
+                        }
                     } finally {
                         notificationRequired = false;
+                        changedProfiles.clear();
                     }
                 }
                 writeLock.unlock();
@@ -445,19 +459,133 @@ public final class GitDataStoreImpl extends AbstractComponent implements GitData
     }
 
     private Version getVersionFromCache(String versionId, String profileId) {
-        LockHandle writeLock = aquireWriteLock();
+        assertValid();
+        Version version = versionCache.get(versionId);
+        if (version != null) {
+            return version;
+        }
+        // loading only reads the object database, so readers can load versions concurrently
+        LockHandle readLock = aquireReadLock();
         try {
-            assertValid();
+            version = versionCache.get(versionId);
+            if (version != null) {
+                return version;
+            }
             String branch = GitHelpers.getProfileBranch(versionId, profileId);
             if (GitHelpers.localBranchExists(getGit(), branch)) {
-                return versionCache.get(versionId);
+                long generation = versionCacheGeneration.get();
+                version = versionCacheLoader.load(versionId);
+                publishVersion(generation, version);
+                return version;
             } else {
                 return null;
             }
         } catch (Exception e) {
             throw FabricException.launderThrowable(e);
         } finally {
-            writeLock.unlock();
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Publishes a loaded version unless the cache was invalidated since the load started
+     */
+    private void publishVersion(long generation, Version version) {
+        versionCache.put(version.getId(), version);
+        if (versionCacheGeneration.get() != generation) {
+            versionCache.remove(version.getId(), version);
+        }
+    }
+
+    @VisibleForTesting
+    void cacheVersion(Version version) {
+        cacheVersionId(version.getId());
+        publishVersion(versionCacheGeneration.get(), version);
+    }
+
+    @VisibleForTesting
+    Version getCachedVersion(String versionId) {
+        return versionCache.get(versionId);
+    }
+
+    private void invalidateVersionCache() {
+        versionCacheGeneration.incrementAndGet();
+        versionCache.clear();
+    }
+
+    private void invalidateVersionCache(String versionId) {
+        versionCacheGeneration.incrementAndGet();
+        versionCache.remove(versionId);
+    }
+
+    @VisibleForTesting
+    Map<String, ObjectId> getBranchHeads(Repository repository) throws IOException {
+        Map<String, ObjectId> answer = new HashMap<>();
+        for (Ref ref : repository.getRefDatabase().getRefs("refs/heads/").values()) {
+            answer.put(Repository.shortenRefName(ref.getName()), ref.getObjectId());
+        }
+        return answer;
+    }
+
+    /**
+     * Brings the cached versions up to date with the branches which moved since the given heads were taken.
+     * Only the profiles which differ between the old and new commits are read again, and the listeners are
+     * told which profiles changed unless versions were created or removed.
+     */
+    @VisibleForTesting
+    void updateVersionCache(Repository repository, Map<String, ObjectId> previousHeads) throws IOException {
+        assertWriteLock();
+        Map<String, ObjectId> heads = getBranchHeads(repository);
+        Set<String> branches = new HashSet<>(previousHeads.keySet());
+        branches.addAll(heads.keySet());
+        GitVersionLoader loader = new GitVersionLoader(repository);
+        for (String branch : branches) {
+            ObjectId previous = previousHeads.get(branch);
+            ObjectId current = heads.get(branch);
+            if (previous == null || current == null) {
+                invalidateVersionCache(branch);
+                notificationRequired = true;
+            } else if (!previous.equals(current)) {
+                try {
+                    updateVersionCache(loader, branch, loader.getChangedPaths(previous, current));
+                } catch (Exception e) {
+                    LOGGER.warn("Cannot update cached versions for branch " + branch + ", reloading all of them", e);
+                    invalidateVersionCache();
+                    notificationRequired = true;
+                }
+            }
+        }
+    }
+
+    private void updateVersionCache(GitVersionLoader loader, String branch, Set<String> changedPaths) throws IOException {
+        Set<String> profilePaths = new HashSet<>(changedPaths);
+        if (profilePaths.remove(GitHelpers.VERSION_ATTRIBUTES) && !GitHelpers.MASTER_BRANCH.equals(branch)) {
+            notificationRequired = true;
+        }
+        Set<String> profileIds = new HashSet<>();
+        for (String profilePath : profilePaths) {
+            profileIds.add(GitVersionLoader.getProfileId(profilePath));
+        }
+        Set<String> versionIds = Collections.singleton(branch);
+        if (GitHelpers.MASTER_BRANCH.equals(branch)) {
+            // the master profiles are inherited by all the versions
+            versionIds = new HashSet<>(versions);
+            versionIds.add(branch);
+        }
+        versionCacheGeneration.incrementAndGet();
+        for (String versionId : versionIds) {
+            Version version = versionCache.get(versionId);
+            if (version != null) {
+                versionCache.put(versionId, loader.reloadProfiles(version, profilePaths));
+            }
+            if (!profileIds.isEmpty()) {
+                Set<String> changed = changedProfiles.get(versionId);
+                if (changed == null) {
+                    changed = new HashSet<>();
+                    changedProfiles.put(versionId, changed);
+                }
+                changed.addAll(profileIds);
+            }
         }
     }
 
@@ -956,12 +1084,13 @@ public final class GitDataStoreImpl extends AbstractComponent implements GitData
                 doPullInternal(context, getCredentialsProvider(), false);
             }
 
+            Map<String, ObjectId> heads = context.isRequireCommit() ? getBranchHeads(repository) : null;
+
             T result = operation.call(git, context);
 
             if (context.isRequireCommit()) {
                 doCommit(git, context);
-                versionCache.invalidateAll();
-                notificationRequired = true;
+                updateVersionCache(repository, heads);
             }
 
             if (context.isRequirePush()) {
@@ -1029,17 +1158,26 @@ public final class GitDataStoreImpl extends AbstractComponent implements GitData
     }
     
     private PullPolicyResult doPullInternal(GitContext context, CredentialsProvider credentialsProvider, boolean allowVersionDelete) {
+        Repository repository = getGit().getRepository();
+        Map<String, ObjectId> heads;
+        try {
+            heads = getBranchHeads(repository);
+        } catch (IOException ex) {
+            throw FabricException.launderThrowable(ex);
+        }
         PullPolicyResult pullResult = pullPushPolicy.doPull(context, getCredentialsProvider(), allowVersionDelete);
         if (pullResult.getLastException() == null) {
-            if (pullResult.localUpdateRequired()) {
-                versionCache.invalidateAll();
-                notificationRequired = true;
-            }
             Set<String> pullVersions = pullResult.getVersions();
             if (!pullVersions.isEmpty() && !pullVersions.equals(versions)) {
                 versions.clear();
                 versions.addAll(pullVersions);
-                versionCache.invalidateAll();
+                notificationRequired = true;
+            }
+            try {
+                updateVersionCache(repository, heads);
+            } catch (IOException ex) {
+                LOGGER.warn("Cannot update cached versions after pull, reloading all of them", ex);
+                invalidateVersionCache();
                 notificationRequired = true;
             }
             if (pullResult.remoteUpdateRequired()) {
@@ -1096,15 +1234,6 @@ public final class GitDataStoreImpl extends AbstractComponent implements GitData
         return relativePath.replace(File.separatorChar, '/');
     }
     
-    private Map<String, String> getVersionAttributes(Git git, GitContext context, String versionId) throws IOException {
-        File rootDirectory = GitHelpers.getRootGitDirectory(git);
-        File file = new File(rootDirectory, GitHelpers.VERSION_ATTRIBUTES);
-        if (!file.exists()) {
-            return Collections.emptyMap();
-        }
-        return DataStoreUtils.toMap(Files.readBytes(file));
-    }
-
     private void setVersionAttributes(Git git, GitContext context, String versionId, Map<String, String> attributes) throws IOException, GitAPIException {
         File rootDirectory = GitHelpers.getRootGitDirectory(git);
         File file = new File(rootDirectory, GitHelpers.VERSION_ATTRIBUTES);
@@ -1178,7 +1307,7 @@ public final class GitDataStoreImpl extends AbstractComponent implements GitData
     }
 
     private void removeVersionFromCaches(String versionId) {
-        versionCache.invalidate(versionId);
+        invalidateVersionCache(versionId);
         versions.remove(versionId);
     }
     
@@ -1252,7 +1381,7 @@ public final class GitDataStoreImpl extends AbstractComponent implements GitData
         @Override
         public void onReceivePack() {
             assertValid();
-            versionCache.invalidateAll();
+            invalidateVersionCache();
         }
         
         private void runRemoteUrlChanged(final String updateUrl) {
@@ -1673,112 +1802,19 @@ public final class GitDataStoreImpl extends AbstractComponent implements GitData
         }
     }
     
-    class VersionCacheLoader extends CacheLoader<String, Version> {
-        
-        @Override
-        public Version load(final String versionId) {
-            assertWriteLock();
+    /**
+     * Loads a version from the object database without checking it out; the caller must hold the read lock
+     */
+    class VersionCacheLoader {
+
+        Version load(final String versionId) {
+            assertReadLock();
             GitOperation<Version> gitop = new GitOperation<Version>() {
                 public Version call(Git git, GitContext context) throws Exception {
-                    String revision = git.getRepository().getRefDatabase().getRef(versionId).getObjectId().getName();
-                    return loadVersion(git, context, versionId, revision);
+                    return new GitVersionLoader(git.getRepository()).loadVersion(versionId);
                 }
             };
-            GitContext context = new GitContext();
-            return executeInternal(context, null, gitop);
-        }
-        
-        private Version loadVersion(Git git, GitContext context, String versionId, String revision) throws Exception {
-            VersionBuilder vbuilder = VersionBuilder.Factory.create(versionId).setRevision(revision);
-            vbuilder.setAttributes(getVersionAttributes(git, context, versionId));
-            populateVersionBuilder(git, context, vbuilder, "master", versionId);
-            populateVersionBuilder(git, context, vbuilder, versionId, versionId);
-            return vbuilder.getVersion();
-        }
-
-        private void populateVersionBuilder(Git git, GitContext context, VersionBuilder builder, String branch, String versionId) throws GitAPIException, IOException {
-            checkoutRequiredProfileBranch(git, context, branch, null);
-            File profilesDir = GitHelpers.getProfilesDirectory(git);
-            if (profilesDir.exists()) {
-                String[] files = profilesDir.list();
-                if (files != null) {
-                    for (String childName : files) {
-                        Path childPath = profilesDir.toPath().resolve(childName);
-                        if (childPath.toFile().isDirectory()) {
-                            RevCommit lastCommit = GitHelpers.getProfileLastCommit(git, branch, childName);
-                            if (lastCommit != null) {
-                                populateProfile(git, builder, branch, versionId, childPath.toFile(), "");
-                            }
-                        }
-                    }
-                }
-            }
-        }
-
-        private void populateProfile(Git git, VersionBuilder versionBuilder, String branch, String versionId, File profileFile, String prefix) throws IOException {
-            String profileName = profileFile.getName();
-            String profileId = profileName;
-            if (profileId.endsWith(Profiles.PROFILE_FOLDER_SUFFIX)) {
-                profileId = prefix + profileId.substring(0, profileId.length() - Profiles.PROFILE_FOLDER_SUFFIX.length());
-            } else {
-                // lets recurse all children
-                File[] files = profileFile.listFiles();
-                if (files != null) {
-                    for (File childFile : files) {
-                        if (childFile.isDirectory()) {
-                            populateProfile(git, versionBuilder, branch, versionId, childFile, prefix + profileFile.getName() + "-");
-                        }
-                    }
-                }
-                return;
-            }
-
-            RevCommit lastCommit = GitHelpers.getProfileLastCommit(git, branch, profileName);
-            String lastModified = lastCommit != null ? lastCommit.getId().abbreviate(GIT_COMMIT_SHORT_LENGTH).name() : "";
-            Map<String, byte[]> fileConfigurations = doGetFileConfigurations(git, profileId);
-            
-            ProfileBuilder profileBuilder = ProfileBuilder.Factory.create(versionId, profileId);
-            profileBuilder.setFileConfigurations(fileConfigurations).setLastModified(lastModified);
-            versionBuilder.addProfile(profileBuilder.getProfile());
-        }
-
-        private Map<String, byte[]> doGetFileConfigurations(Git git, String profileId) throws IOException {
-            Map<String, byte[]> configurations = new HashMap<String, byte[]>();
-            File profileDirectory = GitHelpers.getProfileDirectory(git, profileId);
-            populateFileConfigurations(configurations, profileDirectory, profileDirectory);
-            return configurations;
-        }
-
-        private void populateFileConfigurations(Map<String, byte[]> configurations, File profileDirectory, File directory) throws IOException {
-            File[] files = directory.listFiles();
-            if (files != null) {
-                for (File file : files) {
-                    if (file.isFile()) {
-                        String relativePath = getFilePattern(profileDirectory, file);
-                        configurations.put(relativePath, loadFileConfiguration(file));
-                    } else if (file.isDirectory()) {
-                        populateFileConfigurations(configurations, profileDirectory, file);
-                    }
-                }
-            }
-        }
-
-        private byte[] loadFileConfiguration(File file) throws IOException {
-            if (file.isDirectory()) {
-                // Not sure why we do this, but for directory pids, lets recurse...
-                StringBuilder buf = new StringBuilder();
-                File[] files = file.listFiles();
-                if (files != null) {
-                    for (File child : files) {
-                        String value = Files.toString(child);
-                        buf.append(String.format("%s = %s\n", child.getName(), value));
-                    }
-                }
-                return buf.toString().getBytes();
-            } else if (file.exists() && file.isFile()) {
-                return Files.readBytes(file);
-            }
-            return null;
+            return executeInternal(newGitReadContext(), null, gitop);
         }
     }
 }
@@ -0,0 +1,284 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.git.internal;
+
+import io.fabric8.api.Profile;
+import io.fabric8.api.ProfileBuilder;
+import io.fabric8.api.Profiles;
+import io.fabric8.api.Version;
+import io.fabric8.api.VersionBuilder;
+import io.fabric8.utils.DataStoreUtils;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.EmptyTreeIterator;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.AndTreeFilter;
+import org.eclipse.jgit.treewalk.filter.PathFilter;
+import org.eclipse.jgit.treewalk.filter.PathFilterGroup;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+import org.jboss.gravia.utils.IllegalStateAssertion;
+
+/**
+ * Builds a {@link Version} straight from the commits of its branch in the object database.
+ * <p/>
+ * The profiles are read with a {@link TreeWalk} over the commit's tree rather than from a working tree
+ * checkout, and the last commit of every profile is found in a single walk back through the history of the
+ * branch rather than with a log scan per profile. Nothing on disk is modified so versions can be loaded
+ * while other readers use the repository.
+ * <p/>
+ * When a branch moves, the profiles changed between the old and new commits are found by diffing their trees
+ * so that only those profiles of a loaded version have to be read again.
+ */
+final class GitVersionLoader {
+
+    private static final String PROFILES_PATH = GitHelpers.CONFIGS + "/profiles";
+    private static final int GIT_COMMIT_SHORT_LENGTH = 7;
+
+    private final Repository repository;
+
+    GitVersionLoader(Repository repository) {
+        this.repository = repository;
+    }
+
+    /**
+     * Loads the version with the profiles of the master branch overlaid by the profiles of the version branch
+     */
+    Version loadVersion(String versionId) throws IOException {
+        return loadVersion(VersionBuilder.Factory.create(versionId), versionId, PathFilter.create(PROFILES_PATH));
+    }
+
+    /**
+     * Loads the version again reading only the given profile directories, the other profiles are taken from
+     * the previously loaded version
+     */
+    Version reloadProfiles(Version version, Set<String> profilePaths) throws IOException {
+        VersionBuilder builder = VersionBuilder.Factory.create(version.getId()).from(version);
+        for (String profilePath : profilePaths) {
+            builder.removeProfile(getProfileId(profilePath));
+        }
+        TreeFilter profileFilter = profilePaths.isEmpty() ? null : PathFilterGroup.createFromStrings(profilePaths);
+        return loadVersion(builder, version.getId(), profileFilter);
+    }
+
+    /**
+     * Returns the profile directories which differ between the two commits, along with the version
+     * attributes path if the attributes changed
+     */
+    Set<String> getChangedPaths(AnyObjectId fromCommit, AnyObjectId toCommit) throws IOException {
+        Set<String> answer = new TreeSet<>();
+        RevWalk revWalk = new RevWalk(repository);
+        TreeWalk walk = new TreeWalk(revWalk.getObjectReader());
+        try {
+            walk.addTree(revWalk.parseCommit(fromCommit).getTree());
+            walk.addTree(revWalk.parseCommit(toCommit).getTree());
+            walk.setRecursive(true);
+            walk.setFilter(AndTreeFilter.create(PathFilterGroup.createFromStrings(PROFILES_PATH, GitHelpers.VERSION_ATTRIBUTES), TreeFilter.ANY_DIFF));
+            while (walk.next()) {
+                String path = walk.getPathString();
+                int end = getProfilePathEnd(path);
+                if (end > 0) {
+                    answer.add(path.substring(0, end));
+                } else if (path.equals(GitHelpers.VERSION_ATTRIBUTES)) {
+                    answer.add(path);
+                }
+            }
+        } finally {
+            walk.release();
+            revWalk.release();
+        }
+        return answer;
+    }
+
+    /**
+     * Converts a profile directory path such as "fabric/profiles/foo/bar.profile" to its id "foo-bar"
+     */
+    static String getProfileId(String profilePath) {
+        String path = profilePath.substring(PROFILES_PATH.length() + 1);
+        path = path.substring(0, path.length() - Profiles.PROFILE_FOLDER_SUFFIX.length());
+        return path.replace('/', '-');
+    }
+
+    private Version loadVersion(VersionBuilder builder, String versionId, TreeFilter profileFilter) throws IOException {
+        Ref versionRef = repository.getRef(versionId);
+        IllegalStateAssertion.assertNotNull(versionRef, "Version does not exist: " + versionId);
+        Ref masterRef = repository.getRef(GitHelpers.MASTER_BRANCH);
+
+        RevWalk revWalk = new RevWalk(repository);
+        try {
+            RevCommit versionCommit = revWalk.parseCommit(versionRef.getObjectId());
+            builder.setRevision(versionCommit.getId().getName());
+            builder.setAttributes(getVersionAttributes(revWalk.getObjectReader(), versionCommit));
+            if (profileFilter == null) {
+                return builder.getVersion();
+            }
+            if (masterRef != null) {
+                populateVersionBuilder(revWalk, builder, revWalk.parseCommit(masterRef.getObjectId()), versionId, profileFilter);
+            }
+            populateVersionBuilder(revWalk, builder, versionCommit, versionId, profileFilter);
+            return builder.getVersion();
+        } finally {
+            revWalk.release();
+        }
+    }
+
+    private Map<String, String> getVersionAttributes(ObjectReader reader, RevCommit commit) throws IOException {
+        TreeWalk walk = TreeWalk.forPath(reader, GitHelpers.VERSION_ATTRIBUTES, commit.getTree());
+        if (walk == null) {
+            return Collections.emptyMap();
+        }
+        try {
+            return DataStoreUtils.toMap(reader.open(walk.getObjectId(0)).getBytes());
+        } finally {
+            walk.release();
+        }
+    }
+
+    private void populateVersionBuilder(RevWalk revWalk, VersionBuilder builder, RevCommit commit, String versionId, TreeFilter profileFilter) throws IOException {
+        Map<String, Map<String, byte[]>> profiles = readProfiles(revWalk.getObjectReader(), commit, profileFilter);
+        Map<String, String> lastModified = getLastModified(revWalk, commit, profiles.keySet());
+        for (Map.Entry<String, Map<String, byte[]>> entry : profiles.entrySet()) {
+            String profilePath = entry.getKey();
+            String modified = lastModified.get(profilePath);
+            Profile profile = ProfileBuilder.Factory.create(versionId, getProfileId(profilePath))
+                    .setFileConfigurations(entry.getValue())
+                    .setLastModified(modified != null ? modified : "")
+                    .getProfile();
+            builder.addProfile(profile);
+        }
+    }
+
+    /**
+     * Returns the configuration files of each profile in the commit keyed by the path of the profile directory
+     */
+    private Map<String, Map<String, byte[]>> readProfiles(ObjectReader reader, RevCommit commit, TreeFilter profileFilter) throws IOException {
+        Map<String, Map<String, byte[]>> profiles = new LinkedHashMap<>();
+        TreeWalk walk = new TreeWalk(reader);
+        try {
+            walk.addTree(commit.getTree());
+            walk.setRecursive(true);
+            walk.setFilter(profileFilter);
+            while (walk.next()) {
+                String path = walk.getPathString();
+                int end = getProfilePathEnd(path);
+                if (end < 0) {
+                    continue;
+                }
+                String profilePath = path.substring(0, end);
+                Map<String, byte[]> configurations = profiles.get(profilePath);
+                if (configurations == null) {
+                    configurations = new HashMap<>();
+                    profiles.put(profilePath, configurations);
+                }
+                configurations.put(path.substring(end + 1), reader.open(walk.getObjectId(0)).getBytes());
+            }
+        } finally {
+            walk.release();
+        }
+        return profiles;
+    }
+
+    /**
+     * Walks back through the history of the commit once, recording the first commit which changed each of
+     * the profile directories, until all of them are found
+     */
+    private Map<String, String> getLastModified(RevWalk revWalk, RevCommit head, Set<String> profilePaths) throws IOException {
+        Map<String, String> answer = new HashMap<>();
+        if (profilePaths.isEmpty()) {
+            return answer;
+        }
+        revWalk.reset();
+        revWalk.markStart(head);
+        TreeWalk walk = new TreeWalk(revWalk.getObjectReader());
+        try {
+            walk.setRecursive(true);
+            // only descend into the profile directories which differ from the parents
+            walk.setFilter(AndTreeFilter.create(PathFilter.create(PROFILES_PATH), TreeFilter.ANY_DIFF));
+            RevCommit commit;
+            while (answer.size() < profilePaths.size() && (commit = revWalk.next()) != null) {
+                walk.reset();
+                walk.addTree(commit.getTree());
+                int parents = commit.getParentCount();
+                if (parents == 0) {
+                    walk.addTree(new EmptyTreeIterator());
+                } else {
+                    for (int i = 0; i < parents; i++) {
+                        walk.addTree(revWalk.parseCommit(commit.getParent(i)).getTree());
+                    }
+                }
+                String abbreviated = null;
+                while (walk.next()) {
+                    // as with a path limited log, merges only count for the changes they made against every parent
+                    if (!differsFromAllParents(walk)) {
+                        continue;
+                    }
+                    int end = getProfilePathEnd(walk.getPathString());
+                    if (end < 0) {
+                        continue;
+                    }
+                    String profilePath = walk.getPathString().substring(0, end);
+                    if (profilePaths.contains(profilePath) && !answer.containsKey(profilePath)) {
+                        if (abbreviated == null) {
+                            abbreviated = commit.getId().abbreviate(GIT_COMMIT_SHORT_LENGTH).name();
+                        }
+                        answer.put(profilePath, abbreviated);
+                    }
+                }
+            }
+        } finally {
+            walk.release();
+        }
+        return answer;
+    }
+
+    private static boolean differsFromAllParents(TreeWalk walk) {
+        for (int i = 1; i < walk.getTreeCount(); i++) {
+            if (walk.idEqual(0, i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the end of the profile directory within the path of a file below the profiles directory, or -1
+     * if the file is not within a profile
+     */
+    private static int getProfilePathEnd(String path) {
+        int start = PROFILES_PATH.length() + 1;
+        int slash = path.indexOf('/', start);
+        while (slash > 0) {
+            if (path.substring(start, slash).endsWith(Profiles.PROFILE_FOLDER_SUFFIX)) {
+                return slash;
+            }
+            start = slash + 1;
+            slash = path.indexOf('/', start);
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,133 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.git.internal;
+
+import static io.fabric8.git.internal.GitVersionLoaderTest.assertAgentProperties;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import io.fabric8.api.DataStore;
+import io.fabric8.api.LockHandle;
+import io.fabric8.api.Version;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.easymock.EasyMock;
+import org.eclipse.jgit.lib.ObjectId;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class GitDataStoreImplTest {
+
+    private TestRepository repository;
+    private DataStore notifications;
+    private GitDataStoreImpl dataStore;
+
+    @Before
+    public void setUp() throws Exception {
+        repository = new TestRepository("version-cache");
+        repository.commitProfile("master", "default", "name=default");
+        repository.createBranch("1.0");
+        repository.createBranch("1.1");
+        repository.commitProfile("1.0", "foo", "name=foo-1.0");
+        repository.commitProfile("1.1", "foo", "name=foo-1.1");
+        // a profile which is only on master, the versions inherit it
+        repository.commitProfile("master", "ensemble", "name=ensemble");
+
+        notifications = EasyMock.createStrictMock(DataStore.class);
+        dataStore = new GitDataStoreImpl();
+        dataStore.bindDataStore(notifications);
+        GitVersionLoader loader = new GitVersionLoader(repository.getRepository());
+        dataStore.cacheVersion(loader.loadVersion("1.0"));
+        dataStore.cacheVersion(loader.loadVersion("1.1"));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        repository.close();
+    }
+
+    @Test
+    public void testCommitToVersionBranchOnlyReloadsThatVersion() throws Exception {
+        Version other = dataStore.getCachedVersion("1.1");
+        notifications.fireProfileChangeNotifications(changedProfiles("foo", "1.0"));
+        EasyMock.replay(notifications);
+
+        LockHandle writeLock = dataStore.aquireWriteLock();
+        try {
+            Map<String, ObjectId> heads = dataStore.getBranchHeads(repository.getRepository());
+            repository.commitProfile("1.0", "foo", "name=foo-changed");
+            dataStore.updateVersionCache(repository.getRepository(), heads);
+        } finally {
+            writeLock.unlock();
+        }
+
+        EasyMock.verify(notifications);
+        assertAgentProperties("name=foo-changed", dataStore.getCachedVersion("1.0").getProfile("foo"));
+        assertSame(other, dataStore.getCachedVersion("1.1"));
+    }
+
+    @Test
+    public void testMasterChangeMarksEveryVersionAsChanged() throws Exception {
+        notifications.fireProfileChangeNotifications(changedProfiles("ensemble", "master", "1.0", "1.1"));
+        EasyMock.replay(notifications);
+
+        LockHandle writeLock = dataStore.aquireWriteLock();
+        try {
+            Map<String, ObjectId> heads = dataStore.getBranchHeads(repository.getRepository());
+            repository.commitProfile("master", "ensemble", "name=ensemble-changed");
+            dataStore.updateVersionCache(repository.getRepository(), heads);
+        } finally {
+            writeLock.unlock();
+        }
+
+        EasyMock.verify(notifications);
+        for (String versionId : new String[]{"1.0", "1.1"}) {
+            Version version = dataStore.getCachedVersion(versionId);
+            assertAgentProperties("name=ensemble-changed", version.getProfile("ensemble"));
+            assertAgentProperties("name=foo-" + versionId, version.getProfile("foo"));
+        }
+    }
+
+    @Test
+    public void testCreatedBranchFiresFullNotification() throws Exception {
+        notifications.fireChangeNotifications();
+        EasyMock.replay(notifications);
+
+        LockHandle writeLock = dataStore.aquireWriteLock();
+        try {
+            Map<String, ObjectId> heads = dataStore.getBranchHeads(repository.getRepository());
+            repository.createBranch("1.2");
+            dataStore.updateVersionCache(repository.getRepository(), heads);
+        } finally {
+            writeLock.unlock();
+        }
+
+        EasyMock.verify(notifications);
+        assertNull(dataStore.getCachedVersion("1.2"));
+    }
+
+    private static Map<String, Set<String>> changedProfiles(String profileId, String... versionIds) {
+        Map<String, Set<String>> answer = new HashMap<>();
+        for (String versionId : versionIds) {
+            answer.put(versionId, Collections.singleton(profileId));
+        }
+        return answer;
+    }
+}
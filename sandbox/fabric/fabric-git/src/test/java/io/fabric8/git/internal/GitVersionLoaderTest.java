@@ -0,0 +1,117 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.git.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import io.fabric8.api.Profile;
+import io.fabric8.api.Version;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class GitVersionLoaderTest {
+
+    private TestRepository repository;
+    private GitVersionLoader loader;
+
+    @Before
+    public void setUp() throws Exception {
+        repository = new TestRepository("version-loader");
+        repository.commitProfile("master", "default", "name=default");
+        repository.createBranch("1.0");
+        repository.commitProfile("1.0", "foo", "name=foo");
+        loader = new GitVersionLoader(repository.getRepository());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        repository.close();
+    }
+
+    @Test
+    public void testLoadVersionOverlaysTheMasterProfiles() throws Exception {
+        repository.commitProfile("master", "ensemble", "name=ensemble");
+        repository.commitProfile("master", "default", "name=default2");
+        Version version = loader.loadVersion("1.0");
+
+        assertEquals(repository.resolve("1.0").getName(), version.getRevision());
+        assertAgentProperties("name=ensemble", version.getProfile("ensemble"));
+        assertAgentProperties("name=default", version.getProfile("default"));
+        assertAgentProperties("name=foo", version.getProfile("foo"));
+    }
+
+    @Test
+    public void testChangedPathsAreTheChangedProfileDirectories() throws Exception {
+        ObjectId previous = repository.resolve("1.0");
+        repository.commitProfile("1.0", "foo", "name=foo2");
+        repository.commitProfile("1.0", "bar", "name=bar");
+        repository.commit("1.0", "ReadMe.md", "not a profile");
+        assertEquals(paths("foo.profile", "bar.profile"), loader.getChangedPaths(previous, repository.resolve("1.0")));
+
+        previous = repository.resolve("1.0");
+        repository.commit("1.0", GitHelpers.VERSION_ATTRIBUTES, "locked=true");
+        assertEquals(Collections.singleton(GitHelpers.VERSION_ATTRIBUTES), loader.getChangedPaths(previous, repository.resolve("1.0")));
+    }
+
+    @Test
+    public void testReloadProfilesOnlyReadsTheGivenProfiles() throws Exception {
+        Version version = loader.loadVersion("1.0");
+        repository.commitProfile("1.0", "foo", "name=foo2");
+        repository.commitProfile("1.0", "default", "name=default2");
+
+        Version reloaded = loader.reloadProfiles(version, paths("foo.profile"));
+
+        assertEquals(repository.resolve("1.0").getName(), reloaded.getRevision());
+        assertAgentProperties("name=foo2", reloaded.getProfile("foo"));
+        assertAgentProperties("name=default", reloaded.getProfile("default"));
+    }
+
+    @Test
+    public void testReloadProfilesRemovesDeletedProfiles() throws Exception {
+        Version version = loader.loadVersion("1.0");
+        repository.commit("1.0", TestRepository.PROFILES + "foo.profile/" + TestRepository.AGENT_PROPERTIES, null);
+
+        Version reloaded = loader.reloadProfiles(version, paths("foo.profile"));
+
+        assertFalse(reloaded.hasProfile("foo"));
+        assertTrue(reloaded.hasProfile("default"));
+    }
+
+    @Test
+    public void testProfileIdOfNestedProfile() {
+        assertEquals("foo-bar", GitVersionLoader.getProfileId(TestRepository.PROFILES + "foo/bar.profile"));
+    }
+
+    static Set<String> paths(String... profileDirectories) {
+        Set<String> answer = new HashSet<>();
+        for (String profileDirectory : profileDirectories) {
+            answer.add(TestRepository.PROFILES + profileDirectory);
+        }
+        return answer;
+    }
+
+    static void assertAgentProperties(String expected, Profile profile) throws Exception {
+        assertEquals(expected, new String(profile.getFileConfiguration(TestRepository.AGENT_PROPERTIES), "UTF-8"));
+    }
+}
@@ -0,0 +1,104 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.git.internal;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+
+/**
+ * A git repository with a working tree below target which the tests commit profile changes to
+ */
+class TestRepository {
+
+    static final String PROFILES = GitHelpers.CONFIGS + "/profiles/";
+    static final String AGENT_PROPERTIES = "io.fabric8.agent.properties";
+
+    private final Git git;
+
+    TestRepository(String name) throws Exception {
+        String basedir = System.getProperty("basedir", ".");
+        File root = new File(basedir + "/target/git/" + name).getCanonicalFile();
+        delete(root);
+        root.mkdirs();
+        git = Git.init().setDirectory(root).call();
+    }
+
+    Repository getRepository() {
+        return git.getRepository();
+    }
+
+    ObjectId resolve(String branch) throws IOException {
+        return git.getRepository().resolve(branch);
+    }
+
+    void createBranch(String branch) throws Exception {
+        git.branchCreate().setName(branch).call();
+    }
+
+    /**
+     * Commits the given content of the agent configuration of a profile to the branch
+     */
+    void commitProfile(String branch, String profileId, String content) throws Exception {
+        commit(branch, PROFILES + profileId + ".profile/" + AGENT_PROPERTIES, content);
+    }
+
+    /**
+     * Commits the given file content to the branch, deleting the file if the content is null
+     */
+    void commit(String branch, String path, String content) throws Exception {
+        if (!branch.equals(git.getRepository().getBranch())) {
+            git.checkout().setName(branch).call();
+        }
+        File file = new File(git.getRepository().getWorkTree(), path);
+        if (content == null) {
+            git.rm().addFilepattern(path).call();
+        } else {
+            file.getParentFile().mkdirs();
+            OutputStream out = new FileOutputStream(file);
+            try {
+                out.write(content.getBytes("UTF-8"));
+            } finally {
+                out.close();
+            }
+            git.add().addFilepattern(path).call();
+        }
+        git.commit().setMessage("Update " + path).setCommitter("fabric", "user@fabric").call();
+    }
+
+    void close() {
+        git.getRepository().close();
+    }
+
+    private static void delete(File file) throws IOException {
+        if (file.isDirectory()) {
+            File[] children = file.listFiles();
+            if (children != null) {
+                for (File child : children) {
+                    delete(child);
+                }
+            }
+        }
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Unable to delete file " + file);
+        }
+    }
+}
@@ -118,7 +118,9 @@ public class FabricDetectingGateway extends AbstractComponent implements FabricD
             options = {
                     @PropertyOption(name = LoadBalancers.RANDOM_LOAD_BALANCER, value = "Random"),
                     @PropertyOption(name = LoadBalancers.ROUND_ROBIN_LOAD_BALANCER, value = "Round Robin"),
-                    @PropertyOption(name = LoadBalancers.STICKY_LOAD_BALANCER, value = "Sticky")
+                    @PropertyOption(name = LoadBalancers.STICKY_LOAD_BALANCER, value = "Sticky"),
+                    @PropertyOption(name = LoadBalancers.LEAST_REQUESTS_LOAD_BALANCER, value = "Least Connections"),
+                    @PropertyOption(name = LoadBalancers.PEAK_EWMA_LOAD_BALANCER, value = "Peak EWMA Latency")
             },
             label = "Load Balancer", description = "The kind of load balancing strategy to use when multiple endpoints can service the client conneciton")
     private String loadBalancerType;
@@ -168,6 +170,12 @@ public class FabricDetectingGateway extends AbstractComponent implements FabricD
     @Property(name = "disabledCypherSuites",
             label = "SSL Cipher Suites Disabled", description = "Comma separated list of cipher suites to disable on the SSL sessions.")
     String disabledCypherSuites;
+    @Property(name = "sslSessionCacheSize", intValue = SslConfig.DEFAULT_SESSION_CACHE_SIZE,
+            label = "SSL Session Cache Size", description = "The number of SSL sessions cached so that reconnecting clients can resume them without a full handshake. 0 means no limit.")
+    int sslSessionCacheSize = SslConfig.DEFAULT_SESSION_CACHE_SIZE;
+    @Property(name = "sslSessionTimeout", intValue = SslConfig.DEFAULT_SESSION_TIMEOUT,
+            label = "SSL Session Timeout", description = "The number of seconds a cached SSL session can be resumed for. 0 means no limit.")
+    int sslSessionTimeout = SslConfig.DEFAULT_SESSION_TIMEOUT;
 
     private DetectingGateway detectingGateway;
     private GatewayServiceTreeCache cache;
@@ -257,6 +265,8 @@ public class FabricDetectingGateway extends AbstractComponent implements FabricD
             if( Strings.isNotBlank(disabledCypherSuites) ) {
                 sslConfig.setDisabledCypherSuites(disabledCypherSuites);
             }
+            sslConfig.setSessionCacheSize(sslSessionCacheSize);
+            sslConfig.setSessionTimeout(sslSessionTimeout);
             gateway.setSslConfig(sslConfig);
             protocols.add(new SslProtocol());
         }
@@ -446,6 +456,22 @@ public class FabricDetectingGateway extends AbstractComponent implements FabricD
         this.disabledCypherSuites = disabledCypherSuites;
     }
 
+    public int getSslSessionCacheSize() {
+        return sslSessionCacheSize;
+    }
+
+    public void setSslSessionCacheSize(int sslSessionCacheSize) {
+        this.sslSessionCacheSize = sslSessionCacheSize;
+    }
+
+    public int getSslSessionTimeout() {
+        return sslSessionTimeout;
+    }
+
+    public void setSslSessionTimeout(int sslSessionTimeout) {
+        this.sslSessionTimeout = sslSessionTimeout;
+    }
+
     void bindMbeanServer(MBeanServer mbeanServer) {
         this.mbeanServer = mbeanServer;
     }
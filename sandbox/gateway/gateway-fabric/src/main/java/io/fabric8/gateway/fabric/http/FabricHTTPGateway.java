@@ -28,8 +28,12 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
 
 import io.fabric8.gateway.CallDetailRecord;
 import io.fabric8.gateway.fabric.detecting.FabricDetectingGatewayService;
@@ -48,8 +52,11 @@ import org.apache.felix.scr.annotations.Service;
 
 import io.fabric8.gateway.fabric.support.vertx.VertxService;
 import io.fabric8.gateway.handlers.detecting.DetectingGatewayWebSocketHandler;
+import io.fabric8.gateway.handlers.http.HttpClientPool;
 import io.fabric8.gateway.handlers.http.HttpGateway;
 import io.fabric8.gateway.handlers.http.HttpGatewayHandler;
+import io.fabric8.gateway.handlers.http.HttpGatewayMetrics;
+import io.fabric8.gateway.handlers.http.HttpGatewayMetricsMBean;
 import io.fabric8.gateway.handlers.http.HttpGatewayServer;
 import io.fabric8.gateway.handlers.http.HttpMappingRule;
 import io.fabric8.gateway.handlers.http.MappedServices;
@@ -84,6 +91,12 @@ public final class FabricHTTPGateway extends AbstractComponent implements HttpGa
     @Property(name = "websocketGatewayPrefix", label = "Web Socket Path Prefix", description = "The prefix a websocket requests must have")
     private String websocketGatewayPrefix = "";
 
+    @Property(name = "maxConnectionsPerHost", intValue = HttpClientPool.DEFAULT_MAX_CONNECTIONS_PER_HOST, label = "Max connections per host", description = "The maximum number of pooled keep-alive connections to each upstream service host and port")
+    private int maxConnectionsPerHost = HttpClientPool.DEFAULT_MAX_CONNECTIONS_PER_HOST;
+
+    @Property(name = "idleConnectionTimeout", longValue = HttpClientPool.DEFAULT_IDLE_TIMEOUT, label = "Idle connection timeout", description = "The time in milliseconds after which the pooled connections to an unused upstream service are closed")
+    private long idleConnectionTimeout = HttpClientPool.DEFAULT_IDLE_TIMEOUT;
+
     @Reference
     private Configurer configurer;
 
@@ -99,13 +112,25 @@ public final class FabricHTTPGateway extends AbstractComponent implements HttpGa
     private final ValidatingReference<MBeanServer> mbeanServer = new ValidatingReference<MBeanServer>();
     
     private HttpGatewayServer server;
-    private HttpGatewayHandler handler;
+    private volatile HttpGatewayHandler handler;
     private DetectingGatewayWebSocketHandler websocketHandler = new DetectingGatewayWebSocketHandler();
 
     private Set<HttpMappingRule> mappingRuleConfigurations = new CopyOnWriteArraySet<HttpMappingRule>();
+    private final AtomicLong mappingRulesVersion = new AtomicLong();
+    private final Runnable mappingRulesChangeListener = new Runnable() {
+        @Override
+        public void run() {
+            mappingRulesVersion.incrementAndGet();
+            HttpGatewayHandler currentHandler = handler;
+            if (currentHandler != null) {
+                currentHandler.mappingRulesChanged();
+            }
+        }
+    };
 
     ShutdownTracker shutdownTracker = new ShutdownTracker();
     private FabricHTTPGatewayInfo fabricHTTPGatewayInfoMBean;
+    private final HttpGatewayMetrics httpGatewayMetrics = new HttpGatewayMetrics();
     
     @Activate
     void activate(Map<String, ?> configuration) throws Exception {
@@ -131,7 +156,9 @@ public final class FabricHTTPGateway extends AbstractComponent implements HttpGa
         configurer.configure(configuration, this);
 
         Vertx vertx = getVertx();
-        handler = new HttpGatewayHandler(vertx, this);
+        handler = new HttpGatewayHandler(vertx, this, httpGatewayMetrics);
+        handler.getClientPool().setMaxConnectionsPerHost(maxConnectionsPerHost);
+        handler.getClientPool().setIdleTimeout(idleConnectionTimeout);
         websocketHandler.setPathPrefix(websocketGatewayPrefix);
         server = new HttpGatewayServer(vertx, handler, enableWebSocketGateway ? websocketHandler : null, port);
         server.init();
@@ -155,13 +182,19 @@ public final class FabricHTTPGateway extends AbstractComponent implements HttpGa
     @Override
     public void addMappingRuleConfiguration(HttpMappingRule mappingRuleConfiguration) {
         assertValid();
-        mappingRuleConfigurations.add(mappingRuleConfiguration);
+        if (mappingRuleConfigurations.add(mappingRuleConfiguration)) {
+            mappingRuleConfiguration.addChangeListener(mappingRulesChangeListener);
+        }
+        mappingRulesChangeListener.run();
     }
 
     @Override
     public void removeMappingRuleConfiguration(HttpMappingRule mappingRuleConfiguration) {
         assertValid();
-        mappingRuleConfigurations.remove(mappingRuleConfiguration);
+        if (mappingRuleConfigurations.remove(mappingRuleConfiguration)) {
+            mappingRuleConfiguration.removeChangeListener(mappingRulesChangeListener);
+        }
+        mappingRulesChangeListener.run();
     }
 
     @Override
@@ -174,6 +207,11 @@ public final class FabricHTTPGateway extends AbstractComponent implements HttpGa
         return answer;
     }
 
+    @Override
+    public long getMappingRulesVersion() {
+        return mappingRulesVersion.get();
+    }
+
     @Override
     public boolean isEnableIndex() {
         return enableIndex;
@@ -260,10 +298,38 @@ public final class FabricHTTPGateway extends AbstractComponent implements HttpGa
     private void registerHttpGatewayMBeans() {
     	fabricHTTPGatewayInfoMBean = new FabricHTTPGatewayInfo(this);
         fabricHTTPGatewayInfoMBean.registerMBeanServer(shutdownTracker, mbeanServer.get());
+        try {
+            MBeanServer server = mbeanServer.get();
+            ObjectName name = getHttpGatewayMetricsObjectName();
+            if (!server.isRegistered(name)) {
+                server.registerMBean(new StandardMBean(httpGatewayMetrics, HttpGatewayMetricsMBean.class), name);
+            }
+        } catch (Exception e) {
+            LOG.warn("An error occurred during mbean server registration: " + e, e);
+        }
     }
     
     private void unregisterHttpGatewayMBeans() {
         fabricHTTPGatewayInfoMBean.unregisterMBeanServer(mbeanServer.get());
+        MBeanServer server = mbeanServer.getOptional();
+        if (server != null) {
+            try {
+                ObjectName name = getHttpGatewayMetricsObjectName();
+                if (server.isRegistered(name)) {
+                    server.unregisterMBean(name);
+                }
+            } catch (Exception e) {
+                LOG.warn("An error occurred during mbean server unregistration: " + e, e);
+            }
+        }
+    }
+
+    private static ObjectName getHttpGatewayMetricsObjectName() throws MalformedObjectNameException {
+        return new ObjectName("io.fabric8.gateway-fabric:service=HttpGatewayMetrics");
+    }
+
+    public HttpGatewayMetrics getHttpGatewayMetrics() {
+        return httpGatewayMetrics;
     }
 
 }
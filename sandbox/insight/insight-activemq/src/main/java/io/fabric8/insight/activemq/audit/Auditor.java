@@ -16,6 +16,7 @@
 package io.fabric8.insight.activemq.audit;
 
 import java.io.IOException;
+import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.Date;
 import java.util.Dictionary;
@@ -41,6 +42,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
+ * Stores a JSON document for each message sent, delivered, consumed or discarded.
+ * <p/>
+ * The documents are written by the {@link MessageJsonSerializer} unless a custom MVEL template is
+ * configured with the <code>template</code> property (<code>auditor.template</code> in the
+ * <code>io.fabric8.insight.activemq</code> PID), which is much slower as it is interpreted for every event.
  */
 public class Auditor extends SwichtableBrokerPlugin implements ManagedService, AuditorMBean {
 
@@ -54,6 +60,7 @@ public class Auditor extends SwichtableBrokerPlugin implements ManagedService, A
     private Map<String, CompiledTemplate> templates = new ConcurrentHashMap<String, CompiledTemplate>();
     private Map<URL, String> sources = new ConcurrentHashMap<URL, String>();
     private URL defaultTemplateUrl = getClass().getResource("default.mvel");
+    private volatile URL templateUrl;
 
     public Auditor(StorageService storage) {
         super(false);
@@ -69,8 +76,7 @@ public class Auditor extends SwichtableBrokerPlugin implements ManagedService, A
     @Override
     public void send(ProducerBrokerExchange producerExchange, Message messageSend) throws Exception {
         if (isEnabled(messageSend)) {
-            String json = toJson("Sent", messageSend);
-            storage.store(type, System.currentTimeMillis(), json);
+            audit("Sent", messageSend);
         }
         super.send(producerExchange, messageSend);
     }
@@ -78,8 +84,7 @@ public class Auditor extends SwichtableBrokerPlugin implements ManagedService, A
     @Override
     public void messageConsumed(ConnectionContext context, MessageReference messageReference) {
         if (isEnabled(messageReference)) {
-            String json = toJson("Consumed", messageReference);
-            storage.store(type, System.currentTimeMillis(), json);
+            audit("Consumed", messageReference);
         }
         super.messageConsumed(context, messageReference);
     }
@@ -87,8 +92,7 @@ public class Auditor extends SwichtableBrokerPlugin implements ManagedService, A
     @Override
     public void messageDelivered(ConnectionContext context, MessageReference messageReference) {
         if (isEnabled(messageReference)) {
-            String json = toJson("Delivered", messageReference);
-            storage.store(type, System.currentTimeMillis(), json);
+            audit("Delivered", messageReference);
         }
         super.messageDelivered(context, messageReference);
     }
@@ -96,8 +100,7 @@ public class Auditor extends SwichtableBrokerPlugin implements ManagedService, A
     @Override
     public void messageDiscarded(ConnectionContext context, Subscription sub, MessageReference messageReference) {
         if (isEnabled(messageReference)) {
-            String json = toJson("Discarded", messageReference);
-            storage.store(type, System.currentTimeMillis(), json);
+            audit("Discarded", messageReference);
         }
         super.messageDiscarded(context, sub, messageReference);
     }
@@ -107,6 +110,37 @@ public class Auditor extends SwichtableBrokerPlugin implements ManagedService, A
         this.properties = properties;
     }
 
+    @Override
+    public void update(Map<String, String> properties) {
+        String template = properties != null ? properties.get("template") : null;
+        URL url = null;
+        if (template != null && !template.trim().isEmpty()) {
+            try {
+                url = new URL(template.trim());
+            } catch (MalformedURLException e) {
+                LOGGER.warn("Invalid mvel template url " + template + ", using the default serializer", e);
+            }
+        }
+        templateUrl = url;
+        super.update(properties);
+    }
+
+    private void audit(String eventType, MessageReference messageReference) {
+        long timestamp = System.currentTimeMillis();
+        String json;
+        if (templateUrl != null) {
+            json = toJson(eventType, messageReference);
+        } else {
+            try {
+                json = MessageJsonSerializer.toJson(System.getProperty("runtime.id"), timestamp, eventType, messageReference.getMessage());
+            } catch (IOException e) {
+                LOGGER.warn("Unable to audit message " + messageReference.getMessageId(), e);
+                return;
+            }
+        }
+        storage.store(type, timestamp, json);
+    }
+
     protected String toJson(String eventType, MessageReference messageReference) {
         ClassLoader cl = Thread.currentThread().getContextClassLoader();
         try {
@@ -156,7 +190,7 @@ public class Auditor extends SwichtableBrokerPlugin implements ManagedService, A
     }
 
     private URL getTemplateUrl(String event, MessageReference message) {
-        return null;
+        return templateUrl;
     }
 
     private String loadSource(URL url) throws IOException {
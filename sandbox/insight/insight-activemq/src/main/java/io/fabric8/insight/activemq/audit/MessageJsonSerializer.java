@@ -0,0 +1,57 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.insight.activemq.audit;
+
+import java.io.IOException;
+import java.util.Date;
+
+import org.apache.activemq.command.Message;
+
+import static io.fabric8.insight.activemq.audit.ScriptUtils.appendJson;
+import static io.fabric8.insight.activemq.audit.ScriptUtils.appendString;
+
+/**
+ * Writes the document of the default.mvel template straight from the message, without interpreting
+ * a template or resolving properties by reflection.
+ * <p/>
+ * The properties are converted as the template's toJson does. The host, event, message id and destination
+ * are written differently on purpose, where the template output is not valid JSON or loses information: a
+ * missing value is written as null rather than the "null" string, and quotes, backslashes and control
+ * characters are escaped rather than pasted between quotes as they are.
+ */
+final class MessageJsonSerializer {
+
+    private MessageJsonSerializer() {
+    }
+
+    static String toJson(String host, long timestamp, String event, Message message) throws IOException {
+        StringBuilder sb = new StringBuilder(256);
+        sb.append("{\n  \"host\": ");
+        appendString(host, sb);
+        sb.append(",\n  \"@timestamp\": ");
+        appendJson(new Date(timestamp), sb);
+        sb.append(",\n  \"event\": ");
+        appendString(event, sb);
+        sb.append(",\n  \"message\": {\n    \"id\": ");
+        appendJson(message.getMessageId(), sb);
+        sb.append(",\n    \"destination\": ");
+        appendJson(message.getDestination(), sb);
+        sb.append(",\n    \"properties\": ");
+        appendJson(message.getProperties(), sb);
+        sb.append("\n  }\n}");
+        return sb.toString();
+    }
+}
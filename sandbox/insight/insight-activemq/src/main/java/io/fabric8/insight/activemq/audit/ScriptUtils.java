@@ -35,7 +35,9 @@ public final class ScriptUtils {
     }
 
     public static String toIso(Date d) {
-        return format.format(d);
+        synchronized (format) {
+            return format.format(d);
+        }
     }
 
     public static String toJson(Object o) {
@@ -76,6 +78,90 @@ public final class ScriptUtils {
         }
     }
 
+    /**
+     * Appends the same JSON as {@link #toJson(Object)} without going through intermediate strings
+     */
+    public static void appendJson(Object o, StringBuilder sb) {
+        if (o instanceof Collection) {
+            sb.append("[");
+            boolean first = true;
+            for (Object c : (Collection) o) {
+                if (!first) {
+                    sb.append(",");
+                }
+                first = false;
+                appendJson(c, sb);
+            }
+            sb.append("]");
+        } else if (o instanceof Map) {
+            sb.append("{");
+            boolean first = true;
+            for (Map.Entry<Object, Object> e : ((Map<Object, Object>) o).entrySet()) {
+                if (!first) {
+                    sb.append(",");
+                }
+                first = false;
+                appendString(e.getKey().toString(), sb);
+                sb.append(":");
+                appendJson(e.getValue(), sb);
+            }
+            sb.append("}");
+        } else if (o == null) {
+            sb.append("null");
+        } else if (o instanceof Date) {
+            sb.append('"').append(toIso((Date) o)).append('"');
+        } else {
+            appendString(o.toString(), sb);
+        }
+    }
+
+    /**
+     * Appends the string as a quoted and escaped JSON string, or null
+     */
+    public static void appendString(String str, StringBuilder sb) {
+        if (str == null) {
+            sb.append("null");
+            return;
+        }
+        sb.append('"');
+        for (int i = 0; i < str.length(); i++) {
+            char c = str.charAt(i);
+            switch (c) {
+                case '"':
+                case '\\':
+                    sb.append('\\').append(c);
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                case '\b':
+                    sb.append("\\b");
+                    break;
+                case '\f':
+                    sb.append("\\f");
+                    break;
+                default:
+                    if (c < ' ') {
+                        String hex = Integer.toHexString(c);
+                        sb.append("\\u");
+                        for (int j = hex.length(); j < 4; j++) {
+                            sb.append('0');
+                        }
+                        sb.append(hex);
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        sb.append('"');
+    }
+
     public static Map parseJson(String str) {
         try {
             return mapper.readValue(str, Map.class);
@@ -19,6 +19,11 @@ import io.fabric8.insight.storage.StorageService;
 import org.osgi.framework.BundleContext;
 import org.osgi.util.tracker.ServiceTracker;
 
+/**
+ * Passes the documents to the storage service which is currently registered, on the calling thread. The
+ * Elasticsearch storage queues them in its own bounded queue and sends them from its own thread, so they
+ * are not queued a second time here.
+ */
 public class StorageProxy implements StorageService {
 
     private BundleContext context;
@@ -0,0 +1,82 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.insight.activemq.audit;
+
+import io.fabric8.utils.IOHelpers;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.activemq.command.ActiveMQTextMessage;
+import org.apache.activemq.command.MessageId;
+import org.junit.Test;
+import org.mvel2.ParserContext;
+import org.mvel2.templates.TemplateCompiler;
+import org.mvel2.templates.TemplateRuntime;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class MessageJsonSerializerTest {
+
+    private static final long TIMESTAMP = 1400000000000L;
+
+    @Test
+    public void testSameDocumentAsTheDefaultTemplate() throws Exception {
+        ActiveMQTextMessage message = createMessage();
+
+        Map expected = ScriptUtils.parseJson(renderDefaultTemplate(message));
+        Map actual = ScriptUtils.parseJson(MessageJsonSerializer.toJson("host1", TIMESTAMP, "Sent", message));
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testNullsAndQuotesAreWrittenAsJson() throws Exception {
+        ActiveMQTextMessage message = createMessage();
+        message.setDestination(null);
+        message.setStringProperty("quote", "say \"hello\"\n");
+
+        // the template writes "null" for the destination, and only the properties were escaped by it
+        Map document = ScriptUtils.parseJson(MessageJsonSerializer.toJson("host\"1", TIMESTAMP, "Sent", message));
+        assertEquals("host\"1", document.get("host"));
+        Map messageDocument = (Map) document.get("message");
+        assertNull(messageDocument.get("destination"));
+        assertEquals("say \"hello\"\n", ((Map) messageDocument.get("properties")).get("quote"));
+    }
+
+    protected ActiveMQTextMessage createMessage() throws Exception {
+        ActiveMQTextMessage message = new ActiveMQTextMessage();
+        message.setMessageId(new MessageId("ID:host1-61616-1400000000000-1:1:1:1:1"));
+        message.setDestination(new ActiveMQQueue("orders"));
+        message.setStringProperty("operation", "order");
+        message.setIntProperty("retries", 2);
+        message.setText("<order/>");
+        return message;
+    }
+
+    protected String renderDefaultTemplate(ActiveMQTextMessage message) throws Exception {
+        ParserContext context = new ParserContext();
+        context.addImport("toJson", ScriptUtils.class.getMethod("toJson", Object.class));
+        String source = IOHelpers.loadFully(Auditor.class.getResource("default.mvel"));
+        Map<String, Object> vars = new HashMap<String, Object>();
+        vars.put("event", "Sent");
+        vars.put("host", "host1");
+        vars.put("timestamp", new Date(TIMESTAMP));
+        vars.put("message", message);
+        return TemplateRuntime.execute(TemplateCompiler.compileTemplate(source, context), context, vars).toString();
+    }
+}
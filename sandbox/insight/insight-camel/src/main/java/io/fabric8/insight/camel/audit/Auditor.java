@@ -34,6 +34,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.Date;
 import java.util.Dictionary;
@@ -43,7 +44,11 @@ import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
- *
+ * Stores a JSON document for each exchange event.
+ * <p/>
+ * The documents are written by the {@link ExchangeJsonSerializer} unless a custom MVEL template is
+ * configured with the <code>template</code> property (<code>auditor.template</code> in the
+ * <code>io.fabric8.insight.camel</code> PID), which is much slower as it is interpreted for every event.
  */
 @ManagedResource(description = "Auditor")
 public class Auditor extends SwitchableContainerStrategy implements EventNotifier, ManagedService, AuditorMBean {
@@ -65,6 +70,8 @@ public class Auditor extends SwitchableContainerStrategy implements EventNotifie
     private Map<String, CompiledTemplate> templates = new ConcurrentHashMap<String, CompiledTemplate>();
     private Map<URL, String> sources = new ConcurrentHashMap<URL, String>();
     private URL defaultTemplateUrl = getClass().getResource("default.mvel");
+    private volatile URL templateUrl;
+    private final Map<Class<?>, String> eventTypes = new ConcurrentHashMap<Class<?>, String>();
 
     public Auditor() {
         this(null);
@@ -107,6 +114,21 @@ public class Auditor extends SwitchableContainerStrategy implements EventNotifie
         this.properties = properties;
     }
 
+    @Override
+    public void update(Map<String, String> properties) {
+        String template = properties != null ? properties.get("template") : null;
+        URL url = null;
+        if (template != null && !template.trim().isEmpty()) {
+            try {
+                url = new URL(template.trim());
+            } catch (MalformedURLException e) {
+                LOGGER.warn("Invalid mvel template url " + template + ", using the default serializer", e);
+            }
+        }
+        templateUrl = url;
+        super.update(properties);
+    }
+
     @Override
     public void notify(EventObject eventObject) throws Exception {
         if (eventObject instanceof AbstractExchangeEvent) {
@@ -115,8 +137,14 @@ public class Auditor extends SwitchableContainerStrategy implements EventNotifie
                 if (aee instanceof ExchangeSendingEvent) {
                     aee.getExchange().getIn().setHeader("AuditCallId", aee.getExchange().getContext().getUuidGenerator().generateUuid());
                 }
-                String json = toJson(aee);
-                storage.store(type, System.currentTimeMillis(), json);
+                long timestamp = System.currentTimeMillis();
+                String json;
+                if (templateUrl != null) {
+                    json = toJson(aee);
+                } else {
+                    json = ExchangeJsonSerializer.toJson(System.getProperty("runtime.id"), timestamp, getEventType(aee), aee.getExchange());
+                }
+                storage.store(type, timestamp, json);
             }
         }
     }
@@ -125,10 +153,7 @@ public class Auditor extends SwitchableContainerStrategy implements EventNotifie
         ClassLoader cl = Thread.currentThread().getContextClassLoader();
         try {
             Thread.currentThread().setContextClassLoader(Auditor.class.getClassLoader());
-            String eventType = event.getClass().getSimpleName();
-            eventType = eventType.substring("Exchange".length());
-            eventType = eventType.substring(0, eventType.length() - "Event".length());
-
+            String eventType = getEventType(event);
             CompiledTemplate template = getTemplate(eventType, event.getExchange());
             Map<String, Object> vars = new HashMap<String, Object>();
             vars.put("event", eventType);
@@ -142,6 +167,17 @@ public class Auditor extends SwitchableContainerStrategy implements EventNotifie
         }
     }
 
+    private String getEventType(AbstractExchangeEvent event) {
+        String eventType = eventTypes.get(event.getClass());
+        if (eventType == null) {
+            eventType = event.getClass().getSimpleName();
+            eventType = eventType.substring("Exchange".length());
+            eventType = eventType.substring(0, eventType.length() - "Event".length());
+            eventTypes.put(event.getClass(), eventType);
+        }
+        return eventType;
+    }
+
     private CompiledTemplate getTemplate(String event, Exchange exchange) {
         String source = getTemplateSource(event, exchange);
         CompiledTemplate template = templates.get(source);
@@ -173,7 +209,7 @@ public class Auditor extends SwitchableContainerStrategy implements EventNotifie
     }
 
     private URL getTemplateUrl(String event, Exchange exchange) {
-        return null;
+        return templateUrl;
     }
 
     private String loadSource(URL url) throws IOException {
@@ -0,0 +1,89 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.insight.camel.audit;
+
+import org.apache.camel.Endpoint;
+import org.apache.camel.Exchange;
+import org.apache.camel.Message;
+
+import java.util.Date;
+
+import static io.fabric8.insight.camel.audit.ScriptUtils.appendJson;
+import static io.fabric8.insight.camel.audit.ScriptUtils.appendString;
+
+/**
+ * Writes the document of the default.mvel template straight from the exchange, without interpreting
+ * a template or resolving properties by reflection.
+ * <p/>
+ * The properties, headers and bodies are converted as the template's toJson does. The plain fields are
+ * written differently on purpose, where the template output is not valid JSON or loses information: a
+ * missing value, such as the route id of an exchange created outside of a route, is written as null rather
+ * than the "null" string, and quotes, backslashes and control characters in the ids, endpoint and exception
+ * are escaped rather than pasted between quotes as they are.
+ */
+final class ExchangeJsonSerializer {
+
+    private ExchangeJsonSerializer() {
+    }
+
+    static String toJson(String host, long timestamp, String event, Exchange exchange) {
+        StringBuilder sb = new StringBuilder(512);
+        sb.append("{\n  \"host\": ");
+        appendString(host, sb);
+        sb.append(",\n  \"@timestamp\": ");
+        appendJson(new Date(timestamp), sb);
+        sb.append(",\n  \"event\": ");
+        appendString(event, sb);
+        sb.append(",\n  \"exchange\": {\n    \"id\": ");
+        appendString(exchange.getExchangeId(), sb);
+        sb.append(",\n    \"routeId\": ");
+        appendString(exchange.getFromRouteId(), sb);
+        sb.append(",\n    \"contextId\": ");
+        appendString(exchange.getContext().getName(), sb);
+        sb.append(",\n    \"fromEndpoint\": ");
+        Endpoint endpoint = exchange.getFromEndpoint();
+        appendString(endpoint != null ? endpoint.toString() : null, sb);
+        sb.append(",\n    \"pattern\": ");
+        appendJson(exchange.getPattern(), sb);
+        sb.append(",\n    \"properties\": ");
+        appendJson(exchange.getProperties(), sb);
+        if (exchange.getException() != null) {
+            sb.append(",\n    \"exception\": ");
+            appendString(exchange.getException().toString(), sb);
+        }
+        sb.append(",\n    \"in\": ");
+        appendMessage(exchange.getIn(), sb);
+        if (exchange.hasOut()) {
+            sb.append(",\n    \"out\": ");
+            appendMessage(exchange.getOut(), sb);
+        }
+        sb.append("\n  }\n}");
+        return sb.toString();
+    }
+
+    private static void appendMessage(Message message, StringBuilder sb) {
+        sb.append("{\n      \"messageId\": ");
+        appendString(message.getMessageId(), sb);
+        sb.append(",\n      \"headers\": ");
+        appendJson(message.getHeaders(), sb);
+        Object body = message.getBody();
+        if (body != null) {
+            sb.append(",\n      \"body\": ");
+            appendJson(body, sb);
+        }
+        sb.append("\n    }");
+    }
+}
@@ -16,6 +16,7 @@
 package io.fabric8.insight.camel.profiler;
 
 import io.fabric8.insight.camel.base.SwitchableContainerStrategy;
+import io.fabric8.utils.LatencyHistogram;
 import org.apache.camel.CamelContext;
 import org.apache.camel.Processor;
 import org.apache.camel.api.management.ManagedResource;
@@ -27,11 +28,17 @@ import org.apache.camel.spi.ProcessorFactory;
 import org.apache.camel.spi.RouteContext;
 import org.apache.camel.util.StringHelper;
 
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  *
@@ -39,7 +46,15 @@ import java.util.concurrent.ConcurrentHashMap;
 @ManagedResource(description = "Profiler")
 public class Profiler extends SwitchableContainerStrategy implements ProfilerMBean {
 
-    private final Map<ProcessorDefinition<?>, Stats> statistics = new LinkedHashMap<ProcessorDefinition<?>, Stats>();
+    private static final Comparator<Stats> IN_ORDER = new Comparator<Stats>() {
+        @Override
+        public int compare(Stats s1, Stats s2) {
+            return s1.order < s2.order ? -1 : s1.order == s2.order ? 0 : 1;
+        }
+    };
+
+    private final ConcurrentMap<ProcessorDefinition<?>, Stats> statistics = new ConcurrentHashMap<ProcessorDefinition<?>, Stats>();
+    private final AtomicInteger order = new AtomicInteger();
     private final Map<String, ExchangeData> exchanges = new ConcurrentHashMap<String, ExchangeData>();
 
     public Profiler() {
@@ -79,21 +94,21 @@ public class Profiler extends SwitchableContainerStrategy implements ProfilerMBe
     }
 
     public String dumpStatsAsXml(String routeId) {
-        Set<RouteDefinition> routes = new HashSet<RouteDefinition>();
-        for (ProcessorDefinition<?> definition : statistics.keySet()) {
-            RouteDefinition route = ProcessorDefinitionHelper.getRoute(definition);
-            routes.add(route);
+        List<Stats> snapshot = getOrderedStats();
+        Set<RouteDefinition> routes = new LinkedHashSet<RouteDefinition>();
+        for (Stats stats : snapshot) {
+            routes.add(ProcessorDefinitionHelper.getRoute(stats.definition));
         }
         StringBuilder sb = new StringBuilder();
         sb.append("<profiling>");
         for (RouteDefinition route : routes) {
-            if (routeId == null || routeId.equals(route.getId())) {
+            if (route != null && (routeId == null || routeId.equals(route.getId()))) {
                 sb.append("<route");
                 if (route.getId() != null) {
                     sb.append(" id=\"").append(route.getId()).append("\"");
                 }
                 sb.append(">");
-                appendStats(sb, route);
+                appendStats(sb, snapshot, route);
                 sb.append("</route>");
             }
         }
@@ -105,7 +120,7 @@ public class Profiler extends SwitchableContainerStrategy implements ProfilerMBe
         return dumpStatsAsXml(null);
     }
 
-    protected void appendStats(StringBuilder sb, ProcessorDefinition<?> definition) {
+    protected void appendStats(StringBuilder sb, List<Stats> snapshot, ProcessorDefinition<?> definition) {
         Stats stats = statistics.get(definition);
         if (stats != null) {
             sb.append("<processor");
@@ -120,29 +135,75 @@ public class Profiler extends SwitchableContainerStrategy implements ProfilerMBe
             sb.append(" self=\"").append(stats.getSelf()).append("\"");
             sb.append(" total=\"").append(stats.getTotal()).append("\"");
             sb.append(">");
-            for (ProcessorDefinition<?> child : statistics.keySet()) {
-                if (child.getParent() == definition) {
-                    appendStats(sb, child);
+            for (Stats child : snapshot) {
+                if (child.definition.getParent() == definition) {
+                    appendStats(sb, snapshot, child.definition);
                 }
             }
             sb.append("</processor>");
         }
     }
 
+    public List<Map<String, Object>> dumpStats(String routeId) {
+        List<Map<String, Object>> answer = new ArrayList<Map<String, Object>>();
+        for (Stats stats : getOrderedStats()) {
+            RouteDefinition route = ProcessorDefinitionHelper.getRoute(stats.definition);
+            if (routeId != null && (route == null || !routeId.equals(route.getId()))) {
+                continue;
+            }
+            ProcessorDefinition<?> definition = stats.definition;
+            long count = stats.getCount();
+            long total = stats.getTotal();
+            LatencyHistogram.Snapshot latencies = stats.getLatencies().snapshot(false);
+            Map<String, Object> map = new LinkedHashMap<String, Object>();
+            map.put("route", route != null ? route.getId() : null);
+            map.put("id", definition.getId());
+            map.put("parent", stats.parent != null ? stats.parent.definition.getId() : null);
+            map.put("definition", definition.toString());
+            map.put("label", definition.getLabel());
+            map.put("count", count);
+            map.put("self", stats.getSelf());
+            map.put("total", total);
+            map.put("mean", count > 0 ? total / count : 0);
+            map.put("min", latencies.getMin());
+            map.put("max", latencies.getMax());
+            map.put("p50", latencies.getValueAtPercentile(50));
+            map.put("p90", latencies.getValueAtPercentile(90));
+            map.put("p99", latencies.getValueAtPercentile(99));
+            answer.add(map);
+        }
+        return answer;
+    }
+
+    public List<Map<String, Object>> dumpAllStats() {
+        return dumpStats(null);
+    }
+
     public Stats getStats(ProcessorDefinition<?> definition) {
         if (definition != null) {
-            synchronized (statistics) {
-                Stats stats = statistics.get(definition);
-                if (stats == null) {
-                    stats = new Stats(definition, getStats(definition.getParent()));
-                    statistics.put(definition, stats);
+            Stats stats = statistics.get(definition);
+            if (stats == null) {
+                Stats parent = getStats(definition.getParent());
+                stats = new Stats(definition, parent, order.incrementAndGet());
+                Stats existing = statistics.putIfAbsent(definition, stats);
+                if (existing != null) {
+                    stats = existing;
                 }
-                return stats;
             }
+            return stats;
         }
         return null;
     }
 
+    /**
+     * The statistics in the order their processors were created, parents before their children
+     */
+    protected List<Stats> getOrderedStats() {
+        List<Stats> snapshot = new ArrayList<Stats>(statistics.values());
+        Collections.sort(snapshot, IN_ORDER);
+        return snapshot;
+    }
+
     public void reset() {
         for (Stats stats : statistics.values()) {
             stats.reset();
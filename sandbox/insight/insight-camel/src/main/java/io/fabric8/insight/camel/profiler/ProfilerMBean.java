@@ -17,6 +17,9 @@ package io.fabric8.insight.camel.profiler;
 
 import io.fabric8.insight.camel.base.SwitchableContainerStrategyMBean;
 
+import java.util.List;
+import java.util.Map;
+
 /**
  *
  */
@@ -26,4 +29,21 @@ public interface ProfilerMBean extends SwitchableContainerStrategyMBean {
 
     String dumpStatsAsXml(String routeId);
 
+    /**
+     * Returns a snapshot of the statistics of all the profiled processors
+     *
+     * @see #dumpStats(String)
+     */
+    List<Map<String, Object>> dumpAllStats();
+
+    /**
+     * Returns a snapshot of the statistics of the profiled processors of the given route, parents before
+     * their children. Each processor is described by its route, id, parent id, definition and label, its
+     * count of exchanges and self and total time, and the mean, min, max, p50, p90 and p99 of its total
+     * time per exchange. All the times are in nanoseconds.
+     */
+    List<Map<String, Object>> dumpStats(String routeId);
+
+    void reset();
+
 }
@@ -15,29 +15,49 @@
  */
 package io.fabric8.insight.camel.profiler;
 
+import io.fabric8.utils.LatencyHistogram;
 import org.apache.camel.model.ProcessorDefinition;
 
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 /**
- *
+ * The statistics of a processor.
+ * <p/>
+ * The counters are striped by thread so concurrent exchanges completing on different threads update
+ * different cache lines, and are only summed up when read. The total time of the processor in each
+ * exchange is also recorded in a {@link LatencyHistogram}.
  */
 public class Stats {
-    final AtomicLong count = new AtomicLong();
-    final AtomicLong self = new AtomicLong();
-    final AtomicLong total = new AtomicLong();
+
+    private static final int COUNT = 0;
+    private static final int SELF = 1;
+    private static final int TOTAL = 2;
+    // one 64 bytes cache line per stripe
+    private static final int STRIDE = 8;
+    private static final int STRIPES = stripes();
+
+    final AtomicLongArray counters = new AtomicLongArray(STRIPES * STRIDE);
+    final LatencyHistogram latencies = new LatencyHistogram();
     final Stats parent;
     final ProcessorDefinition definition;
+    final int order;
 
     public Stats(ProcessorDefinition definition, Stats parent) {
+        this(definition, parent, 0);
+    }
+
+    Stats(ProcessorDefinition definition, Stats parent, int order) {
         this.definition = definition;
         this.parent = parent;
+        this.order = order;
     }
 
-    public synchronized void addTime(long self, long total) {
-        this.count.incrementAndGet();
-        this.self.addAndGet(self);
-        this.total.addAndGet(total);
+    public void addTime(long self, long total) {
+        int stripe = (int) (Thread.currentThread().getId() & (STRIPES - 1)) * STRIDE;
+        counters.incrementAndGet(stripe + COUNT);
+        counters.addAndGet(stripe + SELF, self);
+        counters.addAndGet(stripe + TOTAL, total);
+        latencies.recordValue(total);
     }
 
     public Stats getParent() {
@@ -45,21 +65,42 @@ public class Stats {
     }
 
     public long getCount() {
-        return count.get();
+        return sum(COUNT);
     }
 
     public long getSelf() {
-        return self.get();
+        return sum(SELF);
     }
 
     public long getTotal() {
-        return total.get();
+        return sum(TOTAL);
+    }
+
+    public LatencyHistogram getLatencies() {
+        return latencies;
     }
 
     public void reset() {
-        count.set(0);
-        self.set(0);
-        total.set(0);
+        for (int i = 0; i < counters.length(); i++) {
+            counters.set(i, 0);
+        }
+        latencies.reset();
+    }
+
+    private long sum(int counter) {
+        long sum = 0;
+        for (int i = counter; i < counters.length(); i += STRIDE) {
+            sum += counters.get(i);
+        }
+        return sum;
+    }
+
+    private static int stripes() {
+        int stripes = 1;
+        while (stripes < Runtime.getRuntime().availableProcessors() * 2) {
+            stripes <<= 1;
+        }
+        return stripes;
     }
 
     public String toString() {
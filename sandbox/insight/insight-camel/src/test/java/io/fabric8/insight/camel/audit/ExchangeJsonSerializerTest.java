@@ -0,0 +1,96 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.insight.camel.audit;
+
+import io.fabric8.utils.IOHelpers;
+import org.apache.camel.ExchangePattern;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.impl.DefaultExchange;
+import org.junit.Before;
+import org.junit.Test;
+import org.mvel2.ParserContext;
+import org.mvel2.templates.TemplateCompiler;
+import org.mvel2.templates.TemplateRuntime;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ExchangeJsonSerializerTest {
+
+    private static final long TIMESTAMP = 1400000000000L;
+
+    private DefaultCamelContext camelContext;
+
+    @Before
+    public void createContext() throws Exception {
+        camelContext = new DefaultCamelContext();
+        camelContext.setName("audited");
+    }
+
+    @Test
+    public void testSameDocumentAsTheDefaultTemplate() throws Exception {
+        DefaultExchange exchange = createExchange();
+
+        Map expected = ScriptUtils.parseJson(renderDefaultTemplate(exchange));
+        Map actual = ScriptUtils.parseJson(ExchangeJsonSerializer.toJson("host1", TIMESTAMP, "Completed", exchange));
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testNullsAndQuotesAreWrittenAsJson() throws Exception {
+        DefaultExchange exchange = createExchange();
+        exchange.setFromRouteId(null);
+        exchange.getIn().setMessageId("say \"hello\"\n");
+
+        // the template writes "null" for the route id and breaks the document on the quotes
+        Map document = ScriptUtils.parseJson(ExchangeJsonSerializer.toJson("host1", TIMESTAMP, "Completed", exchange));
+        Map exchangeDocument = (Map) document.get("exchange");
+        assertNull(exchangeDocument.get("routeId"));
+        assertEquals("say \"hello\"\n", ((Map) exchangeDocument.get("in")).get("messageId"));
+    }
+
+    protected DefaultExchange createExchange() throws Exception {
+        DefaultExchange exchange = new DefaultExchange(camelContext, ExchangePattern.InOut);
+        exchange.setExchangeId("exchange-1");
+        exchange.setFromRouteId("route1");
+        exchange.setFromEndpoint(camelContext.getEndpoint("direct:start"));
+        exchange.setProperty("retries", 2);
+        exchange.setException(new IllegalStateException("failed"));
+        exchange.getIn().setMessageId("in-1");
+        exchange.getIn().setHeader("operation", "order");
+        exchange.getIn().setHeader("sent", new Date(TIMESTAMP));
+        exchange.getIn().setBody("<order/>");
+        exchange.getOut().setMessageId("out-1");
+        exchange.getOut().setHeader("status", 200);
+        return exchange;
+    }
+
+    protected String renderDefaultTemplate(DefaultExchange exchange) throws Exception {
+        ParserContext context = new ParserContext();
+        context.addImport("toJson", ScriptUtils.class.getMethod("toJson", Object.class));
+        String source = IOHelpers.loadFully(Auditor.class.getResource("default.mvel"));
+        Map<String, Object> vars = new HashMap<String, Object>();
+        vars.put("event", "Completed");
+        vars.put("host", "host1");
+        vars.put("timestamp", new Date(TIMESTAMP));
+        vars.put("exchange", exchange);
+        return TemplateRuntime.execute(TemplateCompiler.compileTemplate(source, context), context, vars).toString();
+    }
+}
@@ -0,0 +1,46 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.insight.camel.profiler;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class StatsTest {
+
+    @Test
+    public void testStatsSumTheirStripes() throws Exception {
+        final Stats stats = new Stats(null, null);
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread() {
+                public void run() {
+                    for (int i = 0; i < 1000; i++) {
+                        stats.addTime(1, 2);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(8000, stats.getCount());
+        assertEquals(8000, stats.getSelf());
+        assertEquals(16000, stats.getTotal());
+        assertEquals(2, stats.getLatencies().snapshot(false).getMax());
+    }
+}
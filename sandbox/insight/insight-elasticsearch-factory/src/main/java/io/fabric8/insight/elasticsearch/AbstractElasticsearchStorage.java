@@ -19,6 +19,7 @@ import io.fabric8.insight.metrics.model.MetricsStorageService;
 import io.fabric8.insight.metrics.model.QueryResult;
 import io.fabric8.insight.metrics.mvel.MetricsStorageServiceImpl;
 import io.fabric8.insight.storage.StorageService;
+import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.action.ActionRequest;
 import org.elasticsearch.action.bulk.BulkItemResponse;
 import org.elasticsearch.action.bulk.BulkRequest;
@@ -29,26 +30,115 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
-public abstract class AbstractElasticsearchStorage implements StorageService, MetricsStorageService, Runnable {
+/**
+ * Stores insight data in Elasticsearch.
+ * <p/>
+ * Requests are queued in a bounded queue and a single thread groups them into bulks, sending a bulk once it
+ * holds {@link #BULK_ACTIONS} requests or {@link #FLUSH_INTERVAL} milliseconds after its first request was
+ * queued, with up to {@link #CONCURRENT_BULKS} bulks in flight. When Elasticsearch cannot keep up the queue
+ * fills and new requests are handled according to the {@link #OVERFLOW_POLICY}, rather than the queue
+ * growing without bounds. When the storage is stopped the queued requests are still sent, and the bulks in
+ * flight awaited, for up to {@link #STOP_TIMEOUT} milliseconds.
+ */
+public abstract class AbstractElasticsearchStorage implements StorageService, MetricsStorageService, ElasticsearchStorage, Runnable {
+
+    public static final String QUEUE_SIZE = "queueSize";
+    public static final String OVERFLOW_POLICY = "overflowPolicy";
+    public static final String BULK_ACTIONS = "bulkActions";
+    public static final String FLUSH_INTERVAL = "flushInterval";
+    public static final String CONCURRENT_BULKS = "concurrentBulks";
+    public static final String STOP_TIMEOUT = "stopTimeout";
 
     private static final Logger LOGGER = LoggerFactory.getLogger(AbstractElasticsearchStorage.class);
 
     private static final SimpleDateFormat indexFormat = new SimpleDateFormat("yyyy.MM.dd");
 
+    // queued by stop() to wake up the thread waiting for requests
+    private static final ActionRequest STOP = new IndexRequest();
+
+    private int queueSize = 10000;
+    private volatile OverflowPolicy overflowPolicy = OverflowPolicy.DROP_OLDEST;
     private int max = 1000;
+    private int flushInterval = 1000;
+    private int concurrentBulks = 2;
+    private int stopTimeout = 10000;
+
+    private final String name;
 
     protected Thread thread;
 
     protected volatile boolean running;
 
-    private BlockingQueue<ActionRequest> queue = new LinkedBlockingQueue<ActionRequest>();
+    private volatile long stopDeadline;
+
+    private volatile BlockingQueue<ActionRequest> queue = new ArrayBlockingQueue<ActionRequest>(queueSize);
+
+    private Semaphore bulkPermits;
 
     private MetricsStorageService metricsStorage = new MetricsStorageServiceImpl(this);
 
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong bulks = new AtomicLong();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong totalLatency = new AtomicLong();
+    private final AtomicLong maxLatency = new AtomicLong();
+
+    protected AbstractElasticsearchStorage(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Applies the configuration and starts sending the queued requests to Elasticsearch
+     */
+    protected void start(Map<String, ?> configuration) {
+        if (configuration != null) {
+            queueSize = getInt(configuration, QUEUE_SIZE, queueSize);
+            max = getInt(configuration, BULK_ACTIONS, max);
+            flushInterval = getInt(configuration, FLUSH_INTERVAL, flushInterval);
+            concurrentBulks = getInt(configuration, CONCURRENT_BULKS, concurrentBulks);
+            stopTimeout = getInt(configuration, STOP_TIMEOUT, stopTimeout);
+            Object policy = configuration.get(OVERFLOW_POLICY);
+            if (policy != null) {
+                overflowPolicy = OverflowPolicy.parse(policy.toString());
+            }
+        }
+        queue = new ArrayBlockingQueue<ActionRequest>(queueSize);
+        bulkPermits = new Semaphore(concurrentBulks);
+        running = true;
+        thread = new Thread(this, "ElasticStorage-" + name);
+        thread.start();
+    }
+
+    /**
+     * Stops the storage once the queued requests have been sent and the bulks in flight have completed, or
+     * the stop timeout expired; the requests which could not be sent by then are counted as dropped
+     */
+    protected void stop() {
+        stopDeadline = System.currentTimeMillis() + stopTimeout;
+        running = false;
+        if (thread != null) {
+            // when the queue is full the thread is not waiting for requests
+            queue.offer(STOP);
+            try {
+                thread.join(flushInterval + stopTimeout);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            thread = null;
+        }
+    }
+
     @Override
     public void store(String type, long timestamp, QueryResult queryResult) {
         metricsStorage.store(type, timestamp, queryResult);
@@ -58,41 +148,201 @@ public abstract class AbstractElasticsearchStorage implements StorageService, Me
     public void store(String type, long timestamp, String jsonData) {
         Date ts = new Date(timestamp);
         Date utc = new Date(ts.getTime() + ts.getTimezoneOffset() * 60000);
+        String index;
+        // the producers call this from their own threads
+        synchronized (indexFormat) {
+            index = "insight-" + indexFormat.format(utc);
+        }
         IndexRequest ir = new IndexRequest()
-                .index("insight-"+ indexFormat.format(utc))
+                .index(index)
                 .type(type)
                 .source(jsonData)
                 .create(true);
-        queue.add(ir);
+        enqueue(ir);
+    }
+
+    private void enqueue(ActionRequest request) {
+        BlockingQueue<ActionRequest> queue = this.queue;
+        switch (overflowPolicy) {
+            case BLOCK:
+                try {
+                    while (!queue.offer(request, flushInterval, TimeUnit.MILLISECONDS)) {
+                        if (!running) {
+                            // nothing is going to make room any more
+                            dropped.incrementAndGet();
+                            break;
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    dropped.incrementAndGet();
+                }
+                break;
+            case DROP_NEWEST:
+                if (!queue.offer(request)) {
+                    dropped.incrementAndGet();
+                }
+                break;
+            default:
+                while (!queue.offer(request)) {
+                    ActionRequest oldest = queue.poll();
+                    if (oldest != null && oldest != STOP) {
+                        dropped.incrementAndGet();
+                    }
+                }
+        }
     }
 
     public void run() {
-        while (running) {
-            try {
-                ActionRequest req = queue.take();
-                // Send data
-                BulkRequest bulk = new BulkRequest();
-                int nb = 0;
-                while (req != null && (nb == 0 || nb < max)) {
-                    bulk.add(req);
-                    nb++;
-                    req = queue.poll();
+        BlockingQueue<ActionRequest> queue = this.queue;
+        Semaphore permits = this.bulkPermits;
+        List<ActionRequest> requests = new ArrayList<ActionRequest>(max);
+        long flushAt = 0;
+        try {
+            while (running) {
+                long now = System.currentTimeMillis();
+                if (requests.isEmpty() || (requests.size() < max && now < flushAt)) {
+                    long wait = requests.isEmpty() ? flushInterval : flushAt - now;
+                    ActionRequest request = queue.poll(wait, TimeUnit.MILLISECONDS);
+                    if (request != null && request != STOP) {
+                        if (requests.isEmpty()) {
+                            flushAt = System.currentTimeMillis() + flushInterval;
+                        }
+                        requests.add(request);
+                        drain(queue, requests);
+                    }
+                } else if (permits.tryAcquire(flushInterval, TimeUnit.MILLISECONDS)) {
+                    // the permit is only granted once fewer than the concurrent bulks are in flight, and the
+                    // queue fills up meanwhile
+                    send(requests, permits);
+                    requests = new ArrayList<ActionRequest>(max);
                 }
-                if (bulk.numberOfActions() > 0) {
-                    BulkResponse rep = getNode().client().bulk(bulk).actionGet();
-                    for (BulkItemResponse bir : rep.getItems()) {
+            }
+
+            // the thread may only notice the stop once it is over waiting for a permit
+            long deadline = stopDeadline;
+            drain(queue, requests);
+            while (!requests.isEmpty() && permits.tryAcquire(deadline - System.currentTimeMillis(), TimeUnit.MILLISECONDS)) {
+                send(requests, permits);
+                requests = new ArrayList<ActionRequest>(max);
+                drain(queue, requests);
+            }
+            if (permits.tryAcquire(concurrentBulks, deadline - System.currentTimeMillis(), TimeUnit.MILLISECONDS)) {
+                permits.release(concurrentBulks);
+            } else {
+                LOGGER.warn("Stopped while {} bulks were still in flight", inFlight.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            queue.remove(STOP);
+            int unsent = requests.size() + queue.size();
+            if (unsent > 0) {
+                queue.clear();
+                dropped.addAndGet(unsent);
+                LOGGER.warn("Dropped {} requests which could not be sent before stopping", unsent);
+            }
+        }
+    }
+
+    private void drain(BlockingQueue<ActionRequest> queue, List<ActionRequest> requests) {
+        queue.drainTo(requests, max - requests.size());
+        requests.remove(STOP);
+    }
+
+    /**
+     * Sends the requests in one bulk, using one of the bulk permits which is released when its response arrives
+     */
+    private void send(List<ActionRequest> requests, final Semaphore permits) {
+        BulkRequest bulk = new BulkRequest();
+        for (ActionRequest request : requests) {
+            bulk.add(request);
+        }
+        final long start = System.nanoTime();
+        inFlight.incrementAndGet();
+        try {
+            sendBulk(bulk, new ActionListener<BulkResponse>() {
+                @Override
+                public void onResponse(BulkResponse response) {
+                    completed(start, permits);
+                    for (BulkItemResponse bir : response.getItems()) {
                         if (bir.isFailed()) {
                             LOGGER.warn("Error executing request: {}", bir.getFailureMessage());
                         }
                     }
                 }
-            } catch (Exception e) {
-                if (running) {
-                    LOGGER.warn("Error while sending requests", e);
+
+                @Override
+                public void onFailure(Throwable failure) {
+                    completed(start, permits);
+                    LOGGER.warn("Error while sending requests", failure);
                 }
-            }
+            });
+        } catch (RuntimeException e) {
+            completed(start, permits);
+            LOGGER.warn("Error while sending requests", e);
+        }
+    }
+
+    /**
+     * Sends a bulk to Elasticsearch, notifying the listener once it completes
+     */
+    protected void sendBulk(BulkRequest bulk, ActionListener<BulkResponse> listener) {
+        getNode().client().bulk(bulk, listener);
+    }
+
+    private void completed(long start, Semaphore permits) {
+        long latency = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        bulks.incrementAndGet();
+        totalLatency.addAndGet(latency);
+        long current = maxLatency.get();
+        while (latency > current && !maxLatency.compareAndSet(current, latency)) {
+            current = maxLatency.get();
         }
+        inFlight.decrementAndGet();
+        permits.release();
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    @Override
+    public long getDroppedRequests() {
+        return dropped.get();
+    }
+
+    @Override
+    public long getBulkCount() {
+        return bulks.get();
+    }
+
+    @Override
+    public int getInFlightBulks() {
+        return inFlight.get();
+    }
+
+    @Override
+    public long getAverageBulkLatency() {
+        long count = bulks.get();
+        return count > 0 ? totalLatency.get() / count : 0;
+    }
+
+    @Override
+    public long getMaxBulkLatency() {
+        return maxLatency.get();
     }
 
     public abstract Node getNode();
+
+    private static int getInt(Map<String, ?> configuration, String key, int defaultValue) {
+        Object value = configuration.get(key);
+        return value != null ? Integer.parseInt(value.toString().trim()) : defaultValue;
+    }
 }
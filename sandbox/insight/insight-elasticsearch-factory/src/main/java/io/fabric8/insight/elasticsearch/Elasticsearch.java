@@ -41,6 +41,9 @@ public class Elasticsearch implements ElasticsearchMBean {
     @Reference(name = "node", referenceInterface = org.elasticsearch.node.Node.class, cardinality = ReferenceCardinality.OPTIONAL_MULTIPLE)
     private final Map<String, Set<Node>> nodesClusterMap = new ConcurrentHashMap<String, Set<Node>>();
 
+    @Reference(name = "storage", referenceInterface = ElasticsearchStorage.class, cardinality = ReferenceCardinality.OPTIONAL_MULTIPLE, policy = ReferencePolicy.DYNAMIC)
+    private final Map<String, ElasticsearchStorage> storages = new ConcurrentHashMap<String, ElasticsearchStorage>();
+
     @Activate
     void activate(Map<String, ?> configuration) throws Exception {
         JMXUtils.registerMBean(this, mbeanServer, new ObjectName("io.fabric8.insight:type=Elasticsearch"));
@@ -87,6 +90,48 @@ public class Elasticsearch implements ElasticsearchMBean {
         return null;
     }
 
+    @Override
+    public String[] getStorageNames() {
+        Set<String> names = storages.keySet();
+        return names.toArray(new String[names.size()]);
+    }
+
+    @Override
+    public Integer getQueueDepth(String storageName) {
+        ElasticsearchStorage storage = storages.get(storageName);
+        return storage != null ? storage.getQueueDepth() : null;
+    }
+
+    @Override
+    public Long getDroppedRequests(String storageName) {
+        ElasticsearchStorage storage = storages.get(storageName);
+        return storage != null ? storage.getDroppedRequests() : null;
+    }
+
+    @Override
+    public Long getBulkCount(String storageName) {
+        ElasticsearchStorage storage = storages.get(storageName);
+        return storage != null ? storage.getBulkCount() : null;
+    }
+
+    @Override
+    public Integer getInFlightBulks(String storageName) {
+        ElasticsearchStorage storage = storages.get(storageName);
+        return storage != null ? storage.getInFlightBulks() : null;
+    }
+
+    @Override
+    public Long getAverageBulkLatency(String storageName) {
+        ElasticsearchStorage storage = storages.get(storageName);
+        return storage != null ? storage.getAverageBulkLatency() : null;
+    }
+
+    @Override
+    public Long getMaxBulkLatency(String storageName) {
+        ElasticsearchStorage storage = storages.get(storageName);
+        return storage != null ? storage.getMaxBulkLatency() : null;
+    }
+
     public void bindNode(Node node) {
         ClusterAdminClient client = node.client().admin().cluster();
         ClusterStatsResponse response = client.prepareClusterStats().execute().actionGet();
@@ -111,4 +156,12 @@ public class Elasticsearch implements ElasticsearchMBean {
             }
         }
     }
+
+    public void bindStorage(ElasticsearchStorage storage) {
+        storages.put(storage.getName(), storage);
+    }
+
+    public void unbindStorage(ElasticsearchStorage storage) {
+        storages.remove(storage.getName());
+    }
 }
\ No newline at end of file
@@ -27,4 +27,24 @@ public interface ElasticsearchMBean {
 
     ClusterHealthResponse getClusterHealth(String clusterName);
 
+    /**
+     * The names of the storages sending data to Elasticsearch
+     */
+    String[] getStorageNames();
+
+    Integer getQueueDepth(String storageName);
+
+    Long getDroppedRequests(String storageName);
+
+    Long getBulkCount(String storageName);
+
+    Integer getInFlightBulks(String storageName);
+
+    /**
+     * The average time in milliseconds taken by the bulks of the storage
+     */
+    Long getAverageBulkLatency(String storageName);
+
+    Long getMaxBulkLatency(String storageName);
+
 }
\ No newline at end of file
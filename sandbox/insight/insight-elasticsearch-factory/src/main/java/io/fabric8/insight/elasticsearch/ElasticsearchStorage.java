@@ -0,0 +1,50 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.insight.elasticsearch;
+
+/**
+ * The statistics of a storage which sends its requests to Elasticsearch in bulks, as exposed by the
+ * {@link ElasticsearchMBean}
+ */
+public interface ElasticsearchStorage {
+
+    String getName();
+
+    /**
+     * The number of requests waiting to be added to a bulk
+     */
+    int getQueueDepth();
+
+    /**
+     * The number of requests dropped because the queue was full
+     */
+    long getDroppedRequests();
+
+    long getBulkCount();
+
+    /**
+     * The number of bulks which were sent and are waiting for their response
+     */
+    int getInFlightBulks();
+
+    /**
+     * The average time in milliseconds between sending a bulk and receiving its response
+     */
+    long getAverageBulkLatency();
+
+    long getMaxBulkLatency();
+
+}
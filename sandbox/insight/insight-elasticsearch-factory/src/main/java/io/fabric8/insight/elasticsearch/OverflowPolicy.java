@@ -0,0 +1,46 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.insight.elasticsearch;
+
+import java.util.Locale;
+
+/**
+ * What a storage does with a new request when its queue is full
+ */
+public enum OverflowPolicy {
+
+    /**
+     * Drop the oldest queued request to make room for the new one
+     */
+    DROP_OLDEST,
+
+    /**
+     * Drop the new request
+     */
+    DROP_NEWEST,
+
+    /**
+     * Block the caller until there is room in the queue
+     */
+    BLOCK;
+
+    /**
+     * Parses a policy name such as "drop-oldest" or "DROP_OLDEST"
+     */
+    public static OverflowPolicy parse(String value) {
+        return valueOf(value.trim().toUpperCase(Locale.ENGLISH).replace('-', '_'));
+    }
+}
@@ -0,0 +1,259 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.insight.elasticsearch;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.node.Node;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AbstractElasticsearchStorageTest {
+
+    private TestStorage storage;
+
+    @After
+    public void stopStorage() {
+        if (storage != null) {
+            storage.setAutoComplete(true);
+            storage.stop();
+        }
+    }
+
+    @Test
+    public void testDropOldest() throws Exception {
+        storage = fillQueue("drop-oldest");
+        storage.store("r5", 0, "{}");
+        assertEquals(1, storage.getDroppedRequests());
+        assertEquals(2, storage.getQueueDepth());
+
+        storage.setAutoComplete(true);
+        assertSent("r1", "r2", "r4", "r5");
+    }
+
+    @Test
+    public void testDropNewest() throws Exception {
+        storage = fillQueue("drop-newest");
+        storage.store("r5", 0, "{}");
+        assertEquals(1, storage.getDroppedRequests());
+        assertEquals(2, storage.getQueueDepth());
+
+        storage.setAutoComplete(true);
+        assertSent("r1", "r2", "r3", "r4");
+    }
+
+    @Test
+    public void testBlock() throws Exception {
+        storage = fillQueue("block");
+        Thread producer = new Thread() {
+            @Override
+            public void run() {
+                storage.store("r5", 0, "{}");
+            }
+        };
+        producer.start();
+        producer.join(200);
+        assertTrue("The producer should wait for room in the queue", producer.isAlive());
+
+        storage.setAutoComplete(true);
+        producer.join(5000);
+        assertFalse(producer.isAlive());
+        assertSent("r1", "r2", "r3", "r4", "r5");
+        assertEquals(0, storage.getDroppedRequests());
+    }
+
+    @Test
+    public void testBulksWaitingForAPermitAreNotInFlight() throws Exception {
+        storage = fillQueue("drop-newest");
+        // r1 was sent and r2 waits until it completes
+        assertEquals(1, storage.getInFlightBulks());
+
+        storage.setAutoComplete(true);
+        assertSent("r1", "r2", "r3", "r4");
+        storage.stop();
+        assertEquals(0, storage.getInFlightBulks());
+        assertEquals(4, storage.getBulkCount());
+    }
+
+    @Test
+    public void testStopSendsTheQueuedRequests() throws Exception {
+        storage = new TestStorage();
+        storage.setAutoComplete(true);
+        // nothing would be sent before the flush interval or a full bulk
+        storage.start(configuration("drop-oldest", 100, 100, 60000, 1));
+        for (int i = 1; i <= 5; i++) {
+            storage.store("r" + i, 0, "{}");
+        }
+        storage.stop();
+
+        assertEquals(Arrays.asList("r1", "r2", "r3", "r4", "r5"), storage.getSent());
+        assertEquals(1, storage.getBulkCount());
+        assertEquals(0, storage.getDroppedRequests());
+        assertEquals(0, storage.getQueueDepth());
+    }
+
+    @Test
+    public void testStopWaitsForTheBulksInFlight() throws Exception {
+        storage = new TestStorage();
+        storage.start(configuration("drop-oldest", 100, 1, 60000, 2));
+        storage.store("r1", 0, "{}");
+        waitFor(storage, 1);
+
+        Thread completer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                storage.setAutoComplete(true);
+            }
+        };
+        completer.start();
+        storage.stop();
+        assertEquals(0, storage.getInFlightBulks());
+        assertEquals(1, storage.getBulkCount());
+    }
+
+    @Test
+    public void testStopGivesUpAfterTheTimeout() throws Exception {
+        storage = new TestStorage();
+        Map<String, Object> configuration = configuration("drop-oldest", 100, 1, 100, 1);
+        configuration.put(AbstractElasticsearchStorage.STOP_TIMEOUT, "200");
+        storage.start(configuration);
+        storage.store("r1", 0, "{}");
+        waitFor(storage, 1);
+        storage.store("r2", 0, "{}");
+        storage.store("r3", 0, "{}");
+
+        long start = System.currentTimeMillis();
+        storage.stop();
+        assertTrue(System.currentTimeMillis() - start < 5000);
+        assertEquals(2, storage.getDroppedRequests());
+    }
+
+    /**
+     * Starts a storage with a queue of 2, bulks of 1 request and 1 bulk in flight, and stores 4 requests
+     * while the first bulk is not completed: r1 is in flight, r2 waits to be sent and r3 and r4 are queued
+     */
+    protected TestStorage fillQueue(String overflowPolicy) throws Exception {
+        TestStorage storage = new TestStorage();
+        storage.start(configuration(overflowPolicy, 2, 1, 100, 1));
+        storage.store("r1", 0, "{}");
+        waitFor(storage, 1);
+        storage.store("r2", 0, "{}");
+        long deadline = System.currentTimeMillis() + 5000;
+        while (storage.getQueueDepth() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        storage.store("r3", 0, "{}");
+        storage.store("r4", 0, "{}");
+        assertEquals(2, storage.getQueueDepth());
+        assertEquals(0, storage.getDroppedRequests());
+        return storage;
+    }
+
+    protected Map<String, Object> configuration(String overflowPolicy, int queueSize, int bulkActions, int flushInterval, int concurrentBulks) {
+        Map<String, Object> configuration = new HashMap<String, Object>();
+        configuration.put(AbstractElasticsearchStorage.OVERFLOW_POLICY, overflowPolicy);
+        configuration.put(AbstractElasticsearchStorage.QUEUE_SIZE, Integer.toString(queueSize));
+        configuration.put(AbstractElasticsearchStorage.BULK_ACTIONS, Integer.toString(bulkActions));
+        configuration.put(AbstractElasticsearchStorage.FLUSH_INTERVAL, Integer.toString(flushInterval));
+        configuration.put(AbstractElasticsearchStorage.CONCURRENT_BULKS, Integer.toString(concurrentBulks));
+        return configuration;
+    }
+
+    protected void assertSent(String... expected) throws Exception {
+        waitFor(storage, expected.length);
+        assertEquals(Arrays.asList(expected), storage.getSent());
+    }
+
+    protected static void waitFor(TestStorage storage, int sent) throws Exception {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (storage.getSent().size() < sent && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(sent, storage.getSent().size());
+    }
+
+    /**
+     * Records the types of the requests it is asked to send, and completes the bulks when told to
+     */
+    protected static class TestStorage extends AbstractElasticsearchStorage {
+        private final List<String> sent = new ArrayList<String>();
+        private final LinkedList<ActionListener<BulkResponse>> pending = new LinkedList<ActionListener<BulkResponse>>();
+        private boolean autoComplete;
+
+        TestStorage() {
+            super("test");
+        }
+
+        @Override
+        protected void sendBulk(BulkRequest bulk, ActionListener<BulkResponse> listener) {
+            synchronized (this) {
+                for (ActionRequest request : bulk.requests()) {
+                    sent.add(((IndexRequest) request).type());
+                }
+                if (!autoComplete) {
+                    pending.add(listener);
+                    return;
+                }
+            }
+            complete(listener);
+        }
+
+        synchronized List<String> getSent() {
+            return new ArrayList<String>(sent);
+        }
+
+        void setAutoComplete(boolean autoComplete) {
+            List<ActionListener<BulkResponse>> listeners;
+            synchronized (this) {
+                this.autoComplete = autoComplete;
+                listeners = new ArrayList<ActionListener<BulkResponse>>(pending);
+                pending.clear();
+            }
+            for (ActionListener<BulkResponse> listener : listeners) {
+                complete(listener);
+            }
+        }
+
+        private void complete(ActionListener<BulkResponse> listener) {
+            listener.onResponse(new BulkResponse(new BulkItemResponse[0], 1));
+        }
+
+        @Override
+        public Node getNode() {
+            return null;
+        }
+    }
+}
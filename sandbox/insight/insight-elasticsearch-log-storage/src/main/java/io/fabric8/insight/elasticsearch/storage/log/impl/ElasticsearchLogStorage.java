@@ -17,30 +17,32 @@ package io.fabric8.insight.elasticsearch.storage.log.impl;
 
 import io.fabric8.api.scr.ValidatingReference;
 import io.fabric8.insight.elasticsearch.AbstractElasticsearchStorage;
+import io.fabric8.insight.elasticsearch.ElasticsearchStorage;
 import io.fabric8.insight.storage.StorageService;
 import org.apache.felix.scr.annotations.*;
 import org.elasticsearch.node.Node;
 
+import java.util.Map;
+
 @Component(immediate = true, name = "io.fabric8.insight.log.elasticsearch")
-@Service({StorageService.class})
+@Service({StorageService.class, ElasticsearchStorage.class})
 public class ElasticsearchLogStorage extends AbstractElasticsearchStorage {
 
     @Reference(name = "node", referenceInterface = org.elasticsearch.node.Node.class, target = "(cluster.name=insight)")
     private final ValidatingReference<Node> node = new ValidatingReference<>();
 
+    public ElasticsearchLogStorage() {
+        super("log");
+    }
+
     @Activate
-    public void activate() {
-        running = true;
-        thread = new Thread(this, "ElasticStorage");
-        thread.start();
+    public void activate(Map<String, ?> configuration) {
+        start(configuration);
     }
 
     @Deactivate
     public void deactivate() {
-        running = false;
-        if (thread != null) {
-            thread.interrupt();
-        }
+        stop();
     }
 
     private void bindNode(Node node) {
@@ -17,27 +17,29 @@ package io.fabric8.insight.elasticsearch.storage.metrics.impl;
 
 import io.fabric8.api.scr.ValidatingReference;
 import io.fabric8.insight.elasticsearch.AbstractElasticsearchStorage;
+import io.fabric8.insight.elasticsearch.ElasticsearchStorage;
 import io.fabric8.insight.metrics.model.MetricsStorageService;
 import org.apache.felix.scr.annotations.*;
 import org.elasticsearch.node.Node;
 
+import java.util.Map;
+
 @Component(immediate = true, name = "io.fabric8.insight.metrics.elasticsearch")
-@Service({MetricsStorageService.class})
+@Service({MetricsStorageService.class, ElasticsearchStorage.class})
 public class ElasticsearchMetricsStorage extends AbstractElasticsearchStorage {
 
+    public ElasticsearchMetricsStorage() {
+        super("metrics");
+    }
+
     @Activate
-    public void activate() {
-        running = true;
-        thread = new Thread(this, "ElasticMetricsStorage");
-        thread.start();
+    public void activate(Map<String, ?> configuration) {
+        start(configuration);
     }
 
     @Deactivate
     public void deactivate() {
-        running = false;
-        if (thread != null) {
-            thread.interrupt();
-        }
+        stop();
     }
 
     @Reference(name = "node", referenceInterface = org.elasticsearch.node.Node.class, target = "(cluster.name=insight)")
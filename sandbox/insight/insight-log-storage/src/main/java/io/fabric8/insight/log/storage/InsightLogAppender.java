@@ -15,9 +15,7 @@
  */
 package io.fabric8.insight.log.storage;
 
-import java.util.HashMap;
 import java.util.Map;
-import java.util.Set;
 
 import io.fabric8.insight.storage.StorageService;
 import org.ops4j.pax.logging.spi.PaxAppender;
@@ -26,17 +24,32 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import static io.fabric8.insight.log.service.support.MavenCoordinates.addMavenCoord;
+import static io.fabric8.insight.log.service.support.MavenCoordinates.getMavenCoordinates;
 import static io.fabric8.insight.log.storage.InsightUtils.formatDate;
 import static io.fabric8.insight.log.storage.InsightUtils.quote;
 
-public class InsightLogAppender implements PaxAppender {
+/**
+ * Stores logging events as JSON documents.
+ * <p/>
+ * In async mode, the default, the logging thread only captures the event into a {@link LogEventRing} and a
+ * background thread formats and stores the captured events in batches, so application threads do not pay
+ * for shipping their logs. Events are dropped when the ring is full.
+ */
+public class InsightLogAppender implements PaxAppender, Runnable {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(InsightLogAppender.class);
 
+    private static final String MAVEN_COORDINATES = "maven.coordinates";
+
     private String name;
     private String type;
     private StorageService storage;
+    private boolean async = true;
+    private int bufferSize = 1024;
 
+    private LogEventRing ring;
+    private Thread thread;
+    private volatile boolean running;
 
     public void setName(String name) {
         this.name = name;
@@ -50,6 +63,38 @@ public class InsightLogAppender implements PaxAppender {
         this.storage = storage;
     }
 
+    public void setAsync(boolean async) {
+        this.async = async;
+    }
+
+    public void setBufferSize(int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    public void init() {
+        if (async) {
+            ring = new LogEventRing(bufferSize);
+            running = true;
+            thread = new Thread(this, "InsightLogAppender");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    public void destroy() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+            try {
+                thread.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            thread = null;
+        }
+        ring = null;
+    }
+
     public void doAppend(final PaxLoggingEvent paxLoggingEvent) {
         try {
 
@@ -58,62 +103,114 @@ public class InsightLogAppender implements PaxAppender {
                   !paxLoggingEvent.getProperties().containsKey("trace-id") ) {
                 return;
             }
-            StringBuilder writer = new StringBuilder();
-            writer.append("{ \"host\" : ");
-            quote(name, writer);
-            writer.append(",\n  \"@timestamp\" : ");
-            quote(formatDate(paxLoggingEvent.getTimeStamp()), writer);
-            writer.append(",\n  \"level\" : ");
-            quote(paxLoggingEvent.getLevel().toString(), writer);
-            writer.append(",\n  \"logger\" : ");
-            quote(paxLoggingEvent.getLoggerName(), writer);
-            writer.append(",\n  \"thread\" : ");
-            quote(paxLoggingEvent.getThreadName(), writer);
-            writer.append(",\n  \"message\" : ");
-            quote(paxLoggingEvent.getMessage(), writer);
-
-            String[] throwable = paxLoggingEvent.getThrowableStrRep();
-            if( throwable!=null ) {
-                throwable = addMavenCoord(throwable);
-                writer.append(",\n  \"exception\" : [");
-                for (int i = 0; i < throwable.length; i++) {
-                    if(i!=0)
-                        writer.append(", ");
-                    quote(throwable[i], writer);
-                }
-                writer.append("]");
+            LogEventRing ring = this.ring;
+            if (ring != null) {
+                ring.offer(paxLoggingEvent);
+            } else {
+                LogEventRing.Slot slot = new LogEventRing.Slot();
+                slot.capture(paxLoggingEvent);
+                store(slot, new StringBuilder());
+            }
+        } catch (Exception e) {
+            LOGGER.warn("Error appending log to storage", e);
+        }
+    }
+
+    public void run() {
+        LogEventRing ring = this.ring;
+        StringBuilder writer = new StringBuilder();
+        long reportedDrops = 0;
+        while (running) {
+            try {
+                storeBatch(ring, ring.await(1000), writer);
+            } catch (InterruptedException e) {
+                // stopping
+            }
+            long dropped = ring.getDropped();
+            if (dropped > reportedDrops) {
+                LOGGER.warn("Dropped {} logging events as the appender could not keep up", dropped - reportedDrops);
+                reportedDrops = dropped;
             }
+        }
+        // store what was captured before stopping
+        storeBatch(ring, ring.size(), writer);
+    }
 
-            writer.append(",\n  \"properties\" : { ");
-            boolean first = true;
-            Map<String, String> properties = new HashMap<String, String>();
-            Set<Map.Entry> set = paxLoggingEvent.getProperties().entrySet();
-            for (Map.Entry entry : set) {
-                Object key = entry.getKey();
-                Object value = entry.getValue();
-                if (key != null && value != null) {
-                    properties.put(key.toString(), value.toString());
+    private void storeBatch(LogEventRing ring, int count, StringBuilder writer) {
+        try {
+            for (int i = 0; i < count; i++) {
+                try {
+                    store(ring.get(i), writer);
+                } catch (Exception e) {
+                    LOGGER.warn("Error appending log to storage", e);
                 }
             }
-            addMavenCoord(properties);
+        } finally {
+            ring.release(count);
+        }
+    }
+
+    private void store(LogEventRing.Slot event, StringBuilder writer) {
+        writer.setLength(0);
+        writer.append("{ \"host\" : ");
+        quote(name, writer);
+        writer.append(",\n  \"@timestamp\" : ");
+        quote(formatDate(event.timestamp), writer);
+        writer.append(",\n  \"level\" : ");
+        quote(event.level, writer);
+        writer.append(",\n  \"logger\" : ");
+        quote(event.loggerName, writer);
+        writer.append(",\n  \"thread\" : ");
+        quote(event.threadName, writer);
+        writer.append(",\n  \"message\" : ");
+        quote(event.message, writer);
+
+        String[] throwable = event.throwable;
+        if( throwable!=null ) {
+            throwable = addMavenCoord(throwable);
+            writer.append(",\n  \"exception\" : [");
+            for (int i = 0; i < throwable.length; i++) {
+                if(i!=0)
+                    writer.append(", ");
+                quote(throwable[i], writer);
+            }
+            writer.append("]");
+        }
 
-            for (Object key : properties.keySet()) {
+        writer.append(",\n  \"properties\" : { ");
+        boolean first = true;
+        boolean hasMavenCoordinates = false;
+        for (Map.Entry<?, ?> entry : event.properties.entrySet()) {
+            Object key = entry.getKey();
+            Object value = entry.getValue();
+            if (key != null && value != null) {
                 if (first) {
                     first = false;
                 } else {
                     writer.append(", ");
                 }
-                quote(key.toString(), writer);
+                String keyStr = key.toString();
+                hasMavenCoordinates |= MAVEN_COORDINATES.equals(keyStr);
+                quote(keyStr, writer);
                 writer.append(": ");
-                quote(properties.get(key).toString(), writer);
+                quote(value.toString(), writer);
+            }
+        }
+        if (!hasMavenCoordinates) {
+            String mavenCoord = getMavenCoordinates(event.properties);
+            if (mavenCoord != null && !mavenCoord.isEmpty()) {
+                if (!first) {
+                    writer.append(", ");
+                }
+                quote(MAVEN_COORDINATES, writer);
+                writer.append(": ");
+                quote(mavenCoord, writer);
             }
-            writer.append(" }");
-            writer.append("\n}");
-
-            storage.store(type, paxLoggingEvent.getTimeStamp(), writer.toString());
-        } catch (Exception e) {
-            LOGGER.warn("Error appending log to storage", e);
         }
+        writer.append(" }");
+        writer.append("\n}");
+
+        storage.store(type, event.timestamp, writer.toString());
     }
 
 }
@@ -0,0 +1,122 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.insight.log.storage;
+
+import java.util.Map;
+
+import org.ops4j.pax.logging.spi.PaxLoggingEvent;
+
+/**
+ * A fixed size ring of preallocated slots which logging threads capture events into and a single consumer
+ * thread reads them back from.
+ * <p/>
+ * Capturing an event only copies references into the next free slot, so the logging thread neither formats
+ * the event nor allocates. The consumer reads a batch of slots outside the lock and then releases them,
+ * the slots of a batch are not reused by the producers until they are released. When the ring is full
+ * new events are dropped rather than blocking the logging thread.
+ */
+final class LogEventRing {
+
+    private final Slot[] slots;
+    private int head;
+    private int count;
+    private long dropped;
+
+    LogEventRing(int size) {
+        slots = new Slot[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Slot();
+        }
+    }
+
+    /**
+     * Captures the event into the next free slot, returns false if the ring is full
+     */
+    synchronized boolean offer(PaxLoggingEvent event) {
+        if (count == slots.length) {
+            dropped++;
+            return false;
+        }
+        slots[(head + count) % slots.length].capture(event);
+        if (count++ == 0) {
+            notifyAll();
+        }
+        return true;
+    }
+
+    /**
+     * Waits up to the timeout for events and returns the number of captured events which can be read with
+     * {@link #get(int)} until they are {@link #release(int) released}
+     */
+    synchronized int await(long timeout) throws InterruptedException {
+        if (count == 0) {
+            wait(timeout);
+        }
+        return count;
+    }
+
+    synchronized int size() {
+        return count;
+    }
+
+    Slot get(int index) {
+        return slots[(head + index) % slots.length];
+    }
+
+    synchronized void release(int released) {
+        for (int i = 0; i < released; i++) {
+            get(i).clear();
+        }
+        head = (head + released) % slots.length;
+        count -= released;
+    }
+
+    synchronized long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * The parts of a logging event the appender stores
+     */
+    static final class Slot {
+        long timestamp;
+        String level;
+        String loggerName;
+        String threadName;
+        String message;
+        String[] throwable;
+        Map<?, ?> properties;
+
+        void capture(PaxLoggingEvent event) {
+            timestamp = event.getTimeStamp();
+            level = event.getLevel().toString();
+            loggerName = event.getLoggerName();
+            threadName = event.getThreadName();
+            message = event.getMessage();
+            throwable = event.getThrowableStrRep();
+            properties = event.getProperties();
+        }
+
+        void clear() {
+            level = null;
+            loggerName = null;
+            threadName = null;
+            message = null;
+            throwable = null;
+            properties = null;
+        }
+    }
+}
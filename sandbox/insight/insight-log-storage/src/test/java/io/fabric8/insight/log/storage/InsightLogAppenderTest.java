@@ -0,0 +1,136 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.insight.log.storage;
+
+import io.fabric8.insight.storage.StorageService;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static io.fabric8.insight.log.storage.LogEventRingTest.event;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class InsightLogAppenderTest {
+
+    private final RecordingStorage storage = new RecordingStorage();
+    private final InsightLogAppender appender = createAppender();
+
+    @After
+    public void destroyAppender() {
+        storage.proceed.countDown();
+        appender.destroy();
+    }
+
+    @Test
+    public void testStoresTheEventsInBatchesFromItsThread() throws Exception {
+        storage.proceed.countDown();
+        appender.init();
+        for (int i = 1; i <= 5; i++) {
+            appender.doAppend(event("INFO", "m" + i));
+        }
+        storage.waitFor(5);
+        assertEquals(Arrays.asList("m1", "m2", "m3", "m4", "m5"), storage.getMessages());
+    }
+
+    @Test
+    public void testStoresTheCapturedEventsWhenDestroyed() throws Exception {
+        appender.init();
+        appender.doAppend(event("INFO", "m1"));
+        // the thread is storing m1 while the next events are captured
+        assertTrue(storage.storing.await(5, TimeUnit.SECONDS));
+        appender.doAppend(event("INFO", "m2"));
+        appender.doAppend(event("ERROR", "m3"));
+
+        appender.destroy();
+        assertEquals(Arrays.asList("m1", "m2", "m3"), storage.getMessages());
+    }
+
+    @Test
+    public void testStoresFromTheLoggingThreadWhenNotAsync() throws Exception {
+        storage.proceed.countDown();
+        appender.setAsync(false);
+        appender.init();
+        appender.doAppend(event("INFO", "m1"));
+        assertEquals(Arrays.asList("m1"), storage.getMessages());
+    }
+
+    @Test
+    public void testSkipsTraceEventsWithoutATraceId() throws Exception {
+        storage.proceed.countDown();
+        appender.setAsync(false);
+        appender.init();
+        appender.doAppend(event("TRACE", "m1"));
+        appender.doAppend(event("DEBUG", "m2"));
+        assertEquals(Arrays.asList("m2"), storage.getMessages());
+    }
+
+    protected InsightLogAppender createAppender() {
+        InsightLogAppender appender = new InsightLogAppender();
+        appender.setName("host1");
+        appender.setType("log");
+        appender.setStorage(storage);
+        appender.setBufferSize(16);
+        return appender;
+    }
+
+    /**
+     * Records the message of the documents it stores, the first of them is only stored once it may proceed
+     * or the storing thread is interrupted
+     */
+    protected static class RecordingStorage implements StorageService {
+        private final List<String> documents = new ArrayList<String>();
+        final CountDownLatch storing = new CountDownLatch(1);
+        final CountDownLatch proceed = new CountDownLatch(1);
+
+        @Override
+        public void store(String type, long timestamp, String jsonData) {
+            storing.countDown();
+            try {
+                proceed.await();
+            } catch (InterruptedException e) {
+                // stopping, the next documents are stored right away
+                proceed.countDown();
+            }
+            synchronized (this) {
+                documents.add(jsonData);
+                notifyAll();
+            }
+        }
+
+        synchronized List<String> getMessages() {
+            List<String> messages = new ArrayList<String>();
+            for (String document : documents) {
+                int start = document.indexOf("\"message\" : \"") + 13;
+                messages.add(document.substring(start, document.indexOf('"', start)));
+            }
+            return messages;
+        }
+
+        synchronized void waitFor(int count) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (documents.size() < count && System.currentTimeMillis() < deadline) {
+                wait(100);
+            }
+            assertEquals(count, documents.size());
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.insight.log.storage;
+
+import org.junit.Test;
+import org.ops4j.pax.logging.spi.PaxLevel;
+import org.ops4j.pax.logging.spi.PaxLoggingEvent;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class LogEventRingTest {
+
+    @Test
+    public void testWrapsAroundTheEndOfTheRing() throws Exception {
+        LogEventRing ring = new LogEventRing(3);
+        ring.offer(event("INFO", "m1"));
+        ring.offer(event("INFO", "m2"));
+        assertEquals(2, ring.await(0));
+        ring.release(2);
+
+        // the slots after the first two are followed by the first two again
+        assertTrue(ring.offer(event("INFO", "m3")));
+        assertTrue(ring.offer(event("INFO", "m4")));
+        assertTrue(ring.offer(event("INFO", "m5")));
+        assertEquals(3, ring.await(0));
+        assertMessages(ring, "m3", "m4", "m5");
+        ring.release(3);
+        assertEquals(0, ring.size());
+        assertEquals(0, ring.getDropped());
+    }
+
+    @Test
+    public void testDropsNewEventsInsteadOfOverwritingWhenFull() throws Exception {
+        LogEventRing ring = new LogEventRing(2);
+        assertTrue(ring.offer(event("INFO", "m1")));
+        assertTrue(ring.offer(event("INFO", "m2")));
+        assertFalse(ring.offer(event("INFO", "m3")));
+        assertFalse(ring.offer(event("INFO", "m4")));
+
+        assertEquals(2, ring.getDropped());
+        assertEquals(2, ring.await(0));
+        assertMessages(ring, "m1", "m2");
+    }
+
+    @Test
+    public void testSlotsOfABatchAreOnlyReusedOnceReleased() throws Exception {
+        LogEventRing ring = new LogEventRing(2);
+        ring.offer(event("INFO", "m1"));
+        ring.offer(event("INFO", "m2"));
+        assertEquals(2, ring.await(0));
+        LogEventRing.Slot first = ring.get(0);
+
+        // the consumer releases the batch in parts, the producers only get the released slots
+        ring.release(1);
+        assertNull(first.message);
+        assertTrue(ring.offer(event("INFO", "m3")));
+        assertFalse(ring.offer(event("INFO", "m4")));
+        assertMessages(ring, "m2", "m3");
+
+        ring.release(2);
+        assertEquals(0, ring.size());
+        assertEquals(1, ring.getDropped());
+    }
+
+    @Test
+    public void testAwaitReturnsOnceAnEventIsCaptured() throws Exception {
+        final LogEventRing ring = new LogEventRing(4);
+        assertEquals(0, ring.await(10));
+
+        Thread producer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                ring.offer(event("WARN", "m1"));
+            }
+        };
+        producer.start();
+        long start = System.currentTimeMillis();
+        assertEquals(1, ring.await(5000));
+        assertTrue(System.currentTimeMillis() - start < 5000);
+        assertEquals("WARN", ring.get(0).level);
+    }
+
+    protected static void assertMessages(LogEventRing ring, String... messages) {
+        for (int i = 0; i < messages.length; i++) {
+            assertEquals(messages[i], ring.get(i).message);
+        }
+    }
+
+    /**
+     * Creates a logging event with the given level and message, logged by the "test" logger on the "main" thread
+     */
+    protected static PaxLoggingEvent event(final String level, final String message) {
+        final PaxLevel paxLevel = (PaxLevel) Proxy.newProxyInstance(LogEventRingTest.class.getClassLoader(), new Class[] {PaxLevel.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                return "toString".equals(method.getName()) ? level : null;
+            }
+        });
+        return (PaxLoggingEvent) Proxy.newProxyInstance(LogEventRingTest.class.getClassLoader(), new Class[] {PaxLoggingEvent.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                String name = method.getName();
+                if ("getLevel".equals(name)) {
+                    return paxLevel;
+                } else if ("getMessage".equals(name) || "getRenderedMessage".equals(name)) {
+                    return message;
+                } else if ("getLoggerName".equals(name)) {
+                    return "test";
+                } else if ("getThreadName".equals(name)) {
+                    return "main";
+                } else if ("getTimeStamp".equals(name)) {
+                    return 1400000000000L;
+                } else if ("getProperties".equals(name)) {
+                    return Collections.emptyMap();
+                } else if ("toString".equals(name)) {
+                    return level + " " + message;
+                }
+                return null;
+            }
+        });
+    }
+}
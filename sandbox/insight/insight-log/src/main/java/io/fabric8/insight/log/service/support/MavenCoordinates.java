@@ -22,12 +22,22 @@ import org.osgi.framework.FrameworkUtil;
 
 import java.net.URL;
 import java.util.Enumeration;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
 public class MavenCoordinates {
 
     private static Map<String, String> MAVEN_COORDINATES = new ConcurrentHashMap<String, String>();
+    // the coordinates of the bundle locations such as "123:org.foo.bar:1.0.0" found at the end of stack trace lines
+    // the least recently used locations are evicted once there are more than MAX_LOCATIONS of them
+    private static final int MAX_LOCATIONS = 10000;
+    private static final Map<String, String> LOCATION_COORDINATES = new LinkedHashMap<String, String>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > MAX_LOCATIONS;
+        }
+    };
 
     public static void addMavenCoord(Map<String, String> properties) {
         if (properties.get("maven.coordinates") == null) {
@@ -54,20 +64,30 @@ public class MavenCoordinates {
             int index = line.lastIndexOf('[');
             if (index > 0) {
                 String str = line.substring(index + 1, line.length() - 1);
-                index = str.indexOf(':');
-                if (index > 0) {
-                    String idStr = str.substring(0, index);
-                    String mvn = getMavenCoordinates(idStr);
-                    if (mvn != null) {
-                        return line + "[" + mvn + "]";
+                String mvn;
+                synchronized (LOCATION_COORDINATES) {
+                    mvn = LOCATION_COORDINATES.get(str);
+                }
+                if (mvn == null) {
+                    index = str.indexOf(':');
+                    if (index > 0) {
+                        mvn = getMavenCoordinates(str.substring(0, index));
+                        if (mvn != null && !mvn.isEmpty()) {
+                            synchronized (LOCATION_COORDINATES) {
+                                LOCATION_COORDINATES.put(str, mvn);
+                            }
+                        }
                     }
                 }
+                if (mvn != null) {
+                    return line + "[" + mvn + "]";
+                }
             }
         }
         return line;
     }
 
-    private static String getMavenCoordinates(Map props) {
+    public static String getMavenCoordinates(Map props) {
         Object id = (props != null) ? props.get("bundle.id") : null;
         if (id == null) {
             return null;
@@ -28,8 +28,6 @@ import io.fabric8.insight.log.LogEvent;
 import io.fabric8.insight.log.LogFilter;
 import io.fabric8.insight.log.LogResults;
 import io.fabric8.insight.log.support.LogQuerySupport;
-import io.fabric8.insight.log.support.LruList;
-import io.fabric8.insight.log.support.Predicate;
 import org.ops4j.pax.url.maven.commons.MavenConfigurationImpl;
 import org.ops4j.pax.url.maven.commons.MavenSettingsImpl;
 import org.ops4j.pax.url.mvn.ServiceConstants;
@@ -44,12 +42,8 @@ import javax.annotation.PreDestroy;
 import java.io.File;
 import java.io.IOException;
 import java.net.URL;
-import java.util.ArrayList;
 import java.util.Date;
-import java.util.List;
-import java.util.Map;
 import java.util.Properties;
-import java.util.Set;
 import org.apache.felix.scr.annotations.Activate;
 import org.apache.felix.scr.annotations.Component;
 import org.apache.felix.scr.annotations.ConfigurationPolicy;
@@ -61,8 +55,6 @@ import org.apache.felix.scr.annotations.ReferenceCardinality;
 import org.apache.felix.scr.annotations.ReferencePolicy;
 import org.apache.felix.scr.annotations.Service;
 
-import static io.fabric8.insight.log.support.Strings.contains;
-
 /**
  * A log4j adapter for LogQueryMBean
  */
@@ -73,7 +65,7 @@ public class Log4jLogQuery extends LogQuerySupport implements Log4jLogQueryMBean
     private static final transient Logger LOG = LoggerFactory.getLogger(Log4jLogQuery.class);
 
     private int size = 1000;
-    private LruList<LoggingEvent> events;
+    private LogEventBuffer events;
     private boolean addMavenCoordinates = true;
     private AetherBasedResolver resolver;
     private Properties properties = new Properties();
@@ -129,134 +121,25 @@ public class Log4jLogQuery extends LogQuerySupport implements Log4jLogQueryMBean
     }
 
     public LogResults queryLogResults(LogFilter filter) {
-        Predicate<LogEvent> predicate = createPredicate(filter);
         int maxCount = -1;
         if (filter != null) {
             maxCount = filter.getCount();
         }
-        return filterLogResults(predicate, maxCount);
+        return filterLogResults(filter, maxCount);
     }
 
-    private Predicate<LogEvent> createPredicate(LogFilter filter) {
+    protected LogResults filterLogResults(LogFilter filter, int maxCount) {
+        LogEventBuffer events = getEvents();
+        LogResults results;
         if (filter == null) {
-            return null;
-        }
-        final List<Predicate<LogEvent>> predicates = new ArrayList<Predicate<LogEvent>>();
-
-        final Set<String> levels = filter.getLevelsSet();
-        if (levels.size() > 0) {
-            predicates.add(new Predicate<LogEvent>() {
-                @Override
-                public boolean matches(LogEvent event) {
-                    String level = event.getLevel();
-                    return level != null && levels.contains(level.toString());
-                }
-            });
-        }
-        final Long before = filter.getBeforeTimestamp();
-        if (before != null) {
-            final Date date = new Date(before);
-            predicates.add(new Predicate<LogEvent>() {
-                @Override
-                public boolean matches(LogEvent event) {
-                    Date time = event.getTimestamp();
-                    return time != null && time.before(date);
-                }
-            });
-        }
-        final Long after = filter.getAfterTimestamp();
-        if (after != null) {
-            final Date date = new Date(after);
-            predicates.add(new Predicate<LogEvent>() {
-                @Override
-                public boolean matches(LogEvent event) {
-                    Date time = event.getTimestamp();
-                    return time != null && time.after(date);
-                }
-            });
-        }
-
-        final String matchesText = filter.getMatchesText();
-        if (matchesText != null && matchesText.length() > 0) {
-            predicates.add(new Predicate<LogEvent>() {
-                @Override
-                public boolean matches(LogEvent event) {
-                    if (contains(matchesText, event.getClassName(), event.getMessage(), event.getLogger(), event.getThread())) {
-                        return true;
-                    }
-                    String[] throwableStrRep = event.getException();
-                    if (throwableStrRep != null && contains(matchesText, throwableStrRep)) {
-                        return true;
-                    }
-                    Map properties = event.getProperties();
-                    if (properties != null && contains(matchesText, properties.toString())) {
-                        return true;
-                    }
-                    return false;
-                }
-            });
-        }
-
-        if (predicates.size() == 0) {
-            return null;
-        } else if (predicates.size() == 1) {
-            return predicates.get(0);
+            results = events.query(null, null, null, null, maxCount);
         } else {
-            return new Predicate<LogEvent>() {
-                @Override
-                public String toString() {
-                    return "AndPredicate" + predicates;
-                }
-
-                @Override
-                public boolean matches(LogEvent event) {
-                    for (Predicate<LogEvent> predicate : predicates) {
-                        if (!predicate.matches(event)) {
-                            return false;
-                        }
-                    }
-                    return true;
-                }
-            };
-        }
-    }
-
-    protected LogResults filterLogResults(Predicate<LogEvent> predicate, int maxCount) {
-        int matched = 0;
-        long from = Long.MAX_VALUE;
-        long to = Long.MIN_VALUE;
-        List<LogEvent> list = new ArrayList<LogEvent>();
-        Iterable<LoggingEvent> elements = getEvents().getElements();
-        for (LoggingEvent element : elements) {
-            LogEvent logEvent = toLogEvent(element);
-            long timestamp = element.getTimeStamp();
-            if (timestamp > to) {
-                to = timestamp;
-            }
-            if (timestamp < from) {
-                from = timestamp;
-            }
-            if (logEvent != null) {
-                if (predicate == null || predicate.matches(logEvent)) {
-                    list.add(logEvent);
-                    matched += 1;
-                    if (maxCount > 0 && matched >= maxCount) {
-                        break;
-                    }
-                }
-            }
-        }
-        LogResults results = new LogResults();
-        results.setEvents(list);
-        if (from < Long.MAX_VALUE) {
-            results.setFromTimestamp(from);
-        }
-        if (to > Long.MIN_VALUE) {
-            results.setToTimestamp(to);
+            results = events.query(filter.getLevelsSet(), filter.getBeforeTimestamp(), filter.getAfterTimestamp(),
+                    filter.getMatchesText(), maxCount);
         }
         if (LOG.isDebugEnabled()) {
             LOG.debug("Requested " + maxCount + " logging items. returning "
-                    + results.getEvents().size() + " event(s) from a possible " + getEvents().size());
+                    + results.getEvents().size() + " event(s) from a possible " + events.size());
 
         }
         return results;
@@ -369,14 +252,14 @@ public class Log4jLogQuery extends LogQuerySupport implements Log4jLogQueryMBean
 
     // Properties
     //-------------------------------------------------------------------------
-    public LruList<LoggingEvent> getEvents() {
+    public LogEventBuffer getEvents() {
         if (events == null) {
-            events = new LruList<LoggingEvent>(LoggingEvent.class, getSize());
+            events = new LogEventBuffer(this, getSize());
         }
         return events;
     }
 
-    public void setEvents(LruList<LoggingEvent> events) {
+    public void setEvents(LogEventBuffer events) {
         this.events = events;
     }
 
@@ -0,0 +1,486 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.insight.log.log4j;
+
+import io.fabric8.insight.log.LogEvent;
+import io.fabric8.insight.log.LogResults;
+import org.apache.log4j.Level;
+import org.apache.log4j.spi.LoggingEvent;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import static io.fabric8.insight.log.support.Strings.contains;
+
+/**
+ * A fixed size ring of logging events which is indexed to answer log queries without walking and converting
+ * every buffered event.
+ * <p/>
+ * Events are numbered in the order they are logged and queries return them newest first, stopping as soon
+ * as the requested count matched. Each query walks the smallest of the candidate sets given by its filters:
+ * <ul>
+ *     <li>the events of the requested levels, which are kept in a list per level</li>
+ *     <li>the events containing the words of the text to match, from a token index which is only built, for
+ *     the events logged since the previous text query, when text is queried</li>
+ *     <li>the events in the requested time range, which are located with a binary search on the largest
+ *     timestamp logged so far at each event. Events do not always reach the appender in the order of their
+ *     timestamps, so the search is widened by the largest step back in time seen.</li>
+ * </ul>
+ * An event is converted to a {@link LogEvent} once, when it is first returned or indexed.
+ */
+public class LogEventBuffer {
+
+    private static final Comparator<Entry> NEWEST_FIRST = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry e1, Entry e2) {
+            return e1.seq > e2.seq ? -1 : e1.seq == e2.seq ? 0 : 1;
+        }
+    };
+
+    private final Log4jLogQuery logQuery;
+    private final Entry[] entries;
+    private final Map<String, ArrayDeque<Entry>> levels = new HashMap<String, ArrayDeque<Entry>>();
+    private final Map<String, ArrayDeque<Entry>> tokens = new HashMap<String, ArrayDeque<Entry>>();
+    private final Object indexLock = new Object();
+    private long firstSeq;
+    private long nextSeq;
+    private long indexedSeq;
+    private long maxDisorder;
+
+    public LogEventBuffer(Log4jLogQuery logQuery, int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("The size must be greater than 0");
+        }
+        this.logQuery = logQuery;
+        this.entries = new Entry[size];
+    }
+
+    public synchronized int size() {
+        return (int) (nextSeq - oldestSeq());
+    }
+
+    public synchronized void clear() {
+        for (int i = 0; i < entries.length; i++) {
+            entries[i] = null;
+        }
+        levels.clear();
+        tokens.clear();
+        firstSeq = nextSeq;
+        indexedSeq = nextSeq;
+        maxDisorder = 0;
+    }
+
+    public synchronized void add(LoggingEvent event) {
+        if (event == null) {
+            throw new NullPointerException("Attempted to add null object to buffer");
+        }
+        if (nextSeq - firstSeq >= entries.length) {
+            evict(entries[index(nextSeq)]);
+        }
+        Entry entry = new Entry(nextSeq, event);
+        if (nextSeq > oldestSeq()) {
+            long previousMax = entries[index(nextSeq - 1)].maxTimestamp;
+            if (previousMax > entry.timestamp) {
+                entry.maxTimestamp = previousMax;
+                maxDisorder = Math.max(maxDisorder, previousMax - entry.timestamp);
+            }
+        }
+        entries[index(nextSeq)] = entry;
+        ArrayDeque<Entry> list = levels.get(entry.level);
+        if (list == null) {
+            list = new ArrayDeque<Entry>();
+            levels.put(entry.level, list);
+        }
+        list.addLast(entry);
+        nextSeq++;
+    }
+
+    /**
+     * Returns the newest events matching all the given criteria, the criteria which are null are not applied.
+     *
+     * @param levelNames the levels of the events, or empty to match all levels
+     * @param before     only matches the events logged before this timestamp
+     * @param after      only matches the events logged after this timestamp
+     * @param text       only matches the events containing this text
+     * @param maxCount   the maximum number of events to return, or 0 or less to return all the matching events
+     */
+    public LogResults query(Set<String> levelNames, Long before, Long after, String text, int maxCount) {
+        if (levelNames != null && levelNames.isEmpty()) {
+            levelNames = null;
+        }
+        if (text != null && text.length() == 0) {
+            text = null;
+        }
+        long indexed = text != null ? indexTokens() : Long.MAX_VALUE;
+
+        List<Entry> matches = new ArrayList<Entry>();
+        long from = Long.MAX_VALUE;
+        long to = Long.MIN_VALUE;
+        synchronized (this) {
+            long low = oldestSeq();
+            long high = Math.min(nextSeq, indexed);
+            if (after != null) {
+                low = firstSeqWithMaxTimestampAbove(low, high, after);
+            }
+            if (before != null && before < Long.MAX_VALUE - maxDisorder) {
+                // the events from there on were all logged at or after before
+                high = firstSeqWithMaxTimestampAbove(low, high, before + maxDisorder - 1);
+            }
+
+            Iterator<Entry> candidates = rangeIterator(low, high);
+            long candidateCount = high - low;
+            if (levelNames != null) {
+                long count = 0;
+                for (String level : levelNames) {
+                    ArrayDeque<Entry> list = levels.get(level);
+                    count += list != null ? list.size() : 0;
+                }
+                if (count < candidateCount) {
+                    candidates = levelIterator(levelNames);
+                    candidateCount = count;
+                }
+            }
+            if (text != null) {
+                List<Entry> textCandidates = textCandidates(text);
+                if (textCandidates != null && textCandidates.size() < candidateCount) {
+                    candidates = textCandidates.iterator();
+                }
+            }
+
+            while (candidates.hasNext()) {
+                Entry entry = candidates.next();
+                if (entry.seq < low) {
+                    break;
+                }
+                if (entry.seq >= high) {
+                    continue;
+                }
+                from = Math.min(from, entry.timestamp);
+                to = Math.max(to, entry.timestamp);
+                if (levelNames != null && !levelNames.contains(entry.level)) {
+                    continue;
+                }
+                if (before != null && entry.timestamp >= before) {
+                    continue;
+                }
+                if (after != null && entry.timestamp <= after) {
+                    continue;
+                }
+                if (text != null && !matchesText(entry.getLogEvent(), text)) {
+                    continue;
+                }
+                matches.add(entry);
+                if (maxCount > 0 && matches.size() >= maxCount) {
+                    break;
+                }
+            }
+        }
+
+        List<LogEvent> events = new ArrayList<LogEvent>(matches.size());
+        for (Entry entry : matches) {
+            events.add(entry.getLogEvent());
+        }
+        LogResults results = new LogResults();
+        results.setEvents(events);
+        if (from < Long.MAX_VALUE) {
+            results.setFromTimestamp(from);
+        }
+        if (to > Long.MIN_VALUE) {
+            results.setToTimestamp(to);
+        }
+        return results;
+    }
+
+    static boolean matchesText(LogEvent event, String text) {
+        if (contains(text, event.getClassName(), event.getMessage(), event.getLogger(), event.getThread())) {
+            return true;
+        }
+        String[] throwableStrRep = event.getException();
+        if (throwableStrRep != null && contains(text, throwableStrRep)) {
+            return true;
+        }
+        Map properties = event.getProperties();
+        return properties != null && contains(text, properties.toString());
+    }
+
+    /**
+     * Splits the text into the runs of letters and digits, a text containing another text contains each of
+     * its words within one of its own words
+     */
+    static void tokenize(String text, Set<String> answer) {
+        if (text == null) {
+            return;
+        }
+        int start = -1;
+        for (int i = 0, length = text.length(); i <= length; i++) {
+            if (i < length && Character.isLetterOrDigit(text.charAt(i))) {
+                if (start < 0) {
+                    start = i;
+                }
+            } else if (start >= 0) {
+                answer.add(text.substring(start, i));
+                start = -1;
+            }
+        }
+    }
+
+    /**
+     * Adds the events logged since the previous call to the token index and returns the sequence up to which
+     * events are indexed. The events are converted and tokenized without holding the buffer lock so logging
+     * threads are not held up.
+     */
+    private long indexTokens() {
+        synchronized (indexLock) {
+            List<Entry> pending = new ArrayList<Entry>();
+            synchronized (this) {
+                for (long seq = Math.max(indexedSeq, oldestSeq()); seq < nextSeq; seq++) {
+                    pending.add(entries[index(seq)]);
+                }
+            }
+            List<String[]> pendingTokens = new ArrayList<String[]>(pending.size());
+            for (Entry entry : pending) {
+                pendingTokens.add(tokenize(entry.getLogEvent()));
+            }
+            synchronized (this) {
+                long oldest = oldestSeq();
+                for (int i = 0; i < pending.size(); i++) {
+                    Entry entry = pending.get(i);
+                    if (entry.seq < oldest) {
+                        continue;
+                    }
+                    entry.tokens = pendingTokens.get(i);
+                    for (String token : entry.tokens) {
+                        ArrayDeque<Entry> list = tokens.get(token);
+                        if (list == null) {
+                            list = new ArrayDeque<Entry>();
+                            tokens.put(token, list);
+                        }
+                        list.addLast(entry);
+                    }
+                }
+                if (!pending.isEmpty()) {
+                    indexedSeq = Math.max(indexedSeq, pending.get(pending.size() - 1).seq + 1);
+                }
+                return indexedSeq;
+            }
+        }
+    }
+
+    private static String[] tokenize(LogEvent event) {
+        Set<String> answer = new HashSet<String>();
+        tokenize(event.getClassName(), answer);
+        tokenize(event.getMessage(), answer);
+        tokenize(event.getLogger(), answer);
+        tokenize(event.getThread(), answer);
+        String[] exception = event.getException();
+        if (exception != null) {
+            for (String line : exception) {
+                tokenize(line, answer);
+            }
+        }
+        Map<?, ?> properties = event.getProperties();
+        if (properties != null) {
+            for (Map.Entry<?, ?> property : properties.entrySet()) {
+                tokenize(String.valueOf(property.getKey()), answer);
+                tokenize(String.valueOf(property.getValue()), answer);
+            }
+        }
+        return answer.toArray(new String[answer.size()]);
+    }
+
+    /**
+     * Returns the indexed events, newest first, containing the longest word of the text within one of their
+     * words, or null if the text has no words
+     */
+    private List<Entry> textCandidates(String text) {
+        Set<String> words = new HashSet<String>();
+        tokenize(text, words);
+        String longest = null;
+        for (String word : words) {
+            if (longest == null || word.length() > longest.length()) {
+                longest = word;
+            }
+        }
+        if (longest == null) {
+            return null;
+        }
+        List<Entry> answer = new ArrayList<Entry>();
+        for (Map.Entry<String, ArrayDeque<Entry>> token : tokens.entrySet()) {
+            if (token.getKey().contains(longest)) {
+                answer.addAll(token.getValue());
+            }
+        }
+        Collections.sort(answer, NEWEST_FIRST);
+        Entry previous = null;
+        for (Iterator<Entry> iterator = answer.iterator(); iterator.hasNext(); ) {
+            Entry entry = iterator.next();
+            if (entry == previous) {
+                iterator.remove();
+            }
+            previous = entry;
+        }
+        return answer;
+    }
+
+    /**
+     * Returns the first sequence in the range at which the largest timestamp logged so far is above the
+     * timestamp, all the events before it were logged at or before the timestamp
+     */
+    private long firstSeqWithMaxTimestampAbove(long low, long high, long timestamp) {
+        while (low < high) {
+            long middle = (low + high) >>> 1;
+            if (entries[index(middle)].maxTimestamp > timestamp) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+        return low;
+    }
+
+    private Iterator<Entry> rangeIterator(final long low, final long high) {
+        return new Iterator<Entry>() {
+            long seq = high;
+
+            @Override
+            public boolean hasNext() {
+                return seq > low;
+            }
+
+            @Override
+            public Entry next() {
+                if (seq <= low) {
+                    throw new NoSuchElementException();
+                }
+                return entries[index(--seq)];
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * Merges the lists of the levels newest first
+     */
+    private Iterator<Entry> levelIterator(Set<String> levelNames) {
+        final List<Iterator<Entry>> iterators = new ArrayList<Iterator<Entry>>();
+        final List<Entry> heads = new ArrayList<Entry>();
+        for (String level : levelNames) {
+            ArrayDeque<Entry> list = levels.get(level);
+            if (list != null && !list.isEmpty()) {
+                Iterator<Entry> iterator = list.descendingIterator();
+                iterators.add(iterator);
+                heads.add(iterator.next());
+            }
+        }
+        return new Iterator<Entry>() {
+            @Override
+            public boolean hasNext() {
+                for (Entry head : heads) {
+                    if (head != null) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+
+            @Override
+            public Entry next() {
+                int newest = -1;
+                for (int i = 0; i < heads.size(); i++) {
+                    Entry head = heads.get(i);
+                    if (head != null && (newest < 0 || head.seq > heads.get(newest).seq)) {
+                        newest = i;
+                    }
+                }
+                if (newest < 0) {
+                    throw new NoSuchElementException();
+                }
+                Entry answer = heads.get(newest);
+                Iterator<Entry> iterator = iterators.get(newest);
+                heads.set(newest, iterator.hasNext() ? iterator.next() : null);
+                return answer;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    private void evict(Entry entry) {
+        levels.get(entry.level).pollFirst();
+        if (entry.tokens != null) {
+            for (String token : entry.tokens) {
+                ArrayDeque<Entry> list = tokens.get(token);
+                list.pollFirst();
+                if (list.isEmpty()) {
+                    tokens.remove(token);
+                }
+            }
+        }
+        firstSeq = Math.max(firstSeq, entry.seq + 1);
+    }
+
+    private long oldestSeq() {
+        return Math.max(firstSeq, nextSeq - entries.length);
+    }
+
+    private int index(long seq) {
+        return (int) (seq % entries.length);
+    }
+
+    private final class Entry {
+        final long seq;
+        final LoggingEvent event;
+        final String level;
+        final long timestamp;
+        long maxTimestamp;
+        String[] tokens;
+        volatile LogEvent logEvent;
+
+        Entry(long seq, LoggingEvent event) {
+            this.seq = seq;
+            this.event = event;
+            Level level = event.getLevel();
+            this.level = level != null ? level.toString() : null;
+            this.timestamp = event.getTimeStamp();
+            this.maxTimestamp = timestamp;
+        }
+
+        LogEvent getLogEvent() {
+            LogEvent answer = logEvent;
+            if (answer == null) {
+                answer = logQuery.toLogEvent(event);
+                logEvent = answer;
+            }
+            return answer;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.insight.log.log4j;
+
+import io.fabric8.insight.log.LogEvent;
+import io.fabric8.insight.log.LogResults;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+
+public class LogEventBufferTest {
+
+    private final LogEventBuffer buffer = new LogEventBuffer(new Log4jLogQuery(), 5);
+
+    @Test
+    public void testReturnsNewestFirstUpToTheCount() {
+        for (int i = 1; i <= 7; i++) {
+            log(Level.INFO, i * 10, "message " + i);
+        }
+        assertEquals(5, buffer.size());
+        assertMessages(buffer.query(null, null, null, null, -1), "message 7", "message 6", "message 5", "message 4", "message 3");
+        assertMessages(buffer.query(null, null, null, null, 2), "message 7", "message 6");
+    }
+
+    @Test
+    public void testQueryByLevel() {
+        log(Level.INFO, 10, "info 1");
+        log(Level.ERROR, 20, "error 1");
+        log(Level.WARN, 30, "warn 1");
+        log(Level.INFO, 40, "info 2");
+        log(Level.ERROR, 50, "error 2");
+        log(Level.INFO, 60, "info 3");
+
+        assertMessages(buffer.query(Collections.singleton("ERROR"), null, null, null, -1), "error 2", "error 1");
+        assertMessages(buffer.query(new HashSet<String>(asList("ERROR", "WARN")), null, null, null, 2), "error 2", "warn 1");
+        assertMessages(buffer.query(Collections.singleton("INFO"), null, null, null, 1), "info 3");
+    }
+
+    @Test
+    public void testQueryByTimestampWithEventsOutOfOrder() {
+        log(Level.INFO, 10, "a");
+        log(Level.INFO, 30, "b");
+        log(Level.INFO, 20, "c");
+        log(Level.INFO, 40, "d");
+        log(Level.INFO, 50, "e");
+
+        assertMessages(buffer.query(null, null, 15L, null, -1), "e", "d", "c", "b");
+        assertMessages(buffer.query(null, 35L, null, null, -1), "c", "b", "a");
+        assertMessages(buffer.query(null, 40L, 10L, null, -1), "c", "b");
+    }
+
+    @Test
+    public void testQueryByText() {
+        log(Level.INFO, 10, "Started bundle foo-core");
+        log(Level.INFO, 20, "Stopping bundle bar");
+        log(Level.ERROR, 30, "Failed to start foo-web: timeout");
+        log(Level.INFO, 40, "Started bundle bar");
+
+        assertMessages(buffer.query(null, null, null, "foo-", -1), "Failed to start foo-web: timeout", "Started bundle foo-core");
+        assertMessages(buffer.query(null, null, null, "tart", -1), "Started bundle bar", "Failed to start foo-web: timeout", "Started bundle foo-core");
+        assertMessages(buffer.query(null, null, null, "bundle bar", 1), "Started bundle bar");
+        assertMessages(buffer.query(null, null, null, ": ", -1), "Failed to start foo-web: timeout");
+
+        // the events logged since the last query are indexed by the next one and evicted ones are dropped
+        log(Level.INFO, 50, "Started bundle baz");
+        log(Level.INFO, 60, "Started bundle foo-api");
+        assertMessages(buffer.query(null, null, null, "foo", -1), "Started bundle foo-api", "Failed to start foo-web: timeout");
+    }
+
+    private void log(Level level, long timestamp, String message) {
+        buffer.add(new LoggingEvent(LogEventBufferTest.class.getName(), Logger.getLogger("test"), timestamp, level, message, null));
+    }
+
+    private static void assertMessages(LogResults results, String... messages) {
+        List<LogEvent> events = results.getEvents();
+        String[] actual = new String[events.size()];
+        for (int i = 0; i < actual.length; i++) {
+            actual[i] = events.get(i).getMessage();
+        }
+        assertEquals(asList(messages), asList(actual));
+    }
+}